@@ -0,0 +1,122 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.TaikoEditor;
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.MapInfo;
+import alchyr.taikoedit.editor.maps.Mapset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+//Generates synthetic taiko maps on disk so benchmarks can run without assets, audio, or real beatmaps.
+public class BenchmarkMaps {
+    public static final int DEFAULT_OBJECTS = 10000;
+
+    private static final String ARTIST = "Benchmark";
+    private static final String TITLE = "Synthetic";
+    private static final String CREATOR = "TaikoEditor";
+
+    private static final double BEAT_LENGTH = 60000.0 / 180; //180 bpm
+
+    public static File createDirectory() throws IOException {
+        return Files.createTempDirectory("taikoedit-bench").toFile();
+    }
+
+    public static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory())
+                    deleteDirectory(f);
+                else
+                    f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public static String difficultyName(int objectCount) {
+        return objectCount + " objects";
+    }
+
+    //Writes a map in the same layout the editor saves, so saving it again overwrites the same file.
+    public static File writeMap(File directory, int objectCount, long seed) throws IOException {
+        String diffName = difficultyName(objectCount);
+        File mapFile = new File(directory, ARTIST + " - " + TITLE + " (" + CREATOR + ") [" + diffName + "].osu");
+
+        Random rand = new Random(seed);
+
+        try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(mapFile.toPath()), StandardCharsets.UTF_8))) {
+            w.write("osu file format v14\n\n");
+            w.write("[General]\nAudioFilename: audio.mp3\nAudioLeadIn: 0\nPreviewTime: -1\nCountdown: 0\nSampleSet: Normal\nStackLeniency: 0.7\nMode: 1\nLetterboxInBreaks: 0\nWidescreenStoryboard: 0\n\n");
+            w.write("[Editor]\nDistanceSpacing: 1\nBeatDivisor: 4\nGridSize: 32\nTimelineZoom: 1\n\n");
+            w.write("[Metadata]\nTitle:" + TITLE + "\nTitleUnicode:" + TITLE + "\nArtist:" + ARTIST + "\nArtistUnicode:" + ARTIST + "\nCreator:" + CREATOR + "\nVersion:" + diffName + "\nSource:\nTags:\nBeatmapID:0\nBeatmapSetID:-1\n\n");
+            w.write("[Difficulty]\nHPDrainRate:5\nCircleSize:5\nOverallDifficulty:5\nApproachRate:5\nSliderMultiplier:1.4\nSliderTickRate:1\n\n");
+            w.write("[Events]\n//Background and Video events\n//Break Periods\n//Storyboard Layer 0 (Background)\n//Storyboard Layer 1 (Fail)\n//Storyboard Layer 2 (Pass)\n//Storyboard Layer 3 (Foreground)\n//Storyboard Layer 4 (Overlays)\n//Storyboard Sound Samples\n\n");
+
+            //Objects are placed on 1/4 snaps with occasional gaps; a green line every measure, a red line every 64 measures.
+            ArrayList<Long> times = new ArrayList<>(objectCount);
+            double pos = 1000;
+            for (int i = 0; i < objectCount; ++i) {
+                times.add(Math.round(pos));
+                int r = rand.nextInt(32);
+                pos += BEAT_LENGTH / 4 * (r == 0 ? 16 : (r < 8 ? 2 : 1));
+            }
+            long end = Math.round(pos + BEAT_LENGTH * 4);
+
+            w.write("[TimingPoints]\n");
+            double measure = BEAT_LENGTH * 4;
+            boolean kiai = false;
+            for (int m = 0; 1000 + m * measure < end; ++m) {
+                long time = Math.round(1000 + m * measure);
+                int volume = 60 + rand.nextInt(41);
+                if (m % 16 == 0)
+                    kiai = !kiai;
+                if (m % 64 == 0)
+                    w.write(time + "," + BEAT_LENGTH + ",4,1,0," + volume + ",1," + (kiai ? 1 : 0) + "\n");
+                double sv = 0.8 + rand.nextInt(9) * 0.05;
+                w.write(time + "," + (-100 / sv) + ",4,1,0," + volume + ",0," + (kiai ? 1 : 0) + "\n");
+            }
+            w.write("\n\n");
+
+            w.write("[HitObjects]\n");
+            for (int i = 0; i < times.size(); ++i) {
+                long time = times.get(i);
+                int r = rand.nextInt(200);
+                if (r == 0 && i + 1 < times.size()) {
+                    w.write("256,192," + time + ",12,0," + Math.max(time + 1, times.get(i + 1) - 1) + ",0:0:0:0:\n");
+                }
+                else if (r == 1) {
+                    w.write("256,192," + time + ",2,0,L|400:192,1,140\n");
+                }
+                else {
+                    int hitsound = (rand.nextBoolean() ? 0 : 2) | (rand.nextInt(8) == 0 ? 4 : 0);
+                    w.write("256,192," + time + ",1," + hitsound + ",0:0:0:0:\n");
+                }
+            }
+        }
+
+        return mapFile;
+    }
+
+    public static Mapset createMapset(File directory, File mapFile, int objectCount) {
+        ArrayList<MapInfo> maps = new ArrayList<>();
+        maps.add(new MapInfo(mapFile, "audio.mp3", "", difficultyName(objectCount)));
+        return new Mapset(directory, maps, true, "audio.mp3", CREATOR, TITLE, ARTIST, "");
+    }
+
+    public static EditorBeatmap load(Mapset set) {
+        return new EditorBeatmap(set, set.getMaps().get(0));
+    }
+
+    //Song length covering the generated map, used for kiai caps and snap generation.
+    public static void useHeadlessMusic(int objectCount) {
+        TaikoEditor.music = new HeadlessMusic(1000 + (objectCount / 2.0 + 4) * BEAT_LENGTH);
+    }
+}
@@ -0,0 +1,86 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.diffcalc.TaikoDifficultyCalculator;
+import alchyr.diffcalc.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
+import alchyr.diffcalc.taiko.difficulty.skills.Burst;
+import alchyr.diffcalc.taiko.difficulty.skills.General;
+import alchyr.diffcalc.taiko.difficulty.skills.Skill;
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+//Difficulty calculation on a long synthetic map.
+//Run with -prof gc to compare allocation; gc.alloc.rate.norm is the number of bytes allocated per calculation.
+//Usage: gradlew :benchmarks:jmh -Pjmh="DifficultyBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DifficultyBenchmark {
+    @Param({"20000"})
+    public int objects;
+
+    private File directory;
+    private EditorBeatmap map;
+    private ArrayList<TaikoDifficultyHitObject> difficultyObjects;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkMaps.useHeadlessMusic(objects);
+        directory = BenchmarkMaps.createDirectory();
+        File mapFile = BenchmarkMaps.writeMap(directory, objects, 1);
+        map = BenchmarkMaps.load(BenchmarkMaps.createMapset(directory, mapFile, objects));
+
+        difficultyObjects = new ArrayList<>(objects);
+        TaikoDifficultyHitObject previous = null;
+        for (ArrayList<HitObject> stack : map.objects.values()) {
+            for (HitObject h : stack) {
+                if (h.type != HitObject.HitObjectType.CIRCLE)
+                    continue;
+                if (previous == null) { //The first object has no strain of its own
+                    previous = new TaikoDifficultyHitObject(h);
+                    continue;
+                }
+                difficultyObjects.add(previous = new TaikoDifficultyHitObject(h, previous, 1));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkMaps.deleteDirectory(directory);
+    }
+
+    //Preprocessing, strain sections and the final rating.
+    @Benchmark
+    public Object calculate() {
+        return TaikoDifficultyCalculator.calculateDifficulty(map.objects, 1);
+    }
+
+    //Only the skills, on already preprocessed objects. Peaks are saved every 10 objects in place of real strain sections.
+    @Benchmark
+    public double processSkills() {
+        Skill[] skills = new Skill[] { new Burst(), new General() };
+        int i = 0;
+        for (TaikoDifficultyHitObject h : difficultyObjects) {
+            for (Skill s : skills)
+                s.Process(h);
+            if (++i % 10 == 0) {
+                for (Skill s : skills)
+                    s.SaveCurrentPeak();
+            }
+        }
+
+        double total = 0;
+        for (Skill s : skills)
+            total += s.DifficultyValue();
+        return total;
+    }
+}
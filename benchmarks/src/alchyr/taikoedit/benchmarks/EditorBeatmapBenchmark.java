@@ -0,0 +1,88 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.diffcalc.TaikoDifficultyCalculator;
+import alchyr.taikoedit.editor.BeatDivisors;
+import alchyr.taikoedit.editor.DivisorOptions;
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.Mapset;
+import alchyr.taikoedit.util.structures.PositionalObject;
+import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Map level operations on a synthetic map.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EditorBeatmapBenchmark {
+    private static final int EDIT_STRIDE = 10; //Every tenth stack is part of the edited block
+
+    @Param({"10000"})
+    public int objects;
+
+    private File directory;
+    private EditorBeatmap map;
+    private BeatDivisors divisors;
+    private PositionalObjectTreeMap<PositionalObject> edited;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkMaps.useHeadlessMusic(objects);
+        directory = BenchmarkMaps.createDirectory();
+        File mapFile = BenchmarkMaps.writeMap(directory, objects, 1);
+        Mapset set = BenchmarkMaps.createMapset(directory, mapFile, objects);
+        map = BenchmarkMaps.load(set);
+
+        divisors = new BeatDivisors(new DivisorOptions(), map);
+
+        edited = new PositionalObjectTreeMap<>();
+        int i = 0;
+        for (Map.Entry<Long, ? extends ArrayList<? extends PositionalObject>> stack : map.objects.entrySet()) {
+            if (i++ % EDIT_STRIDE == 0)
+                edited.put(stack.getKey(), new ArrayList<>(stack.getValue()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkMaps.deleteDirectory(directory);
+    }
+
+    //Deletes and restores a spread out tenth of the map, as a large selection delete followed by undo does.
+    @Benchmark
+    public EditorBeatmap removeAndAddObjects() {
+        map.removeObjects(edited);
+        map.preAddObjects(edited);
+        map.objects.addAll(edited);
+        return map;
+    }
+
+    //Sections keep their snaps through reset() if timing is unchanged, so a new instance is used to generate everything.
+    @Benchmark
+    public void generateSnappings(Blackhole bh) {
+        BeatDivisors fresh = new BeatDivisors(new DivisorOptions(), map);
+        for (int divisor : BeatDivisors.commonSnappings)
+            bh.consume(fresh.getSnaps(divisor, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Benchmark
+    public void resetUnchangedTiming(Blackhole bh) {
+        divisors.reset();
+        bh.consume(divisors.getSnaps(0, 10000));
+    }
+
+    @Benchmark
+    public Object calculateDifficulty() {
+        return TaikoDifficultyCalculator.calculateDifficulty(map, new HashMap<>());
+    }
+}
@@ -0,0 +1,28 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.audio.MusicWrapper;
+
+//Stand-in for the loaded song. EditorBeatmap, BeatDivisors and the difficulty calculator only need the length and tempo.
+public class HeadlessMusic extends MusicWrapper {
+    private final double msLength;
+
+    public HeadlessMusic(double msLength) {
+        super();
+        this.msLength = msLength;
+    }
+
+    @Override
+    public double getMsLength() {
+        return msLength;
+    }
+
+    @Override
+    public float getSecondLength() {
+        return (float) (msLength / 1000.0);
+    }
+
+    @Override
+    public float getTempo() {
+        return 1;
+    }
+}
@@ -0,0 +1,50 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.Mapset;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//Reading and writing .osu files.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OsuFileBenchmark {
+    @Param({"10000"})
+    public int objects;
+
+    private File directory;
+    private Mapset set;
+    private EditorBeatmap map;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkMaps.useHeadlessMusic(objects);
+        directory = BenchmarkMaps.createDirectory();
+        File mapFile = BenchmarkMaps.writeMap(directory, objects, 1);
+        set = BenchmarkMaps.createMapset(directory, mapFile, objects);
+        map = BenchmarkMaps.load(set);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkMaps.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public EditorBeatmap parse() {
+        return BenchmarkMaps.load(set);
+    }
+
+    //Saving rewrites the same file each time, including the backup rename.
+    @Benchmark
+    public boolean save() {
+        return map.save();
+    }
+}
@@ -0,0 +1,166 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
+import alchyr.taikoedit.util.structures.PositionalObjectArrayMap;
+import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Compares the tree and array backed positional maps on the operations the editor performs most.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionalMapBenchmark {
+    private static final int LOOKUPS = 1000;
+    private static final long VIEW_WINDOW = 3000; //About one screen of objects
+
+    @Param({"1000", "10000", "20000"})
+    public int size;
+
+    private ArrayList<Hit> hits;
+    private PositionalObjectTreeMap<Hit> tree;
+    private PositionalObjectArrayMap<Hit> array;
+    private PositionalObjectTreeMap<Hit> removed; //Every tenth stack
+    private long[] lookups;
+    private long end;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rand = new Random(size);
+        hits = new ArrayList<>(size);
+        long pos = 0;
+        for (int i = 0; i < size; ++i) {
+            pos += 20 + rand.nextInt(200);
+            hits.add(new Hit(pos, rand.nextBoolean()));
+        }
+        end = pos;
+
+        tree = new PositionalObjectTreeMap<>();
+        array = new PositionalObjectArrayMap<>();
+        removed = new PositionalObjectTreeMap<>();
+        for (int i = 0; i < hits.size(); ++i) {
+            tree.add(hits.get(i));
+            array.add(hits.get(i));
+            if (i % 10 == 0)
+                removed.add(hits.get(i));
+        }
+
+        lookups = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; ++i)
+            lookups[i] = (long) (rand.nextDouble() * end);
+    }
+
+    @Benchmark
+    public PositionalObjectTreeMap<Hit> treeAdd() {
+        PositionalObjectTreeMap<Hit> map = new PositionalObjectTreeMap<>();
+        for (Hit h : hits)
+            map.add(h);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectArrayMap<Hit> arrayAdd() {
+        PositionalObjectArrayMap<Hit> map = new PositionalObjectArrayMap<>();
+        for (Hit h : hits)
+            map.add(h);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectTreeMap<Hit> treeAddAll() {
+        PositionalObjectTreeMap<Hit> map = tree.copy();
+        map.removeAll(removed);
+        map.addAll(removed);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectArrayMap<Hit> arrayAddAll() {
+        PositionalObjectArrayMap<Hit> map = array.copy();
+        map.removeAll(removed);
+        map.addAll(removed);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectTreeMap<Hit> treeRemoveAll() {
+        PositionalObjectTreeMap<Hit> map = tree.copy();
+        map.removeAll(removed);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectArrayMap<Hit> arrayRemoveAll() {
+        PositionalObjectArrayMap<Hit> map = array.copy();
+        map.removeAll(removed);
+        return map;
+    }
+
+    @Benchmark
+    public PositionalObjectTreeMap<Hit> treeCopy() {
+        return tree.copy();
+    }
+
+    @Benchmark
+    public PositionalObjectArrayMap<Hit> arrayCopy() {
+        return array.copy();
+    }
+
+    @Benchmark
+    public void treeSubMapIteration(Blackhole bh) {
+        iterate(tree, bh);
+    }
+
+    @Benchmark
+    public void arraySubMapIteration(Blackhole bh) {
+        iterate(array, bh);
+    }
+
+    @Benchmark
+    public void treeDescendingSubMapIteration(Blackhole bh) {
+        for (long start = 0; start < end; start += VIEW_WINDOW) {
+            for (Map.Entry<Long, ArrayList<Hit>> stack : tree.descendingSubMap(start, true, start + VIEW_WINDOW, true).entrySet())
+                bh.consume(stack.getValue());
+        }
+    }
+
+    @Benchmark
+    public void arrayDescendingSubMapIteration(Blackhole bh) {
+        for (long start = 0; start < end; start += VIEW_WINDOW) {
+            for (Map.Entry<Long, ArrayList<Hit>> stack : array.descendingSubMap(start, true, start + VIEW_WINDOW, true).entrySet())
+                bh.consume(stack.getValue());
+        }
+    }
+
+    @Benchmark
+    public void treeFloor(Blackhole bh) {
+        floor(tree, bh);
+    }
+
+    @Benchmark
+    public void arrayFloor(Blackhole bh) {
+        floor(array, bh);
+    }
+
+    //Walks the whole map one view window at a time, as rendering does while scrolling.
+    private void iterate(NavigableMap<Long, ArrayList<Hit>> map, Blackhole bh) {
+        for (long start = 0; start < end; start += VIEW_WINDOW) {
+            for (Map.Entry<Long, ArrayList<Hit>> stack : map.subMap(start, true, start + VIEW_WINDOW, false).entrySet())
+                bh.consume(stack.getValue());
+        }
+    }
+
+    private void floor(NavigableMap<Long, ArrayList<Hit>> map, Blackhole bh) {
+        for (long pos : lookups)
+            bh.consume(map.floorEntry(pos));
+    }
+}
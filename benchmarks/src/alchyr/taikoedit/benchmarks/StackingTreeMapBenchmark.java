@@ -0,0 +1,93 @@
+package alchyr.taikoedit.benchmarks;
+
+import alchyr.taikoedit.util.structures.StackingTreeMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//StackingTreeMap as used by the Timeline for visible timing point marks.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackingTreeMapBenchmark {
+    private static final int LOOKUPS = 1000;
+    private static final int TIMELINE_WIDTH = 1600;
+
+    public static class Mark implements StackingTreeMap.StackableComparable<Integer> {
+        private final int key;
+
+        public Mark(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+    }
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private ArrayList<Mark> marks;
+    private StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> map;
+    private Map<Integer, ArrayList<Mark>> removed; //Every tenth mark
+    private int[] lookups;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rand = new Random(size);
+        marks = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+            marks.add(new Mark(rand.nextInt(TIMELINE_WIDTH)));
+
+        map = new StackingTreeMap.ExtendedStackingTreeMap<>();
+        removed = new HashMap<>();
+        for (int i = 0; i < marks.size(); ++i) {
+            map.add(marks.get(i));
+            if (i % 10 == 0)
+                removed.computeIfAbsent(marks.get(i).getKey(), (k)->new ArrayList<>()).add(marks.get(i));
+        }
+
+        lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; ++i)
+            lookups[i] = rand.nextInt(TIMELINE_WIDTH);
+    }
+
+    @Benchmark
+    public StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> add() {
+        StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> result = new StackingTreeMap.ExtendedStackingTreeMap<>();
+        for (Mark m : marks)
+            result.add(m);
+        return result;
+    }
+
+    @Benchmark
+    public StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> removeAll() {
+        StackingTreeMap.ExtendedStackingTreeMap<Integer, Mark> result = map.copy();
+        result.removeAll(removed);
+        return result;
+    }
+
+    @Benchmark
+    public void subMapIteration(Blackhole bh) {
+        for (int start = 0; start < TIMELINE_WIDTH; start += 100) {
+            for (Map.Entry<Integer, ArrayList<Mark>> stack : map.subMap(start, true, start + 100, false).entrySet())
+                bh.consume(stack.getValue());
+        }
+    }
+
+    @Benchmark
+    public void floor(Blackhole bh) {
+        for (int pos : lookups)
+            bh.consume(map.floorEntry(pos));
+    }
+}
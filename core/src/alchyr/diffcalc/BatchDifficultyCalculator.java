@@ -0,0 +1,357 @@
+package alchyr.diffcalc;
+
+import alchyr.diffcalc.taiko.difficulty.TaikoDifficultyAttributes;
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.management.assets.OsuFileReader;
+import alchyr.taikoedit.util.structures.PositionalObjectArrayMap;
+import com.google.gson.stream.JsonWriter;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.appender.ConsoleAppender;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+/* Difficulty calculation for every taiko difficulty in a folder tree (a Songs folder, a pack archive...) without running the editor.
+ * Only the .osu files are read. Nothing from libGDX or the audio system is initialized, so this runs on machines without a display or sound device.
+ *
+ * Usage: BatchDifficultyCalculator <folder> [-o <file.csv|file.json|->] [-r <clock rate>] [-t <threads>]
+ *   -o  Output file. Format is chosen by extension, JSON for .json and CSV otherwise. "-" writes CSV to standard output. Default: diffcalc.csv
+ *   -r  Clock rate, eg. 1.5 for DT. Default: 1
+ *   -t  Number of maps calculated at once. Default: number of processors
+ *
+ * Results are written as each map finishes, so their order is not fixed.
+ * Logging goes to standard error, so it can't mix with results written to standard output.
+ */
+public class BatchDifficultyCalculator
+{
+    public static void main(String[] args)
+    {
+        logToStandardError();
+
+        String folder = null, output = "diffcalc.csv";
+        double clockRate = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try
+        {
+            for (int i = 0; i < args.length; ++i)
+            {
+                switch (args[i])
+                {
+                    case "-o":
+                        output = args[++i];
+                        break;
+                    case "-r":
+                        clockRate = Double.parseDouble(args[++i]);
+                        break;
+                    case "-t":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (folder != null)
+                            throw new IllegalArgumentException(args[i]);
+                        folder = args[i];
+                        break;
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            folder = null;
+        }
+
+        if (folder == null || clockRate <= 0 || threads <= 0)
+        {
+            System.err.println("Usage: BatchDifficultyCalculator <folder> [-o <file.csv|file.json|->] [-r <clock rate>] [-t <threads>]");
+            System.exit(2);
+            return;
+        }
+
+        Path root = Paths.get(folder);
+        if (!Files.isDirectory(root))
+        {
+            System.err.println("Not a folder: " + root);
+            System.exit(2);
+            return;
+        }
+
+        try (ResultWriter writer = ResultWriter.open(output))
+        {
+            int[] counts = run(root, clockRate, threads, writer);
+            System.err.println("Calculated " + counts[0] + " taiko difficulties, skipped " + counts[1] + " other modes, " + counts[2] + " failed.");
+        }
+        catch (IOException | InterruptedException e)
+        {
+            editorLogger.error("Batch difficulty calculation failed.", e);
+            System.exit(1);
+        }
+    }
+
+    //Replaces the editor's logging configuration, which logs to standard output.
+    private static void logToStandardError()
+    {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.add(builder.newAppender("Console", "Console")
+                .addAttribute("target", ConsoleAppender.Target.SYSTEM_ERR)
+                .add(builder.newLayout("PatternLayout").addAttribute("pattern", "%d{HH:mm:ss.SSS} [%t] %-5level %logger{36} - %msg%n")));
+        builder.add(builder.newRootLogger(Level.INFO).add(builder.newAppenderRef("Console")));
+        Configurator.reconfigure(builder.build());
+    }
+
+    //Returns the number of maps calculated, skipped, and failed.
+    public static int[] run(Path root, double clockRate, int threads, ResultWriter writer) throws IOException, InterruptedException
+    {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(root))
+        {
+            files = paths.filter((p)->p.getFileName().toString().toLowerCase().endsWith(".osu") && Files.isRegularFile(p)).collect(Collectors.toList());
+        }
+
+        int[] counts = new int[3];
+        ExecutorService executor = Executors.newFixedThreadPool(threads, (r)->{
+            Thread t = new Thread(r, "Difficulty Calculation");
+            t.setDaemon(true);
+            return t;
+        });
+        try
+        {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            for (Path file : files)
+                completion.submit(()->calculate(root, file, clockRate));
+
+            for (int i = 0; i < files.size(); ++i)
+            {
+                try
+                {
+                    Result result = completion.take().get();
+                    if (result == null)
+                    {
+                        ++counts[1];
+                    }
+                    else
+                    {
+                        writer.write(result);
+                        ++counts[0];
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    editorLogger.error("Failed to calculate difficulty.", e.getCause());
+                    ++counts[2];
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return counts;
+    }
+
+    //Returns null if the map is not a taiko map.
+    private static Result calculate(Path root, Path file, double clockRate) throws IOException
+    {
+        Result result = read(file.toFile());
+        if (result == null)
+            return null;
+
+        result.file = root.relativize(file).toString().replace(File.separatorChar, '/');
+
+        TaikoDifficultyAttributes attributes = (TaikoDifficultyAttributes) TaikoDifficultyCalculator.calculateDifficulty(result.objects, clockRate);
+        result.objectCount = result.objects.count();
+        result.objects = null;
+        result.starRating = attributes.StarRating;
+        result.continuousRating = attributes.ContinuousRating;
+        result.burstRating = attributes.BurstRating;
+        return result;
+    }
+
+    //Reads metadata and hit objects. Returns null once [General] shows the map is for another mode.
+    private static Result read(File file) throws IOException
+    {
+        OsuFileReader reader = OsuFileReader.open(file);
+        if (reader == null)
+            throw new IOException("Failed to read " + file.getPath());
+
+        Result result = new Result();
+        int mode = 0;
+        boolean general = false, metadata = false, hitObjects = false;
+
+        while (reader.nextLine())
+        {
+            if (reader.lineIsEmpty())
+                continue;
+
+            if (reader.lineStartsWith('['))
+            {
+                if (general && mode != 1)
+                    return null;
+
+                String section = reader.line();
+                general = section.equals("[General]");
+                metadata = section.equals("[Metadata]");
+                hitObjects = section.equals("[HitObjects]");
+                continue;
+            }
+
+            if (hitObjects)
+            {
+                result.objects.add(HitObject.create(reader));
+            }
+            else if (general || metadata)
+            {
+                String line = reader.line();
+                int split = line.indexOf(':');
+                if (split < 0)
+                    continue;
+
+                String value = line.substring(split + 1).trim();
+                switch (line.substring(0, split).trim())
+                {
+                    case "Mode":
+                        mode = Integer.parseInt(value);
+                        break;
+                    case "Title":
+                        result.title = value;
+                        break;
+                    case "Artist":
+                        result.artist = value;
+                        break;
+                    case "Creator":
+                        result.creator = value;
+                        break;
+                    case "Version":
+                        result.version = value;
+                        break;
+                    case "BeatmapID":
+                        result.beatmapId = value;
+                        break;
+                }
+            }
+        }
+
+        return mode == 1 ? result : null;
+    }
+
+    public static class Result
+    {
+        public String file, artist = "", title = "", creator = "", version = "", beatmapId = "";
+        public int objectCount;
+        public double starRating, continuousRating, burstRating;
+
+        private PositionalObjectArrayMap<HitObject> objects = new PositionalObjectArrayMap<>();
+    }
+
+    public static abstract class ResultWriter implements Closeable
+    {
+        protected final Writer out;
+
+        protected ResultWriter(Writer out)
+        {
+            this.out = out;
+        }
+
+        public static ResultWriter open(String output) throws IOException
+        {
+            if (output.equals("-"))
+                return new CsvWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8)));
+
+            Writer out = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8);
+            if (output.toLowerCase().endsWith(".json"))
+                return new JsonResultWriter(out);
+            return new CsvWriter(out);
+        }
+
+        public abstract void write(Result result) throws IOException;
+    }
+
+    //One row per difficulty, with a header row.
+    public static class CsvWriter extends ResultWriter
+    {
+        public CsvWriter(Writer out) throws IOException
+        {
+            super(out);
+            out.write("file,artist,title,creator,version,beatmap_id,objects,star_rating,continuous_rating,burst_rating\n");
+        }
+
+        @Override
+        public void write(Result result) throws IOException
+        {
+            out.write(escape(result.file) + ',' + escape(result.artist) + ',' + escape(result.title) + ',' + escape(result.creator) + ',' +
+                    escape(result.version) + ',' + escape(result.beatmapId) + ',' + result.objectCount + ',' +
+                    result.starRating + ',' + result.continuousRating + ',' + result.burstRating + '\n');
+            out.flush();
+        }
+
+        private static String escape(String value)
+        {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+                return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    //An array with one object per difficulty.
+    public static class JsonResultWriter extends ResultWriter
+    {
+        private final JsonWriter json;
+
+        public JsonResultWriter(Writer out) throws IOException
+        {
+            super(out);
+            json = new JsonWriter(out);
+            json.setIndent(" ");
+            json.beginArray();
+        }
+
+        @Override
+        public void write(Result result) throws IOException
+        {
+            json.beginObject();
+            json.name("file").value(result.file);
+            json.name("artist").value(result.artist);
+            json.name("title").value(result.title);
+            json.name("creator").value(result.creator);
+            json.name("version").value(result.version);
+            json.name("beatmap_id").value(result.beatmapId);
+            json.name("objects").value(result.objectCount);
+            json.name("star_rating").value(finite(result.starRating));
+            json.name("continuous_rating").value(finite(result.continuousRating));
+            json.name("burst_rating").value(finite(result.burstRating));
+            json.endObject();
+            json.flush();
+        }
+
+        //JSON has no NaN or infinity
+        private static Double finite(double value)
+        {
+            return Double.isNaN(value) || Double.isInfinite(value) ? null : value;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            json.endArray();
+            json.close();
+        }
+    }
+}
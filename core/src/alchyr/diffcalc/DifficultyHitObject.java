@@ -1,6 +1,5 @@
 package alchyr.diffcalc;
 
-import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 
 public abstract class DifficultyHitObject {
@@ -24,12 +23,12 @@ public abstract class DifficultyHitObject {
         this.deltaTime = 0;
     }
 
-    public DifficultyHitObject(HitObject current, HitObject previous)
+    public DifficultyHitObject(HitObject current, HitObject previous, double clockRate)
     {
         this.baseObject = current;
         this.lastObject = previous;
 
-        this.deltaTime = (baseObject.getPos() - lastObject.getPos()) / TaikoEditor.music.getTempo();
+        this.deltaTime = (baseObject.getPos() - lastObject.getPos()) / clockRate;
     }
 }
 
@@ -10,7 +10,10 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.function.DoubleSupplier;
 
 /* * * * TODO LIST * * * *
  *
@@ -41,11 +44,21 @@ public class TaikoDifficultyCalculator {
 
     public static DifficultyAttributes calculateDifficulty(EditorBeatmap map, HashMap<HitObject, TaikoDifficultyHitObject> calculationInfo)
     {
-        calculationInfo.clear();
-
         TaikoDifficultyCalculator c = new TaikoDifficultyCalculator(map, calculationInfo);
+        c.incremental = false;
+
+        return c.update();
+    }
+
+    /// <summary>
+    /// Calculates difficulty without an open map or loaded music, for hit objects read directly from a file.
+    /// </summary>
+    public static DifficultyAttributes calculateDifficulty(NavigableMap<Long, ArrayList<HitObject>> objects, double clockRate)
+    {
+        TaikoDifficultyCalculator c = new TaikoDifficultyCalculator(objects, ()->clockRate, new HashMap<>());
+        c.incremental = false;
 
-        return c.calculate();
+        return c.update();
     }
 
     private HashMap<HitObject, TaikoDifficultyHitObject> calculationInfo;
@@ -56,14 +69,80 @@ public class TaikoDifficultyCalculator {
     //From here, based on osu.Game.Rulesets.Difficulty.DifficultyCalculator for ease of conversion
 
     private int SectionLength = 400;
-    private EditorBeatmap beatmap;
+    private final NavigableMap<Long, ArrayList<HitObject>> objects;
+    private final DoubleSupplier clockRate;
+
+    //Kept between calculations so a change only recalculates the sections from the first one it affects.
+    //A checkpoint holds the state of every skill before the first object of a section is processed.
+    private TaikoDifficultyHitObject firstObject;
+    private final ArrayList<TaikoDifficultyHitObject> difficultyHitObjects = new ArrayList<>();
+    private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    private Skill[] skills;
+    private double sectionLength, rate;
+    private DifficultyAttributes attributes;
+
+    private boolean incremental = true; //Calculators that are only used once don't need checkpoints
+    private long changedFrom = Long.MIN_VALUE; //Long.MAX_VALUE when nothing has changed since the last calculation
+
+    public TaikoDifficultyCalculator(EditorBeatmap map, HashMap<HitObject, TaikoDifficultyHitObject> calculationInfo)
+    {
+        this(map.objects, ()->TaikoEditor.music.getTempo(), calculationInfo);
+    }
 
-    private TaikoDifficultyCalculator(EditorBeatmap map, HashMap<HitObject, TaikoDifficultyHitObject> calculationInfo)
+    public TaikoDifficultyCalculator(NavigableMap<Long, ArrayList<HitObject>> objects, DoubleSupplier clockRate, HashMap<HitObject, TaikoDifficultyHitObject> calculationInfo)
     {
-        this.beatmap = map;
+        this.objects = objects;
+        this.clockRate = clockRate;
         this.calculationInfo = calculationInfo;
     }
 
+    /// <summary>
+    /// Marks objects at or after <paramref name="pos"/> as changed. The next call to <see cref="update"/> will recalculate from there.
+    /// </summary>
+    public void changed(long pos)
+    {
+        changedFrom = Math.min(changedFrom, pos);
+    }
+
+    /// <summary>
+    /// Marks the whole map as changed.
+    /// </summary>
+    public void reset()
+    {
+        changedFrom = Long.MIN_VALUE;
+    }
+
+    /// <summary>
+    /// Recalculates difficulty if anything changed since the last calculation.
+    /// </summary>
+    public DifficultyAttributes update()
+    {
+        if (changedFrom == Long.MAX_VALUE && attributes != null)
+            return attributes;
+
+        double currentRate = clockRate.getAsDouble();
+        double currentSectionLength = SectionLength * currentRate; //ensures the actual section length is unchanged (map with dt judged same as a map whose objects have been squished)
+        if (skills == null || firstObject == null || currentSectionLength != sectionLength || changedFrom <= firstObject.baseObject.getPos() || !resume())
+        {
+            sectionLength = currentSectionLength;
+            rate = currentRate;
+            calculate();
+        }
+
+        changedFrom = Long.MAX_VALUE;
+        return attributes = CreateDifficultyAttributes(skills);
+    }
+
+    public DifficultyAttributes getAttributes()
+    {
+        return attributes;
+    }
+
+    public HashMap<HitObject, TaikoDifficultyHitObject> getCalculationInfo()
+    {
+        return calculationInfo;
+    }
+
 
     private Skill[] CreateSkills() {
         return new Skill[]
@@ -75,22 +154,79 @@ public class TaikoDifficultyCalculator {
     }
 
 
-    private DifficultyAttributes calculate()
+    private void calculate()
     {
-        Skill[] skills = CreateSkills();
+        calculationInfo.clear();
+        difficultyHitObjects.clear();
+        checkpoints.clear();
+        firstObject = null;
 
-        if (beatmap.objects.isEmpty())
-            return CreateDifficultyAttributes(skills);
+        skills = CreateSkills();
 
-        ArrayList<TaikoDifficultyHitObject> difficultyHitObjects = CreateDifficultyHitObjects();
+        if (objects.isEmpty())
+            return;
 
-        double sectionLength = SectionLength * TaikoEditor.music.getTempo(); //ensures the actual section length is unchanged (map with dt judged same as a map whose objects have been squished)
+        CreateDifficultyHitObjects(objects.values());
+
+        if (difficultyHitObjects.isEmpty())
+        {
+            for (Skill s : skills)
+                s.SaveCurrentPeak();
+            return;
+        }
 
         // The first object doesn't generate a strain, so we begin with an incremented section end
         double currentSectionEnd = Math.ceil(difficultyHitObjects.get(0).baseObject.getPos() / sectionLength) * sectionLength;
 
-        for (TaikoDifficultyHitObject h : difficultyHitObjects)
+        process(0, currentSectionEnd);
+    }
+
+    //Continues from the last checkpoint before the first changed object. Returns false if calculation has to start over.
+    private boolean resume()
+    {
+        //Objects before the change haven't moved, so they're still in order at the start of the list.
+        int firstChanged = 0, high = difficultyHitObjects.size();
+        while (firstChanged < high)
         {
+            int mid = (firstChanged + high) >>> 1;
+            if (difficultyHitObjects.get(mid).baseObject.getPos() < changedFrom)
+                firstChanged = mid + 1;
+            else
+                high = mid;
+        }
+
+        //The checkpoint's section also has to start before the change, or an object added just before the checkpoint's
+        //first object would be processed as part of the wrong section.
+        int checkpointIndex = checkpoints.size() - 1;
+        while (checkpointIndex >= 0 && (checkpoints.get(checkpointIndex).objectIndex > firstChanged || checkpoints.get(checkpointIndex).sectionEnd - sectionLength >= changedFrom))
+            --checkpointIndex;
+        if (checkpointIndex < 0)
+            return false;
+
+        Checkpoint checkpoint = checkpoints.get(checkpointIndex);
+        checkpoints.subList(checkpointIndex + 1, checkpoints.size()).clear();
+        for (int i = 0; i < skills.length; ++i)
+            skills[i] = checkpoint.skills[i].resume(skills[i]);
+
+        //Preprocessing is redone from the first changed object
+        for (int i = firstChanged; i < difficultyHitObjects.size(); ++i)
+            calculationInfo.remove(difficultyHitObjects.get(i).baseObject);
+        difficultyHitObjects.subList(firstChanged, difficultyHitObjects.size()).clear();
+
+        TaikoDifficultyHitObject previous = firstChanged == 0 ? firstObject : difficultyHitObjects.get(firstChanged - 1);
+        CreateDifficultyHitObjects(objects.tailMap(previous.baseObject.getPos(), false).values());
+
+        process(checkpoint.objectIndex, checkpoint.sectionEnd);
+        return true;
+    }
+
+    private void process(int startIndex, double currentSectionEnd)
+    {
+        for (int i = startIndex; i < difficultyHitObjects.size(); ++i)
+        {
+            TaikoDifficultyHitObject h = difficultyHitObjects.get(i);
+
+            boolean newSection = false;
             while (h.baseObject.getPos() > currentSectionEnd)
             {
                 for (Skill s : skills)
@@ -100,8 +236,12 @@ public class TaikoDifficultyCalculator {
                 }
 
                 currentSectionEnd += sectionLength;
+                newSection = true;
             }
 
+            if (incremental && (checkpoints.isEmpty() || (newSection && i != startIndex)))
+                checkpoints.add(new Checkpoint(i, currentSectionEnd, skills));
+
             for (Skill s : skills)
                 s.Process(h);
 
@@ -109,20 +249,17 @@ public class TaikoDifficultyCalculator {
         }
 
         // The peak strain will not be saved for the last section in the above loop
+        // Resuming from a checkpoint removes it again, along with the other peaks after that checkpoint.
         for (Skill s : skills)
             s.SaveCurrentPeak();
-
-        return CreateDifficultyAttributes(skills);
     }
 
-    private ArrayList<TaikoDifficultyHitObject> CreateDifficultyHitObjects()
+    private void CreateDifficultyHitObjects(Collection<ArrayList<HitObject>> objects)
     {
-        ArrayList<TaikoDifficultyHitObject> taikoDifficultyHitObjects = new ArrayList<>();
-
-        TaikoDifficultyHitObject previous = null;
+        TaikoDifficultyHitObject previous = difficultyHitObjects.isEmpty() ? firstObject : difficultyHitObjects.get(difficultyHitObjects.size() - 1);
         //PatternTracker patternTracker = new PatternTracker();
 
-        for (ArrayList<HitObject> positionList : beatmap.objects.values())
+        for (ArrayList<HitObject> positionList : objects)
         {
             for (HitObject h : positionList)
             {
@@ -130,27 +267,41 @@ public class TaikoDifficultyCalculator {
                 {
                     if (previous != null)
                     {
-                        taikoDifficultyHitObjects.add(previous = new TaikoDifficultyHitObject(h, previous));
+                        difficultyHitObjects.add(previous = new TaikoDifficultyHitObject(h, previous, rate));
                         //patternTracker.track(previous);
                         calculationInfo.put(h, previous);
                     }
                     else
                     {
-                        previous = new TaikoDifficultyHitObject(h);
+                        firstObject = previous = new TaikoDifficultyHitObject(h);
                         //patternTracker.track(previous);
                         calculationInfo.put(h, previous);
                     }
                 }
             }
         }
+    }
 
-        return taikoDifficultyHitObjects;
+    private static class Checkpoint
+    {
+        final int objectIndex;
+        final double sectionEnd;
+        final Skill[] skills;
+
+        Checkpoint(int objectIndex, double sectionEnd, Skill[] skills)
+        {
+            this.objectIndex = objectIndex;
+            this.sectionEnd = sectionEnd;
+            this.skills = new Skill[skills.length];
+            for (int i = 0; i < skills.length; ++i)
+                this.skills[i] = skills[i].checkpoint();
+        }
     }
 
 
     private DifficultyAttributes CreateDifficultyAttributes(Skill[] skills)
     {
-        if (beatmap.objects.isEmpty())
+        if (objects.isEmpty())
             return new TaikoDifficultyAttributes(skills, 0);
 
         Burst burst = (Burst) skills[0];
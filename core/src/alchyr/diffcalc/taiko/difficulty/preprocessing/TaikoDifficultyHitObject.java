@@ -60,9 +60,9 @@ public class TaikoDifficultyHitObject extends DifficultyHitObject {
     /// <param name="lastLastObject">The gameplay <see cref="HitObject"/> preceding <paramref name="lastObject"/>.</param>
     /// <param name="clockRate">The rate of the gameplay clock. Modified by speed-changing mods.</param>
     /// <param name="objectIndex">The index of the object in the beatmap.</param>
-    public TaikoDifficultyHitObject(HitObject hitObject, TaikoDifficultyHitObject lastObject)//, int objectIndex)
+    public TaikoDifficultyHitObject(HitObject hitObject, TaikoDifficultyHitObject lastObject, double clockRate)//, int objectIndex)
     {
-        super(hitObject, lastObject.baseObject);
+        super(hitObject, lastObject.baseObject, clockRate);
 
         hitType = ((Hit)hitObject).isRim() ? HitType.Rim : HitType.Centre;
         colorLength = 1;
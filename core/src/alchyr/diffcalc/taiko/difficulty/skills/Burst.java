@@ -20,6 +20,16 @@ public class Burst extends Skill {
     private double donStrain = 0;
     private double katStrain = 0;
 
+    @Override
+    protected Skill copy() {
+        Burst copy = new Burst();
+        copy.sameColorLength = sameColorLength;
+        copy.previousHitType = previousHitType;
+        copy.donStrain = donStrain;
+        copy.katStrain = katStrain;
+        return copy;
+    }
+
     @Override
     protected double SkillMultiplier() {
         return 1;
@@ -87,7 +97,7 @@ public class Burst extends Skill {
 
     @Override
     public double DifficultyValue() {
-        if (StrainPeaks.isEmpty())
+        if (StrainPeakCount == 0)
             return 0;
 
         //Find a better method for this.
@@ -96,12 +106,12 @@ public class Burst extends Skill {
         double weight = 1;
 
         // Difficulty is the weighted sum of the highest strains from every section.
-        // We're sorting from highest to lowest strain.
-        StrainPeaks.sort((a, b)->Double.compare(b, a));
-        editorLogger.info(this.getClass().getSimpleName() + " highest peak: " + StrainPeaks.get(0));
-        for (double strain : StrainPeaks)
+        // We're going from highest to lowest strain. A copy is sorted, as peaks are kept in order for incremental calculation.
+        double[] peaks = sortedPeaks();
+        editorLogger.debug(this.getClass().getSimpleName() + " highest peak: " + peaks[peaks.length - 1]);
+        for (int i = peaks.length - 1; i >= 0; --i)
         {
-            difficulty += strain * weight;
+            difficulty += peaks[i] * weight;
             weight *= DecayWeight;
         }
 
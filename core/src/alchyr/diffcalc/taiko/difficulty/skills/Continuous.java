@@ -63,6 +63,17 @@ public class Continuous extends Skill {
         }
     }
 
+    @Override
+    protected Skill copy() {
+        Continuous copy = new Continuous();
+        copy.circleDelta = circleDelta;
+        copy.lastCircleDelta = lastCircleDelta;
+        copy.simplicityTrackers.clear();
+        for (SimplicityTracker tracker : simplicityTrackers)
+            copy.simplicityTrackers.add(tracker.copy());
+        return copy;
+    }
+
     @Override
     protected double StrainValueOf(DifficultyHitObject current) {
         circleDelta += current.deltaTime;
@@ -194,6 +205,14 @@ public class Continuous extends Skill {
             return simplicity;
         }
 
+        public SimplicityTracker copy() {
+            SimplicityTracker copy = new SimplicityTracker();
+            copy.rhythmValue = rhythmValue;
+            copy.simplicity = simplicity;
+            copy.minFactors = new ArrayList<>(minFactors);
+            return copy;
+        }
+
         private void updateSimplicity() {
             simplicity = 0;
             long wholeValue = Math.round(rhythmValue);
@@ -132,14 +132,32 @@ public class General extends Skill {
 
     //Simplicity:
     //Average of simplicity starting calculation on every object?
-    List<RhythmTracker> rhythmTrackers = new ArrayList<>(MAX_LENGTH);
+    //Kept as a ring, oldest first. Adding a tracker reuses the oldest one rather than allocating a new one.
+    private final RhythmTracker[] rhythmTrackers = new RhythmTracker[MAX_LENGTH];
+    private int firstTracker = 0;
 
     public General() {
         for (int i = 0; i < MAX_LENGTH; ++i) {
-            rhythmTrackers.add(new RhythmTracker());
+            rhythmTrackers[i] = new RhythmTracker();
         }
     }
 
+    @Override
+    protected Skill copy() {
+        General copy = new General();
+        copy.sameColorLength = sameColorLength;
+        copy.lastColorLength = lastColorLength;
+        copy.previousHitType = previousHitType;
+        copy.lastCentreLength = lastCentreLength.clone();
+        copy.lastRimLength = lastRimLength.clone();
+        copy.circleDelta = circleDelta;
+        copy.lastCircleDelta = lastCircleDelta;
+        copy.firstTracker = firstTracker;
+        for (int i = 0; i < MAX_LENGTH; ++i)
+            copy.rhythmTrackers[i].set(rhythmTrackers[i]);
+        return copy;
+    }
+
     @Override
     public void Process(DifficultyHitObject current) {
         super.Process(current);
@@ -159,9 +177,7 @@ public class General extends Skill {
         if (circleDelta >= 500) { //After a long gap, the first two objects are considered to be 1/1 in spacing.
             if (circleDelta >= 1000) {
                 for (int i = 999; i < circleDelta; i += 1000) {
-                    if (rhythmTrackers.size() == MAX_LENGTH)
-                        rhythmTrackers.remove(0);
-                    rhythmTrackers.add(new RhythmTracker());
+                    addTracker();
                 }
             }
 
@@ -216,18 +232,17 @@ public class General extends Skill {
         lastCircleDelta = circleDelta;
         circleDelta = 0;
 
-        if (rhythmTrackers.size() == MAX_LENGTH)
-            rhythmTrackers.remove(0);
-        rhythmTrackers.add(new RhythmTracker());
+        addTracker();
 
         double weight = 1;
         double totalWeight = 0;
-        for (int i = rhythmTrackers.size() - 1; i >= 0; --i) {
+        for (int i = MAX_LENGTH - 1; i >= 0; --i) {
+            RhythmTracker tracker = rhythmTrackers[(firstTracker + i) % MAX_LENGTH];
             //Further from max trackers, greater distance. From 1 to number of tracked.
-            if (i >= rhythmTrackers.size() - TRACK_LENGTH)
-                rhythmTrackers.get(i).add(ratio, rhythmTrackers.size() - i);
+            if (i >= MAX_LENGTH - TRACK_LENGTH)
+                tracker.add(ratio, MAX_LENGTH - i);
 
-            rhythm += rhythmTrackers.get(i).getValue() * weight;
+            rhythm += tracker.getValue() * weight;
 
             totalWeight += weight;
             weight *= RHYTHM_WEIGHT_DECAY;
@@ -249,6 +264,12 @@ public class General extends Skill {
         return rhythm;
     }
 
+    //Drops the oldest tracker and adds an empty one.
+    private void addTracker() {
+        rhythmTrackers[firstTracker].clear();
+        firstTracker = (firstTracker + 1) % MAX_LENGTH;
+    }
+
     private double swapBonus(TaikoDifficultyHitObject current) {
         double bonus = 0;
         if (sameColorLength == 1 && lastColorLength > 0) {
@@ -286,10 +307,15 @@ public class General extends Skill {
         return bonus;
     }
 
+    //Rhythm changes are kept as parallel arrays of their approximate ratio and value, so adding one doesn't allocate.
+    //A tracker gets at most one change per object while it's tracked, so the arrays rarely need to grow.
     private static class RhythmTracker {
         private double rhythmValue = 0;
-        private final List<RhythmChange> rhythmChanges = new ArrayList<>();
-        private final List<RhythmChange> negatedChanges = new ArrayList<>();
+        private long[] changeRatios = new long[TRACK_LENGTH];
+        private double[] changeValues = new double[TRACK_LENGTH];
+        private int changeCount = 0;
+        private long[] negatedRatios = new long[TRACK_LENGTH]; //Only the ratio of negated changes is used
+        private int negatedCount = 0;
 
         //private List<TaikoRhythmFactor> minFactors = new ArrayList<>();
 
@@ -297,6 +323,27 @@ public class General extends Skill {
             return rhythmValue;
         }
 
+        public void clear() {
+            rhythmValue = 0;
+            changeCount = 0;
+            negatedCount = 0;
+        }
+
+        public void set(RhythmTracker other) {
+            rhythmValue = other.rhythmValue;
+            changeCount = other.changeCount;
+            negatedCount = other.negatedCount;
+            if (changeRatios.length < changeCount) {
+                changeRatios = new long[other.changeRatios.length];
+                changeValues = new double[other.changeValues.length];
+            }
+            if (negatedRatios.length < negatedCount)
+                negatedRatios = new long[other.negatedRatios.length];
+            System.arraycopy(other.changeRatios, 0, changeRatios, 0, changeCount);
+            System.arraycopy(other.changeValues, 0, changeValues, 0, changeCount);
+            System.arraycopy(other.negatedRatios, 0, negatedRatios, 0, negatedCount);
+        }
+
         public void add(double ratio, int distance) {
             ratio = limitRatio(ratio);
 
@@ -307,14 +354,14 @@ public class General extends Skill {
             double multiplier = (1 - DISTANCE_SCALING * distance / TRACK_LENGTH);
             boolean negated = false;
 
-            for (int i = 0; i < rhythmChanges.size(); ++i) {
-                if (rhythmChanges.get(i).approximateRatio == approximateRatio)
+            for (int i = 0; i < changeCount; ++i) {
+                if (changeRatios[i] == approximateRatio)
                     repeats += 0.6;
 
-                if (rhythmChanges.get(i).approximateRatio == oppositeRatio && !negated) {
+                if (changeRatios[i] == oppositeRatio && !negated) {
                     //Opposite rhythm change already exists
-                    //rhythmChanges.get(i).negate(distanceMultiplier);
-                    negatedChanges.add(rhythmChanges.remove(i));
+                    addNegated(changeRatios[i]);
+                    removeChange(i);
                     --i;
                     multiplier *= NEGATION_SCALE;
 
@@ -324,24 +371,46 @@ public class General extends Skill {
                 }
             }
 
-            for (RhythmChange change : negatedChanges) {
-                if (change.approximateRatio == approximateRatio)
+            for (int i = 0; i < negatedCount; ++i) {
+                if (negatedRatios[i] == approximateRatio)
                     repeats += 1;
             }
 
             repeats = (RHYTHM_REPEAT_SCALING / (repeats + 1)) + RHYTHM_REPEAT_ADJUST;
 
-            rhythmChanges.add(new RhythmChange(ratio, repeats, multiplier));
+            addChange(approximateRatio, getClosestRhythm(ratio).Difficulty * repeats * multiplier);
             updateValue();
         }
 
+        private void addChange(long approximateRatio, double value) {
+            if (changeCount == changeRatios.length) {
+                changeRatios = Arrays.copyOf(changeRatios, changeCount * 2);
+                changeValues = Arrays.copyOf(changeValues, changeCount * 2);
+            }
+            changeRatios[changeCount] = approximateRatio;
+            changeValues[changeCount] = value;
+            ++changeCount;
+        }
+
+        private void removeChange(int index) {
+            --changeCount;
+            System.arraycopy(changeRatios, index + 1, changeRatios, index, changeCount - index);
+            System.arraycopy(changeValues, index + 1, changeValues, index, changeCount - index);
+        }
+
+        private void addNegated(long approximateRatio) {
+            if (negatedCount == negatedRatios.length)
+                negatedRatios = Arrays.copyOf(negatedRatios, negatedCount * 2);
+            negatedRatios[negatedCount++] = approximateRatio;
+        }
+
         private void updateValue() {
             rhythmValue = 0;
-            for (RhythmChange change : rhythmChanges)
-                rhythmValue += change.getValue();
+            for (int i = 0; i < changeCount; ++i)
+                rhythmValue += changeValues[i];
 
-            for (RhythmChange change : rhythmChanges)
-                rhythmValue += change.getValue();
+            for (int i = 0; i < changeCount; ++i)
+                rhythmValue += changeValues[i];
         }
 
         private static double limitRatio(double ratio) {
@@ -370,30 +439,6 @@ public class General extends Skill {
                     "Value:" + rhythmValue +
                     '}';
         }
-
-        private static class RhythmChange {
-            private final long approximateRatio;
-            private final double baseValue;
-            private double value;
-
-            public RhythmChange(double ratio, double repeats, double distanceMultiplier) {
-                this.value = this.baseValue = getValue(ratio) * repeats * distanceMultiplier;
-
-                this.approximateRatio = getApproximateRatio(ratio);
-            }
-
-            public double getValue() {
-                return value;
-            }
-
-            /*public void negate(double distanceMultiplier) {
-                value -= this.baseValue * distanceMultiplier * NEGATION_SCALE;
-            }*/
-
-            private double getValue(double ratio) {
-                return getClosestRhythm(ratio).Difficulty;
-            }
-        }
     }
 
     private static double log(double val, double base) {
@@ -2,15 +2,20 @@ package alchyr.diffcalc.taiko.difficulty.skills;
 
 import alchyr.diffcalc.DifficultyHitObject;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import static alchyr.taikoedit.TaikoEditor.editorLogger;
 
 public abstract class Skill {
+    private static final double[] NO_PEAKS = new double[0]; // Checkpoints never save peaks, so they don't allocate any space for them.
+
     /// <summary>
     /// The peak strain for each <see cref="DifficultyCalculator.SectionLength"/> section of the beatmap.
+    /// Only the first <see cref="StrainPeakCount"/> entries are used; the array grows as needed.
     /// </summary>
-    public ArrayList<Double> StrainPeaks = new ArrayList<>();
+    protected double[] StrainPeaks = NO_PEAKS;
+    protected int StrainPeakCount = 0;
+    private boolean sharedPeaks = false; // After resuming, StrainPeaks still belongs to the skill it was resumed from and is copied before being written to.
 
     /// <summary>
     /// Strain values are multiplied by this number for the given skill. Used to balance the value of different skills between each other.
@@ -40,6 +45,42 @@ public abstract class Skill {
 
     private double currentSectionPeak = 0; // We also keep track of the peak strain level in the current section.
 
+    private int peakCount = 0; // For checkpoints, the number of strain peaks saved when the checkpoint was made.
+
+    /// <summary>
+    /// Creates a skill with the same skill-specific state as this one.
+    /// </summary>
+    protected abstract Skill copy();
+
+    /// <summary>
+    /// Copies the current state so calculation can be resumed from this point. Strain peaks are not copied, only their count.
+    /// </summary>
+    public Skill checkpoint()
+    {
+        Skill checkpoint = copy();
+        checkpoint.CurrentStrain = CurrentStrain;
+        checkpoint.currentSectionPeak = currentSectionPeak;
+        checkpoint.Previous = Previous.clone();
+        checkpoint.peakCount = StrainPeakCount;
+        return checkpoint;
+    }
+
+    /// <summary>
+    /// Creates a skill that continues from this checkpoint, using the strain peaks of <paramref name="current"/> that were saved before it.
+    /// The peaks are shared until a new one is saved, so <paramref name="current"/> and anything still reading it are left unchanged.
+    /// </summary>
+    public Skill resume(Skill current)
+    {
+        Skill resumed = copy();
+        resumed.CurrentStrain = CurrentStrain;
+        resumed.currentSectionPeak = currentSectionPeak;
+        resumed.Previous = Previous.clone();
+        resumed.StrainPeaks = current.StrainPeaks;
+        resumed.StrainPeakCount = Math.min(peakCount, current.StrainPeakCount);
+        resumed.sharedPeaks = true;
+        return resumed;
+    }
+
     /// <summary>
     /// Process a <see cref="DifficultyHitObject"/> and update current strain values accordingly.
     /// </summary>
@@ -60,7 +101,14 @@ public abstract class Skill {
     public void SaveCurrentPeak()
     {
         if (Previous[0] != null)
-            StrainPeaks.add(currentSectionPeak);
+        {
+            if (sharedPeaks || StrainPeakCount == StrainPeaks.length)
+            {
+                StrainPeaks = Arrays.copyOf(StrainPeaks, Math.max(64, StrainPeakCount * 2));
+                sharedPeaks = false;
+            }
+            StrainPeaks[StrainPeakCount++] = currentSectionPeak;
+        }
     }
 
     /// <summary>
@@ -90,25 +138,35 @@ public abstract class Skill {
     /// </summary>
     public double DifficultyValue()
     {
-        if (StrainPeaks.isEmpty())
+        if (StrainPeakCount == 0)
             return 0;
 
         double difficulty = 0;
         double weight = 1;
 
         // Difficulty is the weighted sum of the highest strains from every section.
-        // We're sorting from highest to lowest strain.
-        StrainPeaks.sort((a, b)->Double.compare(b, a));
-        editorLogger.info(this.getClass().getSimpleName() + " highest peak: " + StrainPeaks.get(0));
-        for (double strain : StrainPeaks)
+        // We're going from highest to lowest strain. A copy is sorted, as peaks are kept in order for incremental calculation.
+        double[] peaks = sortedPeaks();
+        editorLogger.debug(this.getClass().getSimpleName() + " highest peak: " + peaks[peaks.length - 1]);
+        for (int i = peaks.length - 1; i >= 0; --i)
         {
-            difficulty += strain * weight;
+            difficulty += peaks[i] * weight;
             weight *= DecayWeight;
         }
 
         return difficulty;
     }
 
+    /// <summary>
+    /// A copy of the strain peaks, sorted from lowest to highest.
+    /// </summary>
+    protected double[] sortedPeaks()
+    {
+        double[] peaks = Arrays.copyOf(StrainPeaks, StrainPeakCount);
+        Arrays.sort(peaks);
+        return peaks;
+    }
+
     /// <summary>
     /// Calculates the strain value of a <see cref="DifficultyHitObject"/>. This value is affected by previously processed objects.
     /// </summary>
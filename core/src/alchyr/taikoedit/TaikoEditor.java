@@ -251,10 +251,10 @@ public class TaikoEditor extends ApplicationAdapter {
 
                         if (EditorLayer.activeEditor != null) {
                             pWriter.println();
-                            pWriter.println("Active editor detected. Attempting to save data.");
+                            pWriter.println("Active editor detected. Writing unsaved changes to journal.");
                             try {
-                                if (EditorLayer.activeEditor.saveAll(false)) {
-                                    pWriter.println("Successfully saved data.");
+                                if (EditorLayer.activeEditor.flushJournals()) {
+                                    pWriter.println("Unsaved changes will be recovered when the difficulty is opened again.");
                                 }
                             }
                             catch (Exception ignored) { }
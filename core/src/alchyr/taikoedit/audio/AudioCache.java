@@ -0,0 +1,318 @@
+package alchyr.taikoedit.audio;
+
+import alchyr.taikoedit.management.SettingsMaster;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//Decoded audio and waveforms kept on disk, so opening a song again doesn't need to decode it.
+//Each song gets one file, identified by its path and checked against the song's modified time, size, and a hash of
+//its contents. Files are memory-mapped when read, and the audio is played straight from the mapped file.
+//Least recently used files are removed once the total size passes SettingsMaster.audioCacheSize.
+//The audio comes before the waveform in the file, so streamed audio can be written as it's decoded by a Writer.
+public class AudioCache {
+    private static final File CACHE_FOLDER = new File("cache/audio");
+    private static final String EXTENSION = ".pcm";
+
+    private static final int MAGIC = 0x54454143; //TEAC
+    private static final int VERSION = 3;
+
+    private static final Object writeLock = new Object();
+
+    //Identifies the current state of a song file.
+    public static class Key {
+        final String path;
+        final long modified, size;
+        final int hash;
+
+        private Key(String path, long modified, long size, int hash) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        File cacheFile() {
+            return new File(CACHE_FOLDER, String.format("%08x", path.hashCode()) + EXTENSION);
+        }
+
+        boolean matches(String path, long modified, long size, int hash) {
+            return this.path.equals(path) && this.modified == modified && this.size == size && this.hash == hash;
+        }
+    }
+
+    //Decoded audio, and its waveform if there is one.
+    public static class Entry {
+        public final PcmStore pcm;
+        public final Waveform waveform;
+
+        public Entry(PcmStore pcm, Waveform waveform) {
+            this.pcm = pcm;
+            this.waveform = waveform;
+        }
+    }
+
+    //Returns null if the file can't be read.
+    //The file is hashed a block at a time, so the song isn't held in memory an extra time alongside what the decoder reads.
+    public static Key key(FileHandle file) {
+        if (SettingsMaster.audioCacheSize <= 0)
+            return null;
+
+        File f = file.file().getAbsoluteFile();
+        try (CheckedInputStream in = new CheckedInputStream(new FileInputStream(f), new CRC32())) {
+            byte[] block = new byte[1 << 16];
+            while (in.read(block) >= 0) {
+                //Checksum is updated as it's read
+            }
+            return new Key(f.getPath(), f.lastModified(), f.length(), (int) in.getChecksum().getValue());
+        }
+        catch (IOException e) {
+            editorLogger.info("Failed to read " + file.path() + " for audio cache.");
+            return null;
+        }
+    }
+
+    //Returns null if there is no usable cached data.
+    public static Entry load(Key key) {
+        if (key == null)
+            return null;
+
+        File f = key.cacheFile();
+        if (!f.isFile())
+            return null;
+
+        MappedByteBuffer buffer;
+        synchronized (writeLock) {
+            try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            catch (IOException e) {
+                editorLogger.info("Failed to open cached audio " + f.getName());
+                return null;
+            }
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            byte[] path = new byte[buffer.getInt()];
+            buffer.get(path);
+            if (!key.matches(new String(path, StandardCharsets.UTF_8), buffer.getLong(), buffer.getLong(), buffer.getInt()))
+                return null;
+
+            int channels = buffer.getInt(), sampleRate = buffer.getInt();
+
+            long totalBytes = buffer.getLong();
+            if (channels <= 0 || sampleRate <= 0 || totalBytes > buffer.remaining() || totalBytes % (2 * channels) != 0)
+                return null;
+
+            ByteBuffer pcm = buffer.slice();
+            pcm.limit((int) totalBytes);
+            buffer.position(buffer.position() + (int) totalBytes);
+
+            float[] mins = new float[buffer.getInt()], maxes = new float[mins.length];
+            buffer.asFloatBuffer().get(mins);
+            buffer.position(buffer.position() + mins.length * 4);
+            buffer.asFloatBuffer().get(maxes);
+            buffer.position(buffer.position() + maxes.length * 4);
+            if (buffer.hasRemaining())
+                return null;
+
+            if (!f.setLastModified(System.currentTimeMillis()))
+                editorLogger.info("Failed to update cached audio " + f.getName());
+
+            editorLogger.info("Loaded cached audio for " + key.path);
+            return new Entry(new PcmStore(channels, sampleRate, pcm), mins.length == 0 ? null : new Waveform(mins, maxes, 0));
+        }
+        catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            editorLogger.info("Cached audio " + f.getName() + " is damaged.");
+            return null;
+        }
+    }
+
+    //Written on another thread.
+    public static void store(Key key, Entry entry) {
+        if (key == null || entry == null)
+            return;
+
+        Thread writer = new Thread(()->{
+            synchronized (writeLock) {
+                write(key, entry);
+                trim(key.cacheFile());
+            }
+        });
+        writer.setName("Audio Cache Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static void write(Key key, Entry entry) {
+        Writer writer = Writer.open(key, entry.pcm.channels, entry.pcm.sampleRate, entry.pcm.size());
+        if (writer == null)
+            return;
+
+        try {
+            Iterator<byte[]> chunks = entry.pcm.chunks(1 << 16);
+            while (chunks.hasNext()) {
+                byte[] chunk = chunks.next();
+                writer.write(chunk, chunk.length);
+            }
+            writer.finishFile(entry.waveform);
+        }
+        catch (IOException e) {
+            writer.failed();
+        }
+    }
+
+    //Writes a cache file as the audio is decoded, so all of it never has to be in memory at once.
+    //The audio is written into a temporary file in order, and the file only replaces the cached one once finish is called.
+    public static class Writer {
+        private final Key key;
+        private final File temp;
+        private final DataOutputStream out;
+        private long remaining;
+
+        private Writer(Key key, File temp, DataOutputStream out, long totalBytes) {
+            this.key = key;
+            this.temp = temp;
+            this.out = out;
+            this.remaining = totalBytes;
+        }
+
+        //Returns null if there's nothing to write or the file can't be created.
+        public static Writer open(Key key, int channels, int sampleRate, long totalBytes) {
+            if (key == null)
+                return null;
+            if (!CACHE_FOLDER.isDirectory() && !CACHE_FOLDER.mkdirs()) {
+                editorLogger.info("Failed to create audio cache folder.");
+                return null;
+            }
+
+            File temp = new File(CACHE_FOLDER, key.cacheFile().getName() + "." + Thread.currentThread().getId() + ".tmp");
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                byte[] path = key.path.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeLong(key.modified);
+                out.writeLong(key.size);
+                out.writeInt(key.hash);
+
+                out.writeInt(channels);
+                out.writeInt(sampleRate);
+                out.writeLong(totalBytes);
+                return new Writer(key, temp, out, totalBytes);
+            }
+            catch (IOException e) {
+                editorLogger.info("Failed to write cached audio for " + key.path);
+                close(out, temp);
+                return null;
+            }
+        }
+
+        public void write(byte[] data, int length) throws IOException {
+            if (length > remaining)
+                throw new IOException("More audio than expected.");
+            out.write(data, 0, length);
+            remaining -= length;
+        }
+
+        //Adds the waveform and moves the file into place on another thread.
+        public void finish(Waveform waveform) {
+            Thread writer = new Thread(()->{
+                synchronized (writeLock) {
+                    try {
+                        finishFile(waveform);
+                    }
+                    catch (IOException e) {
+                        failed();
+                        return;
+                    }
+                    trim(key.cacheFile());
+                }
+            });
+            writer.setName("Audio Cache Writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        //For when the audio can't all be written.
+        public void cancel() {
+            close(out, temp);
+        }
+
+        private static void close(OutputStream out, File temp) {
+            try {
+                if (out != null)
+                    out.close();
+            }
+            catch (IOException ignored) {
+
+            }
+            if (temp.exists() && !temp.delete())
+                editorLogger.info("Failed to delete " + temp.getName());
+        }
+
+        private void finishFile(Waveform waveform) throws IOException {
+            if (remaining != 0)
+                throw new IOException("Less audio than expected.");
+
+            float[] mins = waveform == null ? new float[0] : waveform.getMins(),
+                    maxes = waveform == null ? new float[0] : waveform.getMaxes();
+            out.writeInt(mins.length);
+            for (float min : mins)
+                out.writeFloat(min);
+            for (float max : maxes)
+                out.writeFloat(max);
+            out.close();
+
+            Files.move(temp.toPath(), key.cacheFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private void failed() {
+            editorLogger.info("Failed to write cached audio for " + key.path);
+            cancel();
+        }
+    }
+
+    //Removes least recently used files until the cache fits in its size limit.
+    private static void trim(File keep) {
+        File[] files = CACHE_FOLDER.listFiles((f)->f.getName().endsWith(EXTENSION));
+        if (files == null)
+            return;
+
+        long limit = SettingsMaster.audioCacheSize * 1024L * 1024L, total = 0;
+        for (File f : files)
+            total += f.length();
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= limit)
+                break;
+            if (f.equals(keep))
+                continue;
+
+            long size = f.length();
+            if (f.delete())
+                total -= size;
+        }
+    }
+}
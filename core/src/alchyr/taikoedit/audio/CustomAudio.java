@@ -8,16 +8,19 @@ import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALMusic;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongArray;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.openal.AL11;
+import org.lwjgl.openal.SOFTSourceLatency;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -60,17 +63,28 @@ public abstract class CustomAudio extends OpenALMusic {
     //playback
     protected final int[] bufferIDs = new int[bufferCount];
     protected final Set<Integer> bufferTracker = new TreeSet<>(), activeBuffers = new HashSet<>();
-    protected final FloatArray renderedSecondsQueue = new FloatArray(bufferCount);
+    protected final LongArray renderedSamplesQueue = new LongArray(bufferCount); //Sample each queued buffer ends at, last one first
     protected IntBuffer buffers;
     protected int sourceID = -1;
     protected int format, sampleRate;
     protected boolean isPlaying;
     protected float volume = SettingsMaster.getMusicVolume();
     protected float pan = 0;
-    protected float renderedSeconds, maxSecondsPerBuffer;
+    protected long renderedSamples; //Sample the first queued buffer starts at
+    protected float maxSecondsPerBuffer;
+    protected int frameSize; //Bytes per sample of all channels
+    private boolean sourceLatency; //AL_SOFT_source_latency gives the offset with the fraction of a sample
+    private final long[] offsetLatency = new long[2];
+
+    protected PcmStore pcm = null; //Set if the audio is preloaded or cached
+    protected Waveform decodedWaveform = null; //Built while preloading, if it was
+    protected StreamedPcm stream = null; //Set if the audio is decoded while playing instead
+    private AudioCache.Key streamCacheKey = null;
 
     protected boolean stoppedAtEnd = false; //For restarting from beginning if playing from end
 
+    protected HitsoundMixer hitsounds = null; //Mixed into the music as it's buffered, if set
+
     protected Music.OnCompletionListener onCompletionListener;
 
 
@@ -93,8 +107,42 @@ public abstract class CustomAudio extends OpenALMusic {
 
     public abstract String getAudioType();
 
+    //Decodes all of the audio, setting pcm and decodedWaveform and calling setup.
     public abstract void preload();
 
+    //Uses cached audio if this file was decoded before. Otherwise opens the audio to be decoded while it plays if streaming
+    //is enabled, or decodes all of it and caches the result.
+    public void load() {
+        AudioCache.Key key = AudioCache.key(file);
+        AudioCache.Entry cached = AudioCache.load(key);
+        if (cached != null) {
+            pcm = cached.pcm;
+            decodedWaveform = cached.waveform;
+            setup(pcm.channels, pcm.sampleRate);
+            return;
+        }
+
+        if (SettingsMaster.streamAudio) {
+            try {
+                stream = openStream();
+            }
+            catch (Exception e) {
+                TaikoEditor.editorLogger.error("Failed to open audio for streaming, decoding all of it instead.", e);
+                stream = null;
+            }
+            if (stream != null) {
+                streamCacheKey = key; //Cached once it's all decoded for the waveform
+                setup(stream.channels, stream.sampleRate);
+                return;
+            }
+        }
+
+        preload();
+        if (pcm != null)
+            AudioCache.store(key, new AudioCache.Entry(pcm, decodedWaveform));
+    }
+    protected abstract StreamedPcm openStream() throws Exception; //null if the audio can't be streamed
+
     public void stop() {
         if (hasNoDevice) return;
         if (sourceID == -1) return;
@@ -102,6 +150,8 @@ public abstract class CustomAudio extends OpenALMusic {
             freeSource.invoke(audio, sourceID);
             TaikoEditor.audioMaster.removeMusic(this);
             reset();
+            if (hitsounds != null)
+                hitsounds.reset();
             sourceID = -1;
             isPlaying = false;
         } catch (IllegalAccessException | InvocationTargetException e) {
@@ -125,7 +175,7 @@ public abstract class CustomAudio extends OpenALMusic {
     public void setVolume(float volume) {
         this.volume = volume;
         if (hasNoDevice) return;
-        if (sourceID != -1) alSourcef(sourceID, AL_GAIN, volume);
+        if (sourceID != -1) alSourcef(sourceID, AL_GAIN, sourceGain());
     }
 
     public float getVolume() {
@@ -139,7 +189,13 @@ public abstract class CustomAudio extends OpenALMusic {
         if (sourceID == -1) return;
         alSource3f(sourceID, AL_POSITION, MathUtils.cos((pan - 1) * MathUtils.PI / 2), 0,
                 MathUtils.sin((pan + 1) * MathUtils.PI / 2));
-        alSourcef(sourceID, AL_GAIN, volume);
+        alSourcef(sourceID, AL_GAIN, sourceGain());
+    }
+
+    //Hitsounds are played by the music's source, so its gain has to be enough for both. Whichever is quieter is scaled down
+    //when it's mixed.
+    private float sourceGain() {
+        return hitsounds == null ? volume : Math.max(volume, SettingsMaster.effectVolume);
     }
 
     @Override
@@ -161,7 +217,9 @@ public abstract class CustomAudio extends OpenALMusic {
         alSourceStop(sourceID);
         alSourcei(sourceID, AL_BUFFER, 0); //Detach all buffers
 
-        renderedSecondsQueue.clear();
+        renderedSamplesQueue.clear();
+        if (hitsounds != null)
+            hitsounds.reset();
         buffers.clear();
         buffers.put(bufferIDs); //Ensure buffer IDs are always the same 4
         buffers.rewind();
@@ -176,9 +234,9 @@ public abstract class CustomAudio extends OpenALMusic {
             renderedSeconds += maxSecondsPerBuffer * (float)length / (float)bufferSize; //Calculate the number of seconds this buffer has IGNORING tempo
         }*/
 
-        //New method: Move to the closest frame with custom method
-        renderedSeconds = seekTime(position);
-        renderedSecondsQueue.add(renderedSeconds);
+        //New method: Move to the closest sample
+        renderedSamples = seekSample(position);
+        double renderedSeconds = (double) renderedSamples / sampleRate;
 
 
         boolean filled = false;
@@ -202,21 +260,19 @@ public abstract class CustomAudio extends OpenALMusic {
 
 
         if (!filled) { //if NO buffers were filled. This is fine.
-            snapOffset = position - renderedSeconds;
+            snapOffset = (float) (position - renderedSeconds);
             if (renderedSeconds + snapOffset > getLength() + maxSecondsPerBuffer)
             {
-                snapOffset = getLength() + maxSecondsPerBuffer - renderedSeconds;
+                snapOffset = (float) (getLength() + maxSecondsPerBuffer - renderedSeconds);
             }
             stoppedAtEnd = true;
             if (onCompletionListener != null) onCompletionListener.onCompletion(this);
         }
         else
         {
-            snapOffset = position - renderedSeconds;
+            snapOffset = (float) (position - renderedSeconds);
 
-            renderedSecondsQueue.pop();
-
-            alSourcef(sourceID, AL11.AL_SEC_OFFSET, snapOffset);
+            alSourcei(sourceID, AL11.AL_SAMPLE_OFFSET, Math.max(0, Math.round(snapOffset * sampleRate)));
 
             if (wasPlaying) {
                 alSourcePlay(sourceID);
@@ -233,6 +289,7 @@ public abstract class CustomAudio extends OpenALMusic {
         this.format = channels > 1 ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
         this.sampleRate = sampleRate;
         maxSecondsPerBuffer = (float)bufferSize / (bytesPerSample * channels * sampleRate);
+        frameSize = bytesPerSample * channels;
     }
 
     @Override
@@ -287,6 +344,7 @@ public abstract class CustomAudio extends OpenALMusic {
                 alSourcei(sourceID, AL_DIRECT_CHANNELS_SOFT, AL_TRUE);
                 alSourcei(sourceID, AL_LOOPING, AL_FALSE);
                 setPan(pan, volume);
+                sourceLatency = alIsExtensionPresent("AL_SOFT_source_latency");
 
                 boolean filled = false; // Check if there's anything to actually play.
 
@@ -320,9 +378,33 @@ public abstract class CustomAudio extends OpenALMusic {
     }
 
 
-    //same as getPosition method of Music, but should use doubles for math and return a double
-    abstract public float getLength();
-    abstract protected float seekTime(float pos);
+    public float getLength() {
+        if (stream != null)
+            return stream.getLength();
+        return pcm == null ? 0 : pcm.getLength();
+    }
+
+    //Moves to the closest sample to pos that can be read from and returns its index.
+    protected long seekSample(float pos) {
+        if (stream != null)
+            return stream.seekSample(pos);
+        return pcm == null ? 0 : pcm.seekSample(pos);
+    }
+
+    @Override
+    public int read(byte[] buffer) {
+        if (stream != null)
+            return stream.read(buffer);
+        return pcm == null ? 0 : pcm.read(buffer);
+    }
+
+    @Override
+    public void reset() {
+        if (stream != null)
+            stream.restart();
+        else if (pcm != null)
+            pcm.restart();
+    }
 
 
     public void changeTempo(float newTempo, float position)
@@ -332,6 +414,11 @@ public abstract class CustomAudio extends OpenALMusic {
         setPosition(position);
     }
 
+    //Seconds of the song that are buffered ahead of what is playing, at most.
+    public float getBufferedSeconds() {
+        return bufferCount * maxSecondsPerBuffer;
+    }
+
     public void stopAtEnd () {
         pause();
         stoppedAtEnd = true;
@@ -349,7 +436,7 @@ public abstract class CustomAudio extends OpenALMusic {
             int bufferID = alSourceUnqueueBuffers(sourceID);
             if (bufferID == AL_INVALID_VALUE) break;
 
-            if (renderedSecondsQueue.size > 0) renderedSeconds = renderedSecondsQueue.pop();
+            if (renderedSamplesQueue.size > 0) renderedSamples = renderedSamplesQueue.pop();
 
             if (activeBuffers.add(bufferID)) {
                 if (activeBuffers.size() == bufferCount)
@@ -410,23 +497,47 @@ public abstract class CustomAudio extends OpenALMusic {
     }
 
     private boolean fill (int bufferID) {
-        tempBuffer.clear();
-        int length = read(tempBytes);
-        if (length <= 0) {
-            return false;
-        }
-        float previousLoadedSeconds = renderedSecondsQueue.size > 0 ? renderedSecondsQueue.first() : 0;
-        float currentBufferSeconds = maxSecondsPerBuffer * (float)length / (float)bufferSize; //Calculate the number of seconds this buffer has IGNORING tempo
-        renderedSecondsQueue.insert(0, previousLoadedSeconds + currentBufferSeconds); //When this buffer is removed in update, time will be updated to the new calculated value.
-
-        if (length > tempBuffer.remaining()) {
-            TaikoEditor.editorLogger.error("temp audio buffer not enough space. Needed: " + length + " Remaining: " + tempBuffer.remaining());
+        ByteBuffer data;
+        if (pcm != null && stream == null) {
+            //Preloaded audio is already in a buffer OpenAL can read from
+            data = pcm.next(bufferSize);
+            if (data == null) {
+                return false;
+            }
         }
         else {
+            tempBuffer.clear();
+            int length = read(tempBytes);
+            if (length <= 0) {
+                return false;
+            }
+            if (length > tempBuffer.remaining()) {
+                TaikoEditor.editorLogger.error("temp audio buffer not enough space. Needed: " + length + " Remaining: " + tempBuffer.remaining());
+                length = tempBuffer.remaining();
+            }
             tempBuffer.put(tempBytes, 0, length).flip();
-            alBufferData(bufferID, format, tempBuffer, (int) (sampleRate * tempo));
+            data = tempBuffer;
         }
 
+        int length = data.remaining();
+        long previousLoadedSamples = renderedSamplesQueue.size > 0 ? renderedSamplesQueue.first() : renderedSamples;
+        renderedSamplesQueue.insert(0, previousLoadedSamples + length / frameSize); //When this buffer is removed in update, time will be updated to the new calculated value.
+
+        if (hitsounds != null) {
+            float gain = sourceGain();
+            float musicVolume = gain > 0 ? volume / gain : 1, hitsoundVolume = gain > 0 ? SettingsMaster.effectVolume / gain : 0;
+            if (musicVolume != 1 || (hitsoundVolume > 0 && hitsounds.hasHitsounds(previousLoadedSamples, previousLoadedSamples + length / frameSize, sampleRate))) {
+                if (data != tempBuffer) {
+                    tempBuffer.clear();
+                    tempBuffer.put(data).flip();
+                    data = tempBuffer;
+                }
+                ShortBuffer samples = data.asShortBuffer();
+                hitsounds.mix(samples, getChannels(), previousLoadedSamples, sampleRate, tempo, musicVolume, hitsoundVolume);
+            }
+        }
+
+        alBufferData(bufferID, format, data, (int) (sampleRate * tempo));
         return true;
     }
     private void empty (int bufferID) {
@@ -436,6 +547,8 @@ public abstract class CustomAudio extends OpenALMusic {
 
     public void dispose () {
         stop();
+        if (stream != null)
+            stream.dispose();
         if (hasNoDevice) return;
         if (buffers == null) return;
         alDeleteBuffers(buffers);
@@ -445,14 +558,30 @@ public abstract class CustomAudio extends OpenALMusic {
 
     @Override
     public float getPosition () {
-        if (hasNoDevice) return 0;
-        if (sourceID == -1) return 0;
-        return (renderedSeconds + snapOffset + alGetSourcef(sourceID, AL11.AL_SEC_OFFSET) * tempo);
+        return (float) getPrecisePosition();
     }
+    //Counted in samples of the song, so it's exact at any tempo. Buffers are played at sampleRate * tempo, so each sample
+    //OpenAL plays is one sample of the song.
     public double getPrecisePosition() {
         if (hasNoDevice) return 0;
         if (sourceID == -1) return 0;
-        return ((double) renderedSeconds + snapOffset + alGetSourcef(sourceID, AL11.AL_SEC_OFFSET) * (double) tempo);
+        return (renderedSamples + playedSamples()) / (double) sampleRate + snapOffset;
+    }
+
+    //Samples played from the first queued buffer.
+    private double playedSamples() {
+        if (sourceLatency) {
+            SOFTSourceLatency.alGetSourcei64vSOFT(sourceID, SOFTSourceLatency.AL_SAMPLE_OFFSET_LATENCY_SOFT, offsetLatency);
+            return offsetLatency[0] / 4294967296.0; //32.32 fixed point
+        }
+        return alGetSourcei(sourceID, AL11.AL_SAMPLE_OFFSET);
+    }
+
+    //Seconds until audio that is played reaches the speakers, if the device can tell. Not included in the position.
+    public double getOutputLatency() {
+        if (hasNoDevice || sourceID == -1 || !sourceLatency) return 0;
+        SOFTSourceLatency.alGetSourcei64vSOFT(sourceID, SOFTSourceLatency.AL_SAMPLE_OFFSET_LATENCY_SOFT, offsetLatency);
+        return offsetLatency[1] / 1e9;
     }
 
     public int getChannels () {
@@ -474,12 +603,23 @@ public abstract class CustomAudio extends OpenALMusic {
     public abstract float loadProgress();
 
 
-    protected abstract Iterator<byte[]> audioData();
+    protected static Waveform waveformOf(PcmStore pcm) {
+        WaveformBuilder builder = new WaveformBuilder(pcm.channels, pcm.sampleRate);
+        Iterator<byte[]> data = pcm.chunks(bufferSize);
+        while (data.hasNext()) {
+            byte[] chunk = data.next();
+            builder.accept(chunk, chunk.length);
+        }
+        return builder.finish();
+    }
 
     private boolean generatingWaveform = false;
     private Waveform waveform = null;
     public void getWaveform(Consumer<Waveform> receiver)
     {
+        if (waveform == null)
+            waveform = decodedWaveform;
+
         if (waveform != null) {
             receiver.accept(waveform);
             return;
@@ -489,12 +629,49 @@ public abstract class CustomAudio extends OpenALMusic {
             generatingWaveform = true;
 
             Thread waveformLoader = new Thread(()->{
+                AudioCache.Writer cache = null;
                 try {
-                    waveform = new Waveform(audioData(), sampleRate / 1000.0, getChannels());
+                    WaveformBuilder builder = new WaveformBuilder(getChannels(), sampleRate);
+                    Iterator<byte[]> data;
+                    if (stream != null) {
+                        //Streamed audio is decoded a block at a time, and each block is dropped once it's in the waveform
+                        //and written to the cache, so the whole song is never in memory.
+                        data = stream.blocks();
+                        cache = AudioCache.Writer.open(streamCacheKey, stream.channels, stream.sampleRate, stream.size());
+                    }
+                    else if (pcm != null) {
+                        data = pcm.chunks(bufferSize);
+                    }
+                    else {
+                        return;
+                    }
+
+                    while (data.hasNext()) {
+                        byte[] chunk = data.next();
+                        builder.accept(chunk, chunk.length);
+                        if (cache != null) {
+                            try {
+                                cache.write(chunk, chunk.length);
+                            }
+                            catch (IOException e) {
+                                TaikoEditor.editorLogger.info("Failed to write cached audio.");
+                                cache.cancel();
+                                cache = null;
+                            }
+                        }
+                    }
+                    waveform = builder.finish();
                     receiver.accept(waveform);
+
+                    if (cache != null) {
+                        cache.finish(waveform);
+                        cache = null;
+                    }
                 }
                 catch (Exception e) {
                     TaikoEditor.editorLogger.error("Failed to generate waveform.", e);
+                    if (cache != null)
+                        cache.cancel();
                 }
             });
             waveformLoader.setName("Waveform Loader " + this);
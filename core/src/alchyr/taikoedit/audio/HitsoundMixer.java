@@ -0,0 +1,323 @@
+package alchyr.taikoedit.audio;
+
+import com.badlogic.gdx.backends.lwjgl3.audio.OggInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.StreamUtils;
+import javazoom.jl.decoder.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static alchyr.taikoedit.TaikoEditor.audioMaster;
+
+//Mixes hitsounds into the music as it's buffered, so each one starts on the exact sample of its object at any tempo,
+//without a sound source of its own.
+//The update thread schedules the hitsounds from the playhead to a little past the audio that is already buffered. Each buffer the
+//music fills gets the hitsounds that start within it, along with the rest of the ones that started in an earlier buffer.
+public class HitsoundMixer {
+    //Where hitsounds come from, normally the primary view.
+    public interface Source {
+        //Adds the hitsounds of everything from start to end ms, both inclusive.
+        void scheduleHitsounds(long start, long end, Schedule schedule);
+
+        //Changes whenever the hitsounds it schedules might have, so audio mixed with them is kept until then.
+        long hitsoundVersion();
+    }
+
+    //A decoded hitsound. 16 bit, interleaved.
+    public static class Sample {
+        private final short[] data;
+        private final int channels, sampleRate, length;
+
+        private Sample(short[] data, int channels, int sampleRate) {
+            this.data = data;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.length = data.length / channels;
+        }
+
+        //Decodes wav (8, 16, 24 or 32 bit integer, or float), ogg, or mp3. The format is found from the contents rather than the
+        //extension, as skins often have ogg files named .wav. Everything is converted to 16 bit.
+        public static Sample load(FileHandle file) {
+            try {
+                byte[] bytes = file.readBytes();
+                if (startsWith(bytes, "RIFF"))
+                    return loadWav(bytes);
+                if (startsWith(bytes, "OggS"))
+                    return loadOgg(bytes);
+                return loadMp3(bytes);
+            }
+            catch (Exception e) {
+                throw new GdxRuntimeException("Failed to load hitsound " + file.path(), e);
+            }
+        }
+
+        private static Sample loadWav(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(8);
+            if (buffer.getInt() != 0x45564157) //WAVE
+                throw new GdxRuntimeException("Not a WAV file");
+
+            int format = -1, channels = 0, sampleRate = 0, bits = 0, dataStart = -1, dataLength = 0;
+            while (buffer.remaining() >= 8) {
+                int id = buffer.getInt(), size = buffer.getInt(), chunkStart = buffer.position();
+                if (id == 0x20746D66) { //fmt
+                    format = buffer.getShort() & 0xFFFF;
+                    channels = buffer.getShort() & 0xFFFF;
+                    sampleRate = buffer.getInt();
+                    buffer.position(chunkStart + 14);
+                    bits = buffer.getShort() & 0xFFFF;
+                    if (format == 0xFFFE && size >= 26) //Extensible, the actual format is at the start of the sub-format
+                        format = buffer.getShort(chunkStart + 24) & 0xFFFF;
+                }
+                else if (id == 0x61746164) { //data
+                    dataStart = chunkStart;
+                    dataLength = (int) Math.min(size & 0xFFFFFFFFL, bytes.length - chunkStart);
+                    break;
+                }
+                if (size < 0 || chunkStart + size + (size & 1) > bytes.length)
+                    break;
+                buffer.position(chunkStart + size + (size & 1)); //Chunks are padded to an even length
+            }
+            if (dataStart < 0 || channels <= 0 || sampleRate <= 0)
+                throw new GdxRuntimeException("WAV file has no audio data");
+
+            int bytesPerSample = (bits + 7) / 8;
+            boolean floating = format == 3;
+            if (format != 1 && !floating)
+                throw new GdxRuntimeException("Unsupported WAV format " + format);
+            if (floating ? bytesPerSample != 4 && bytesPerSample != 8 : bytesPerSample < 1 || bytesPerSample > 4)
+                throw new GdxRuntimeException("Unsupported WAV sample size " + bits);
+
+            short[] data = new short[dataLength / bytesPerSample / channels * channels];
+            buffer.position(dataStart);
+            for (int i = 0; i < data.length; ++i) {
+                if (floating) {
+                    double value = bytesPerSample == 4 ? buffer.getFloat() : buffer.getDouble();
+                    data[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value * Short.MAX_VALUE)));
+                }
+                else {
+                    switch (bytesPerSample) {
+                        case 1: //Unsigned
+                            data[i] = (short) (((buffer.get() & 0xFF) - 128) << 8);
+                            break;
+                        case 2:
+                            data[i] = buffer.getShort();
+                            break;
+                        case 3:
+                            buffer.get(); //Only the high 16 bits are kept
+                            data[i] = buffer.getShort();
+                            break;
+                        default:
+                            data[i] = (short) (buffer.getInt() >> 16);
+                            break;
+                    }
+                }
+            }
+            return new Sample(data, channels, sampleRate);
+        }
+
+        private static Sample loadOgg(byte[] bytes) {
+            OggInputStream input = new OggInputStream(new ByteArrayInputStream(bytes));
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 8);
+                byte[] block = new byte[4096];
+                while (!input.atEnd()) {
+                    int length = input.read(block);
+                    if (length == -1)
+                        break;
+                    output.write(block, 0, length);
+                }
+                return fromPcm(output.toByteArray(), input.getChannels(), input.getSampleRate());
+            }
+            finally {
+                StreamUtils.closeQuietly(input);
+            }
+        }
+
+        private static Sample loadMp3(byte[] bytes) throws BitstreamException, DecoderException {
+            Bitstream bitstream = new Bitstream(new ByteArrayInputStream(bytes));
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 10);
+                MP3Decoder decoder = new MP3Decoder();
+                OutputBuffer outputBuffer = null;
+                int channels = 0, sampleRate = 0;
+                Header header;
+                while ((header = bitstream.readFrame()) != null) {
+                    if (outputBuffer == null) {
+                        channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                        sampleRate = header.frequency();
+                        outputBuffer = new OutputBuffer(channels, false);
+                        decoder.setOutputBuffer(outputBuffer);
+                    }
+                    decoder.decodeFrame(header, bitstream);
+                    bitstream.closeFrame();
+                    output.write(outputBuffer.getBuffer(), 0, outputBuffer.reset());
+                }
+                if (outputBuffer == null)
+                    throw new GdxRuntimeException("Not a WAV, OGG, or MP3 file");
+                return fromPcm(output.toByteArray(), channels, sampleRate);
+            }
+            finally {
+                bitstream.close();
+            }
+        }
+
+        //16 bit little endian
+        private static Sample fromPcm(byte[] bytes, int channels, int sampleRate) {
+            short[] data = new short[bytes.length / 2 / channels * channels];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(data);
+            return new Sample(data, channels, sampleRate);
+        }
+
+        private static boolean startsWith(byte[] bytes, String magic) {
+            if (bytes.length < magic.length())
+                return false;
+            for (int i = 0; i < magic.length(); ++i) {
+                if (bytes[i] != magic.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    //Hitsounds near the playhead. Times are in ms of the map.
+    public static class Schedule {
+        private final LongArray times = new LongArray();
+        private final Array<Sample> samples = new Array<>();
+        private final FloatArray volumes = new FloatArray();
+
+        public void add(long time, String sfxKey, float volume) {
+            Sample sample = audioMaster.getSfxSample(sfxKey);
+            if (sample == null || volume <= 0)
+                return;
+            times.add(time);
+            samples.add(sample);
+            volumes.add(volume);
+        }
+
+        private void clear() {
+            times.clear();
+            samples.clear();
+            volumes.clear();
+        }
+    }
+
+    private static class Voice {
+        final Sample sample;
+        final long start; //Sample of the song the hitsound starts at
+        final float volume;
+
+        Voice(Sample sample, long start, float volume) {
+            this.sample = sample;
+            this.start = start;
+            this.volume = volume;
+        }
+    }
+
+    private final Schedule schedule = new Schedule();
+    private double offset = 0; //Seconds of the map at the start of the song
+    private final List<Voice> voices = new ArrayList<>();
+    private float[] mixed = new float[0];
+
+    //Replaces the scheduled hitsounds with those from start to end ms. source can be null to schedule nothing.
+    public synchronized void schedule(Source source, long start, long end, double offset) {
+        schedule.clear();
+        this.offset = offset;
+        if (source != null)
+            source.scheduleHitsounds(start, end, schedule);
+    }
+
+    //Forgets hitsounds that are already playing, for when the music moves.
+    public synchronized void reset() {
+        voices.clear();
+    }
+
+    //Whether any hitsound plays from start to end (samples of the song).
+    public synchronized boolean hasHitsounds(long start, long end, int sampleRate) {
+        if (!voices.isEmpty())
+            return true;
+        for (int i = 0; i < schedule.times.size; ++i) {
+            long sample = songSample(schedule.times.get(i), sampleRate);
+            if (sample >= start && sample < end)
+                return true;
+        }
+        return false;
+    }
+
+    //Mixes into out, which holds audio of the song starting at sample start. The music is multiplied by musicVolume, and the
+    //hitsounds by hitsoundVolume and their own volume. Audio is played at sampleRate * tempo, so hitsounds are resampled by that
+    //to keep their pitch.
+    public synchronized void mix(ShortBuffer out, int channels, long start, int sampleRate, float tempo, float musicVolume, float hitsoundVolume) {
+        int frames = out.remaining() / channels, length = frames * channels;
+        long end = start + frames;
+
+        for (int i = 0; i < schedule.times.size; ++i) {
+            long sample = songSample(schedule.times.get(i), sampleRate);
+            if (sample >= start && sample < end)
+                voices.add(new Voice(schedule.samples.get(i), sample, schedule.volumes.get(i)));
+        }
+
+        if (mixed.length < length)
+            mixed = new float[length];
+        int base = out.position();
+        for (int i = 0; i < length; ++i)
+            mixed[i] = out.get(base + i) * musicVolume;
+
+        Iterator<Voice> voiceIterator = voices.iterator();
+        while (voiceIterator.hasNext()) {
+            Voice voice = voiceIterator.next();
+            Sample sample = voice.sample;
+            double step = sample.sampleRate / ((double) sampleRate * tempo); //Frames of the hitsound per sample of the song
+            float volume = voice.volume * hitsoundVolume;
+
+            for (int frame = (int) Math.max(0, voice.start - start); frame < frames; ++frame) {
+                double position = (start + frame - voice.start) * step;
+                int index = (int) position;
+                if (index >= sample.length)
+                    break;
+                float fraction = (float) (position - index);
+
+                for (int c = 0; c < channels; ++c) {
+                    float value;
+                    if (channels == 1 && sample.channels > 1) {
+                        value = 0;
+                        for (int sc = 0; sc < sample.channels; ++sc)
+                            value += interpolate(sample, index, sc, fraction);
+                        value /= sample.channels;
+                    }
+                    else {
+                        value = interpolate(sample, index, Math.min(c, sample.channels - 1), fraction);
+                    }
+                    mixed[frame * channels + c] += value * volume;
+                }
+            }
+
+            if ((end - voice.start) * step >= sample.length)
+                voiceIterator.remove();
+        }
+
+        for (int i = 0; i < length; ++i)
+            out.put(base + i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(mixed[i]))));
+    }
+
+    private long songSample(long time, int sampleRate) {
+        return Math.round((time / 1000.0 - offset) * sampleRate);
+    }
+
+    private static float interpolate(Sample sample, int index, int channel, float fraction) {
+        float a = sample.data[index * sample.channels + channel];
+        float b = index + 1 < sample.length ? sample.data[(index + 1) * sample.channels + channel] : 0;
+        return a + (b - a) * fraction;
+    }
+}
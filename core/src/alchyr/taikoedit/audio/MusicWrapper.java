@@ -2,7 +2,6 @@ package alchyr.taikoedit.audio;
 
 import alchyr.taikoedit.audio.mp3.PreloadedMp3;
 import alchyr.taikoedit.audio.ogg.PreloadOgg;
-import alchyr.taikoedit.util.RunningAverage;
 import alchyr.taikoedit.util.TrackedThread;
 import alchyr.taikoedit.util.structures.Pair;
 import com.badlogic.gdx.Gdx;
@@ -39,22 +38,24 @@ public class MusicWrapper implements Music.OnCompletionListener {
     private FileHandle musicFile;
 
     public double precise = -1; //The last value returned
-    private double minimum = -1; //Minimum time, to prevent back-skipping on new time given
-
-    //For mitigating forward-skipping
-    private boolean initGap = false;
-    private RunningAverage timeGap = new RunningAverage(1);
-    private RunningAverage updateGap = new RunningAverage(16);
-    private double catchup;
 
+    //The music's position only moves each time the audio device mixes more audio, which is less often than updates.
+    //Between those steps, time is carried forward by the elapsed time, and it never moves back by less than MAX_HOLD.
+    private static final double MAX_HOLD = 0.1;
     private double time = -1; //Refresher to see if music has give a new value
     private double last = -1; //The last updated value obtained from music
+    private double sinceLast = 0; //Song time elapsed since last was obtained
     private boolean seeked = false;
 
-    private double totalElapsed = 0, baseElapsed = 0;
-
     private boolean playing = false;
 
+    //Hitsounds are mixed into the music. Each update, the primary view sets itself as the source for the next update.
+    private static final double HITSOUND_MARGIN = 0.25; //Seconds scheduled past the buffered audio, in case updates are late
+    public final HitsoundMixer hitsounds = new HitsoundMixer();
+    private HitsoundMixer.Source hitsoundSource = null, nextHitsoundSource = null;
+    private HitsoundMixer.Source scheduledSource = null; //Where the last scheduled hitsounds came from, and its version then
+    private long scheduledVersion = 0;
+
     private Object lockKey = null;
 
     public MusicWrapper()
@@ -149,7 +150,7 @@ public class MusicWrapper implements Music.OnCompletionListener {
                             return;
                         }
 
-                        music.music.preload();
+                        music.music.load();
 
                         if (cancelled) {
                             if (file.equals(music.musicFile))
@@ -270,12 +271,10 @@ public class MusicWrapper implements Music.OnCompletionListener {
                 {
                     try
                     {
+                        tempMusic.hitsounds = hitsounds;
                         if (tempMusic.initialize(activeOffset))
                         {
                             hasMusic = true;
-                            initGap = true;
-                            timeGap = new RunningAverage(64);
-                            updateGap.init(0);
                             return true;
                         }
                         else
@@ -315,77 +314,60 @@ public class MusicWrapper implements Music.OnCompletionListener {
         return music == null;
     }
 
+    //Returns false if the music is playing but hasn't reported a new position.
     public boolean update(double elapsed) {
+        hitsoundSource = nextHitsoundSource;
+        nextHitsoundSource = null;
+
+        boolean moved = true;
         if (music != null) {
             time = music.getPrecisePosition();
 
-            if (playing)
-            {
-                if (elapsed < 0.5f) {
-                    totalElapsed += elapsed * music.tempo * (catchup + 1); //Keep track of passing time
-                    baseElapsed += elapsed * music.tempo;
-                    //editorLogger.info("Total elapsed time: " + baseElapsed);
-
-                    precise = Math.max(last + totalElapsed, minimum);
+            if (playing && !seeked && elapsed < 0.5f) {
+                if (time == last) {
+                    sinceLast += elapsed * music.tempo;
+                    moved = false;
                 }
-                if (time == last) //Music has not updated position, but the song is playing
-                {
-                    return false;
+                else {
+                    last = time;
+                    sinceLast = 0;
                 }
-                //editorLogger.info("Music updated position.");
-                if (!seeked) {
-                    double gap = time - last;
-                    if (gap > 0 && gap < 0.1) {
-                        if (initGap) {
-                            if (updateGap.avg() == 0) {
-                                updateGap.add(gap);
-                            }
-                            else {
-                                updateGap.init(gap); //fill based on the second gap, which will occur during continuous play and is thus more reliable
-                                initGap = false;
-                            }
-                        }
-                        else {
-                            updateGap.add(gap);
-                        }
-                    }
 
-                    gap = time - (last + baseElapsed);
-                    if (gap < 0.1 && gap > -0.1)
-                        timeGap.add(gap);
-                }
+                double estimate = last + sinceLast;
+                if (estimate < precise && precise - estimate < MAX_HOLD)
+                    estimate = precise; //Ran slightly ahead of the music, wait for it to catch up
+                precise = estimate;
             }
-            baseElapsed = 0;
-            totalElapsed = 0;
-            minimum = Long.MIN_VALUE;
-
-            if (playing) {
-                double avg = updateGap.avg();
-                //editorLogger.debug("UpdateGap: " + avg + " | TimeGap: " + timeGap.avg());
-                if (precise > time && precise - time < 0.1) {
-                    minimum = precise;
-                    if (!initGap && avg != 0) {
-                        catchup = timeGap.avg() / avg;
-                    }
-                    //editorLogger.debug("A bit ahead. Catchup: " + catchup);
-                }
-                else if (precise < time && time - precise < 0.1) {
-                    if (!initGap && avg != 0)
-                        catchup = timeGap.avg() / avg;
-                    //editorLogger.debug("A bit behind. Catchup: " + catchup);
-                }
-                else {
-                    catchup = 0;
-                    //editorLogger.debug("Very far off.");
-                }
+            else {
+                last = time;
+                sinceLast = 0;
+                precise = time;
             }
 
-            last = time;
-            precise = Math.max(last, minimum);
+            if (playing)
+                scheduleHitsounds(precise);
         }
         seeked = false;
-        return true;
+        return moved;
+    }
+
+    public void setHitsoundSource(HitsoundMixer.Source source) {
+        nextHitsoundSource = source;
+    }
+
+    //Schedules the hitsounds from position (seconds of the song) to past the audio that will be buffered from there.
+    //Has to be done before the music buffers audio from a new position.
+    private void scheduleHitsounds(double position) {
+        double end = position + music.getBufferedSeconds() + HITSOUND_MARGIN;
+        hitsounds.schedule(hitsoundSource, (long) Math.floor((position + activeOffset) * 1000), (long) Math.ceil((end + activeOffset) * 1000), activeOffset);
+        scheduledSource = hitsoundSource;
+        scheduledVersion = hitsoundSource == null ? 0 : hitsoundSource.hitsoundVersion();
     }
+
+    private boolean hitsoundsChanged() {
+        return hitsoundSource != scheduledSource || (hitsoundSource != null && hitsoundSource.hitsoundVersion() != scheduledVersion);
+    }
+
     public double getMsTime()
     {
         return getSecondTime() * 1000.0f;
@@ -443,9 +425,16 @@ public class MusicWrapper implements Music.OnCompletionListener {
     {
         if (lockKey != null || music == null)
             return;
+        if (!music.isPlaying() && (music.stoppedAtEnd || hitsoundsChanged())) {
+            //Buffered audio has the hitsounds from when it was buffered, so it's replaced if they were edited since
+            double position = music.stoppedAtEnd ? 0 : Math.max(0, precise);
+            scheduleHitsounds(position);
+            music.setPosition((float) position, false);
+        }
         music.play();
         playing = true;
         last = time;
+        sinceLast = 0;
     }
 
     public void seekMs(double newPos)
@@ -460,6 +449,7 @@ public class MusicWrapper implements Music.OnCompletionListener {
     }
     public void seekSecond(double newPos)
     {
+        scheduleHitsounds(Math.max(0, newPos) - activeOffset);
         music.setPosition((float) Math.max(0, newPos) - activeOffset);
         seeked = true;
     }
@@ -472,6 +462,7 @@ public class MusicWrapper implements Music.OnCompletionListener {
         }
         if (!continuePlaying)
             playing = false;
+        scheduleHitsounds(Math.max(0, newPos) - activeOffset);
         music.setPosition((float) Math.max(0, newPos) - activeOffset, continuePlaying);
         seeked = true;
     }
@@ -486,6 +477,7 @@ public class MusicWrapper implements Music.OnCompletionListener {
         if (Math.abs(1 - newRate) < 0.001f) //clear out rounding errors whenever you return to 1
             newRate = 1;
 
+        scheduleHitsounds(precise);
         music.changeTempo(newRate, (float) precise);
         return newRate;
     }
@@ -0,0 +1,148 @@
+package alchyr.taikoedit.audio;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Decoded audio in one contiguous buffer outside the heap, either direct memory or a memory-mapped cache file.
+//16 bit PCM in native byte order. Positions are in bytes, so the time of any position is exact and seeking is to the sample.
+//Reading hands out slices of the buffer, which can be given to OpenAL as they are.
+public class PcmStore {
+    public final int channels, sampleRate;
+    private final int frameSize; //Bytes per sample of all channels
+    private final ByteBuffer data;
+
+    private int position = 0; //Read position
+
+    //data is used from 0 to its limit.
+    public PcmStore(int channels, int sampleRate, ByteBuffer data) {
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.frameSize = 2 * channels;
+        this.data = data;
+    }
+
+    //Total bytes
+    public int size() {
+        return data.limit();
+    }
+
+    public float getLength() {
+        return (float) size() / frameSize / sampleRate;
+    }
+
+    public void restart() {
+        position = 0;
+    }
+
+    //Moves to the sample at time and returns its index, or the number of samples if time is past the end.
+    public long seekSample(double time) {
+        long sample = Math.max(0, (long) (time * sampleRate));
+        position = (int) Math.min(sample * frameSize, size());
+        return position / frameSize;
+    }
+
+    //The next bytes from the current position, at most maxBytes, or null at the end.
+    //The returned buffer shares the stored data and must not be written to.
+    public ByteBuffer next(int maxBytes) {
+        if (position >= size())
+            return null;
+
+        ByteBuffer slice = data.duplicate();
+        slice.position(position);
+        position = Math.min(size(), position + maxBytes);
+        slice.limit(position);
+        return slice;
+    }
+
+    //Copies from the current position, returning the number of bytes read.
+    public int read(byte[] buffer) {
+        ByteBuffer slice = next(buffer.length);
+        if (slice == null)
+            return 0;
+
+        int length = slice.remaining();
+        slice.get(buffer, 0, length);
+        return length;
+    }
+
+    //All of the data in order, copied in chunks of chunkSize bytes. Independent of the read position.
+    public Iterator<byte[]> chunks(int chunkSize) {
+        ByteBuffer source = data.duplicate();
+        source.position(0);
+        return new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasRemaining();
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                byte[] chunk = new byte[Math.min(chunkSize, source.remaining())];
+                source.get(chunk);
+                return chunk;
+            }
+        };
+    }
+
+    //Collects decoded audio into a store.
+    public static class Builder {
+        private final int channels, sampleRate;
+        private ByteBuffer data;
+
+        //expectedBytes is a guess at the total size. The buffer grows if it's too small.
+        public Builder(int channels, int sampleRate, long expectedBytes) {
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            data = BufferUtils.createByteBuffer((int) Math.max(1 << 16, Math.min(Integer.MAX_VALUE - 8, expectedBytes)));
+        }
+
+        public int size() {
+            return data.position();
+        }
+
+        public void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            data.put(bytes, offset, length);
+        }
+
+        //Adds length bytes of silence.
+        public void pad(int length) {
+            ensureCapacity(length);
+            for (int i = 0; i < length; ++i)
+                data.put((byte) 0);
+        }
+
+        public PcmStore finish() {
+            //Only keep the extra space if it's small
+            if (data.remaining() > data.position() / 8) {
+                ByteBuffer exact = BufferUtils.createByteBuffer(data.position());
+                data.flip();
+                exact.put(data);
+                data = exact;
+            }
+            data.flip();
+            return new PcmStore(channels, sampleRate, data);
+        }
+
+        private void ensureCapacity(int length) {
+            if (data.remaining() >= length)
+                return;
+
+            long capacity = Math.max((long) data.capacity() * 2, (long) data.position() + length);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                capacity = Integer.MAX_VALUE - 8;
+                if (capacity - data.position() < length)
+                    throw new IllegalStateException("Decoded audio is too long.");
+            }
+            ByteBuffer larger = BufferUtils.createByteBuffer((int) capacity);
+            data.flip();
+            larger.put(data);
+            data = larger;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package alchyr.taikoedit.audio;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//PCM decoded on demand, instead of decoding the whole song when it's opened.
+//The song is split into blocks of about a second. A worker thread decodes the block being read and a few blocks after it,
+//and only the most recently used blocks are kept. Reading a block that isn't decoded yet waits for it, which should only
+//happen right after seeking.
+//
+//Since any block can be decoded on its own, the whole song can also be decoded by several threads at once with decodeAll.
+public class StreamedPcm {
+    private static final int READ_AHEAD = 4; //Blocks decoded after the one being read
+    private static final int CACHED_BLOCKS = 48; //About 8 MB of 44.1 kHz stereo audio with blocks of a second
+
+    //Decodes blocks of one song. Each decoder is only used by one thread.
+    public interface Decoder {
+        //16 bit PCM in native byte order. Blocks are mostly requested in order, so continuing from the last block should be fast.
+        byte[] decode(int block) throws Exception;
+    }
+
+    public final int channels, sampleRate;
+    private final int frameSize; //Bytes per sample of all channels
+    private final long[] blockStarts; //Byte position of the start of each block, then the total length
+    private final Supplier<Decoder> decoders;
+
+    private final Map<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+    private int wanted = 0; //The worker decodes from this block
+    private boolean disposed = false;
+    private Thread worker = null; //Started on the first read
+    private final AtomicInteger decodedBlocks = new AtomicInteger(); //For decodeAll
+
+    private long position = 0; //Read position in bytes
+    private int block = 0; //Block containing position
+
+    //blockStarts has the byte position of the start of each block, followed by the total length in bytes.
+    //decoders creates a decoder for each thread that decodes.
+    public StreamedPcm(int channels, int sampleRate, long[] blockStarts, Supplier<Decoder> decoders) {
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.frameSize = 2 * channels;
+        this.blockStarts = blockStarts;
+        this.decoders = decoders;
+    }
+
+    public int blockCount() {
+        return blockStarts.length - 1;
+    }
+
+    //Total bytes
+    public long size() {
+        return blockStarts[blockCount()];
+    }
+
+    public float getLength() {
+        return (float) blockStarts[blockCount()] / frameSize / sampleRate;
+    }
+
+    public void restart() {
+        position = 0;
+        block = 0;
+    }
+
+    //Moves to the sample at time and returns its index, or the number of samples if time is past the end.
+    public long seekSample(double time) {
+        long sample = Math.max(0, (long) (time * sampleRate));
+        position = Math.min(sample * frameSize, blockStarts[blockCount()]);
+        block = blockAt(position);
+        return position / frameSize;
+    }
+
+    //Reads from the current position, returning the number of bytes read.
+    public int read(byte[] buffer) {
+        int read = 0;
+        while (read < buffer.length && block < blockCount()) {
+            byte[] data = get(block);
+            int offset = (int) (position - blockStarts[block]);
+            int amount = Math.min(buffer.length - read, data.length - offset);
+            System.arraycopy(data, offset, buffer, read, amount);
+
+            read += amount;
+            position += amount;
+            if (position >= blockStarts[block + 1])
+                ++block;
+        }
+        return read;
+    }
+
+    //Decodes the whole song in order on the calling thread, without using or filling the cache.
+    public Iterator<byte[]> blocks() {
+        Decoder decoder = decoders.get();
+        return new Iterator<byte[]>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < blockCount();
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return decode(decoder, next++);
+            }
+        };
+    }
+
+    //Decodes the whole song into one store, splitting it into runs of blocks that are decoded on the common fork join pool.
+    //Each run only has to decode a little before its first block again. Doesn't use or fill the cache.
+    public PcmStore decodeAll() {
+        if (size() > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Decoded audio is too long.");
+
+        ByteBuffer data = BufferUtils.createByteBuffer((int) size());
+        int runLength = Math.max(4, blockCount() / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        decodedBlocks.set(0);
+        ForkJoinPool.commonPool().invoke(new DecodeRun(data, 0, blockCount(), runLength));
+        return new PcmStore(channels, sampleRate, data);
+    }
+
+    //Progress of decodeAll from 0 to 1.
+    public float decodeProgress() {
+        return blockCount() == 0 ? 1 : (float) decodedBlocks.get() / blockCount();
+    }
+
+    @SuppressWarnings("serial") //Never serialized
+    private class DecodeRun extends RecursiveAction {
+        private final ByteBuffer data;
+        private final int start, end, runLength;
+
+        DecodeRun(ByteBuffer data, int start, int end, int runLength) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.runLength = runLength;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > runLength) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new DecodeRun(data, start, mid, runLength), new DecodeRun(data, mid, end, runLength));
+                return;
+            }
+
+            Decoder decoder = decoders.get();
+            ByteBuffer target = data.duplicate();
+            for (int i = start; i < end; ++i) {
+                target.position((int) blockStarts[i]);
+                target.put(decode(decoder, i));
+                decodedBlocks.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void dispose() {
+        disposed = true;
+        cache.clear();
+        notifyAll();
+    }
+
+    private int blockAt(long position) {
+        int low = 0, high = blockCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockStarts[mid + 1] <= position)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private synchronized byte[] get(int block) {
+        if (worker == null && !disposed) {
+            worker = new Thread(this::decodeAhead);
+            worker.setName("Audio Decoder");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        if (wanted != block) {
+            wanted = block;
+            notifyAll();
+        }
+
+        byte[] data;
+        while ((data = cache.get(block)) == null) {
+            if (disposed)
+                return new byte[(int) (blockStarts[block + 1] - blockStarts[block])];
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new byte[(int) (blockStarts[block + 1] - blockStarts[block])];
+            }
+        }
+        return data;
+    }
+
+    //First block from wanted that still needs to be decoded, -1 if there is none.
+    private int missing() {
+        int end = Math.min(blockCount(), wanted + READ_AHEAD + 1);
+        for (int i = wanted; i < end; ++i) {
+            if (!cache.containsKey(i))
+                return i;
+        }
+        return -1;
+    }
+
+    private void decodeAhead() {
+        Decoder decoder = decoders.get();
+        while (true) {
+            int next = -1;
+            synchronized (this) {
+                while (!disposed && (next = missing()) < 0) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (disposed)
+                    return;
+            }
+
+            byte[] data = decode(decoder, next);
+            synchronized (this) {
+                if (disposed)
+                    return;
+                cache.put(next, data);
+                notifyAll();
+            }
+        }
+    }
+
+    //Always the exact length of the block, so a damaged block can't shift the rest of the song.
+    private byte[] decode(Decoder decoder, int block) {
+        int length = (int) (blockStarts[block + 1] - blockStarts[block]);
+        byte[] data;
+        try {
+            data = decoder.decode(block);
+        }
+        catch (Exception e) {
+            editorLogger.error("Failed to decode audio block " + block, e);
+            return new byte[length];
+        }
+
+        if (data.length != length) {
+            byte[] fit = new byte[length];
+            System.arraycopy(data, 0, fit, 0, Math.min(length, data.length));
+            data = fit;
+        }
+        return data;
+    }
+}
@@ -1,113 +1,90 @@
 package alchyr.taikoedit.audio;
 
-import alchyr.taikoedit.util.structures.Pair;
-
-import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
-
 public class Waveform {
-    //Given time x, where x is milliseconds, the floor entry in changePoints is the values at that point.
-    private final TreeMap<Integer, Pair<Float, Float>> values; //min, max
-
-    public Waveform(Iterator<byte[]> data, double samplesPerChunk, int channels) {
-        values = new TreeMap<>();
-
-        Pair<Float, Float> lastChunk = new Pair<>(0f, 0f), currentChunk = new Pair<>(0f, 0f);
-        values.put(-1, lastChunk);
-
-        //2 bytes per point
-        //one point per channel per sample (2 channels = 2 points for 1 sample)
-        //sampleRate = number of samples in one second
-        int time = 0; //ms position of current chunk
-
-        double chunkCounter = 0;
-        float sample = 0;
-        int channelCounter = 0;
-        float overallMax = 0;
-        short point = 0;
-
-        boolean pos = true;
-        while (data.hasNext()) {
-            byte[] chunk = data.next();
-
-            for (byte b : chunk) {
-                if (pos) {
-                    point = 0;
-                    point |= b;
-                }
-                else {
-                    point |= b << 8;
-
-                    sample += point;
-                    ++channelCounter;
-
-                    if (channelCounter >= channels) {
-                        channelCounter = 0;
-
-                        sample /= channels;
-                        if (sample > 0) {
-                            currentChunk.b = Math.max(currentChunk.b, sample);
-                        }
-                        else {
-                            currentChunk.a = Math.min(currentChunk.a, sample);
-                        }
-                        sample = 0;
-                        ++chunkCounter;
-
-                        if (chunkCounter >= samplesPerChunk) { //Done with chunk.
-                            if (currentChunk.a != lastChunk.a || currentChunk.b != lastChunk.b) {
-                                values.put(time, currentChunk);
-
-                                overallMax = Math.max(overallMax, currentChunk.b);
-                                overallMax = Math.max(overallMax, Math.abs(currentChunk.a));
-
-                                lastChunk = currentChunk;
-                                currentChunk = new Pair<>(0f, 0f);
-                            }
-                            else {
-                                currentChunk.a = 0f;
-                                currentChunk.b = 0f;
-                            }
-
-                            chunkCounter -= samplesPerChunk;
-                            ++time;
-                        }
-                    }
-                }
-                pos = !pos;
+    //Min and max of each millisecond, plus coarser levels where each entry covers 4 entries of the level below.
+    //Values are scaled so the loudest point of the song is 1.
+    private static final int LEVELS = 6; //1, 4, 16, 64, 256, 1024 ms
+    private static final int LEVEL_SHIFT = 2;
+
+    private final float[][] mins, maxes;
+    private final int length; //ms
+
+    //Built by WaveformBuilder. overallMax is the largest absolute value, used to scale everything to 0-1.
+    //Values that are already scaled (from AudioCache) are passed with an overallMax of 0.
+    Waveform(float[] min, float[] max, float overallMax) {
+        length = min.length;
+        mins = new float[LEVELS][];
+        maxes = new float[LEVELS][];
+        mins[0] = min;
+        maxes[0] = max;
+
+        if (overallMax > 0) { //Limit to a 0-1 scale
+            for (int i = 0; i < length; ++i) {
+                min[i] /= overallMax;
+                max[i] /= overallMax;
             }
         }
 
-        if (chunkCounter > 0) { //Leftover data
-            values.put(time, currentChunk);
-            overallMax = Math.max(overallMax, currentChunk.b);
-            overallMax = Math.max(overallMax, Math.abs(currentChunk.a));
-        }
+        buildLevels();
+    }
+
+    private void buildLevels() {
+        for (int level = 1; level < LEVELS; ++level) {
+            float[] fineMin = mins[level - 1], fineMax = maxes[level - 1];
+            int size = (fineMin.length + (1 << LEVEL_SHIFT) - 1) >> LEVEL_SHIFT;
+            float[] min = new float[size], max = new float[size];
+
+            for (int i = 0; i < fineMin.length; ++i) {
+                int index = i >> LEVEL_SHIFT;
+                min[index] = Math.min(min[index], fineMin[i]);
+                max[index] = Math.max(max[index], fineMax[i]);
+            }
 
-        for (Pair<Float, Float> maxMin : values.values()) { //Limit to a 0-1 scale
-            maxMin.a /= overallMax;
-            maxMin.b /= overallMax;
+            mins[level] = min;
+            maxes[level] = max;
         }
     }
 
-    //start and end time in ms
-    private int lastStart = -1, lastEnd = -1;
-    private SortedMap<Integer, Pair<Float, Float>> currentView = null;
-    public SortedMap<Integer, Pair<Float, Float>> getSection(int start, int end) {
-        Integer floor = values.floorKey(start);
-        if (floor != null) start = floor;
-
-        if (start != lastStart || end != lastEnd)
-        {
-            lastStart = start;
-            lastEnd = end;
-            currentView = values.subMap(start, true, end, true);
+    //Min and max between start and end ms (exclusive), placed in result[0] and result[1].
+    //Uses the coarsest level that isn't wider than the range, so wide ranges only check a few entries.
+    public void getRange(int start, int end, float[] result) {
+        float min = 0, max = 0;
+
+        if (start < 0)
+            start = 0;
+        if (end > length)
+            end = length;
+
+        if (start < end) {
+            int level = 0;
+            while (level + 1 < LEVELS && (1 << ((level + 1) * LEVEL_SHIFT)) <= end - start)
+                ++level;
+
+            int shift = level * LEVEL_SHIFT;
+            float[] levelMin = mins[level], levelMax = maxes[level];
+            for (int i = start >> shift, last = (end - 1) >> shift; i <= last; ++i) {
+                min = Math.min(min, levelMin[i]);
+                max = Math.max(max, levelMax[i]);
+            }
         }
-        return currentView;
+
+        result[0] = min;
+        result[1] = max;
+    }
+
+    //Base level, one entry per millisecond.
+    float[] getMins() {
+        return mins[0];
+    }
+    float[] getMaxes() {
+        return maxes[0];
+    }
+
+    public int getLength() {
+        return length;
     }
 
     public boolean isEmpty() {
-        return values == null || values.isEmpty();
+        return length == 0;
     }
 }
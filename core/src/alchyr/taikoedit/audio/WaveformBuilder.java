@@ -0,0 +1,149 @@
+package alchyr.taikoedit.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Builds a Waveform from 16 bit little endian PCM as it is decoded.
+//Data is collected into blocks covering a whole number of milliseconds. Each full block is reduced to per-millisecond
+//min/max on the common fork-join pool while decoding continues, and the results are joined in finish().
+public class WaveformBuilder {
+    private static final int BLOCK_MS = 2000;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final List<ForkJoinTask<Partial>> tasks = new ArrayList<>();
+
+    private final int channels, frameSize;
+    private final double samplesPerMs;
+
+    private byte[] block;
+    private int blockLength;
+    private int blockStartMs = 0;
+    private long blockStartSample = 0;
+
+    public WaveformBuilder(int channels, int sampleRate) {
+        this.channels = channels;
+        this.frameSize = 2 * channels;
+        this.samplesPerMs = sampleRate / 1000.0;
+
+        block = new byte[blockBytes(0)];
+    }
+
+    //First sample of the given millisecond.
+    private long msStart(long ms) {
+        return (long) Math.ceil(ms * samplesPerMs);
+    }
+
+    private int blockBytes(int startMs) {
+        return (int) (msStart(startMs + BLOCK_MS) - msStart(startMs)) * frameSize;
+    }
+
+    public void accept(byte[] data, int length) {
+        int offset = 0;
+        while (offset < length) {
+            int amount = Math.min(length - offset, block.length - blockLength);
+            System.arraycopy(data, offset, block, blockLength, amount);
+            blockLength += amount;
+            offset += amount;
+
+            if (blockLength == block.length)
+                submitBlock();
+        }
+    }
+
+    private void submitBlock() {
+        byte[] data = block;
+        int length = blockLength, startMs = blockStartMs;
+        long startSample = blockStartSample;
+        tasks.add(pool.submit(()->reduce(data, length, startMs, startSample)));
+
+        blockStartMs += BLOCK_MS;
+        blockStartSample += length / frameSize;
+        block = new byte[blockBytes(blockStartMs)];
+        blockLength = 0;
+    }
+
+    //Waits for all blocks to be reduced and combines them.
+    public Waveform finish() {
+        if (blockLength > 0)
+            submitBlock();
+        block = null;
+
+        List<Partial> partials = new ArrayList<>(tasks.size());
+        int length = 0;
+        float overallMax = 0;
+        for (ForkJoinTask<Partial> task : tasks) {
+            Partial partial = task.join();
+            partials.add(partial);
+            length = partial.startMs + partial.length;
+            overallMax = Math.max(overallMax, partial.max);
+        }
+        tasks.clear();
+
+        float[] min = new float[length], max = new float[length];
+        for (Partial partial : partials) {
+            System.arraycopy(partial.mins, 0, min, partial.startMs, partial.length);
+            System.arraycopy(partial.maxes, 0, max, partial.startMs, partial.length);
+        }
+        return new Waveform(min, max, overallMax);
+    }
+
+    private Partial reduce(byte[] data, int length, int startMs, long startSample) {
+        int samples = length / frameSize;
+        float[] mins = new float[BLOCK_MS], maxes = new float[BLOCK_MS];
+
+        int ms = 0;
+        long sampleIndex = startSample, nextMs = msStart(startMs + 1);
+        float chunkMin = 0, chunkMax = 0, blockMax = 0;
+        boolean hasData = false;
+
+        int pos = 0;
+        for (int i = 0; i < samples; ++i, ++sampleIndex) {
+            if (sampleIndex >= nextMs) { //Done with millisecond
+                mins[ms] = chunkMin;
+                maxes[ms] = chunkMax;
+                blockMax = Math.max(blockMax, Math.max(chunkMax, -chunkMin));
+                chunkMin = chunkMax = 0;
+                ++ms;
+                nextMs = msStart(startMs + ms + 1);
+            }
+
+            float sample = 0;
+            for (int channel = 0; channel < channels; ++channel, pos += 2)
+                sample += (short) ((data[pos] & 0xFF) | (data[pos + 1] << 8));
+            sample /= channels;
+
+            if (sample > 0) {
+                chunkMax = Math.max(chunkMax, sample);
+            }
+            else {
+                chunkMin = Math.min(chunkMin, sample);
+            }
+            hasData = true;
+        }
+
+        if (hasData) { //Last millisecond of this block, which may be partial at the end of the song
+            mins[ms] = chunkMin;
+            maxes[ms] = chunkMax;
+            blockMax = Math.max(blockMax, Math.max(chunkMax, -chunkMin));
+            ++ms;
+        }
+
+        return new Partial(startMs, ms, mins, maxes, blockMax);
+    }
+
+    private static class Partial {
+        final int startMs, length;
+        final float[] mins, maxes;
+        final float max;
+
+        Partial(int startMs, int length, float[] mins, float[] maxes, float max) {
+            this.startMs = startMs;
+            this.length = length;
+            this.mins = mins;
+            this.maxes = maxes;
+            this.max = max;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package alchyr.taikoedit.audio.mp3;
 
 
+import alchyr.taikoedit.audio.PcmStore;
+import alchyr.taikoedit.audio.Waveform;
+import alchyr.taikoedit.audio.WaveformBuilder;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIDecoder;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIIDecoder;
 import alchyr.taikoedit.audio.mp3.decoders.LayerIIIDecoder;
 import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
 import javazoom.jl.decoder.*;
 
 import java.io.*;
@@ -36,17 +40,12 @@ public class PreloadMp3Bitstream {
 
     public int channels;
     public int sampleRate;
+    public int layer;
+    public int samplesPerFrame; //Per channel
 
     /* * * Bitstream fields * * */
-    private static final int CHANNELSIZE = 2 * 1152; // max. 2 * 1152 samples per frame
-
-    public final List<byte[]> frames = new ArrayList<>();
-    public final List<Float> frameTimes = new ArrayList<>();
-
-    private int currentFrame;
-
-    private float maxSecondsPerFrame;
-    public float length;
+    public PcmStore pcm; //Every frame takes samplesPerFrame samples, so the time of a frame doesn't depend on how much the frames before it decoded to
+    public Waveform waveform; //Built alongside decoding
 
     /**
      * Synchronization control constant for the initial synchronization to the start of a frame.
@@ -186,50 +185,88 @@ public class PreloadMp3Bitstream {
     }
 
 
+    /**
+     * Construct a bitstream that only finds where each frame starts, without decoding anything.
+     *
+     * @param data The whole mp3 file.
+     * @param frameOffsets Receives the position of each frame's header in data.
+     * @param frameSlots Receives the amount of main data in each frame, for finding how far back layer III frames can use data from.
+     */
+    public PreloadMp3Bitstream(byte[] data, IntArray frameOffsets, IntArray frameSlots) {
+        approximateBytes = data.length;
+        ArraySource in = new ArraySource(data, 0);
+        loadID3v2(in);
+        firstframe = true;
+        source = in;
+
+        closeFrame();
+        progress = 0;
+        try {
+            Header h;
+            while ((h = readFrame()) != null) {
+                if (frameOffsets.size == 0)
+                    readFormat(h);
+                //The whole frame has been read, and the next header was only peeked at
+                frameOffsets.add(in.position() - h.framesize - 4);
+                frameSlots.add(h.slots());
+                progress = (float) in.position() / data.length;
+                closeFrame();
+            }
+        } catch (BitstreamException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Construct a bitstream that decodes from partway through the file with {@link #decodeNextFrame(byte[], int)}.
+     *
+     * @param data The whole mp3 file.
+     * @param offset The position of a frame header, as found by {@link #PreloadMp3Bitstream(byte[], IntArray, IntArray)}.
+     */
+    public PreloadMp3Bitstream(byte[] data, int offset) {
+        approximateBytes = data.length;
+        firstframe = offset == 0;
+        source = new ArraySource(data, offset);
+        closeFrame();
+    }
+
     /* * * * * * * * * * * * PRELOADED * * * * * * * * * * * */
 
     private void preload()
     {
         progress = 0;
 
-
-        int totalBytes = 0;
-        int bufferSize = 1;
+        PcmStore.Builder builder = null;
+        WaveformBuilder waveformBuilder = null;
         try
         {
-            if (readFrame() == null) //First header is just data
+            Header h = readFrame(); //The first frame is decoded in the loop below, readFrame doesn't read a new frame until this one is closed
+            if (h == null)
             {
                 throw new GdxRuntimeException("Empty MP3");
             }
-            channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
-            sampleRate = header.getSampleRate();
-            bufferSize = CHANNELSIZE * channels;
-
-            maxSecondsPerFrame = (float)bufferSize / (2 * channels * sampleRate); //2 is number of bytes per sample
+            readFormat(h);
+            int frameBytes = samplesPerFrame * channels * 2;
 
             OutputBuffer outputBuffer = new OutputBuffer(channels, false);
             setOutputBuffer(outputBuffer);
 
-            frameTimes.add(0.0f); //The first frame STARTS at 0.
+            //About 11 times the size of a 128 kbps file
+            builder = new PcmStore.Builder(channels, sampleRate, approximateBytes * 11);
+            waveformBuilder = new WaveformBuilder(channels, sampleRate);
 
-            Header h = header;
-            while (h != null)
+            byte[] frame = new byte[frameBytes];
+            while ((h = readFrame()) != null) //Reads frame using header. Null means stream is done.
             {
-                if ((h = readFrame()) == null) //Reads frame using header
-                {
-                    //frame is null, means stream is done.
-                    continue;
-                }
                 decodeFrame(); //Decodes frame into output buffer
 
-                int length = outputBuffer.reset();
-                totalBytes += length;
-                progress = totalBytes / (approximateBytes * 7.5f);
-                byte[] buffer = new byte[bufferSize];
-                System.arraycopy(outputBuffer.getBuffer(), 0, buffer, 0, length);
+                int length = Math.min(outputBuffer.reset(), frameBytes);
+                System.arraycopy(outputBuffer.getBuffer(), 0, frame, 0, length);
+                Arrays.fill(frame, length, frameBytes, (byte) 0);
 
-                frames.add(buffer);
-                frameTimes.add(maxSecondsPerFrame * (float)totalBytes / bufferSize); //This is the start time of the NEXT frame. (the end time of the current frame)
+                builder.write(frame, 0, frameBytes);
+                waveformBuilder.accept(frame, frameBytes);
+                progress = builder.size() / (approximateBytes * 7.5f);
 
                 closeFrame(); //Close frame to prepare to read next frame
             }
@@ -237,55 +274,37 @@ public class PreloadMp3Bitstream {
             e.printStackTrace();
         }
 
-        //Calculate total length using total number of bytes
-        length = maxSecondsPerFrame * (float)totalBytes / bufferSize;
-    }
-
-    public byte[] getNextFrame()
-    {
-        if (currentFrame < frames.size())
-            return frames.get(currentFrame++);
-        return null;
-    }
-    public boolean hasNextFrame()
-    {
-        return currentFrame < frames.size();
+        if (builder != null) {
+            pcm = builder.finish();
+            waveform = waveformBuilder.finish();
+        }
     }
 
-    public void setFrame(int frame)
-    {
-        if (frame > frames.size())
-            frame = frames.size();
-        currentFrame = frame;
+    private void readFormat(Header h) {
+        channels = h.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+        sampleRate = h.getSampleRate();
+        layer = h.layer();
+        samplesPerFrame = layer == 1 ? 384 : (layer == 3 && h.version() != Header.MPEG1 ? 576 : 1152);
     }
 
-    public float seekTime(float time)
-    {
-        int index = Collections.binarySearch(frameTimes, time);
-
-        if (index >= 0)
-        {
-            currentFrame = index; //Precise match (Rare)
-        }
-        else
-        {
-            currentFrame = -index - 1; //No precise match (expected result)
-        }
-
-        if (currentFrame < frameTimes.size()) //move back to correct frame
-        {
-            while (currentFrame > 0 && frameTimes.get(currentFrame) > time)
-            {
-                --currentFrame;
-            }
-            return frameTimes.get(currentFrame);
-        }
-        return length; //seeked past end of song, return end of song
-    }
+    /**
+     * Decodes the next frame into out at offset, for bitstreams made to decode from partway through the file.
+     *
+     * @return The number of bytes decoded, which is 0 if the frame was skipped, or -1 at the end of the stream.
+     */
+    public int decodeNextFrame(byte[] out, int offset) throws BitstreamException, DecoderException {
+        Header h = readFrame();
+        if (h == null)
+            return -1;
+
+        if (output == null)
+            setOutputBuffer(new OutputBuffer(h.mode() == Header.SINGLE_CHANNEL ? 1 : 2, false));
+        decodeFrame();
+        closeFrame();
 
-    public void clear()
-    {
-        frames.clear();
+        int length = Math.min(output.reset(), out.length - offset);
+        System.arraycopy(output.getBuffer(), 0, out, offset, length);
+        return length;
     }
 
     /* * * * * * Decoder * * * * * */
@@ -957,6 +976,51 @@ public class PreloadMp3Bitstream {
         return totalBytesRead;
     }
 
+    //Reads a file that's already in memory, and knows the position it's read up to.
+    private static class ArraySource extends PushbackInputStream {
+        private final Bytes bytes;
+
+        ArraySource(byte[] data, int offset) {
+            this(new Bytes(data, offset));
+        }
+
+        private ArraySource(Bytes bytes) {
+            super(bytes, BUFFER_INT_SIZE * 4);
+            this.bytes = bytes;
+        }
+
+        //Bytes that were unread are still waiting to be read
+        int position() {
+            return bytes.position() - (buf.length - pos);
+        }
+
+        //The pushback buffer doesn't support mark, which loadID3v2 uses before anything is unread
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            bytes.mark(readlimit);
+        }
+
+        @Override
+        public synchronized void reset() {
+            bytes.reset();
+        }
+    }
+
+    private static class Bytes extends ByteArrayInputStream {
+        Bytes(byte[] data, int offset) {
+            super(data, offset, data.length - offset);
+        }
+
+        int position() {
+            return pos;
+        }
+    }
+
     /**
      * The first bitstream error code.
      */
@@ -1,12 +1,11 @@
 package alchyr.taikoedit.audio.mp3;
 
 import alchyr.taikoedit.audio.CustomAudio;
+import alchyr.taikoedit.audio.StreamedPcm;
+import alchyr.taikoedit.management.SettingsMaster;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import javazoom.jl.decoder.OutputBuffer;
-
-import java.util.Iterator;
 
 
 //Changes from original:
@@ -16,7 +15,7 @@ import java.util.Iterator;
 //Make a fancier ByteStream (used in read method) to support seek operations? done
 
 public class PreloadedMp3 extends CustomAudio {
-    private PreloadMp3Bitstream bitstream;
+    private volatile StreamedPcm decoding = null; //Set while decoding in parallel
 
     public PreloadedMp3 (OpenALLwjgl3Audio audio, FileHandle file) {
         super(audio, file);
@@ -41,7 +40,22 @@ public class PreloadedMp3 extends CustomAudio {
     public void preload() {
         try
         {
-            bitstream = new PreloadMp3Bitstream(file.read(), file.length());
+            if (SettingsMaster.parallelDecode) {
+                //Find the frames first, then decode runs of them on every core
+                StreamedPcm frames = StreamedMp3.open(file.readBytes());
+                if (frames != null) {
+                    decoding = frames;
+                    pcm = frames.decodeAll();
+                    decodedWaveform = waveformOf(pcm);
+                    decoding = null;
+                    setup(pcm.channels, pcm.sampleRate);
+                    return;
+                }
+            }
+
+            PreloadMp3Bitstream bitstream = new PreloadMp3Bitstream(file.read(), file.length());
+            pcm = bitstream.pcm;
+            decodedWaveform = bitstream.waveform;
             setup(bitstream.channels, bitstream.sampleRate);
         } catch (Exception e) {
             this.audio = null;
@@ -50,58 +64,13 @@ public class PreloadedMp3 extends CustomAudio {
     }
 
     @Override
-    public float loadProgress() {
-        return PreloadMp3Bitstream.progress;
-    }
-
-    @Override
-    public float getLength() {
-        return bitstream == null ? 0 : bitstream.length;
-    }
-
-    @Override
-    protected float seekTime(float pos) {
-        return bitstream.seekTime(pos);
+    protected StreamedPcm openStream() {
+        return StreamedMp3.open(file.readBytes());
     }
 
     @Override
-    public int read(byte[] buffer) {
-        try {
-            int totalLength = 0;
-            int minRequiredLength = buffer.length - OutputBuffer.BUFFERSIZE * 2;
-            while (totalLength <= minRequiredLength) {
-                byte[] frame = bitstream.getNextFrame();
-                if (frame == null) break;
-
-                System.arraycopy(frame, 0, buffer, totalLength, frame.length);
-                totalLength += frame.length;
-            }
-            /*if (totalLength == 0)
-            {
-                editorLogger.info("Reached 0 length buffer.");
-            }*/
-            return totalLength;
-        } catch (Throwable ex) {
-            reset();
-            throw new GdxRuntimeException("Error reading audio data.", ex);
-        }
-    }
-
-    @Override
-    public void reset () {
-        if (bitstream == null) return;
-
-        bitstream.setFrame(0);
-    }
-
-    public void dispose () {
-        super.dispose();
-        if (bitstream != null)
-            bitstream.clear();
-    }
-
-    @Override
-    protected Iterator<byte[]> audioData() {
-        return bitstream.frames.iterator();
+    public float loadProgress() {
+        StreamedPcm frames = decoding;
+        return frames == null ? PreloadMp3Bitstream.progress : frames.decodeProgress();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package alchyr.taikoedit.audio.mp3;
+
+import alchyr.taikoedit.audio.StreamedPcm;
+import com.badlogic.gdx.utils.IntArray;
+
+//Decodes an mp3 a block of frames at a time, for StreamedPcm.
+//Opening only finds where each frame starts. Every frame takes up the same amount of decoded audio, so the position of a frame
+//in the decoded audio doesn't depend on decoding the ones before it.
+//
+//Decoding from partway through needs a few frames before it to be decoded first. Layer III frames can use up to 511 bytes of data
+//from the frames before them (the bit reservoir), and each frame overlaps with the one before it, so the frame before the block is
+//decoded with enough data before it, then the frames of the block decode the same as they would from the start of the song.
+public class StreamedMp3 implements StreamedPcm.Decoder {
+    private static final int RESERVOIR = 511; //Largest amount of data a layer III frame can use from earlier frames
+
+    private final byte[] data;
+    private final int[] frameOffsets, frameSlots;
+    private final int layer, blockFrames, frameBytes;
+
+    private PreloadMp3Bitstream bitstream = null;
+    private int nextFrame = -1; //Frame bitstream will decode next
+    private byte[] skipped = null;
+
+    private StreamedMp3(byte[] data, int[] frameOffsets, int[] frameSlots, int layer, int blockFrames, int frameBytes) {
+        this.data = data;
+        this.frameOffsets = frameOffsets;
+        this.frameSlots = frameSlots;
+        this.layer = layer;
+        this.blockFrames = blockFrames;
+        this.frameBytes = frameBytes;
+    }
+
+    //null if there are no frames.
+    public static StreamedPcm open(byte[] data) {
+        IntArray offsets = new IntArray(), slots = new IntArray();
+        PreloadMp3Bitstream index = new PreloadMp3Bitstream(data, offsets, slots);
+        if (offsets.size == 0)
+            return null;
+
+        int frameBytes = index.samplesPerFrame * index.channels * 2;
+        int blockFrames = Math.max(1, Math.round((float) index.sampleRate / index.samplesPerFrame)); //About a second
+        int blocks = (offsets.size + blockFrames - 1) / blockFrames;
+
+        long[] blockStarts = new long[blocks + 1];
+        for (int i = 0; i < blocks; ++i)
+            blockStarts[i] = (long) i * blockFrames * frameBytes;
+        blockStarts[blocks] = (long) offsets.size * frameBytes;
+
+        int[] frameOffsets = offsets.toArray(), frameSlots = slots.toArray();
+        int layer = index.layer;
+        PreloadMp3Bitstream.progress = 1;
+        return new StreamedPcm(index.channels, index.sampleRate, blockStarts,
+                ()->new StreamedMp3(data, frameOffsets, frameSlots, layer, blockFrames, frameBytes));
+    }
+
+    @Override
+    public byte[] decode(int block) throws Exception {
+        int first = block * blockFrames, end = Math.min(frameOffsets.length, first + blockFrames);
+        byte[] out = new byte[(end - first) * frameBytes];
+
+        try {
+            if (bitstream == null || nextFrame != first) {
+                //Not continuing from the last block
+                int start = warmUpStart(first);
+                bitstream = new PreloadMp3Bitstream(data, frameOffsets[start]);
+                if (skipped == null)
+                    skipped = new byte[frameBytes];
+                for (int frame = start; frame < first; ++frame)
+                    bitstream.decodeNextFrame(skipped, 0);
+            }
+
+            for (int frame = first; frame < end; ++frame) {
+                if (bitstream.decodeNextFrame(out, (frame - first) * frameBytes) < 0)
+                    break; //Rest of the block stays silent
+            }
+            nextFrame = end;
+        }
+        catch (Exception e) {
+            bitstream = null;
+            throw e;
+        }
+        return out;
+    }
+
+    //First frame to decode to be able to decode frame correctly.
+    private int warmUpStart(int frame) {
+        if (frame == 0)
+            return 0;
+        if (layer != 3)
+            return frame - 1;
+
+        //frame - 1 has to decode correctly, so everything it could use from the reservoir has to be read before it
+        int start = Math.max(0, frame - 2), reservoir = frameSlots[start];
+        while (start > 0 && reservoir < RESERVOIR)
+            reservoir += frameSlots[--start];
+        return start;
+    }
+}
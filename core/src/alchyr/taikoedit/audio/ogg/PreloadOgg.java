@@ -3,17 +3,12 @@ package alchyr.taikoedit.audio.ogg;
 //Ogg Vorbis.
 
 import alchyr.taikoedit.audio.CustomAudio;
+import alchyr.taikoedit.audio.StreamedPcm;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.google.common.collect.ForwardingIterator;
-
-import java.util.Iterator;
 
 public class PreloadOgg extends CustomAudio {
-    private PreloadOggStream data;
-    private PreloadOggStream previousInput;
-
     public PreloadOgg(OpenALLwjgl3Audio audio, FileHandle file) {
         super(audio, file);
 
@@ -36,7 +31,9 @@ public class PreloadOgg extends CustomAudio {
     public void preload() {
         try
         {
-            data = new PreloadOggStream(file.read());
+            PreloadOggStream data = new PreloadOggStream(file.read());
+            pcm = data.pcm;
+            decodedWaveform = data.waveform;
             setup(data.getChannels(), data.getSampleRate());
         } catch (Exception e) {
             throw new GdxRuntimeException("error while preloading ogg", e);
@@ -44,46 +41,12 @@ public class PreloadOgg extends CustomAudio {
     }
 
     @Override
-    public float getLength() {
-        return data.getLength();
-    }
-
-    @Override
-    protected float seekTime(float pos) {
-        return data.seekTime(pos);
+    protected StreamedPcm openStream() {
+        return StreamedOgg.open(file.readBytes());
     }
 
     @Override
     public float loadProgress() {
         return PreloadOggStream.progress;
     }
-
-    public int read(byte[] buffer) {
-        if (data == null) {
-            data = new PreloadOggStream(file.read(), previousInput);
-            setup(data.getChannels(), data.getSampleRate());
-            previousInput = null; // release this reference
-        }
-        return data.read(buffer);
-    }
-
-    @Override
-    protected Iterator<byte[]> audioData() {
-        if (data == null) {
-            data = new PreloadOggStream(file.read(), previousInput);
-            setup(data.getChannels(), data.getSampleRate());
-            previousInput = null; // release this reference
-        }
-        Iterator<byte[]> itr = data.segmentedData.iterator();
-        return new ForwardingIterator<byte[]>() {
-            @Override
-            protected Iterator<byte[]> delegate() {
-                return itr;
-            }
-        };
-    }
-
-    public void reset() {
-        data.restart();
-    }
 }
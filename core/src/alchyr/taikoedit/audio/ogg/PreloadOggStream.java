@@ -1,5 +1,8 @@
 package alchyr.taikoedit.audio.ogg;
 
+import alchyr.taikoedit.audio.PcmStore;
+import alchyr.taikoedit.audio.Waveform;
+import alchyr.taikoedit.audio.WaveformBuilder;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.StreamUtils;
@@ -17,10 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
 
-public class PreloadOggStream extends InputStream {
+public class PreloadOggStream {
     private final static int BUFFER_SIZE = 512;
 
     /** The conversion buffer size */
@@ -73,12 +74,8 @@ public class PreloadOggStream extends InputStream {
     public static float progress = 0;
 
     //post preload data
-    private float length = 0;
-    private int totalUncompressedBytes = 0;
-    public List<byte[]> segmentedData;
-    private float secondsPerSegment;
-    private int currentSegment = 0;
-    private int dataIndex = 0;
+    public PcmStore pcm;
+    public Waveform waveform; //Built alongside decoding
 
 
 
@@ -108,9 +105,6 @@ public class PreloadOggStream extends InputStream {
         try {
             total = input.available();
             preload();
-            secondsPerSegment = (float) SEGMENT_SIZE / (2.0f * oggInfo.channels * oggInfo.rate);
-            //Will be used to calculate correct index based on a given position
-            length = (float) (secondsPerSegment * ((double) totalUncompressedBytes / SEGMENT_SIZE));
         } catch (IOException ex) {
             throw new GdxRuntimeException(ex);
         }
@@ -124,9 +118,6 @@ public class PreloadOggStream extends InputStream {
     public int getTotalBytes() {
         return total;
     }
-    //playback duration
-    public float getLength() { return length; }
-
     public int getChannels() {
         return oggInfo.channels;
     }
@@ -145,14 +136,14 @@ public class PreloadOggStream extends InputStream {
             readPCM(); //init (reading first 3 header packets)
 
             //From here, each read() call returns a single byte in int form.
-            segmentedData = new ArrayList<>();
-            byte[] temp;
+            //Decoded audio is about 12 times the size of a 128 kbps file
+            PcmStore.Builder builder = new PcmStore.Builder(oggInfo.channels, oggInfo.rate, total * 12L);
+            WaveformBuilder waveformBuilder = new WaveformBuilder(oggInfo.channels, oggInfo.rate);
+            byte[] temp = new byte[SEGMENT_SIZE];
             int n = 0, value;
-            totalUncompressedBytes = 0;
 
             while (n >= 0) {
                 progress = 1.0f - (input.available() / (float)this.total);
-                temp = new byte[SEGMENT_SIZE];
 
                 n = SEGMENT_SIZE;
                 for (int i = 0; i < SEGMENT_SIZE; ++i) {
@@ -184,16 +175,13 @@ public class PreloadOggStream extends InputStream {
                     }
                 }
 
-                totalUncompressedBytes += n;
-
-                if (n == SEGMENT_SIZE) {
-                    segmentedData.add(temp);
-                }
-                else if (n > 0) {
-                    segmentedData.add(new byte[n]);
-                    System.arraycopy(temp, 0, segmentedData.get(segmentedData.size() - 1), 0, n);
+                if (n > 0) {
+                    builder.write(temp, 0, n);
+                    waveformBuilder.accept(temp, n);
                 }
             }
+            pcm = builder.finish();
+            waveform = waveformBuilder.finish();
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -487,91 +475,6 @@ public class PreloadOggStream extends InputStream {
 
 
 
-    //Read methods
-    @Override
-    public boolean markSupported() {
-        return true;
-    }
-    private int markedSegment = 0;
-    private int markedIndex = 0;
-    @Override
-    public synchronized void mark(int readlimit) {
-        markedSegment = currentSegment;
-        markedIndex = dataIndex;
-    }
-    @Override
-    public synchronized void reset() throws IOException {
-        currentSegment = markedSegment;
-        dataIndex = markedIndex;
-    }
-
-    public void restart() {
-        currentSegment = 0;
-        dataIndex = 0;
-    }
-
-    public float seekTime(float pos) {
-        if (pos < 0) {
-            restart();
-            return 0;
-        }
-
-        currentSegment = (int) (pos / secondsPerSegment);
-        dataIndex = 0; //(int) ((pos - secondsPerSegment * currentSegment) * SEGMENT_SIZE) % 2;
-
-        if (currentSegment >= segmentedData.size()) {
-            currentSegment = segmentedData.size();
-            return length; //seeked past end of song, return end of song
-        }
-
-        /*if (dataIndex > segmentedData.get(currentSegment).length) {
-            dataIndex = segmentedData.get(currentSegment).length - 1;
-        }*/
-
-        return secondsPerSegment * (currentSegment + (float)dataIndex / SEGMENT_SIZE);
-    }
-
-    public int read() {
-        if (currentSegment >= segmentedData.size()) {
-            return -1;
-        }
-        else {
-            if (dataIndex >= segmentedData.get(currentSegment).length) {
-                dataIndex = 0;
-                ++currentSegment;
-                if (currentSegment >= segmentedData.size()) {
-                    return -1;
-                }
-            }
-            return segmentedData.get(currentSegment)[dataIndex++] + 256;
-        }
-    }
-
-    public boolean atEnd() {
-        return currentSegment >= segmentedData.size();
-    }
-
-    public int read(byte[] b, int off, int len) {
-        for (int i = 0; i < len; ++i) {
-            int value = read();
-            if (value >= 0) {
-                b[i] = (byte)value;
-            } else {
-                if (i == 0) {
-                    return -1; //nothing read, end of stream
-                } else {
-                    return i;
-                }
-            }
-        }
-
-        return len;
-    }
-
-    public int read(byte[] b) {
-        return read(b, 0, b.length);
-    }
-
     public void close() {
         StreamUtils.closeQuietly(input);
     }
@@ -0,0 +1,271 @@
+package alchyr.taikoedit.audio.ogg;
+
+import alchyr.taikoedit.audio.StreamedPcm;
+import com.badlogic.gdx.utils.ByteArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.jcraft.jogg.Packet;
+import com.jcraft.jogg.Page;
+import com.jcraft.jogg.StreamState;
+import com.jcraft.jorbis.Block;
+import com.jcraft.jorbis.Comment;
+import com.jcraft.jorbis.DspState;
+import com.jcraft.jorbis.Info;
+
+import java.nio.ByteOrder;
+
+//Decodes an ogg a block of pages at a time, for StreamedPcm.
+//Opening only reads the page headers. The granule position of a page is the sample the audio reaches at the end of it,
+//so the position of each block in the decoded audio is known without decoding the pages before it.
+//
+//Each packet overlaps with the one before it, so decoding from partway through starts with the two pages before the block,
+//which makes the pages of the block decode the same as they would from the start of the song.
+public class StreamedOgg implements StreamedPcm.Decoder {
+    private static final int WARM_UP_PAGES = 2;
+
+    private final byte[] data;
+    private final int[] pageOffsets;
+    private final int[] blockPages; //First page of each block, then the page after the last
+
+    private final Info info = new Info();
+    private final Comment comment = new Comment();
+    private final StreamState streamState = new StreamState();
+    private final Page page = new Page();
+    private final Packet packet = new Packet();
+    private DspState dspState = null;
+    private Block vorbisBlock = null;
+    private final int audioStart; //First page after the headers
+
+    private final float[][][] pcm = new float[1][][];
+    private final int[] pcmIndex;
+    private final boolean bigEndian = ByteOrder.nativeOrder().equals(ByteOrder.BIG_ENDIAN);
+    private final ByteArray output = new ByteArray();
+
+    private int nextPage = -1; //Page that will be decoded next
+
+    private StreamedOgg(byte[] data, int[] pageOffsets, int[] blockPages) {
+        this.data = data;
+        this.pageOffsets = pageOffsets;
+        this.blockPages = blockPages;
+
+        //Header packets
+        streamState.init(serial(data, pageOffsets[0]));
+        info.init();
+        comment.init();
+        int headers = 0, p = 0;
+        while (headers < 3) {
+            if (p >= pageOffsets.length)
+                throw new GdxRuntimeException("End of file before finding all Vorbis headers.");
+            streamState.pagein(page(p++));
+            int result;
+            while (headers < 3 && (result = streamState.packetout(packet)) != 0) {
+                if (result == -1 || info.synthesis_headerin(comment, packet) < 0)
+                    throw new GdxRuntimeException("Ogg bitstream does not contain Vorbis audio data.");
+                ++headers;
+            }
+        }
+        audioStart = p; //Audio always starts on a new page
+        pcmIndex = new int[info.channels];
+    }
+
+    //null if the file is a chained ogg (more than one stream after another) or has no audio.
+    public static StreamedPcm open(byte[] data) {
+        IntArray offsets = new IntArray();
+        LongArray granules = new LongArray();
+        if (!index(data, offsets, granules))
+            return null;
+
+        int[] pageOffsets = offsets.toArray();
+        StreamedOgg first = new StreamedOgg(data, pageOffsets, null);
+        if (first.audioStart >= pageOffsets.length)
+            return null;
+        int channels = first.info.channels, rate = first.info.rate;
+
+        //Decoding can output a different amount than the granule positions say at the start, but it's the same for the whole song
+        long alignment = first.alignment(granules);
+
+        IntArray blockPages = new IntArray();
+        LongArray blockStarts = new LongArray();
+        blockPages.add(first.audioStart);
+        blockStarts.add(0);
+        long end = 0;
+        for (int p = first.audioStart + 1; p < pageOffsets.length; ++p) {
+            long granule = granules.get(p - 1);
+            if (granule < 0)
+                continue; //No packet ends on that page
+            end = granule + alignment;
+            if (end - blockStarts.peek() >= rate) { //About a second
+                blockPages.add(p);
+                blockStarts.add(end);
+            }
+        }
+        if (granules.peek() >= 0)
+            end = granules.peek() + alignment;
+
+        if (end > blockStarts.peek()) {
+            blockPages.add(pageOffsets.length);
+            blockStarts.add(end);
+        }
+        else {
+            blockPages.set(blockPages.size - 1, pageOffsets.length); //Nothing after the last boundary, merge it into the block before
+        }
+        if (blockPages.size < 2)
+            return null;
+
+        long[] starts = blockStarts.toArray();
+        for (int i = 0; i < starts.length; ++i)
+            starts[i] *= 2 * channels;
+        int[] pages = blockPages.toArray();
+
+        PreloadOggStream.progress = 1;
+        return new StreamedPcm(channels, rate, starts, ()->new StreamedOgg(data, pageOffsets, pages));
+    }
+
+    @Override
+    public byte[] decode(int block) {
+        int first = blockPages[block], end = blockPages[block + 1];
+
+        if (dspState == null || nextPage != first) {
+            restart();
+            for (int p = Math.max(audioStart, first - WARM_UP_PAGES); p < first; ++p)
+                decodePage(p, false);
+        }
+
+        output.clear();
+        for (int p = first; p < end; ++p)
+            decodePage(p, true);
+        nextPage = end;
+        return output.toArray();
+    }
+
+    //Finds the start and granule position of each page. False if there is more than one stream.
+    private static boolean index(byte[] data, IntArray offsets, LongArray granules) {
+        int position = 0, serial = 0;
+        while ((position = findPage(data, position)) >= 0) {
+            int segments = data[position + 26] & 0xFF, headerLength = 27 + segments;
+            if (position + headerLength > data.length)
+                break;
+            int length = headerLength;
+            for (int i = 0; i < segments; ++i)
+                length += data[position + 27 + i] & 0xFF;
+            if (position + length > data.length)
+                break; //Cut off
+
+            if (offsets.size == 0)
+                serial = serial(data, position);
+            else if (serial(data, position) != serial)
+                return false;
+
+            long granule = 0;
+            for (int i = 7; i >= 0; --i)
+                granule = granule << 8 | (data[position + 6 + i] & 0xFF);
+            offsets.add(position);
+            granules.add(granule);
+            PreloadOggStream.progress = (float) position / data.length;
+            position += length;
+        }
+        return offsets.size > 0;
+    }
+
+    //Position of the next page starting from position, -1 if there is none.
+    private static int findPage(byte[] data, int position) {
+        for (; position + 27 <= data.length; ++position) {
+            if (data[position] == 'O' && data[position + 1] == 'g' && data[position + 2] == 'g' && data[position + 3] == 'S')
+                return position;
+        }
+        return -1;
+    }
+
+    private static int serial(byte[] data, int position) {
+        return (data[position + 14] & 0xFF) | (data[position + 15] & 0xFF) << 8 | (data[position + 16] & 0xFF) << 16 | (data[position + 17] & 0xFF) << 24;
+    }
+
+    //Samples decoded up to the first page with a granule position, minus that position.
+    private long alignment(LongArray granules) {
+        restart();
+        long samples = 0;
+        for (int p = audioStart; p < pageOffsets.length; ++p) {
+            samples += decodePage(p, false);
+            if (granules.get(p) >= 0)
+                return samples - granules.get(p);
+        }
+        return 0;
+    }
+
+    private Page page(int p) {
+        int offset = pageOffsets[p], headerLength = 27 + (data[offset + 26] & 0xFF), bodyLength = 0;
+        for (int i = 27; i < headerLength; ++i)
+            bodyLength += data[offset + i] & 0xFF;
+
+        page.header_base = data;
+        page.header = offset;
+        page.header_len = headerLength;
+        page.body_base = data;
+        page.body = offset + headerLength;
+        page.body_len = bodyLength;
+        return page;
+    }
+
+    private void restart() {
+        streamState.reset();
+        dspState = new DspState();
+        dspState.synthesis_init(info);
+        vorbisBlock = new Block(dspState);
+        vorbisBlock.init(dspState);
+    }
+
+    //Returns the number of samples decoded, adding them to output if keep is true.
+    private int decodePage(int p, boolean keep) {
+        int total = 0;
+        streamState.pagein(page(p));
+        int result;
+        while ((result = streamState.packetout(packet)) != 0) {
+            if (result == -1)
+                continue; //Missing data, the next packet can still be decoded
+
+            if (vorbisBlock.synthesis(packet) == 0)
+                dspState.synthesis_blockin(vorbisBlock);
+
+            int samples;
+            while ((samples = dspState.synthesis_pcmout(pcm, pcmIndex)) > 0) {
+                if (keep)
+                    convert(pcm[0], samples);
+                total += samples;
+                dspState.synthesis_read(samples);
+            }
+        }
+        return total;
+    }
+
+    //16 bit host order, interleaved, the same as PreloadOggStream
+    private void convert(float[][] pcm, int samples) {
+        int channels = info.channels, start = output.size;
+        output.ensureCapacity(samples * channels * 2);
+        output.size += samples * channels * 2;
+        byte[] bytes = output.items;
+
+        for (int i = 0; i < channels; ++i) {
+            int ptr = start + i * 2;
+            int mono = pcmIndex[i];
+            for (int j = 0; j < samples; ++j) {
+                int val = (int) (pcm[i][mono + j] * 32767.);
+                if (val > 32767) {
+                    val = 32767;
+                }
+                if (val < -32768) {
+                    val = -32768;
+                }
+
+                if (bigEndian) {
+                    bytes[ptr] = (byte) (val >>> 8);
+                    bytes[ptr + 1] = (byte) (val);
+                } else {
+                    bytes[ptr] = (byte) (val);
+                    bytes[ptr + 1] = (byte) (val >>> 8);
+                }
+                ptr += 2 * channels;
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import alchyr.taikoedit.management.LocalizationMaster;
 import alchyr.taikoedit.management.MapMaster;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.core.input.BindingGroup;
+import alchyr.taikoedit.editor.maps.BeatmapSaver;
+import alchyr.taikoedit.editor.maps.EditJournal;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.MapInfo;
 import alchyr.taikoedit.editor.maps.Mapset;
@@ -128,6 +130,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
 
     /* * * * * * Beatmap Stuff * * * * * */
     private final ArrayList<EditorBeatmap> activeMaps;
+    private final BeatmapSaver saver;
 
     private final Mapset set;
     private final MapInfo initial;
@@ -159,6 +162,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
 
         mapViews = new HashMap<>();
         activeMaps = new ArrayList<>();
+        saver = new BeatmapSaver(activeMaps);
         addLater = new ArrayList<>();
 
         divisorOptions = new DivisorOptions();
@@ -432,6 +436,9 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         }
 
         textOverlay.update(elapsed);
+        saver.update(elapsed);
+        for (EditorBeatmap map : activeMaps)
+            map.updateJournal();
         tools.update(timelineY, minimumVisibleY, activeMaps, mapViews, elapsed);
 
         moreOptionsButton.update(elapsed);
@@ -594,16 +601,18 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
 
             TaikoEditor.addLayer(new ConfirmationLayer(unsaved.toString(), "Yes", "No", true)
                     .onConfirm(()->{
-                        boolean success = true;
+                        int[] remaining = new int[] { dirtyMaps.size() };
+                        boolean[] success = new boolean[] { true };
                         for (EditorBeatmap m : dirtyMaps) {
-                            if (!m.save()) {
-                                success = false;
-                                textOverlay.setText("Failed to save!", 2.0f);
-                            }
-                        }
-
-                        if (success) {
-                            returnToSrc();
+                            saver.save(m, (saved)->{
+                                if (!saved) {
+                                    success[0] = false;
+                                    textOverlay.setText("Failed to save!", 2.0f);
+                                }
+                                if (--remaining[0] == 0 && success[0]) {
+                                    returnToSrc();
+                                }
+                            });
                         }
                     })
                     .onDeny(this::returnToSrc));
@@ -614,6 +623,9 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     private void returnToSrc() {
         if (!closed) {
             SettingsMaster.saveMapSettings(this, set);
+            saver.dispose();
+            for (EditorBeatmap map : activeMaps)
+                map.discardJournal();
             closed = true;
             activeEditor = null;
             music.setOffset(0);
@@ -681,7 +693,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
                 continue;
             }
 
-            EditorBeatmap newMap = new EditorBeatmap(set, toOpen);
+            EditorBeatmap newMap = new EditorBeatmap(set, toOpen, true);
             addMap(newMap);
 
             for (int i = 1; i < mapInfo.length; ++i) {
@@ -748,7 +760,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     }
 
     private void prepSingleDiff(MapInfo info) {
-        EditorBeatmap newMap = new EditorBeatmap(set, info);
+        EditorBeatmap newMap = new EditorBeatmap(set, info, true);
         addMap(newMap, 0);
 
         addObjectView(newMap, false);
@@ -764,7 +776,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         }
 
         try {
-            EditorBeatmap newMap = new EditorBeatmap(set, info);
+            EditorBeatmap newMap = new EditorBeatmap(set, info, true);
             addMap(newMap);
             return newMap;
         }
@@ -802,6 +814,10 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         if (!newMap.autoBreaks && textOverlay != null) {
             textOverlay.setText("Map contains invalid breaks; automatic break control disabled.", 2.5f);
         }
+        if (newMap.wasRecovered() && textOverlay != null) {
+            textOverlay.setText("Recovered unsaved changes to \"" + newMap.getName() + "\".", 2.5f);
+        }
+        newMap.startJournal();
     }
 
     //View control
@@ -842,8 +858,8 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         {
             if (container.getViews().contains(toRemove) && container.getViews().size() == 0 && toRemove.map.dirty) {
                 TaikoEditor.addLayer(new ConfirmationLayer("Save changes to difficulty [" + toRemove.map.getName() + "]?", "Yes", "No", true)
-                        .onConfirm(()->{
-                            if (toRemove.map.save()) {
+                        .onConfirm(()->saver.save(toRemove.map, (saved)->{
+                            if (saved) {
                                 container.removeView(toRemove);
 
                                 if (container.isEmpty()) {
@@ -858,7 +874,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
                             else {
                                 textOverlay.setText("Failed to save!", 2.0f);
                             }
-                        })
+                        }))
                         .onDeny(()->{
                             container.removeView(toRemove);
 
@@ -965,42 +981,52 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     }
 
     //Menu option methods
-    public boolean savePrimary() {
+    public void savePrimary() {
         if (primaryView != null) {
-            if (primaryView.map.save()) {
-                textOverlay.setText("Difficulty \"" + primaryView.map.getName() + "\" saved!", 0.5f);
-                return true;
-            }
-            else {
-                textOverlay.setText("Failed to save!", 2.0f);
-            }
+            EditorBeatmap map = primaryView.map;
+            saver.save(map, (saved)->{
+                if (saved) {
+                    textOverlay.setText("Difficulty \"" + map.getName() + "\" saved!", 0.5f);
+                }
+                else {
+                    textOverlay.setText("Failed to save!", 2.0f);
+                }
+            });
         }
-        return false;
-    }
-    public boolean saveAll() {
-        return saveAll(true);
     }
-    public boolean saveAll(boolean withOverlay) {
-        int failures = 0;
+    public void saveAll() {
+        List<EditorBeatmap> saving = new ArrayList<>(activeMaps);
+        if (saving.isEmpty())
+            return;
+
+        int[] remaining = new int[] { saving.size() };
         StringBuilder failed = new StringBuilder();
-        for (EditorBeatmap m : activeMaps) {
-            if (!m.save()) {
-                failed.append(" [").append(m.getName()).append("]");
-                ++failures;
-            }
-        }
-        if (withOverlay) {
-            if (failures == 0) {
-                textOverlay.setText("Saved all.", 2.0f);
-            }
-            else if (failures == 1) {
-                textOverlay.setText("Failed to save difficulty" + failed + ".", 2.0f);
-            }
-            else {
-                textOverlay.setText("Failed to save difficulties" + failed + ".", 2.0f);
-            }
+        int[] failures = new int[] { 0 };
+        for (EditorBeatmap m : saving) {
+            saver.save(m, (saved)->{
+                if (!saved) {
+                    failed.append(" [").append(m.getName()).append("]");
+                    ++failures[0];
+                }
+                if (--remaining[0] == 0) {
+                    if (failures[0] == 0) {
+                        textOverlay.setText("Saved all.", 2.0f);
+                    }
+                    else if (failures[0] == 1) {
+                        textOverlay.setText("Failed to save difficulty" + failed + ".", 2.0f);
+                    }
+                    else {
+                        textOverlay.setText("Failed to save difficulties" + failed + ".", 2.0f);
+                    }
+                }
+            });
         }
-        return failures == 0;
+    }
+    //Only for when the update thread has stopped. Writes out changes not yet in the journals.
+    public boolean flushJournals() {
+        for (EditorBeatmap map : activeMaps)
+            map.updateJournal();
+        return EditJournal.flushAll();
     }
     private void openAll() {
         List<MapInfo> toOpen = new ArrayList<>(set.getMaps());
@@ -1013,7 +1039,7 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
         });
 
         for (MapInfo info : toOpen) {
-            EditorBeatmap newMap = new EditorBeatmap(set, info);
+            EditorBeatmap newMap = new EditorBeatmap(set, info, true);
             addMap(newMap);
 
             addObjectView(newMap, true);
@@ -1041,6 +1067,8 @@ public class EditorLayer extends LoadedLayer implements InputLayer, FileDropHand
     }
 
     private void disposeMap(EditorBeatmap map) {
+        saver.discard(map);
+        map.discardJournal();
         mapViews.remove(map);
         activeMaps.remove(map);
         if (universalDivisor != null && universalDivisor.usesMap(map)) {
@@ -55,6 +55,7 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
 
     private MapSelect mapSelect;
     private boolean updateMaps = false;
+    private static final int SEARCH_RESULT_LIMIT = 1000; //Only the best matches are shown
 
     private boolean useOsuBackground = false;
     private Texture osuBackground = null;
@@ -201,7 +202,15 @@ public class MenuLayer extends LoadedLayer implements InputLayer, FileDropHandle
                 mapSelect.refreshMaps();
             }
             else if (!searchInput.text.trim().isEmpty()) {
-                mapSelect.setMaps(MapMaster.search(searchInput.text));
+                mapSelect.setMaps(MapMaster.search(searchInput.text, 0, SEARCH_RESULT_LIMIT));
+            }
+        }
+        else if (MapMaster.checkChanges()) {
+            if (searchInput.text.isEmpty()) {
+                mapSelect.refreshMapsInPlace();
+            }
+            else if (!searchInput.text.trim().isEmpty()) {
+                mapSelect.setMaps(MapMaster.search(searchInput.text, 0, SEARCH_RESULT_LIMIT));
             }
         }
 
@@ -195,6 +195,7 @@ public class SettingsLayer extends ProgramLayer implements InputLayer {
             vol = Math.min(1.0f, Math.max(0.0f, vol / 100.0f));
 
             SettingsMaster.effectVolume = vol;
+            audioMaster.setMusicVolume(SettingsMaster.getMusicVolume()); //Hitsounds are played through the music
 
             SettingsMaster.saveGeneralSettings();
         }
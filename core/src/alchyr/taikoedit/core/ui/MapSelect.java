@@ -197,6 +197,13 @@ public class MapSelect implements Scrollable {
 
         sort();
     }
+    //Reloads all maps from database without moving the list, for changes found while the menu is open.
+    public void refreshMapsInPlace() {
+        float scroll = scrollPos, targetScroll = targetScrollPos;
+        refreshMaps();
+        scrollPos = scroll;
+        targetScrollPos = targetScroll;
+    }
     public void sort() {
         if (sortingEnabled) {
             Comparator<String> comparer = new AlphabeticComparer();
@@ -4,6 +4,9 @@ import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.management.SettingsMaster;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongArray;
 
 import java.util.*;
 
@@ -17,20 +20,21 @@ public class BeatDivisors {
 
     private EditorBeatmap timingMap; //The map whose timing will be used to generate objects.
 
-    //sets of snap points specific to divisors
-    private final HashMap<Integer, HashSet<Snap>> divisorSnappings;
-    private final Set<Integer> currentCombinedDivisors;
+    //Divisors that have been used, in order. A snap belongs to the smallest of these that it lies on.
+    private final IntArray knownDivisors;
+    private final IntArray currentDivisors; //enabled divisors, in order
 
-    private TreeMap<Long, Snap> combinedSnaps; //combined snappings for current enabled divisors
+    //One section for each red line, plus one for the time before the first red line.
+    //Sections generate their snaps when first needed and keep them until their red line or the following one changes.
+    private final ArrayList<Section> sections;
+    private boolean lazerSnaps;
 
-    private TreeMap<Long, Snap> allSnaps; //all snappings
-    private TreeMap<Long, Snap> barlineSnaps; //just barlines, every X 1/1
+    private final SnapSet currentSnaps; //snappings for current enabled divisors
+    private final SnapSet allSnaps; //all snappings
+    private TreeMap<Long, Snap> barlineSnaps; //just barlines, every X 1/1. Built when requested.
 
     private double lastStart, lastEnd;
-    private NavigableMap<Long, Snap> activeSnaps;
-
-    //When initially generated, construct all standard divisors. If timing is changed or another custom divisor is desired, they will be generated on-demand.
-
+    private SnapList activeSnaps;
 
     public BeatDivisors(DivisorOptions divisorOptions, EditorBeatmap timingMap)
     {
@@ -39,13 +43,16 @@ public class BeatDivisors {
 
         this.timingMap = timingMap;
 
-        divisorSnappings = new HashMap<>();
-        combinedSnaps = new TreeMap<>();
-        currentCombinedDivisors = new HashSet<>();
-        allSnaps = new TreeMap<>();
-        barlineSnaps = new TreeMap<>();
+        knownDivisors = new IntArray(commonSnappings);
+        knownDivisors.sort();
+        currentDivisors = new IntArray();
+        sections = new ArrayList<>();
+        currentSnaps = new SnapSet(false);
+        allSnaps = new SnapSet(true);
+        lazerSnaps = SettingsMaster.lazerSnaps;
 
-        generateCommonSnappings();
+        reset();
+        refresh();
     }
 
     public boolean usesMap(EditorBeatmap map) {
@@ -54,270 +61,473 @@ public class BeatDivisors {
 
     public void setTimingMap(EditorBeatmap editorBeatmap) {
         this.timingMap = editorBeatmap;
-        refresh();
+        reset();
     }
 
+    //Enabled divisors changed.
     public void refresh()
     {
-        //combinedSnaps.clear();
-        generateCombinedSnaps();
+        currentDivisors.clear();
+        for (int divisor : divisorOptions.activeDivisors)
+        {
+            if (divisor > 0)
+            {
+                currentDivisors.add(divisor);
+                addKnownDivisor(divisor);
+            }
+        }
+        currentDivisors.sort();
+
+        for (Section section : sections)
+            section.current = null;
+        activeSnaps = null;
     }
+
+    //Timing changed. Sections that are the same as before keep their snaps.
     public void reset()
     {
-        divisorSnappings.clear();
-        combinedSnaps.clear();
-        allSnaps.clear();
-        barlineSnaps.clear();
-        generateCombinedSnaps();
-    }
+        ArrayList<Section> previous = new ArrayList<>(sections);
+        sections.clear();
 
-    public NavigableMap<Long, Snap> getSnaps(double startPos, double endPos)
-    {
-        if (combinedSnaps.isEmpty() && !divisorOptions.activeDivisors.isEmpty())
+        if (lazerSnaps != SettingsMaster.lazerSnaps)
         {
-            generateCombinedSnaps();
+            lazerSnaps = SettingsMaster.lazerSnaps;
+            previous.clear();
         }
 
-        if (startPos != lastStart || endPos != lastEnd)
+        //There *shouldn't* be stacked timing points. But if there are, just use the last one.
+        //TODO: Create a warning for stacked timing points.
+        ArrayList<TimingPoint> points = new ArrayList<>(timingMap.timingPoints.size());
+        for (ArrayList<TimingPoint> t : timingMap.timingPoints.values())
+            points.add(t.get(t.size() - 1));
+
+        ArrayList<Section> updated = new ArrayList<>(points.size() + 1);
+        if (!points.isEmpty())
         {
-            lastStart = startPos; //testing
-            lastEnd = endPos;
+            TimingPoint first = points.get(0);
+            updated.add(new Section(true, first.getPos(), first.value, first.meter, false, 0, Long.MIN_VALUE, SettingsMaster.roundPos(first.getPos())));
+        }
+        for (int i = 0; i < points.size(); ++i)
+        {
+            TimingPoint point = points.get(i);
+            double end = i + 1 < points.size() ? points.get(i + 1).getPos() : TaikoEditor.music.getMsLength();
+            long to = i + 1 < points.size() ? SettingsMaster.roundPos(points.get(i + 1).getPos()) : Long.MAX_VALUE;
+            updated.add(new Section(false, point.getPos(), point.value, point.meter, point.omitted, end, SettingsMaster.roundPos(point.getPos()), to));
+        }
 
-            Long start = combinedSnaps.floorKey((long) startPos);
-            Long end = combinedSnaps.ceilingKey((long) endPos);
+        boolean changed = previous.size() != updated.size();
+        int index = 0;
+        for (Section section : updated)
+        {
+            while (index < previous.size() && previous.get(index).before(section))
+                ++index;
 
-            if (start != null && end != null)
+            if (index < previous.size() && previous.get(index).matches(section))
             {
-                activeSnaps = combinedSnaps.subMap(start, true, end, true);
-            }
-            else if (end != null)
-            {
-                activeSnaps = combinedSnaps.subMap(combinedSnaps.firstKey(), true, end, true);
-            }
-            else if (start != null)
-            {
-                activeSnaps = combinedSnaps.subMap(start, true, combinedSnaps.lastKey(), true);
+                sections.add(previous.get(index++));
             }
             else
             {
-                activeSnaps = combinedSnaps;
+                sections.add(section);
+                changed = true;
             }
         }
+
+        if (changed)
+        {
+            barlineSnaps = null;
+            activeSnaps = null;
+        }
+    }
+
+    private void addKnownDivisor(int divisor)
+    {
+        if (divisor <= 0 || knownDivisors.contains(divisor))
+            return;
+
+        knownDivisors.add(divisor);
+        knownDivisors.sort();
+        for (Section section : sections) //The new divisor can take over snaps of divisors it divides
+        {
+            section.current = null;
+            section.all = null;
+        }
+        activeSnaps = null;
+    }
+
+    //Snaps of the enabled divisors from the last one at or before startPos to the first one at or after endPos.
+    public SnapList getSnaps(double startPos, double endPos)
+    {
+        if (activeSnaps == null || startPos != lastStart || endPos != lastEnd)
+        {
+            lastStart = startPos;
+            lastEnd = endPos;
+
+            activeSnaps = new SnapList();
+            fillSnaps(activeSnaps, (long) startPos, (long) endPos);
+        }
         return activeSnaps;
     }
-    public TreeMap<Long, Snap> getSnaps()
+
+    private void fillSnaps(SnapList result, long start, long end)
     {
-        if (combinedSnaps.isEmpty() && !divisorOptions.activeDivisors.isEmpty())
+        int section = sectionIndex(start), index = -1;
+        for (; section >= 0; --section)
+        {
+            index = currentList(sections.get(section)).higherIndex(start) - 1;
+            if (index >= 0)
+                break;
+        }
+        if (section < 0)
+        {
+            section = 0;
+            index = 0;
+        }
+
+        for (; section < sections.size(); ++section, index = 0)
         {
-            generateCombinedSnaps();
+            SnapList snaps = currentList(sections.get(section));
+            for (; index < snaps.size(); ++index)
+            {
+                result.add(snaps.pos(index), snaps.divisor(index));
+                if (snaps.pos(index) >= end)
+                    return;
+            }
         }
-        return combinedSnaps;
     }
-    public TreeMap<Long, Snap> getAllSnaps()
+
+    public SnapSet getSnaps()
+    {
+        return currentSnaps;
+    }
+    public SnapSet getAllSnaps()
     {
         return allSnaps;
     }
     public TreeMap<Long, Snap> getBarlines() {
+        if (barlineSnaps == null)
+        {
+            barlineSnaps = new TreeMap<>();
+            for (Section section : sections)
+                for (Snap barline : section.barlines())
+                    barlineSnaps.put(barline.pos, barline);
+        }
         return barlineSnaps;
     }
 
-    private void generateCombinedSnaps()
+    //Snaps of one divisor and the divisors it contains between start and end (inclusive).
+    public SnapList getSnaps(int divisor, long start, long end)
     {
-        currentCombinedDivisors.clear();
-        combinedSnaps.clear();
+        SnapList result = new SnapList();
+        if (divisor <= 0) //0 = no snaps, negative = Why
+            return result;
 
-        for (int divisor : divisorOptions.activeDivisors)
-            for (Snap s : getSnappings(divisor))
-                combinedSnaps.put(s.pos, s);
+        addKnownDivisor(divisor);
+        IntArray contained = new IntArray();
+        for (int i = 0; i < knownDivisors.size; ++i)
+        {
+            if (divisor % knownDivisors.items[i] == 0)
+                contained.add(knownDivisors.items[i]);
+        }
 
-        currentCombinedDivisors.addAll(divisorOptions.activeDivisors);
+        for (Section section : sections)
+        {
+            if (section.from > end || section.to <= start)
+                continue;
+
+            SnapList snaps = section.snaps(divisor, contained);
+            int i = snaps.indexOf(start);
+            for (i = i >= 0 ? i : -(i + 1); i < snaps.size() && snaps.pos(i) <= end; ++i)
+                result.add(snaps.pos(i), snaps.divisor(i));
+        }
+        return result;
     }
 
+    private SnapList currentList(Section section)
+    {
+        if (section.current == null)
+            section.current = section.build(currentDivisors);
+        return section.current;
+    }
+    private SnapList allList(Section section)
+    {
+        if (section.all == null)
+            section.all = section.build(knownDivisors);
+        return section.all;
+    }
 
-    private void generateCommonSnappings()
+    //Last section starting at or before pos, or -1 if there are none.
+    private int sectionIndex(long pos)
     {
-        for (int i : commonSnappings)
+        int low = 0, high = sections.size() - 1;
+        while (low <= high)
         {
-            generateSnappings(i);
+            int mid = (low + high) >>> 1;
+            if (sections.get(mid).from <= pos)
+                low = mid + 1;
+            else
+                high = mid - 1;
         }
+        return high;
     }
 
-    public HashSet<Snap> getSnappings(int divisor)
+    public void dispose()
     {
-        if (!divisorSnappings.containsKey(divisor) || divisorSnappings.get(divisor).isEmpty())
-        {
-            generateSnappings(divisor);
-            for (int existingDivisor : divisorSnappings.keySet())
-            {
-                if (existingDivisor != divisor && existingDivisor % divisor == 0) //The newly generated divisor is a sub-set of this existing set. Re-generate it.
-                {
-                    generateSnappings(existingDivisor); //The snappings in this re-generated set will have some of them replaced with the sub-set's snappings.
-                }
-            }
-        }
-        return divisorSnappings.get(divisor);
+        timingMap = null;
+        sections.clear();
+        barlineSnaps = null;
+        activeSnaps = null;
     }
 
-    public HashSet<Snap> getCombinedSnaps(int divisor) {
-        if (!divisorSnappings.containsKey(divisor) || divisorSnappings.get(divisor).isEmpty()) {
-            boolean modifiedActive = divisorOptions.activeDivisors.contains(divisor);
+    //Lookups over the snaps of every section, either for the enabled divisors or for all known divisors.
+    public class SnapSet {
+        private final boolean all;
 
-            generateSnappings(divisor);
-            for (int existingDivisor : divisorSnappings.keySet())
-            {
-                if (existingDivisor != divisor && existingDivisor % divisor == 0) //The newly generated divisor is a sub-set of this existing set. Re-generate it.
-                {
-                    generateSnappings(existingDivisor); //The snappings in this re-generated set will have some of them replaced with the sub-set's snappings.
-                    modifiedActive |= divisorOptions.activeDivisors.contains(existingDivisor);
-                }
-            }
-            if (modifiedActive)
-                refresh();
+        private SnapSet(boolean all) {
+            this.all = all;
         }
-        HashSet<Snap> combined = new HashSet<>();
-        for (int existingDivisor : divisorSnappings.keySet())
-        {
-            if (divisor % existingDivisor == 0)
-                combined.addAll(divisorSnappings.get(existingDivisor));
+
+        private SnapList list(int section) {
+            return all ? allList(sections.get(section)) : currentList(sections.get(section));
         }
-        return combined;
-    }
 
-    private void generateSnappings(int divisor)
-    {
-        HashSet<Snap> snappings = new HashSet<>();
+        public boolean isEmpty() {
+            for (int i = 0; i < sections.size(); ++i)
+                if (!list(i).isEmpty())
+                    return false;
+            return true;
+        }
 
-        if (divisor <= 0) //0 = no snaps, negative = Why
-        {
-            divisorSnappings.put(divisor, snappings);
-            return;
+        public boolean contains(long pos) {
+            int section = sectionIndex(pos);
+            return section >= 0 && list(section).indexOf(pos) >= 0;
         }
-        
-        HashSet<Long> subSnaps = new HashSet<>(); //Contains all the points that shouldn't be repeated. HashSet as it is used entirely for contains() operations.
-        for (Map.Entry<Integer, HashSet<Snap>> snaps : divisorSnappings.entrySet())
-        {
-            if (divisor % snaps.getKey() == 0) //This snap is a sub-snap of the currently generating one, skip them
-            {
-                for (Snap snap : snaps.getValue())
-                    subSnaps.add(snap.pos);
-            }
+
+        public Snap get(long pos) {
+            int section = sectionIndex(pos);
+            if (section < 0)
+                return null;
+
+            SnapList snaps = list(section);
+            int index = snaps.indexOf(pos);
+            return index >= 0 ? snaps.get(index) : null;
         }
 
-        TimingPoint currentPoint, nextPoint = null;
-        for (ArrayList<TimingPoint> t : timingMap.timingPoints.values())
-        {
-            //There *shouldn't* be stacked timing points. But if there are, just use the last one.
-            //TODO: Create a warning for stacked timing points.
-            currentPoint = nextPoint;
-            nextPoint = t.get(t.size() - 1);
-            long until = nextPoint.getPos();
-            if (currentPoint == null) //first point, generate in reverse from the next point
-            {
-                generateReverseSnappings(snappings, subSnaps, divisor, nextPoint.getPos(), nextPoint.value, nextPoint.meter);
-                continue;
+        //Closest snap before pos, or null.
+        public Snap lower(long pos) {
+            for (int section = sectionIndex(pos); section >= 0; --section) {
+                SnapList snaps = list(section);
+                int index = snaps.lowerIndex(pos);
+                if (index >= 0)
+                    return snaps.get(index);
             }
-
-            subGenerateSnappings(snappings, subSnaps, divisor, currentPoint.getPos(), currentPoint.value, currentPoint.meter, until, currentPoint.omitted);
+            return null;
         }
 
-        if (nextPoint != null)
-        {
-            subGenerateSnappings(snappings, subSnaps, divisor, nextPoint.getPos(), nextPoint.value, nextPoint.meter, TaikoEditor.music.getMsLength(), nextPoint.omitted);
+        //Closest snap after pos, or null.
+        public Snap higher(long pos) {
+            for (int section = Math.max(0, sectionIndex(pos)); section < sections.size(); ++section) {
+                SnapList snaps = list(section);
+                int index = snaps.higherIndex(pos);
+                if (index < snaps.size())
+                    return snaps.get(index);
+            }
+            return null;
         }
+    }
+
+    //Points of one divisor in a section, with the step from the red line that each one is at.
+    private static class Grid {
+        final long[] positions, steps;
 
-        divisorSnappings.put(divisor, snappings);
+        Grid(LongArray positions, LongArray steps) {
+            this.positions = positions.toArray();
+            this.steps = steps.toArray();
+        }
     }
 
-    private void subGenerateSnappings(HashSet<Snap> snapList, HashSet<Long> ignoreSnaps, int divisor, long start, double rate, int meter, double endPoint, boolean skipLine)
-    {
-        long pos;
-        int beatSegment = divisor - 1, beat = -1;
+    //Snaps from one red line until the next. The section before the first red line is generated in reverse from it.
+    private static class Section {
+        final boolean reverse, omitted;
+        final long start;
+        final double rate, end; //end is only used going forward
+        final int meter;
+        final long from, to; //positions of snaps in this section, to is exclusive
+
+        private final IntMap<Grid> grids = new IntMap<>(); //every point of a divisor in this section, in order
+        private ArrayList<Snap> barlines;
+        SnapList current, all;
+
+        Section(boolean reverse, long start, double rate, int meter, boolean omitted, double end, long from, long to) {
+            this.reverse = reverse;
+            this.start = start;
+            this.rate = rate;
+            this.meter = Math.max(1, meter);
+            this.omitted = omitted;
+            this.end = end;
+            this.from = from;
+            this.to = to;
+        }
 
-        if (rate / divisor == 0) {
-            return;
+        boolean before(Section other) {
+            return start < other.start || (start == other.start && reverse && !other.reverse);
         }
 
-        long step = 0;
-        //In normal progression, multiplier will remain at 1.
-        //However, in extreme cases such as near-infinite bpm, mult will continue to increase as snaps are generated in the same position until it grows large enough to cause a change in value.
+        boolean matches(Section other) {
+            return reverse == other.reverse && start == other.start && rate == other.rate && meter == other.meter &&
+                    omitted == other.omitted && end == other.end && from == other.from && to == other.to;
+        }
 
-        for (double t = start; t < endPoint; t = start + (step * rate) / divisor)
-        {
-            ++beatSegment;
-            ++step;
-            if (beatSegment >= divisor) {
-                beatSegment -= divisor;
-                ++beat;
+        private Grid grid(int divisor) {
+            Grid grid = grids.get(divisor);
+            if (grid == null) {
+                grid = generate(divisor);
+                grids.put(divisor, grid);
             }
+            return grid;
+        }
 
-            pos = SettingsMaster.roundPos(t);
+        //Steps shorter than a ms can round to the same position. Only the first step at a position is kept, and the steps
+        //after it that can't reach the next position are skipped.
+        private Grid generate(int divisor) {
+            LongArray positions = new LongArray(), steps = new LongArray();
+            if (rate / divisor <= 0)
+                return new Grid(positions, steps);
+
+            if (reverse) {
+                for (long step = 1; ; ++step) {
+                    double t = start - offset(step, divisor);
+                    if (t <= 0)
+                        break;
+
+                    long pos = SettingsMaster.roundPos(t), last = positions.size > 0 ? positions.peek() : to;
+                    if (pos >= last) {
+                        double before = SettingsMaster.lazerSnaps ? last - 0.5 : last; //Points before this round to an earlier position
+                        step = Math.max(step, (long) Math.floor((start - before) * divisor / rate) - 1);
+                        continue;
+                    }
+                    positions.add(pos);
+                    steps.add(step);
+                }
+                positions.reverse();
+                steps.reverse();
+            }
+            else {
+                long limit = to == Long.MAX_VALUE ? to : to - 1; //Points within 1 ms of the next red line are left to it
+                for (long step = 0; ; ++step) {
+                    double t = start + offset(step, divisor);
+                    if (t >= end)
+                        break;
+
+                    long pos = SettingsMaster.roundPos(t);
+                    if (pos >= limit)
+                        break;
+                    if (positions.size > 0 && pos == positions.peek()) {
+                        double after = SettingsMaster.lazerSnaps ? pos + 0.5 : pos + 1; //Points from this round to a later position
+                        step = Math.max(step, (long) Math.ceil((after - start) * divisor / rate) - 2);
+                        continue;
+                    }
+                    positions.add(pos);
+                    steps.add(step);
+                }
+            }
+            return new Grid(positions, steps);
+        }
 
-            beat = beat % meter;
+        //Calculated from the reduced fraction of a beat, so points shared by several divisors get the same position.
+        private double offset(long step, int divisor) {
+            long gcd = gcd(step, divisor);
+            return ((step / gcd) * rate) / (divisor / gcd);
+        }
 
-            if (ignoreSnaps.contains(pos) || ignoreSnaps.contains(pos + 1) || ignoreSnaps.contains(pos - 1))
-                continue;
+        private boolean barline(long step, int divisor) {
+            return step % ((long) divisor * meter) == 0 && !(omitted && step == 0);
+        }
 
-            if (beat == 0 && beatSegment == 0)
-            {
-                if (!skipLine)
-                {
-                    Snap barline = new Snap(t, 0);
-                    barlineSnaps.put(barline.pos, barline);
-                    snapList.add(barline);
-                    allSnaps.merge(barline.pos, barline, (oldSnap, newSnap)->newSnap.divisor <= oldSnap.divisor ? newSnap : oldSnap);
+        //Points of one divisor, each given the first divisor in candidates that contains it.
+        SnapList snaps(int divisor, IntArray candidates) {
+            Grid grid = grid(divisor);
+            SnapList snaps = new SnapList(grid.positions.length);
+            for (int i = 0; i < grid.positions.length; ++i) {
+                long step = grid.steps[i];
+                if (barline(step, divisor)) {
+                    snaps.add(grid.positions[i], 0);
                     continue;
                 }
 
-                skipLine = false;
+                int beatDivisor = (int) (divisor / gcd(step, divisor)), owner = divisor;
+                for (int c = 0; c < candidates.size; ++c) {
+                    if (candidates.items[c] % beatDivisor == 0) {
+                        owner = candidates.items[c];
+                        break;
+                    }
+                }
+                snaps.add(grid.positions[i], owner);
             }
-            Snap snap = new Snap(t, divisor);
-            snapList.add(snap);
-            allSnaps.merge(snap.pos, snap, (oldSnap, newSnap)->newSnap.divisor <= oldSnap.divisor ? newSnap : oldSnap);
+            return snaps;
         }
-    }
 
-    private void generateReverseSnappings(HashSet<Snap> snapList, HashSet<Long> ignoreSnaps, int divisor, double start, double rate, int meter)
-    {
-        long pos;
-        int beatSegment = divisor, beat = meter;
-
-        for (double t = start - rate / divisor; t > 0; t -= rate / divisor)
-        {
-            if (beat == 0)
-                beat += meter;
+        //Every point of the given divisors. Divisors that divide another one in the list are already covered by it.
+        SnapList build(IntArray divisors) {
+            SnapList result = null;
+            for (int i = 0; i < divisors.size; ++i) {
+                int divisor = divisors.items[i];
+                boolean covered = false;
+                for (int j = i + 1; j < divisors.size && !covered; ++j)
+                    covered = divisors.items[j] % divisor == 0;
+                if (covered)
+                    continue;
 
-            --beatSegment;
-            if (beatSegment == 0)
-            {
-                beatSegment += divisor;
-                --beat;
+                SnapList snaps = snaps(divisor, divisors);
+                result = result == null ? snaps : merge(result, snaps);
             }
+            return result == null ? new SnapList(0) : result;
+        }
 
-            pos = SettingsMaster.roundPos(t);
-
-            if (ignoreSnaps.contains(pos) || ignoreSnaps.contains(pos + 1) || ignoreSnaps.contains(pos - 1))
-                continue;
-
-            if (beat == 0) {
-                Snap barline = new Snap(t, 0);
-                barlineSnaps.put(barline.pos, barline);
-                snapList.add(barline);
-                allSnaps.merge(barline.pos, barline, (oldSnap, newSnap)->newSnap.divisor <= oldSnap.divisor ? newSnap : oldSnap);
+        List<Snap> barlines() {
+            if (barlines == null) {
+                barlines = new ArrayList<>();
+                Grid grid = grid(1);
+                for (int i = 0; i < grid.positions.length; ++i) {
+                    if (barline(grid.steps[i], 1))
+                        barlines.add(new Snap(grid.positions[i], 0));
+                }
             }
-            else {
-                Snap snap = new Snap(t, divisor);
-                snapList.add(snap);
-                allSnaps.merge(snap.pos, snap, (oldSnap, newSnap)->newSnap.divisor <= oldSnap.divisor ? newSnap : oldSnap);
+            return barlines;
+        }
+
+        private static SnapList merge(SnapList a, SnapList b) {
+            SnapList merged = new SnapList(a.size() + b.size());
+            int i = 0, j = 0;
+            while (i < a.size() && j < b.size()) {
+                if (a.pos(i) < b.pos(j)) {
+                    merged.add(a.pos(i), a.divisor(i));
+                    ++i;
+                }
+                else if (b.pos(j) < a.pos(i)) {
+                    merged.add(b.pos(j), b.divisor(j));
+                    ++j;
+                }
+                else {
+                    merged.add(a.pos(i), Math.min(a.divisor(i), b.divisor(j)));
+                    ++i;
+                    ++j;
+                }
             }
+            for (; i < a.size(); ++i)
+                merged.add(a.pos(i), a.divisor(i));
+            for (; j < b.size(); ++j)
+                merged.add(b.pos(j), b.divisor(j));
+            return merged;
         }
-    }
 
-    public void dispose()
-    {
-        timingMap = null;
-        divisorSnappings.clear();
-        combinedSnaps.clear();
-        allSnaps.clear();
-        activeSnaps.clear();
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
     }
 }
@@ -37,7 +37,12 @@ public class Snap implements Comparable<Snap> {
         return divisorColors.getOrDefault(divisor, defaultColor);
     }
 
-    private Texture pix;
+    private static Texture pix; //fetched on first render so snaps can be generated without assets
+    private static Texture pix() {
+        if (pix == null)
+            pix = assetMaster.get("ui:pixel");
+        return pix;
+    }
 
     public final int divisor; //1 = 1/1, 2 = 1/2, 3 = 1/3, etc.
     private final double precisePos;
@@ -51,8 +56,6 @@ public class Snap implements Comparable<Snap> {
         this.pos = SettingsMaster.roundPos(precisePos);
         this.divisor = divisor;
         this.hash = 0;
-
-        pix = assetMaster.get("ui:pixel");
     }
 
     //DUMMY CONSTRUCTOR
@@ -64,22 +67,33 @@ public class Snap implements Comparable<Snap> {
     }
 
     public void render(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, int viewHeight)
+    {
+        render(sb, sr, this.pos, divisor, pos, viewScale, x, y, viewHeight);
+    }
+
+    public void halfRender(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, int max)
+    {
+        halfRender(sb, sr, this.pos, divisor, pos, viewScale, x, y, max);
+    }
+
+    //For snaps stored as positions and divisors.
+    public static void render(SpriteBatch sb, ShapeRenderer sr, long snapPos, int divisor, double pos, float viewScale, float x, float y, int viewHeight)
     {
         sb.setColor(getDivisorColor(divisor));
-        x = x + (float) (this.pos - pos) * viewScale; //For visual consistency, rendering position is based on a long value to match objects.
-        sb.draw(pix, x, y, 1, getHeight(viewHeight));
+        x = x + (float) (snapPos - pos) * viewScale; //For visual consistency, rendering position is based on a long value to match objects.
+        sb.draw(pix(), x, y, 1, getHeight(divisor, viewHeight));
         if (divisor != 0) //mirrored line on top
-            sb.draw(pix, x, y + viewHeight - getHeight(viewHeight), 1, getHeight(viewHeight));
+            sb.draw(pix(), x, y + viewHeight - getHeight(divisor, viewHeight), 1, getHeight(divisor, viewHeight));
     }
 
-    public void halfRender(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, int max)
+    public static void halfRender(SpriteBatch sb, ShapeRenderer sr, long snapPos, int divisor, double pos, float viewScale, float x, float y, int max)
     {
         sb.setColor(getDivisorColor(divisor));
-        x = x + (float) (this.pos - pos) * viewScale;
-        sb.draw(pix, x, y, 1, getHeight(max));
+        x = x + (float) (snapPos - pos) * viewScale;
+        sb.draw(pix(), x, y, 1, getHeight(divisor, max));
     }
 
-    private float getHeight(float max)
+    private static float getHeight(int divisor, float max)
     {
         switch (divisor)
         {
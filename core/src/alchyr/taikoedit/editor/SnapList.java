@@ -0,0 +1,62 @@
+package alchyr.taikoedit.editor;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+
+import java.util.Arrays;
+
+//Snap positions in order along with the divisor of each (0 for barlines), without a Snap object for every point.
+public class SnapList {
+    private final LongArray positions;
+    private final IntArray divisors;
+
+    public SnapList() {
+        this(16);
+    }
+    public SnapList(int capacity) {
+        positions = new LongArray(true, capacity);
+        divisors = new IntArray(true, capacity);
+    }
+
+    void add(long pos, int divisor) {
+        positions.add(pos);
+        divisors.add(divisor);
+    }
+
+    public int size() {
+        return positions.size;
+    }
+
+    public boolean isEmpty() {
+        return positions.size == 0;
+    }
+
+    public long pos(int index) {
+        return positions.items[index];
+    }
+
+    public int divisor(int index) {
+        return divisors.items[index];
+    }
+
+    public Snap get(int index) {
+        return new Snap(positions.items[index], divisors.items[index]);
+    }
+
+    //Index of the snap at pos, or -(insertion point) - 1 if there is none.
+    public int indexOf(long pos) {
+        return Arrays.binarySearch(positions.items, 0, positions.size, pos);
+    }
+
+    //Index of the last snap before pos, or -1.
+    public int lowerIndex(long pos) {
+        int index = indexOf(pos);
+        return (index >= 0 ? index : -(index + 1)) - 1;
+    }
+
+    //Index of the first snap after pos, or size() if there is none.
+    public int higherIndex(long pos) {
+        int index = indexOf(pos);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+}
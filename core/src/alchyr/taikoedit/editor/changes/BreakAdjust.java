@@ -39,4 +39,9 @@ public class BreakAdjust extends MapChange {
         }
         return this;
     }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
 }
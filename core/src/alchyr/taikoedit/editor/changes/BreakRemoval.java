@@ -23,4 +23,9 @@ public class BreakRemoval extends MapChange {
         map.getBreaks().remove(breakSection);
         return this;
     }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
 }
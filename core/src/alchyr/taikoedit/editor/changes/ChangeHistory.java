@@ -0,0 +1,98 @@
+package alchyr.taikoedit.editor.changes;
+
+import alchyr.taikoedit.management.SettingsMaster;
+import com.badlogic.gdx.utils.Queue;
+
+//Undo and redo for one map.
+//The estimated size of all changes is kept under SettingsMaster.undoMemory by dropping the oldest changes first.
+//Changes that come quickly one after another are merged when possible, so eg. scrolling a value doesn't add a change per step.
+public class ChangeHistory {
+    private static final long MERGE_TIME = 1000; //ms
+
+    //Changes are added to and removed from the end of both queues; the first change in each is the furthest from the current state.
+    private final Queue<MapChange> undoQueue = new Queue<>();
+    private final Queue<MapChange> redoQueue = new Queue<>();
+    private long undoSize = 0, redoSize = 0;
+
+    private boolean canMerge = false; //Only the last change added with add() can be merged into
+    private long lastAdded = 0;
+
+    public boolean canUndo() {
+        return !undoQueue.isEmpty();
+    }
+    public boolean canRedo() {
+        return !redoQueue.isEmpty();
+    }
+
+    //A change that was just made. Clears the redo history.
+    public MapChange add(MapChange change) {
+        redoQueue.clear();
+        redoSize = 0;
+
+        long time = System.currentTimeMillis();
+        if (canMerge && time - lastAdded <= MERGE_TIME && undoQueue.last().merge(change)) {
+            MapChange last = undoQueue.last();
+            undoSize -= last.size;
+            last.size = last.estimateSize();
+            undoSize += last.size;
+        }
+        else {
+            change.size = change.estimateSize();
+            undoQueue.addLast(change);
+            undoSize += change.size;
+        }
+        canMerge = true;
+        lastAdded = time;
+
+        trim();
+        return change;
+    }
+
+    //Undoes the last change and returns it.
+    public MapChange undo() {
+        MapChange change = undoQueue.removeLast();
+        undoSize -= change.size;
+        canMerge = false;
+
+        change.undo();
+        change.size = change.estimateSize();
+        redoQueue.addLast(change);
+        redoSize += change.size;
+
+        trim();
+        return change;
+    }
+
+    //Redoes the last undone change and returns it.
+    public MapChange redo() {
+        MapChange change = redoQueue.removeLast();
+        redoSize -= change.size;
+        canMerge = false;
+
+        change.perform();
+        change.size = change.estimateSize();
+        undoQueue.addLast(change);
+        undoSize += change.size;
+
+        trim();
+        return change;
+    }
+
+    public long getSize() {
+        return undoSize + redoSize;
+    }
+
+    //The most recent change on each side is always kept.
+    private void trim() {
+        long budget = SettingsMaster.undoMemory * 1024L * 1024L;
+        if (budget <= 0)
+            return;
+
+        while (undoSize + redoSize > budget && undoQueue.size > 1) {
+            undoSize -= undoQueue.removeFirst().size;
+        }
+        while (undoSize + redoSize > budget && redoQueue.size > 1) {
+            redoSize -= redoQueue.removeFirst().size;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package alchyr.taikoedit.editor.changes;
 
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.ILongObject;
+import alchyr.taikoedit.util.structures.PositionalObject;
+
+import java.util.function.Consumer;
 
 public class DurationChange extends MapChange {
     private final ILongObject changed;
@@ -27,4 +30,14 @@ public class DurationChange extends MapChange {
         map.adjustedEnd(changed, changeAmount);
         return this;
     }
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        action.accept((PositionalObject) changed);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
 }
@@ -2,8 +2,10 @@ package alchyr.taikoedit.editor.changes;
 
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.util.structures.PositionalObject;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public class FinisherChange extends MapChange {
     private final List<HitObject> modifiedObjects;
@@ -31,4 +33,19 @@ public class FinisherChange extends MapChange {
         }
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(modifiedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects);
+    }
+}
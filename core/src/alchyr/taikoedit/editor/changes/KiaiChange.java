@@ -2,9 +2,11 @@ package alchyr.taikoedit.editor.changes;
 
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.TimingPoint;
+import alchyr.taikoedit.util.structures.PositionalObject;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class KiaiChange extends MapChange {
     private final List<TimingPoint> modifiedLines;
@@ -40,4 +42,19 @@ public class KiaiChange extends MapChange {
         map.updateKiai(modifiedLines);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(modifiedLines, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedLines) + entriesSize(wasKiai);
+    }
+}
@@ -8,6 +8,7 @@ import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class LineMovement extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> movedObjects; //contains objects at their *current* positions
@@ -70,7 +71,7 @@ public class LineMovement extends MapChange {
         if (changesTiming)
             map.regenerateDivisor();
         map.updateLines(moved.entrySet(), movedObjects.entrySet());
-        map.gameplayChanged();
+        map.gameplayChanged(this, moveAmount);
 
         movedObjects.clear();
         movedObjects.putAll(moved);
@@ -111,7 +112,7 @@ public class LineMovement extends MapChange {
         if (changesTiming)
             map.regenerateDivisor();
         map.updateLines(moved.entrySet(), movedObjects.entrySet());
-        map.gameplayChanged();
+        map.gameplayChanged(this, -moveAmount);
 
         movedObjects.clear();
         movedObjects.putAll(moved);
@@ -132,7 +133,22 @@ public class LineMovement extends MapChange {
         if (changesTiming)
             map.regenerateDivisor();
         map.updateLines(movedObjects.entrySet(), moved.entrySet());
-        map.gameplayChanged();
+        map.gameplayChanged(this, -moveAmount);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(movedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(movedObjects);
+    }
+}
@@ -4,10 +4,16 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.util.structures.PositionalObject;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
 //For undo support
 public abstract class MapChange {
     protected EditorBeatmap map;
     public boolean invalidateSelection = false; //Should be true for changes that would cause the PositionalObjectMap for selected objects to have incorrect positions
+    long size = 0; //Estimated size when added to the history
 
     public MapChange(EditorBeatmap map)
     {
@@ -17,6 +23,64 @@ public abstract class MapChange {
     public abstract MapChange undo();
     public abstract MapChange perform();
 
+    //Earliest position where hitobjects were added, removed, moved or changed in a way that affects difficulty.
+    //Long.MAX_VALUE if no hitobjects are affected, Long.MIN_VALUE if the whole map should be treated as changed.
+    public long objectsChangedFrom() {
+        return Long.MIN_VALUE;
+    }
+
+    //Every hit object and timing point this change adds, removes, moves or modifies, in no particular order.
+    //Used to journal changes; an object is passed whether it is currently in the map or not.
+    public void forEachObject(Consumer<PositionalObject> action) {
+    }
+
+    //Rough number of bytes kept in memory by this change, used to limit the size of the undo history.
+    //Objects are counted as if nothing else referenced them, since they may be removed from the map later.
+    public long estimateSize() {
+        return CHANGE_SIZE;
+    }
+
+    //Combines a change made right after this one into this one, so they are undone together. Returns false if they can't be combined.
+    public boolean merge(MapChange next) {
+        return false;
+    }
+
+    //Rough sizes in bytes
+    protected static final long CHANGE_SIZE = 48; //A change and its fields
+    protected static final long OBJECT_SIZE = 96; //A hit object or timing point
+    protected static final long POSITION_SIZE = 112; //One position in a map of stacks: entry, key and list
+    protected static final long ENTRY_SIZE = 56; //One HashMap entry with a boxed value
+
+    protected static long objectsSize(Map<Long, ? extends List<?>> objects) {
+        if (objects == null)
+            return 0;
+        long size = 0;
+        for (List<?> stack : objects.values())
+            size += POSITION_SIZE + stack.size() * OBJECT_SIZE;
+        return size;
+    }
+    protected static long objectsSize(Collection<?> objects) {
+        return objects == null ? 0 : 16 + objects.size() * OBJECT_SIZE;
+    }
+    protected static void forEach(Map<Long, ? extends List<? extends PositionalObject>> objects, Consumer<PositionalObject> action) {
+        if (objects == null)
+            return;
+        for (List<? extends PositionalObject> stack : objects.values()) {
+            for (PositionalObject o : stack)
+                action.accept(o);
+        }
+    }
+    protected static void forEach(Collection<? extends PositionalObject> objects, Consumer<PositionalObject> action) {
+        if (objects == null)
+            return;
+        for (PositionalObject o : objects)
+            action.accept(o);
+    }
+
+    protected static long entriesSize(Map<?, ?> entries) {
+        return entries == null ? 0 : 16 + entries.size() * ENTRY_SIZE;
+    }
+
 
     public static ChangeType getChangeType(PositionalObject o) {
         if (o instanceof TimingPoint) {
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.function.Consumer;
 
 public class MultiDeletion extends MapChange {
     private final Map<ChangeType, PositionalObjectTreeMap<PositionalObject>> deletions;
@@ -55,7 +56,7 @@ public class MultiDeletion extends MapChange {
             }
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
 
@@ -82,7 +83,27 @@ public class MultiDeletion extends MapChange {
             }
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        for (PositionalObjectTreeMap<PositionalObject> deletion : deletions.values())
+            forEach(deletion, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        PositionalObjectTreeMap<PositionalObject> objects = deletions.get(ChangeType.OBJECTS);
+        return objects == null || objects.isEmpty() ? Long.MAX_VALUE : objects.firstKey();
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = CHANGE_SIZE;
+        for (PositionalObjectTreeMap<PositionalObject> deleted : deletions.values())
+            size += objectsSize(deleted);
+        return size;
+    }
 }
@@ -7,6 +7,7 @@ import alchyr.taikoedit.util.structures.PositionalObject;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class MultiLineAddition extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> addedLines;
@@ -68,7 +69,7 @@ public class MultiLineAddition extends MapChange {
         if (!redLines.isEmpty())
             map.regenerateDivisor();
         map.updateLines(replacedObjects == null ? null : replacedObjects.entrySet(), addedLines.entrySet());
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
 
@@ -118,7 +119,23 @@ public class MultiLineAddition extends MapChange {
         if (!redLines.isEmpty())
             map.regenerateDivisor();
         map.updateLines(addedLines.entrySet(), replacedObjects == null ? null : replacedObjects.entrySet());
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(addedLines, action);
+        forEach(replacedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(addedLines) + objectsSize(greenLines) + objectsSize(redLines) + objectsSize(replacedObjects);
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 public class ObjectAddition extends MapChange {
     private final HitObject added;
@@ -58,7 +59,7 @@ public class ObjectAddition extends MapChange {
             map.updateVolume(replacedObjects);
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
 
@@ -106,7 +107,27 @@ public class ObjectAddition extends MapChange {
             map.updateVolume(addedObjects);
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        if (singleObject)
+            action.accept(added);
+        else
+            forEach(addedObjects, action);
+        forEach(replacedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        long from = singleObject ? added.getPos() : (addedObjects == null || addedObjects.isEmpty() ? Long.MAX_VALUE : addedObjects.firstKey());
+        return replacedObjects.isEmpty() ? from : Math.min(from, replacedObjects.firstKey());
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + (singleObject ? OBJECT_SIZE : objectsSize(addedObjects)) + objectsSize(replacedObjects);
+    }
 }
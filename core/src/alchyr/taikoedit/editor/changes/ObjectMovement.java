@@ -6,6 +6,7 @@ import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class ObjectMovement extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> movedObjects; //contains objects at their *current* positions
@@ -42,7 +43,7 @@ public class ObjectMovement extends MapChange {
         movedObjects.clear();
         movedObjects.putAll(moved);
 
-        map.gameplayChanged();
+        map.gameplayChanged(this, moveAmount);
         return this;
     }
     @Override
@@ -66,7 +67,7 @@ public class ObjectMovement extends MapChange {
         movedObjects.clear();
         movedObjects.putAll(moved);
 
-        map.gameplayChanged();
+        map.gameplayChanged(this, -moveAmount);
         return this;
     }
 
@@ -96,7 +97,23 @@ public class ObjectMovement extends MapChange {
         map.updateVolume(movedObjects);
 
 
-        map.gameplayChanged();
+        map.gameplayChanged(this, -moveAmount);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(movedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        //Covers both the positions before and after the move, whether it was last performed or undone
+        return movedObjects.isEmpty() ? Long.MAX_VALUE : movedObjects.firstKey() - Math.abs(moveAmount);
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(movedObjects);
+    }
+}
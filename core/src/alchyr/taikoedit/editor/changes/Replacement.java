@@ -4,6 +4,7 @@ import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 
+import java.util.function.Consumer;
 
 //basically just a combination of deletion and addition
 public class Replacement extends MapChange {
@@ -40,7 +41,7 @@ public class Replacement extends MapChange {
                 break;
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
     @Override
@@ -63,7 +64,27 @@ public class Replacement extends MapChange {
                 break;
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(deletedObjects, action);
+        forEach(addedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        if (type != ChangeType.OBJECTS)
+            return Long.MAX_VALUE;
+
+        long from = deletedObjects.isEmpty() ? Long.MAX_VALUE : deletedObjects.firstKey();
+        return addedObjects.isEmpty() ? from : Math.min(from, addedObjects.firstKey());
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(deletedObjects) + objectsSize(addedObjects);
+    }
+}
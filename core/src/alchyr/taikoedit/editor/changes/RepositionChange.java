@@ -83,4 +83,20 @@ public class RepositionChange extends MapChange {
 
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(repositioned, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        //Each repositioned object also has a Pair of boxed coordinates
+        return CHANGE_SIZE + objectsSize(repositioned) + entriesSize(originalPositions) + originalPositions.size() * 32L;
+    }
+}
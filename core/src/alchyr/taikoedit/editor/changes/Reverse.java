@@ -1,5 +1,6 @@
 package alchyr.taikoedit.editor.changes;
 
+import alchyr.taikoedit.editor.BeatDivisors;
 import alchyr.taikoedit.editor.Snap;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.ILongObject;
@@ -7,6 +8,7 @@ import alchyr.taikoedit.util.structures.PositionalObject;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class Reverse extends MapChange {
     private PositionalObjectTreeMap<PositionalObject> reversedObjects;
@@ -34,6 +36,7 @@ public class Reverse extends MapChange {
     @Override
     public MapChange undo() {
         PositionalObjectTreeMap<PositionalObject> reversedCopy = new PositionalObjectTreeMap<>();
+        long start = reversedObjects.firstKey(), end = reversedObjects.lastKey();
 
         switch (type)
         {
@@ -73,14 +76,14 @@ public class Reverse extends MapChange {
                 break;
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this, start, end); //Where the objects were before
         return this;
     }
 
     @Override
     public MapChange perform() {
         Snap closest;
-        TreeMap<Long, Snap> snaps = map.getAllSnaps();
+        BeatDivisors.SnapSet snaps = map.getAllSnaps();
 
         long start = reversedObjects.firstKey(), end = reversedObjects.lastKey(), newPos;
 
@@ -144,7 +147,28 @@ public class Reverse extends MapChange {
                 break;
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this, start, end); //Where the objects were before
         return this;
     }
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(originalPositions.keySet(), action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        if (type != ChangeType.OBJECTS)
+            return Long.MAX_VALUE;
+
+        long from = reversedObjects.isEmpty() ? Long.MAX_VALUE : reversedObjects.firstKey();
+        for (long pos : originalPositions.values())
+            from = Math.min(from, pos);
+        return from == Long.MAX_VALUE ? from : from - 1; //Resnapping may move objects by 1 ms
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(reversedObjects) + entriesSize(originalPositions);
+    }
 }
@@ -2,8 +2,10 @@ package alchyr.taikoedit.editor.changes;
 
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
+import alchyr.taikoedit.util.structures.PositionalObject;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public class RimChange extends MapChange {
     private final List<Hit> modifiedObjects;
@@ -29,4 +31,22 @@ public class RimChange extends MapChange {
             o.setIsRim(toRim);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(modifiedObjects, action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        long from = Long.MAX_VALUE;
+        for (Hit o : modifiedObjects)
+            from = Math.min(from, o.getPos());
+        return from;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects);
+    }
+}
@@ -8,6 +8,7 @@ import alchyr.taikoedit.util.structures.PositionalObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class SingleDeletion extends MapChange {
     private final MapChange.ChangeType type;
@@ -41,7 +42,7 @@ public class SingleDeletion extends MapChange {
                 map.updateLines((TimingPoint) deleted, (List<Pair<Long, ArrayList<TimingPoint>>>) null);
                 break;
         }
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
 
@@ -65,7 +66,22 @@ public class SingleDeletion extends MapChange {
                 break;
         }
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        action.accept(deleted);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return type == ChangeType.OBJECTS ? deleted.getPos() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + OBJECT_SIZE;
+    }
 }
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.function.Consumer;
 
 public class SingleLineAddition extends MapChange {
     //public enum LineType { Only effect lines. Timing should not be done using this program.
@@ -46,7 +47,7 @@ public class SingleLineAddition extends MapChange {
         if (added.uninherited)
             map.regenerateDivisor();
         map.updateLines(replacedObjects, added);
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
 
@@ -80,7 +81,31 @@ public class SingleLineAddition extends MapChange {
         if (added.uninherited)
             map.regenerateDivisor();
         map.updateLines(added, replacedObjects);
-        map.gameplayChanged();
+        map.gameplayChanged(this);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        action.accept(added);
+        if (replacedObjects != null) {
+            for (Pair<Long, ArrayList<TimingPoint>> replaced : replacedObjects)
+                forEach(replaced.b, action);
+        }
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = CHANGE_SIZE + OBJECT_SIZE;
+        if (replacedObjects != null) {
+            for (Pair<Long, ArrayList<TimingPoint>> replaced : replacedObjects)
+                size += POSITION_SIZE + replaced.b.size() * OBJECT_SIZE;
+        }
+        return size;
+    }
+}
@@ -7,6 +7,7 @@ import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class ValueModificationChange extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> modifiedObjects;
@@ -39,7 +40,7 @@ public class ValueModificationChange extends MapChange {
         }
         
         map.updateSv();
-        map.gameplayChanged();
+        map.gameplayChanged(this);
 
         return this;
     }
@@ -53,8 +54,37 @@ public class ValueModificationChange extends MapChange {
         }
 
         map.updateSv();
-        map.gameplayChanged();
+        map.gameplayChanged(this);
 
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(originalValues.keySet(), action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    //Repeated adjustments of the same objects, like scrolling a value up a few steps, are undone together.
+    @Override
+    public boolean merge(MapChange next) {
+        if (!(next instanceof ValueModificationChange) || next.map != map)
+            return false;
+
+        ValueModificationChange change = (ValueModificationChange) next;
+        if (!newValues.keySet().equals(change.newValues.keySet()))
+            return false;
+
+        newValues.putAll(change.newValues);
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects) + entriesSize(originalValues) + entriesSize(newValues);
+    }
+}
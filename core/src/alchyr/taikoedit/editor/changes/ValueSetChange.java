@@ -8,6 +8,7 @@ import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class ValueSetChange extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> modifiedObjects;
@@ -45,7 +46,7 @@ public class ValueSetChange extends MapChange {
         else
             map.updateSv();
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
 
         return this;
     }
@@ -63,8 +64,23 @@ public class ValueSetChange extends MapChange {
         else
             map.updateSv();
 
-        map.gameplayChanged();
+        map.gameplayChanged(this);
 
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(originalValues.keySet(), action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects) + entriesSize(originalValues);
+    }
+}
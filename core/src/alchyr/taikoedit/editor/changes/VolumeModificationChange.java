@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class VolumeModificationChange extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> modifiedObjects;
@@ -92,4 +93,33 @@ public class VolumeModificationChange extends MapChange {
         map.updateLines(modifiedObjects.entrySet(), null);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(originalVolumes.keySet(), action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    //Repeated adjustments of the same objects, like scrolling a value up a few steps, are undone together.
+    @Override
+    public boolean merge(MapChange next) {
+        if (!(next instanceof VolumeModificationChange) || next.map != map)
+            return false;
+
+        VolumeModificationChange change = (VolumeModificationChange) next;
+        if (!newVolumes.keySet().equals(change.newVolumes.keySet()))
+            return false;
+
+        newVolumes.putAll(change.newVolumes);
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects) + entriesSize(originalVolumes) + entriesSize(newVolumes);
+    }
+}
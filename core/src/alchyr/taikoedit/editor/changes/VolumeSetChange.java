@@ -7,6 +7,7 @@ import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class VolumeSetChange extends MapChange {
     private final PositionalObjectTreeMap<PositionalObject> modifiedObjects;
@@ -53,4 +54,19 @@ public class VolumeSetChange extends MapChange {
         map.updateLines(modifiedObjects.entrySet(), null);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void forEachObject(Consumer<PositionalObject> action) {
+        forEach(originalValues.keySet(), action);
+    }
+
+    @Override
+    public long objectsChangedFrom() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long estimateSize() {
+        return CHANGE_SIZE + objectsSize(modifiedObjects) + entriesSize(originalValues) + entriesSize(newValues);
+    }
+}
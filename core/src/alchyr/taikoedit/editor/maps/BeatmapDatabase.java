@@ -1,61 +1,78 @@
 package alchyr.taikoedit.editor.maps;
 
+import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.util.GeneralUtils;
 import alchyr.taikoedit.util.Sync;
-import alchyr.taikoedit.util.structures.CharacterTreeMap;
+import alchyr.taikoedit.util.structures.SearchIndex;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.utils.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.lang.StringBuilder;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class BeatmapDatabase {
     private static final Logger logger = LogManager.getLogger("BeatmapDatabase");
     private final ArrayList<Future<?>> activeTasks = new ArrayList<>();
     private Thread saveThread;
 
-    private static final String DATABASE_VER = "0";
+    private static final String LEGACY_DATABASE = "mapdata.json";
+    private final MapDatabaseFile databaseFile = new MapDatabaseFile(new File("mapdata.bin"), new File("mapdata.1.bin"));
 
 
     public static float progress = 0;
 
+    private final File songsFolder;
+
     public HashMap<String, Mapset> mapsets;
+    private HashMap<String, Mapset> emptyFolders; //Folders with no taiko difficulties, kept so their files aren't read again
+
+    private SearchIndex<Mapset> indexedMapsets;
 
-    private CharacterTreeMap<Mapset> indexedMapsets;
+    //Live updates
+    private static final long WATCH_SETTLE_TIME = 1000; //ms without changes before changed folders are read
+    private static final WatchEvent.Modifier FILE_TREE = fileTreeModifier();
+    private WatchService watcher;
+    private Thread watchThread;
+    private final Map<WatchKey, Path> watchedFolders = new ConcurrentHashMap<>();
+    private volatile boolean watchingTree = false; //The Songs folder's key also covers its subfolders, so mapset folders have no keys of their own
+    private final Object folderLock = new Object();
+    private volatile boolean changed = false;
 
     public BeatmapDatabase(File songsFolder)
     {
         //First, try to load already generated map database
+        this.songsFolder = songsFolder;
 
         try
         {
             logger.info("Loading Songs folder: " + songsFolder.getPath());
             long loadStart = System.nanoTime();
 
-            File database = getDatabaseFile();
-
             mapsets = new HashMap<>();
-            indexedMapsets = new CharacterTreeMap<>();
+            emptyFolders = new HashMap<>();
+            indexedMapsets = new SearchIndex<>();
 
-            if (database.exists())
+            if (databaseFile.exists())
             {
                 logger.info("Existing map data found. Attempting to load.");
                 try {
-                    HashMap<String, Mapset> oldData = loadDatabase(database);
+                    HashMap<String, Mapset> oldData = loadDatabase();
                     if (oldData != null) {
                         logger.info("Updating data.");
                         long updateStart = System.nanoTime();
 
-                        updateData(oldData, songsFolder);
-                        saveDatabase();
+                        if (updateData(oldData, songsFolder))
+                            saveDatabase();
+                        else
+                            logger.info("No changes found.");
                         updateStart = System.nanoTime() - updateStart;
                         loadStart = System.nanoTime() - loadStart;
                         logger.debug("Updating database: " + (1.0 * updateStart / Sync.NANOS_IN_SECOND) + " seconds.");
@@ -135,7 +152,7 @@ public class BeatmapDatabase {
                             int index = stage;
                             activeTasks.add(executor.submit(()->{
                                 for (File f : subLists.get(index))
-                                    readFolder(f, index, true);
+                                    readFolder(f, processed.get(index), true);
 
                                 --activeCount;
                                 if (activeCount <= 0)
@@ -152,7 +169,7 @@ public class BeatmapDatabase {
                     int index = stage;
                     activeTasks.add(executor.submit(()->{
                         for (File f : subLists.get(index))
-                            readFolder(f, index, true);
+                            readFolder(f, processed.get(index), true);
 
                         --activeCount;
                         if (activeCount <= 0)
@@ -180,8 +197,7 @@ public class BeatmapDatabase {
             progress = 0;
             for (List<Mapset> mapsetList : processed) {
                 for (Mapset set : mapsetList) {
-                    mapsets.put(set.key, set);
-                    index(set);
+                    add(set);
                 }
                 ++completeCount;
                 progress = (float) completeCount / processed.size();
@@ -199,10 +215,12 @@ public class BeatmapDatabase {
         subLists.clear();
         processed.clear();
     }
-    private void updateData(HashMap<String, Mapset> oldData, File songsFolder) {
+    //Returns true if anything is different from the old data.
+    private boolean updateData(HashMap<String, Mapset> oldData, File songsFolder) {
         //Similar to loadData, but first checks old data map.
         //If old data with matching filename exists, it will be used.
         //If filename has no match, it will be loaded normally.
+        boolean changed = false;
         final ExecutorService executor = Executors.newCachedThreadPool();
 
         File[] songFolders = songsFolder.listFiles(File::isDirectory);
@@ -227,7 +245,7 @@ public class BeatmapDatabase {
                             int index = stage;
                             activeTasks.add(executor.submit(()->{
                                 for (File f : subLists.get(index))
-                                    updateFolder(oldData, f, index, true);
+                                    updateFolder(oldData, f, processed.get(index), true);
 
                                 --activeCount;
                                 if (activeCount <= 0)
@@ -245,7 +263,7 @@ public class BeatmapDatabase {
                     int index = stage;
                     activeTasks.add(executor.submit(()->{
                         for (File f : subLists.get(index))
-                            updateFolder(oldData, f, index, true);
+                            updateFolder(oldData, f, processed.get(index), true);
 
                         --activeCount;
                         if (activeCount <= 0)
@@ -270,14 +288,19 @@ public class BeatmapDatabase {
 
             completeCount = 0;
             progress = 0;
+            int count = 0;
             for (List<Mapset> mapsetList : processed) {
                 for (Mapset set : mapsetList) {
-                    mapsets.put(set.key, set);
-                    index(set);
+                    if (oldData.get(set.key) != set)
+                        changed = true;
+                    add(set);
+                    ++count;
                 }
                 ++completeCount;
                 progress = (float) completeCount / processed.size();
             }
+            if (count != oldData.size())
+                changed = true; //Folders were removed
 
             logger.info("Successfully loaded Songs folder.");
 
@@ -290,9 +313,10 @@ public class BeatmapDatabase {
         }
         subLists.clear();
         processed.clear();
+        return changed;
     }
 
-    private void readFolder(File folder, int storeIndex, boolean count) {
+    private void readFolder(File folder, List<Mapset> out, boolean count) {
         try {
             boolean hasMap = false;
             List<File> folders = new ArrayList<>();
@@ -314,22 +338,14 @@ public class BeatmapDatabase {
                 //logger.info("Mapset: " + folder.getName());
                 Mapset set = new Mapset(folder);
 
-                if (!set.isEmpty())
-                {
-                    processed.get(storeIndex).add(set);
-                    //logger.info("Mapset " + folder.getName() + " has " + set.getMaps().size() + " taiko difficulties.");
-                }
-                /*else
-                {
-                    logger.info("Mapset " + folder.getName() + " has no taiko maps.");
-                }*/
+                out.add(set); //Sets with no taiko maps are still recorded, so they aren't read again
             }
             else
             {
                 //logger.info("Folder " + folder.getName() + " has no maps. Checking subfolders.");
 
                 for (File f : folders)
-                    readFolder(f, storeIndex, false);
+                    readFolder(f, out, false);
             }
         }
         catch (Exception e) {
@@ -344,7 +360,7 @@ public class BeatmapDatabase {
         }
     }
     //Overload will call update first on subfolders rather than immediately trying to read them.
-    private void readFolder(HashMap<String, Mapset> oldData, File folder, int storeIndex, boolean count) {
+    private void readFolder(HashMap<String, Mapset> oldData, File folder, List<Mapset> out, boolean count) {
         try {
             boolean hasMap = false;
             List<File> folders = new ArrayList<>();
@@ -366,22 +382,14 @@ public class BeatmapDatabase {
                 //logger.info("Mapset: " + folder.getName());
                 Mapset set = new Mapset(folder);
 
-                if (!set.isEmpty())
-                {
-                    processed.get(storeIndex).add(set);
-                    //logger.info("Mapset " + folder.getName() + " has " + set.getMaps().size() + " taiko difficulties.");
-                }
-                /*else
-                {
-                    logger.info("Mapset " + folder.getName() + " has no taiko maps.");
-                }*/
+                out.add(set); //Sets with no taiko maps are still recorded, so they aren't read again
             }
             else
             {
                 //logger.info("Folder " + folder.getName() + " has no maps. Checking subfolders.");
 
                 for (File f : folders)
-                    updateFolder(oldData, f, storeIndex, false);
+                    updateFolder(oldData, f, out, false);
             }
         }
         catch (Exception e) {
@@ -395,23 +403,38 @@ public class BeatmapDatabase {
             }
         }
     }
-    private void updateFolder(HashMap<String, Mapset> oldData, File folder, int storeIndex, boolean count) {
+    //Only files that were added or whose modified time or size changed are read.
+    //If the folder itself hasn't been modified, nothing was added or removed, so only the known files are checked.
+    private void updateFolder(HashMap<String, Mapset> oldData, File folder, List<Mapset> out, boolean count) {
         Mapset old = oldData.get(folder.getAbsolutePath());
         if (old == null) {
             //logger.info("Set not found in database: " + folder.getAbsolutePath());
-            readFolder(oldData, folder, storeIndex, count);
+            readFolder(oldData, folder, out, count);
             return;
         }
 
         try {
+            long folderModified = folder.lastModified();
+            if (folderModified == old.folderModified && old.filesUnchanged()) {
+                out.add(old);
+                return;
+            }
+
             boolean hasMap = false;
             List<File> folders = new ArrayList<>();
 
-            List<MapInfo> confirmed = new ArrayList<>(), unconfirmed = old.getMaps();
+            HashMap<String, MapInfo> known = new HashMap<>();
+            for (MapInfo info : old.getMaps())
+                known.put(info.getMapFile().getName(), info);
+
+            //Existing set is left untouched, as it may be in use
+            //Its metadata is worked out again from the difficulties, with re-read files taking priority.
+            Mapset set = new Mapset(folder, new ArrayList<>(), true, "", "", "", "", "");
+            set.folderModified = folderModified;
+            List<MapInfo> unchanged = new ArrayList<>();
 
             File[] all = folder.listFiles();
             if (all != null) {
-                outer:
                 for (File f : all) {
                     if (!hasMap && f.isDirectory()) {
                         folders.add(f);
@@ -419,38 +442,56 @@ public class BeatmapDatabase {
                     else if (f.isFile() && f.getPath().endsWith(".osu")) {
                         hasMap = true;
 
-                        for (MapInfo info : unconfirmed) {
-                            if (info.getMapFile().equals(f)) {
-                                confirmed.add(info);
-                                continue outer; //This file is all good, move on to the next one.
-                            }
+                        String name = f.getName();
+                        FileFingerprint current = FileFingerprint.of(f);
+
+                        MapInfo info = known.get(name);
+                        if (info != null && current != null && current.equals(info.getFingerprint())) {
+                            unchanged.add(info);
+                            continue; //This file is all good, move on to the next one.
+                        }
+                        if (current != null && current.equals(old.getIgnoredFiles().get(name))) {
+                            set.getIgnoredFiles().put(name, current);
+                            continue;
                         }
 
-                        //This file doesn't exist in the old data. Have to load it.
-                        MapInfo info = new MapInfo(f, old);
+                        //This file is new or has changed. Have to load it.
+                        info = new MapInfo(f, set);
                         if (info.getMode() == 1)
                         {
-                            confirmed.add(info);
-                            if (!old.getSongFile().equals(info.getSongFile()))
-                                old.sameSong = false;
-                            logger.info("Found added difficulty: " + info.getDifficultyName());
+                            set.addLoaded(info);
+                            logger.info((known.containsKey(name) ? "Found modified difficulty: " : "Found added difficulty: ") + info.getDifficultyName());
+                        }
+                        else
+                        {
+                            set.getIgnoredFiles().put(name, info.getFingerprint());
                         }
                     }
                 }
+            }
 
-                old.setMaps(confirmed);
-                if (!old.isEmpty())
-                {
-                    processed.get(storeIndex).add(old);
+            if (hasMap) {
+                for (MapInfo info : unchanged) {
+                    set.addLoaded(info);
+                    if (set.background.isEmpty())
+                        set.background = info.getBackground();
                 }
+                //Creator, title, and artist aren't kept per difficulty, so without a re-read file they can only come from before.
+                if (set.creator.isEmpty())
+                    set.creator = old.creator;
+                if (set.title.isEmpty())
+                    set.title = old.title;
+                if (set.artist.isEmpty())
+                    set.artist = old.artist;
+
+                set.sortMaps();
+                out.add(set);
             }
-
-
-            if (!hasMap) {
+            else {
                 //logger.info("\t - Folder has no map. Checking subfolders.");
 
                 for (File f : folders)
-                    updateFolder(oldData, f, storeIndex, false);
+                    updateFolder(oldData, f, out, false);
             }
         }
         catch (Exception e) {
@@ -465,135 +506,291 @@ public class BeatmapDatabase {
         }
     }
 
-    private void saveDatabase() {
-        logger.info("Saving database.");
-        File f = getDatabaseFile();
-        Writer writer = null;
-        Json json = new Json(JsonWriter.OutputType.json);
+    //Watches the Songs folder, reading mapset folders again when their files change.
+    //Where the whole tree can't be watched with one key (anywhere but Windows), each taiko mapset folder gets its own key.
+    //Folders without taiko maps get no key unless they're created while watching, nor do folders whose keys fail to register; changes to them are found by the next startup.
+    public void startWatching() {
+        if (watchThread != null)
+            return;
+
         try {
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
-            json.setWriter(writer);
-
-            json.writeArrayStart();
-            json.writeObjectStart();
-            json.writeValue("ver", DATABASE_VER);
-            json.writeObjectEnd();
-            for (Map.Entry<String, Mapset> mapsetEntry : mapsets.entrySet()) {
-                Mapset m = mapsetEntry.getValue();
-                json.writeObjectStart();
-                json.writeValue("key", m.key);
-                json.writeValue("sameSong", m.sameSong);
-                json.writeValue("songFile", m.songFile);
-                json.writeValue("creator", m.creator);
-                json.writeValue("title", m.title);
-                json.writeValue("artist", m.artist);
-                json.writeValue("background", m.background);
-                json.writeArrayStart("maps");
-                for (MapInfo map : m.getMaps()) {
-                    json.writeObjectStart();
-                    json.writeValue("mapFile", map.getMapFile().getName());
-                    json.writeValue("songFile", map.getSongFile());
-                    json.writeValue("background", map.getBackground());
-                    //no need to write mode, it can be assumed to be 1
-                    json.writeValue("name", map.getDifficultyName());
-                    json.writeObjectEnd();
-                }
-                json.writeArrayEnd();
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
-            logger.info("Database saved.");
+            watcher = songsFolder.toPath().getFileSystem().newWatchService();
+            watchingTree = watchTree(songsFolder.toPath());
+            if (!watchingTree)
+                watch(songsFolder.toPath());
         }
-        catch (Exception e) {
-            logger.error("Failed to save map database.");
+        catch (IOException | UnsupportedOperationException e) {
+            logger.error("Failed to watch Songs folder for changes.");
             GeneralUtils.logStackTrace(logger, e);
+            stopWatching();
+            return;
         }
-        finally {
-            StreamUtils.closeQuietly(writer);
+
+        if (!watchingTree) {
+            int failed = 0;
+            synchronized (folderLock) {
+                for (Mapset set : mapsets.values()) {
+                    if (!watchSet(set))
+                        ++failed;
+                }
+            }
+            if (failed > 0)
+                logger.info("Failed to watch " + failed + " mapset folders. Changes to them will be found on the next startup.");
         }
+
+        WatchService activeWatcher = watcher;
+        watchThread = new Thread(()->processChanges(activeWatcher));
+        watchThread.setName("Songs Folder Watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("Watching Songs folder for changes.");
     }
-    private HashMap<String, Mapset> loadDatabase(File f) throws Exception {
-        if (f.isFile() && f.canRead())
-        {
-            FileInputStream in = new FileInputStream(f);
-            JsonValue data = new JsonReader().parse(in); //Closes stream
 
-            if (data == null) {
-                logger.error("No data found in database.");
-                return null;
-            }
-            data = data.child();
-            if (data == null) {
-                logger.info("No data found in database.");
-                return null;
+    public void stopWatching() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (watcher != null) {
+            try {
+                watcher.close();
             }
-            String ver = data.getString("ver");
-            if (!DATABASE_VER.equals(ver)) {
-                logger.info("Database version doesn't match. Reloading maps.");
-                return null;
+            catch (IOException ignored) {
+
             }
-            data = data.next();
+            watcher = null;
+        }
+        watchedFolders.clear();
+        watchingTree = false;
+    }
 
-            HashMap<String, Mapset> processed = new HashMap<>();
+    //Returns true once after maps were changed by live updates.
+    public boolean checkChanged() {
+        if (changed) {
+            changed = false;
+            return true;
+        }
+        return false;
+    }
 
-            String folder, songFile;
-            File setDirectory, mapFile;
-            ArrayList<MapInfo> maps;
-            Mapset set;
+    private void watch(Path folder) throws IOException {
+        WatchKey key = folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedFolders.put(key, folder);
+    }
 
-            while (data != null) {
-                try {
-                    folder = data.getString("key");
-                    songFile = data.getString("songFile");
-                    FileHandle songFileHandle = Gdx.files.absolute(songFile);
-                    if (!songFileHandle.exists()) {
-                        logger.info("Song file \"" + songFile + "\" does not exist. Map will be reloaded.");
-                        data = data.next();
-                        continue;
-                    }
+    //Not part of the standard API, so it's looked up when running. Null if it doesn't exist.
+    private static WatchEvent.Modifier fileTreeModifier() {
+        try {
+            return (WatchEvent.Modifier) Class.forName("com.sun.nio.file.ExtendedWatchEventModifier").getField("FILE_TREE").get(null);
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    //Returns false if the file system can't watch subfolders through the folder's key.
+    private boolean watchTree(Path folder) throws IOException {
+        if (FILE_TREE == null)
+            return false;
 
-                    setDirectory = new File(folder);
-                    if (setDirectory.exists() && setDirectory.isDirectory()) {
-                        maps = new ArrayList<>();
-
-                        JsonValue map = data.get("maps");
-                        if (map != null)
-                            map = map.child(); //enter array
-                        while (map != null) {
-                            mapFile = new File(setDirectory, map.getString("mapFile"));
-                            if (mapFile.exists()) {
-                                maps.add(new MapInfo(mapFile, map.getString("songFile"), map.getString("background"), map.getString("name")));
-                            }
-                            map = map.next();
+        try {
+            WatchKey key = folder.register(watcher, new WatchEvent.Kind<?>[] {
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY
+            }, FILE_TREE);
+            watchedFolders.put(key, folder);
+            return true;
+        }
+        catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private void watchNew(Path folder) {
+        try {
+            watch(folder);
+        }
+        catch (IOException e) {
+            logger.debug("Failed to watch folder " + folder + ": " + e.getMessage());
+        }
+    }
+
+    //A failure only affects this folder, such as when the system's limit on watched folders is reached.
+    private boolean watchSet(Mapset set) {
+        try {
+            watch(set.getDirectory().toPath());
+            return true;
+        }
+        catch (IOException | ClosedWatchServiceException e) {
+            logger.debug("Failed to watch folder " + set.key + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void processChanges(WatchService watcher) {
+        Path songsPath = songsFolder.toPath();
+        Set<File> changedFolders = new HashSet<>();
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                //Changes are collected until things settle down, as maps are usually written or extracted several files at a time
+                WatchKey key = changedFolders.isEmpty() ? watcher.take() : watcher.poll(WATCH_SETTLE_TIME, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    refreshFolders(changedFolders);
+                    changedFolders = new HashSet<>();
+                    continue;
+                }
+
+                Path folder = watchedFolders.get(key);
+                if (folder != null) {
+                    boolean isSongs = folder.equals(songsPath);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            if (isSongs)
+                                logger.info("Too many changes in Songs folder. Some new maps may not appear until maps are reloaded.");
+                            else
+                                changedFolders.add(folder.toFile());
+                            continue;
                         }
 
-                        if (maps.isEmpty()) {
-                            logger.info("Folder \"" + folder + "\" contains no maps.");
+                        Path changedPath = (Path) event.context();
+                        if (isSongs) {
+                            //Set folder added, removed, renamed, or with changed contents when watching the whole tree.
+                            //Folders whose files still match their fingerprints are left as they are.
+                            Path setFolder = folder.resolve(changedPath.getName(0));
+                            changedFolders.add(setFolder.toFile());
+
+                            //A new set's maps may only be written after it has settled, so it's watched before knowing it has any.
+                            if (!watchingTree && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(setFolder))
+                                watchNew(setFolder);
                         }
-                        else {
-                            set = new Mapset(setDirectory, maps, data.getBoolean("sameSong"), data.getString("songFile"), data.getString("creator"), data.getString("title"), data.getString("artist"), data.getString("background"));
-                            processed.put(set.key, set);
+                        else if (changedPath.toString().endsWith(".osu")) {
+                            changedFolders.add(folder.toFile());
                         }
                     }
-                    else {
-                        logger.info("Folder \"" + folder + "\" does not exist.");
-                    }
                 }
-                catch (Exception e) {
-                    logger.error("Error occurred while processing database.");
-                    GeneralUtils.logStackTrace(logger, e);
+
+                if (!key.reset()) { //Folder no longer exists
+                    watchedFolders.remove(key);
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException ignored) {
+
+        }
+    }
+
+    //Called on the watching thread. Results are applied on the main thread.
+    private void refreshFolders(Set<File> folders) {
+        for (File folder : folders) {
+            HashMap<String, Mapset> known = new HashMap<>();
+            synchronized (folderLock) {
+                collectSets(mapsets, folder, known);
+                collectSets(emptyFolders, folder, known);
+            }
+
+            List<Mapset> updated = new ArrayList<>();
+            if (folder.isDirectory())
+                updateFolder(known, folder, updated, false);
+
+            if (updated.size() == known.size() && known.values().containsAll(updated))
+                continue; //Nothing changed
+
+            logger.info("Updated folder: " + folder.getPath());
+            TaikoEditor.onMain(()->applyUpdate(known.keySet(), updated));
+        }
+    }
+
+    //Sets in this folder or its subfolders.
+    private static void collectSets(Map<String, Mapset> source, File folder, Map<String, Mapset> result) {
+        String key = folder.getAbsolutePath(), subfolderPrefix = key + File.separator;
+        for (Map.Entry<String, Mapset> set : source.entrySet()) {
+            if (set.getKey().equals(key) || set.getKey().startsWith(subfolderPrefix))
+                result.put(set.getKey(), set.getValue());
+        }
+    }
+
+    private void applyUpdate(Collection<String> removed, List<Mapset> updated) {
+        synchronized (folderLock) {
+            for (String key : removed) {
+                Mapset old = mapsets.remove(key);
+                if (old != null)
+                    indexedMapsets.remove(old);
+                emptyFolders.remove(key);
+            }
+            for (Mapset set : updated) {
+                if (set.isEmpty()) {
+                    emptyFolders.put(set.key, set);
+                }
+                else {
+                    mapsets.put(set.key, set);
+                    index(set);
                 }
+            }
+        }
+
+        if (watcher != null && !watchingTree) {
+            for (Mapset set : updated) {
+                if (!set.isEmpty() && !watchSet(set))
+                    logger.info("Failed to watch folder " + set.key);
+            }
+        }
+
+        changed = true;
+        save();
+    }
+
+    private void add(Mapset set) {
+        if (set.isEmpty()) {
+            emptyFolders.put(set.key, set);
+        }
+        else {
+            mapsets.put(set.key, set);
+            index(set);
+        }
+    }
 
-                data = data.next();
+    private void saveDatabase() {
+        logger.info("Saving database.");
+        try {
+            List<Mapset> sets;
+            synchronized (folderLock) {
+                sets = new ArrayList<>(mapsets.size() + emptyFolders.size());
+                sets.addAll(mapsets.values());
+                sets.addAll(emptyFolders.values());
+            }
+            synchronized (databaseFile) {
+                databaseFile.save(sets);
             }
+            logger.info("Database saved.");
 
-            logger.info("Database loaded.");
-            return processed;
+            File legacy = new File(LEGACY_DATABASE);
+            if (legacy.isFile() && !legacy.delete())
+                logger.info("Failed to delete old map database.");
+        }
+        catch (Exception e) {
+            logger.error("Failed to save map database.");
+            GeneralUtils.logStackTrace(logger, e);
         }
-        return null;
     }
-    private File getDatabaseFile() {
-        return new File("mapdata.json");
+
+    private HashMap<String, Mapset> loadDatabase() {
+        HashMap<String, Mapset> data = databaseFile.load();
+        if (data == null)
+            return null;
+
+        //Files are not checked here; updateFolder compares them against their fingerprints.
+        Iterator<Mapset> sets = data.values().iterator();
+        while (sets.hasNext()) {
+            Mapset set = sets.next();
+            if (!set.isEmpty()) { //Folders without taiko maps have no song to check
+                FileHandle songFileHandle = Gdx.files.absolute(set.songFile);
+                if (!songFileHandle.exists()) {
+                    logger.info("Song file \"" + set.songFile + "\" does not exist. Map will be reloaded.");
+                    sets.remove();
+                }
+            }
+        }
+        return data;
     }
 
     private void index(Mapset set) {
@@ -601,7 +798,8 @@ public class BeatmapDatabase {
         indexedMapsets.put(set.getArtist().toLowerCase(Locale.ROOT).split(" "), set, 1.0f);
         indexedMapsets.put(set.getTitle().toLowerCase(Locale.ROOT).split(" "), set, 1.0f);
     }
-    public List<Mapset> search(String[] terms) {
-        return indexedMapsets.search(terms, 0.3f);
+    //Ranked results, skipping the first offset and returning at most limit sets.
+    public List<Mapset> search(String[] terms, int offset, int limit) {
+        return indexedMapsets.search(terms, 0.3f, offset, limit);
     }
 }
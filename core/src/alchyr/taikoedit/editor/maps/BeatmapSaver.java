@@ -0,0 +1,294 @@
+package alchyr.taikoedit.editor.maps;
+
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.TimingPoint;
+import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.management.assets.OsuFileWriter;
+import alchyr.taikoedit.util.structures.PositionalObjectArrayMap;
+import com.badlogic.gdx.Gdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//Saves maps on a background thread, so a save never holds up the update thread. Also autosaves every SettingsMaster.autosaveInterval seconds.
+//Autosaves go to a separate .AUTOSAVE file next to the map, so the map file and its backup are only replaced by saves the user asked for.
+//
+//Saving starts from a snapshot. Only the map's version and header are taken on the update thread; the object and point maps are
+//copied on the save thread while the map may still be changing, and the objects in them can be changed in place while the file is
+//written (dragging changes objects before the change is registered). So once the file is written, it is only used if the map's
+//version hasn't changed and nothing was dragged while it was being written. Otherwise it is thrown away and the save starts again.
+public class BeatmapSaver {
+    private static final int MAX_ATTEMPTS = 3; //Errors while writing are most likely from the map being changed, but don't retry forever
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor((r)->{
+        Thread t = new Thread(r, "TaikoEditor Save");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<EditorBeatmap> maps;
+    private final Map<EditorBeatmap, Job> jobs = new HashMap<>();
+    private final List<Runnable> completed = new ArrayList<>(); //Callbacks are run after updating jobs, since they may start or stop saves
+    private float autosaveTimer = 0;
+
+    //maps are the maps that are autosaved
+    public BeatmapSaver(List<EditorBeatmap> maps) {
+        this.maps = maps;
+    }
+
+    //onComplete is called on the update thread once the map as it is now has been saved, or saving failed.
+    public void save(EditorBeatmap map, Consumer<Boolean> onComplete) {
+        Job job = jobs.get(map);
+        if (job == null) {
+            job = new Job(map);
+            jobs.put(map, job);
+        }
+        job.callbacks.add(new Callback(map.getVersion(), onComplete));
+    }
+
+    public boolean isSaving(EditorBeatmap map) {
+        return jobs.containsKey(map);
+    }
+
+    public void update(float elapsed) {
+        int interval = SettingsMaster.autosaveInterval;
+        if (interval > 0) {
+            autosaveTimer += elapsed;
+            if (autosaveTimer >= interval) {
+                autosaveTimer = 0;
+                for (EditorBeatmap map : maps) {
+                    if (map.dirty && !jobs.containsKey(map))
+                        jobs.put(map, new Job(map));
+                }
+            }
+        }
+        else {
+            autosaveTimer = 0;
+        }
+
+        if (jobs.isEmpty())
+            return;
+
+        boolean editing = Gdx.input != null && Gdx.input.isTouched();
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().update(editing))
+                iterator.remove();
+        }
+
+        if (!completed.isEmpty()) {
+            List<Runnable> callbacks = new ArrayList<>(completed);
+            completed.clear();
+            for (Runnable callback : callbacks)
+                callback.run();
+        }
+    }
+
+    //Stops saving the map. Anything written but not yet moved into place is deleted.
+    public void discard(EditorBeatmap map) {
+        Job job = jobs.remove(map);
+        if (job != null)
+            job.discard();
+    }
+
+    public void dispose() {
+        for (Job job : jobs.values())
+            job.discard();
+        jobs.clear();
+        completed.clear();
+    }
+
+    private static class Callback {
+        final long version;
+        final Consumer<Boolean> onComplete;
+
+        Callback(long version, Consumer<Boolean> onComplete) {
+            this.version = version;
+            this.onComplete = onComplete;
+        }
+    }
+
+    //The version and header are taken on the update thread, which costs the same however large the map is.
+    //The maps are copied by write() on the save thread, so the copy may be torn by an edit made at the same time;
+    //any such edit changes the version or happens during a drag, so the file is thrown away after.
+    //The copies are kept, as they are what the journal restarts from once the file is in place.
+    private static class Snapshot {
+        final EditorBeatmap map;
+        final long version;
+        final boolean autosave;
+        final File previous, target;
+        final FullMapInfo info;
+
+        //Save thread, seen by the update thread once the write is done
+        PositionalObjectArrayMap<TimingPoint> timingPoints, effectPoints;
+        PositionalObjectArrayMap<HitObject> objects;
+
+        Snapshot(EditorBeatmap map, boolean autosave) {
+            FullMapInfo fullMapInfo = map.getFullMapInfo();
+
+            this.map = map;
+            this.autosave = autosave;
+            version = map.getVersion();
+            previous = fullMapInfo.getMapFile();
+            target = fullMapInfo.generateMapFile();
+            info = fullMapInfo.snapshot();
+        }
+
+        Path write() throws IOException {
+            timingPoints = map.timingPoints.copy();
+            effectPoints = map.effectPoints.copy();
+            objects = map.objects.copy();
+            return OsuFileWriter.write(target, info, timingPoints, effectPoints, objects);
+        }
+    }
+
+    private class Job {
+        final EditorBeatmap map;
+        final List<Callback> callbacks = new ArrayList<>();
+
+        Snapshot snapshot = null;
+        Future<Path> write = null;
+        Path temp = null;
+        Future<?> replace = null;
+        int attempts = 0;
+        boolean editedWhileWriting = false;
+
+        Job(EditorBeatmap map) {
+            this.map = map;
+        }
+
+        //Returns true when finished.
+        boolean update(boolean editing) {
+            if (replace != null) {
+                if (!replace.isDone())
+                    return false;
+
+                try {
+                    replace.get();
+                }
+                catch (Exception e) {
+                    return fail(e instanceof ExecutionException ? e.getCause() : e);
+                }
+
+                if (!snapshot.autosave) {
+                    map.backedUp = true;
+                    map.saved(snapshot.version, snapshot.target, snapshot.info, snapshot.objects, snapshot.timingPoints, snapshot.effectPoints);
+                    Iterator<Callback> iterator = callbacks.iterator();
+                    while (iterator.hasNext()) {
+                        Callback callback = iterator.next();
+                        if (callback.version <= snapshot.version) {
+                            completed.add(()->callback.onComplete.accept(true));
+                            iterator.remove();
+                        }
+                    }
+                }
+
+                //Changes made after the snapshot still need to be saved for anything left waiting.
+                replace = null;
+                snapshot = null;
+                attempts = 0;
+                return callbacks.isEmpty();
+            }
+
+            if (write == null) {
+                if (editing)
+                    return false;
+
+                snapshot = new Snapshot(map, callbacks.isEmpty());
+                write = executor.submit(snapshot::write);
+                editedWhileWriting = false;
+                ++attempts;
+                return false;
+            }
+
+            if (!write.isDone()) {
+                editedWhileWriting |= editing;
+                return false;
+            }
+
+            try {
+                temp = write.get();
+            }
+            catch (ExecutionException e) {
+                write = null;
+                if (e.getCause() instanceof IOException || attempts >= MAX_ATTEMPTS)
+                    return fail(e.getCause());
+                editorLogger.info("Map changed while saving, trying again.");
+                return false;
+            }
+            catch (Exception e) {
+                write = null;
+                return fail(e);
+            }
+
+            if (map.getVersion() != snapshot.version || editedWhileWriting) {
+                //Changed since the snapshot; objects could have been copied or written partway through a change.
+                //An autosave waits for the next interval, a requested save starts again.
+                discardTemp();
+                write = null;
+                attempts = 0;
+                return callbacks.isEmpty();
+            }
+            if (editing) {
+                return false; //Keep the file until it's clear whether this drag changes anything.
+            }
+
+            Path file = temp;
+            Snapshot saving = snapshot;
+            boolean backup = !map.backedUp;
+            temp = null;
+            write = null;
+            replace = executor.submit(()->{
+                try {
+                    if (saving.autosave)
+                        OsuFileWriter.autosave(file, saving.target);
+                    else
+                        OsuFileWriter.replace(saving.previous, file, saving.target, backup);
+                }
+                catch (IOException e) {
+                    OsuFileWriter.discard(file);
+                    throw e;
+                }
+                return null;
+            });
+            return false;
+        }
+
+        private boolean fail(Throwable e) {
+            EditorBeatmap.saveFailed(e);
+            for (Callback callback : callbacks)
+                completed.add(()->callback.onComplete.accept(false));
+            callbacks.clear();
+            return true;
+        }
+
+        private void discardTemp() {
+            if (temp != null) {
+                Path file = temp;
+                executor.execute(()->OsuFileWriter.discard(file));
+                temp = null;
+            }
+        }
+
+        void discard() {
+            discardTemp();
+            if (write != null) {
+                Future<Path> pending = write;
+                executor.execute(()->{
+                    //Runs after the write since there is only one save thread
+                    try {
+                        OsuFileWriter.discard(pending.get());
+                    }
+                    catch (Exception ignored) { }
+                });
+                write = null;
+            }
+        }
+    }
+}
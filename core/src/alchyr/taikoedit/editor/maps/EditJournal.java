@@ -0,0 +1,674 @@
+package alchyr.taikoedit.editor.maps;
+
+import alchyr.taikoedit.editor.changes.MapChange;
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.TimingPoint;
+import alchyr.taikoedit.management.assets.OsuFileReader;
+import alchyr.taikoedit.management.assets.OsuFileWriter;
+import alchyr.taikoedit.util.structures.PositionalObject;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//Changes made to an open map since it was last saved, kept on disk so they can be recovered if the program stops without saving.
+//
+//A journal starts with what it applies to: the map file, checked by its size and modified time, or for maps that don't match
+//their file (new or recovered maps), the whole map. After that come records of changed lines, each written as the .osu line.
+//Hit objects and timing points are identified by their index in the map at the start of the journal, counting red and green
+//lines separately; new ones get the next index. Records only count once they are complete, so a record cut off partway is ignored.
+//
+//Changes are encoded on the update thread once per frame, and written by a background thread which waits a short time
+//to collect more changes before writing and syncing them together. Saving the map starts a new journal from the saved file.
+public class EditJournal {
+    private static final File JOURNAL_FOLDER = new File("journal");
+    private static final String EXTENSION = ".journal";
+    private static final String MAGIC = "TaikoEditor journal 1";
+    private static final long COMMIT_DELAY = 100; //ms
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r)->{
+        Thread t = new Thread(r, "TaikoEditor Journal");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Set<EditJournal> open = ConcurrentHashMap.newKeySet();
+
+    private final EditorBeatmap map;
+
+    //Update thread
+    private final Map<PositionalObject, Integer> ids = new IdentityHashMap<>();
+    private int nextObject, nextRed, nextGreen;
+    private final Map<PositionalObject, Long> changedVersions = new IdentityHashMap<>(); //Everything changed since the last save
+    private final Set<PositionalObject> unrecorded = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<PositionalObject, Long> linePositions = new IdentityHashMap<>(); //Where each line was when last recorded
+    private long recordedVersion;
+    private String header;
+
+    //Shared with the journal thread
+    private final Object lock = new Object();
+    private final StringBuilder pending = new StringBuilder();
+    private File file;
+    private boolean restart = false; //pending holds a whole new journal
+    private boolean scheduled = false;
+    private boolean closed = false;
+
+    //Journal thread
+    private final Object writeLock = new Object();
+    private FileChannel channel = null;
+    private Path written = null;
+
+    //base is the full text of the map, for maps that don't match their file. If null, the journal starts from the map file.
+    public static EditJournal start(EditorBeatmap map, String base) {
+        EditJournal journal = new EditJournal(map);
+        journal.restart(map.getFullMapInfo().getMapFile(), base, map.getFullMapInfo().toString(),
+                map.objects, map.timingPoints, map.effectPoints);
+        open.add(journal);
+        return journal;
+    }
+
+    private EditJournal(EditorBeatmap map) {
+        this.map = map;
+        this.recordedVersion = map.getVersion();
+    }
+
+    public void changed(MapChange change) {
+        long version = map.getVersion();
+        change.forEachObject((o)->{
+            unrecorded.add(o);
+            changedVersions.put(o, version);
+        });
+    }
+
+    //Encodes everything changed since the last call. Called once per frame.
+    public void update() {
+        if (recordedVersion == map.getVersion())
+            return;
+        recordedVersion = map.getVersion();
+
+        String currentHeader = map.getFullMapInfo().toString();
+        boolean headerChanged = !currentHeader.equals(header);
+        unrecorded.addAll(changedSliders(headerChanged)); //The header might have changed the slider multiplier
+
+        StringBuilder record = new StringBuilder();
+        for (PositionalObject o : unrecorded)
+            record(o, record);
+        unrecorded.clear();
+
+        if (headerChanged) {
+            header = currentHeader;
+            appendHeader(record, currentHeader);
+        }
+
+        if (record.length() == 0)
+            return;
+        record.append("E\n");
+
+        synchronized (lock) {
+            if (closed)
+                return;
+            pending.append(record);
+            schedule();
+        }
+    }
+
+    //Starts a new journal from a save. The given maps are what was written, which may be copies taken before later changes.
+    public void saved(long savedVersion, File mapFile, FullMapInfo info, Map<Long, ? extends List<HitObject>> objects,
+                      Map<Long, ? extends List<TimingPoint>> timingPoints, Map<Long, ? extends List<TimingPoint>> effectPoints) {
+        changedVersions.values().removeIf((version)->version <= savedVersion);
+        unrecorded.clear();
+        unrecorded.addAll(changedVersions.keySet());
+
+        restart(mapFile, null, info.toString(), objects, timingPoints, effectPoints);
+        recordedVersion = savedVersion;
+        update();
+    }
+
+    private void restart(File mapFile, String base, String header, Map<Long, ? extends List<HitObject>> objects,
+                         Map<Long, ? extends List<TimingPoint>> timingPoints, Map<Long, ? extends List<TimingPoint>> effectPoints) {
+        ids.clear();
+        nextObject = assignIds(objects);
+        nextRed = assignIds(timingPoints);
+        nextGreen = assignIds(effectPoints);
+        linePositions.clear();
+        assignLinePositions(timingPoints);
+        assignLinePositions(effectPoints);
+        this.header = header;
+
+        StringBuilder start = new StringBuilder(MAGIC).append('\n');
+        start.append("F ").append(mapFile.getAbsolutePath()).append('\n');
+        if (base == null) {
+            start.append("B ").append(mapFile.length()).append(' ').append(mapFile.lastModified()).append('\n');
+        }
+        else {
+            for (String line : base.split("\n"))
+                start.append("i ").append(trimReturn(line)).append('\n');
+        }
+        appendHeader(start, header);
+        start.append("E\n");
+
+        synchronized (lock) {
+            if (closed)
+                return;
+            file = journalFile(mapFile);
+            pending.setLength(0);
+            pending.append(start);
+            restart = true;
+            schedule();
+        }
+    }
+
+    private int assignIds(Map<Long, ? extends List<? extends PositionalObject>> objects) {
+        int id = 0;
+        for (List<? extends PositionalObject> stack : objects.values()) {
+            for (PositionalObject o : stack)
+                ids.put(o, id++);
+        }
+        return id;
+    }
+
+    private void assignLinePositions(Map<Long, ? extends List<TimingPoint>> lines) {
+        for (Map.Entry<Long, ? extends List<TimingPoint>> stack : lines.entrySet()) {
+            for (TimingPoint p : stack.getValue())
+                linePositions.put(p, stack.getKey());
+        }
+    }
+
+    //Sliders are written with their length, which depends on the last red and green lines at or before them.
+    //A changed line affects sliders from where it is and where it was, until the next red line or for green lines the next line.
+    private List<HitObject> changedSliders(boolean all) {
+        List<HitObject> sliders = new ArrayList<>();
+        if (all || map.timingPoints.isEmpty()) {
+            addSliders(map.objects, sliders);
+            return sliders;
+        }
+
+        long firstRed = map.timingPoints.firstKey();
+        for (PositionalObject o : unrecorded) {
+            if (o instanceof TimingPoint) {
+                boolean red = ((TimingPoint) o).uninherited;
+                addSliders(o.getPos(), red, firstRed, sliders);
+                Long recorded = linePositions.get(o);
+                if (recorded != null && recorded != o.getPos())
+                    addSliders(recorded, red, firstRed, sliders);
+            }
+        }
+        return sliders;
+    }
+
+    //The first red line also applies to everything before it, so changes at or before it affect every slider up to it.
+    private void addSliders(long pos, boolean red, long firstRed, List<HitObject> sliders) {
+        long start = pos;
+        if (pos <= firstRed) {
+            start = Long.MIN_VALUE;
+            pos = firstRed;
+        }
+        Long nextRed = map.timingPoints.higherKey(pos), nextGreen = red ? null : map.effectPoints.higherKey(pos);
+        long end = Math.min(nextRed == null ? Long.MAX_VALUE : nextRed, nextGreen == null ? Long.MAX_VALUE : nextGreen);
+        addSliders(map.objects.subMap(start, true, end, false), sliders);
+    }
+
+    private static void addSliders(Map<Long, ArrayList<HitObject>> objects, List<HitObject> sliders) {
+        for (ArrayList<HitObject> stack : objects.values()) {
+            for (HitObject h : stack) {
+                if (h.type == HitObject.HitObjectType.SLIDER)
+                    sliders.add(h);
+            }
+        }
+    }
+
+    private void record(PositionalObject o, StringBuilder record) {
+        char type;
+        List<? extends PositionalObject> stack;
+        if (o instanceof TimingPoint) {
+            TimingPoint p = (TimingPoint) o;
+            type = p.uninherited ? 'r' : 'g';
+            stack = (p.uninherited ? map.timingPoints : map.effectPoints).get(p.getPos());
+        }
+        else {
+            type = 'o';
+            stack = map.objects.get(o.getPos());
+        }
+
+        Integer id = ids.get(o);
+        if (contains(stack, o)) {
+            if (id == null) {
+                id = type == 'o' ? nextObject++ : (type == 'r' ? nextRed++ : nextGreen++);
+                ids.put(o, id);
+            }
+            record.append(type).append(' ').append(id).append(' ');
+            if (o instanceof HitObject) {
+                record.append(OsuFileWriter.hitObjectLine((HitObject) o, map.getBaseSV(), map.timingPoints, map.effectPoints));
+            }
+            else {
+                record.append(o);
+                linePositions.put(o, o.getPos());
+            }
+            record.append('\n');
+        }
+        else if (id != null) {
+            ids.remove(o);
+            linePositions.remove(o);
+            record.append(Character.toUpperCase(type)).append(' ').append(id).append('\n');
+        }
+    }
+
+    private static boolean contains(List<? extends PositionalObject> stack, PositionalObject o) {
+        if (stack != null) {
+            for (PositionalObject p : stack) {
+                if (p == o)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendHeader(StringBuilder text, String header) {
+        for (String line : header.split("\r\n"))
+            text.append("h ").append(line).append('\n');
+    }
+
+    private static String trimReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            executor.schedule(this::flush, COMMIT_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //Writes whatever is waiting. Safe to call from any thread.
+    private boolean flush() {
+        synchronized (writeLock) {
+            String text;
+            boolean replace;
+            File target;
+            synchronized (lock) {
+                scheduled = false;
+                if (pending.length() == 0)
+                    return true;
+                text = pending.toString();
+                pending.setLength(0);
+                replace = restart;
+                restart = false;
+                target = file;
+            }
+
+            try {
+                byte[] data = text.getBytes(StandardCharsets.UTF_8);
+                if (replace) {
+                    replace(target.toPath(), data);
+                }
+                else if (channel != null) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    channel.force(false);
+                }
+                return true;
+            }
+            catch (IOException e) {
+                editorLogger.error("Failed to write edit journal.", e);
+                return false;
+            }
+        }
+    }
+
+    //A new journal is written next to the old one and moved over it, so there's always a complete start to recover from.
+    private void replace(Path target, byte[] data) throws IOException {
+        if (!JOURNAL_FOLDER.isDirectory() && !JOURNAL_FOLDER.mkdirs())
+            throw new IOException("Failed to create journal folder.");
+
+        closeChannel();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining())
+                out.write(buffer);
+            out.force(false);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (written != null && !written.equals(target))
+            Files.deleteIfExists(written);
+        written = target;
+        channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                editorLogger.error("Failed to close edit journal.", e);
+            }
+            channel = null;
+        }
+    }
+
+    //Stops journaling. If the map has unsaved changes, they're written out and kept to be recovered later.
+    //If discard is true or everything is saved, the journal is deleted before returning, so the map can be opened again right away.
+    public void close(boolean discard) {
+        boolean keep = !discard && map.dirty;
+        if (keep)
+            update();
+
+        File current;
+        synchronized (lock) {
+            closed = true;
+            if (!keep)
+                pending.setLength(0);
+            current = file;
+        }
+        open.remove(this);
+
+        if (keep) {
+            //Written here rather than on the journal thread, which may not get to run if the program is closing.
+            flush();
+            synchronized (writeLock) {
+                closeChannel();
+            }
+            return;
+        }
+
+        synchronized (writeLock) {
+            closeChannel();
+            try {
+                if (written != null)
+                    Files.deleteIfExists(written);
+                Files.deleteIfExists(current.toPath());
+            }
+            catch (IOException e) {
+                editorLogger.error("Failed to delete edit journal.", e);
+            }
+        }
+    }
+
+    //For when the program is stopping unexpectedly. Writes everything already encoded on the calling thread.
+    public static boolean flushAll() {
+        boolean success = true;
+        for (EditJournal journal : open) {
+            if (!journal.flush())
+                success = false;
+        }
+        return success;
+    }
+
+    //Named by a digest of the map's path, so different maps can't share a journal.
+    private static File journalFile(File mapFile) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(mapFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new GdxRuntimeException("SHA-256 is not available.", e);
+        }
+
+        StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+        for (byte b : digest)
+            name.append(String.format("%02x", b));
+        return new File(JOURNAL_FOLDER, name.append(EXTENSION).toString());
+    }
+
+
+    /* Recovery */
+
+    //Returns the text of the map with the changes in its journal applied,
+    //or null if there's nothing to recover or the journal doesn't apply to the map file as it is now.
+    public static String recover(File mapFile) {
+        File f = journalFile(mapFile);
+        if (!f.isFile())
+            return null;
+
+        try {
+            String text = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            String recovered = recover(mapFile, f, text.split("\n", -1));
+            if (recovered != null)
+                editorLogger.info("Recovered unsaved changes to " + mapFile.getName());
+            return recovered; //A journal that doesn't apply is replaced when the map's next journal starts
+        }
+        catch (IOException | RuntimeException e) {
+            editorLogger.error("Failed to recover changes from " + f.getName(), e);
+            return null;
+        }
+    }
+
+    private static String recover(File mapFile, File journalFile, String[] lines) throws IOException {
+        //The last line is either empty or cut off
+        int count = lines.length - 1;
+        if (count < 1 || !lines[0].equals(MAGIC))
+            return null;
+
+        StringBuilder base = null;
+        long size = -1, modified = -1;
+        List<String> header = new ArrayList<>();
+        String path = null;
+
+        int i = 1;
+        for (; i < count && !lines[i].equals("E"); ++i) {
+            String line = lines[i];
+            if (line.isEmpty())
+                continue;
+            String content = line.length() > 2 ? line.substring(2) : "";
+            switch (line.charAt(0)) {
+                case 'F':
+                    if (!mapFile.getAbsolutePath().equals(content))
+                        return null; //Written for another map
+                    path = content;
+                    break;
+                case 'B':
+                    String[] parts = content.split(" ");
+                    size = Long.parseLong(parts[0]);
+                    modified = Long.parseLong(parts[1]);
+                    break;
+                case 'i':
+                    if (base == null)
+                        base = new StringBuilder();
+                    base.append(content).append("\r\n");
+                    break;
+                case 'h':
+                    header.add(content);
+                    break;
+            }
+        }
+        if (i >= count || path == null)
+            return null;
+        ++i;
+
+        if (base == null) {
+            if (!mapFile.isFile() || mapFile.length() != size || mapFile.lastModified() != modified)
+                return null; //Changed since the journal started
+        }
+        else if (mapFile.exists() && mapFile.lastModified() > journalFile.lastModified()) {
+            return null;
+        }
+
+        OsuFileReader reader = base == null ? OsuFileReader.open(mapFile) : new OsuFileReader(base.toString().getBytes(StandardCharsets.UTF_8));
+        if (reader == null)
+            return null;
+        Lines objects = new Lines(), red = new Lines(), green = new Lines();
+        readBase(reader, objects, red, green);
+
+        //Apply complete records
+        int records = 0;
+        List<String> record = new ArrayList<>();
+        for (; i < count; ++i) {
+            String line = lines[i];
+            if (!line.equals("E")) {
+                record.add(line);
+                continue;
+            }
+
+            List<String> recordHeader = null;
+            for (String change : record) {
+                char type = change.charAt(0);
+                if (type == 'h') {
+                    if (recordHeader == null)
+                        recordHeader = new ArrayList<>();
+                    recordHeader.add(change.length() > 2 ? change.substring(2) : "");
+                    continue;
+                }
+
+                int idEnd = change.indexOf(' ', 2);
+                int id = Integer.parseInt(idEnd < 0 ? change.substring(2) : change.substring(2, idEnd));
+                String content = idEnd < 0 ? null : change.substring(idEnd + 1);
+                switch (type) {
+                    case 'o':
+                        objects.set(id, HitObject.create(content).getPos(), content);
+                        break;
+                    case 'r':
+                    case 'g':
+                        (type == 'r' ? red : green).set(id, new TimingPoint(content).getPos(), content);
+                        break;
+                    case 'O':
+                        objects.remove(id);
+                        break;
+                    case 'R':
+                        red.remove(id);
+                        break;
+                    case 'G':
+                        green.remove(id);
+                        break;
+                }
+            }
+            if (recordHeader != null)
+                header = recordHeader;
+            record.clear();
+            ++records;
+        }
+
+        if (records == 0 && base == null)
+            return null; //Nothing changed
+
+        //Same layout as OsuFileWriter
+        StringBuilder result = new StringBuilder();
+        for (String line : header)
+            result.append(line).append("\r\n");
+
+        List<Line> timing = red.sorted(), effect = green.sorted(), hitObjects = objects.sorted();
+        if (!timing.isEmpty() || !effect.isEmpty()) {
+            result.append("\r\n[TimingPoints]\r\n");
+            int t = 0, e = 0;
+            while (t < timing.size() || e < effect.size()) {
+                if (e >= effect.size() || (t < timing.size() && timing.get(t).pos <= effect.get(e).pos))
+                    result.append(timing.get(t++).text).append("\r\n");
+                else
+                    result.append(effect.get(e++).text).append("\r\n");
+            }
+        }
+        if (!timing.isEmpty() || !effect.isEmpty() || !hitObjects.isEmpty()) {
+            result.append("\r\n\r\n[HitObjects]\r\n");
+            for (Line line : hitObjects)
+                result.append(line.text).append("\r\n");
+        }
+        return result.toString();
+    }
+
+    //Reads timing points and hit objects the same way EditorBeatmap does, so they end up in the same order as in the loaded map.
+    private static void readBase(OsuFileReader reader, Lines objects, Lines red, Lines green) {
+        int section = 0;
+        while (reader.nextLine()) {
+            if (reader.lineIsEmpty())
+                continue;
+
+            if (reader.lineStartsWith('[')) {
+                switch (reader.line()) {
+                    case "[General]":
+                    case "[Editor]":
+                    case "[Metadata]":
+                    case "[Difficulty]":
+                    case "[Events]":
+                    case "[Colours]":
+                        section = 0;
+                        break;
+                    case "[TimingPoints]":
+                        section = 1;
+                        break;
+                    case "[HitObjects]":
+                        section = 2;
+                        break;
+                }
+            }
+            else if (section == 1) {
+                TimingPoint p = new TimingPoint(reader);
+                (p.uninherited ? red : green).add(p.getPos(), reader.line());
+            }
+            else if (section == 2) {
+                HitObject h = HitObject.create(reader);
+                objects.add(h.getPos(), reader.line());
+            }
+        }
+        objects.sortBase();
+        red.sortBase();
+        green.sortBase();
+    }
+
+    private static class Line {
+        final long pos;
+        final int id;
+        final String text;
+
+        Line(long pos, int id, String text) {
+            this.pos = pos;
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    //Lines of one type, by id.
+    private static class Lines {
+        private final ArrayList<Line> lines = new ArrayList<>();
+
+        void add(long pos, String text) {
+            lines.add(new Line(pos, -1, text));
+        }
+
+        //Ids of the base lines are their index once sorted by position; lines at the same position keep their order in the file.
+        void sortBase() {
+            lines.sort(Comparator.comparingLong((Line line) -> line.pos));
+            for (int i = 0; i < lines.size(); ++i)
+                lines.set(i, new Line(lines.get(i).pos, i, lines.get(i).text));
+        }
+
+        void set(int id, long pos, String text) {
+            while (lines.size() <= id)
+                lines.add(null);
+            lines.set(id, new Line(pos, id, text));
+        }
+
+        void remove(int id) {
+            if (id < lines.size())
+                lines.set(id, null);
+        }
+
+        List<Line> sorted() {
+            List<Line> sorted = new ArrayList<>(lines.size());
+            for (Line line : lines) {
+                if (line != null)
+                    sorted.add(line);
+            }
+            sorted.sort(Comparator.comparingLong((Line line) -> line.pos).thenComparingInt((line) -> line.id));
+            return sorted;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package alchyr.taikoedit.editor.maps;
 
+import alchyr.diffcalc.TaikoDifficultyCalculator;
 import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.editor.BeatDivisors;
 import alchyr.taikoedit.editor.DivisorOptions;
 import alchyr.taikoedit.editor.Snap;
+import alchyr.taikoedit.editor.SnapList;
 import alchyr.taikoedit.editor.Timeline;
 import alchyr.taikoedit.editor.changes.*;
 import alchyr.taikoedit.editor.views.EffectView;
@@ -17,16 +19,19 @@ import alchyr.taikoedit.management.MapMaster;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.GeneralUtils;
 import alchyr.taikoedit.management.assets.FileHelper;
+import alchyr.taikoedit.management.assets.OsuFileReader;
+import alchyr.taikoedit.management.assets.OsuFileWriter;
 import alchyr.taikoedit.util.structures.Pair;
 import alchyr.taikoedit.util.structures.PositionalObject;
+import alchyr.taikoedit.util.structures.PositionalObjectArrayMap;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
-import com.badlogic.gdx.utils.Queue;
 import com.badlogic.gdx.utils.StreamUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static alchyr.taikoedit.TaikoEditor.editorLogger;
 import static alchyr.taikoedit.TaikoEditor.music;
@@ -36,12 +41,18 @@ public class EditorBeatmap {
     private static final int BOOKMARK_REMOVE_DIST = 1000; //ms gap on either side of deletion attempt where a bookmark can be removed
 
     public boolean dirty = false; //Are there unsaved changes
+    private long version = 0; //Counts changes, so a save made from an earlier state can be recognized
+    boolean backedUp = false; //The map file is backed up by the first save after opening, so the backup is the map from before editing
+    private EditJournal journal = null;
+    private boolean recovered = false;
+    private String recoveredText = null; //Kept until the journal starts, which starts from it
 
     //For hitobjects/timing points use a structure that allows for fast find/insertion at the desired position but also fast iteration?
-    public final PositionalObjectTreeMap<TimingPoint> timingPoints; //red lines
-    public final PositionalObjectTreeMap<TimingPoint> effectPoints; //green lines
-    public final PositionalObjectTreeMap<TimingPoint> allPoints; //should not be modified directly? Accessibility is intended for iteration? Should probably make a readonly accessor but meh
-    public final PositionalObjectTreeMap<HitObject> objects;
+    public final PositionalObjectArrayMap<TimingPoint> timingPoints; //red lines
+    public final PositionalObjectArrayMap<TimingPoint> effectPoints; //green lines
+    public final PositionalObjectArrayMap<TimingPoint> allPoints; //should not be modified directly? Accessibility is intended for iteration? Should probably make a readonly accessor but meh
+    public final PositionalObjectArrayMap<HitObject> objects;
+    public final ScrollTable scroll; //sv and scroll distance over time, from timingPoints and effectPoints
 
     private final TreeMap<Long, Integer> volumeMap;
     private final TreeMap<Long, Boolean> kiaiMap; //each boolean is a spot where kiai is turned on or off.
@@ -83,23 +94,30 @@ public class EditorBeatmap {
     //Loading map from file
     public EditorBeatmap(Mapset set, MapInfo map)
     {
-        timingPoints = new PositionalObjectTreeMap<>();
-        effectPoints = new PositionalObjectTreeMap<>();
-        allPoints = new PositionalObjectTreeMap<>();
-        objects = new PositionalObjectTreeMap<>();
+        this(set, map, false);
+    }
+    //Loading map from file, with any changes left in its journal if recover is true
+    public EditorBeatmap(Mapset set, MapInfo map, boolean recover)
+    {
+        timingPoints = new PositionalObjectArrayMap<>();
+        effectPoints = new PositionalObjectArrayMap<>();
+        allPoints = new PositionalObjectArrayMap<>();
+        objects = new PositionalObjectArrayMap<>();
+        scroll = new ScrollTable(this);
 
         volumeMap = new TreeMap<>();
         kiaiMap = new TreeMap<>();
 
-        parse(set, map);
+        parse(set, map, recover);
     }
     //Creating new map
     public EditorBeatmap(EditorBeatmap base, FullMapInfo map, boolean keepObjects, boolean keepSv, boolean keepVolume)
     {
-        timingPoints = new PositionalObjectTreeMap<>();
-        effectPoints = new PositionalObjectTreeMap<>();
-        allPoints = new PositionalObjectTreeMap<>();
-        objects = new PositionalObjectTreeMap<>();
+        timingPoints = new PositionalObjectArrayMap<>();
+        effectPoints = new PositionalObjectArrayMap<>();
+        allPoints = new PositionalObjectArrayMap<>();
+        objects = new PositionalObjectArrayMap<>();
+        scroll = new ScrollTable(this);
 
         volumeMap = new TreeMap<>();
         kiaiMap = new TreeMap<>();
@@ -239,66 +257,59 @@ public class EditorBeatmap {
 
 
     /* EDITING METHODS */
-    private final Queue<MapChange> undoQueue = new Queue<>();
-    private final Queue<MapChange> redoQueue = new Queue<>();
+    private final ChangeHistory history = new ChangeHistory();
+    private TaikoDifficultyCalculator difficultyCalculator = null;
 
     // These should be used if the map is changed using ANYTHING other than undo and redo
-    //Redo queue is added to when undo is used, and cleared when any change is made.
-    //Undo queue fills up... Forever? Changes are added to END of undo queue, and removed from end as well.
+    //Redo history is added to when undo is used, and cleared when any change is made.
+    //History is limited by SettingsMaster.undoMemory; see ChangeHistory.
     public boolean canUndo() {
-        return !undoQueue.isEmpty();
+        return history.canUndo();
     }
     public boolean undo()
     {
-        if (!undoQueue.isEmpty())
+        if (history.canUndo())
         {
-            dirty = true;
-            redoQueue.addLast(undoQueue.removeLast().undo());
-            return redoQueue.last().invalidateSelection;
+            modified();
+            return changed(history.undo()).invalidateSelection;
         }
         return false;
     }
     public boolean canRedo() {
-        return !redoQueue.isEmpty();
+        return history.canRedo();
     }
     public boolean redo()
     {
-        if (!redoQueue.isEmpty())
+        if (history.canRedo())
         {
-            dirty = true;
-            undoQueue.addLast(redoQueue.removeLast().perform());
-            return undoQueue.last().invalidateSelection;
+            modified();
+            return changed(history.redo()).invalidateSelection;
         }
         return false;
     }
 
     public void addObject(HitObject o, BiFunction<PositionalObject, PositionalObject, Boolean> shouldReplace)
     {
-        dirty = true;
-        undoQueue.addLast(new ObjectAddition(this, o, shouldReplace).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new ObjectAddition(this, o, shouldReplace).perform()));
     }
     public void delete(NavigableMap<Long, ArrayList<PositionalObject>> deletion)
     {
-        dirty = true;
-        undoQueue.addLast(new MultiDeletion(this, deletion).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new MultiDeletion(this, deletion).perform()));
     }
     public void delete(PositionalObject o)
     {
-        dirty = true;
-        undoQueue.addLast(new SingleDeletion(this, o).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new SingleDeletion(this, o).perform()));
     }
     public void paste(PositionalObjectTreeMap<PositionalObject> pasteObjects, BiFunction<PositionalObject, PositionalObject, Boolean> shouldReplace) {
-        dirty = true;
-        undoQueue.addLast(new ObjectAddition(this, pasteObjects, shouldReplace).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new ObjectAddition(this, pasteObjects, shouldReplace).perform()));
     }
     public void pasteLines(PositionalObjectTreeMap<PositionalObject> pasteLines) {
-        dirty = true;
-        undoQueue.addLast(new MultiLineAddition(this, pasteLines).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new MultiLineAddition(this, pasteLines).perform()));
     }
     /*public void pasteLines(PositionalObjectTreeMap<PositionalObject> pasteLines) {
         dirty = true;
@@ -311,47 +322,114 @@ public class EditorBeatmap {
         redoQueue.clear();
     }*/
     public void reverse(MapChange.ChangeType type, boolean resnap, PositionalObjectTreeMap<PositionalObject> reversed) {
-        dirty = true;
-        undoQueue.addLast(new Reverse(this, type, resnap, reversed).perform());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new Reverse(this, type, resnap, reversed).perform()));
     }
     public void registerObjectMovement(PositionalObjectTreeMap<PositionalObject> movementObjects, long offset)
     {
-        dirty = true;
-        undoQueue.addLast(new ObjectMovement(this, movementObjects, offset).redo());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new ObjectMovement(this, movementObjects, offset).redo()));
     }
     public void registerLineMovement(PositionalObjectTreeMap<PositionalObject> movementObjects, long offset)
     {
-        dirty = true;
-        undoQueue.addLast(new LineMovement(this, movementObjects, offset).redo());
-        redoQueue.clear();
+        modified();
+        history.add(changed(new LineMovement(this, movementObjects, offset).redo()));
     }
 
     public void registerDurationChange(ILongObject obj, long change)
     {
-        dirty = true;
-        undoQueue.addLast(new DurationChange(this, obj, change));
+        modified();
+        history.add(changed(new DurationChange(this, obj, change)));
         adjustedEnd(obj, change);
-        redoQueue.clear();
     }
     public void registerValueChange(PositionalObjectTreeMap<PositionalObject> modifiedObjects)
     {
-        dirty = true;
-        undoQueue.addLast(new ValueModificationChange(this, modifiedObjects));
-        redoQueue.clear();
-        gameplayChanged();
+        modified();
+        MapChange change = history.add(changed(new ValueModificationChange(this, modifiedObjects)));
+        gameplayChanged(change);
     }
     public void registerVolumeChange(PositionalObjectTreeMap<PositionalObject> modifiedObjects, PositionalObjectTreeMap<PositionalObject> allChangeObjects) {
-        dirty = true;
-        undoQueue.addLast(new VolumeModificationChange(this, modifiedObjects, allChangeObjects));
-        redoQueue.clear();
+        modified();
+        history.add(changed(new VolumeModificationChange(this, modifiedObjects, allChangeObjects)));
     }
 
     public void registerChange(MapChange change) {
+        modified();
+        history.add(changed(change));
+    }
+
+    private void modified() {
         dirty = true;
-        undoQueue.addLast(change);
-        redoQueue.clear();
+        ++version;
+    }
+    public long getVersion() {
+        return version;
+    }
+
+    //Called once a save of the map as it was at the given version has been written.
+    //info and the object maps are what was saved, which may be copies of the map from before later changes.
+    public void saved(long savedVersion, File file, FullMapInfo info, PositionalObjectArrayMap<HitObject> savedObjects,
+                      PositionalObjectArrayMap<TimingPoint> savedTimingPoints, PositionalObjectArrayMap<TimingPoint> savedEffectPoints) {
+        fullMapInfo.setMapFile(file);
+        if (savedVersion == version)
+            dirty = false;
+        if (journal != null)
+            journal.saved(savedVersion, file, info, savedObjects, savedTimingPoints, savedEffectPoints);
+    }
+
+    //Lets the difficulty calculator and journal know which objects were affected.
+    private MapChange changed(MapChange change) {
+        if (difficultyCalculator != null)
+            difficultyCalculator.changed(change.objectsChangedFrom());
+        if (journal != null)
+            journal.changed(change);
+        return change;
+    }
+
+    //Starts keeping unsaved changes in a journal so they can be recovered. See EditJournal.
+    public void startJournal() {
+        if (journal != null)
+            return;
+
+        String base = recoveredText;
+        recoveredText = null;
+        if (base == null && !fullMapInfo.getMapFile().isFile()) {
+            //Nothing on disk yet, so the journal starts from the whole map
+            StringWriter w = new StringWriter();
+            try {
+                fullMapInfo.write(w);
+                OsuFileWriter.writeTimingPoints(w, timingPoints, effectPoints);
+                OsuFileWriter.writeHitObjects(w, fullMapInfo.sliderMultiplier, timingPoints, effectPoints, objects);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            base = w.toString();
+        }
+        journal = EditJournal.start(this, base);
+    }
+    //Writes recent changes to the journal. Called once per frame.
+    public void updateJournal() {
+        if (journal != null)
+            journal.update();
+    }
+    //For when the map is closed on purpose; any unsaved changes are not kept.
+    public void discardJournal() {
+        if (journal != null) {
+            journal.close(true);
+            journal = null;
+        }
+    }
+    //True if the map was loaded with changes recovered from its journal.
+    public boolean wasRecovered() {
+        return recovered;
+    }
+
+    //Created the first time difficulty is calculated and kept up to date with changes after that.
+    public TaikoDifficultyCalculator getDifficultyCalculator() {
+        if (difficultyCalculator == null)
+            difficultyCalculator = new TaikoDifficultyCalculator(this, new HashMap<>());
+        return difficultyCalculator;
     }
 
 
@@ -361,12 +439,12 @@ public class EditorBeatmap {
         return fullMapInfo.bookmarks;
     }
     public void addBookmark(int time) {
-        dirty = true;
+        modified();
         fullMapInfo.bookmarks.add(time);
     }
     public void removeBookmark(int time) {
         if (fullMapInfo.bookmarks.remove(time)) {
-            dirty = true;
+            modified();
             return;
         }
         Integer floor = fullMapInfo.bookmarks.floor(time), ceil = fullMapInfo.bookmarks.ceiling(time);
@@ -376,19 +454,19 @@ public class EditorBeatmap {
         if (floor == null) {
             if (ceil - time < BOOKMARK_REMOVE_DIST) {
                 fullMapInfo.bookmarks.remove(ceil);
-                dirty = true;
+                modified();
             }
         }
         else if (ceil == null || (time - floor < ceil - time)) {
             if (time - floor < BOOKMARK_REMOVE_DIST) {
                 fullMapInfo.bookmarks.remove(floor);
-                dirty = true;
+                modified();
             }
         }
         else {
             if (ceil - time < BOOKMARK_REMOVE_DIST) {
                 fullMapInfo.bookmarks.remove(ceil);
-                dirty = true;
+                modified();
             }
         }
     }
@@ -442,23 +520,24 @@ public class EditorBeatmap {
             TaikoEditor.onMain(divisor::reset);
         }
     }
-    public NavigableMap<Long, Snap> getActiveSnaps(double startPos, double endPos)
+    public SnapList getActiveSnaps(double startPos, double endPos)
     {
         return divisor.getSnaps(startPos, endPos);
     }
     //Currently in use snappings (visible or not)
-    public TreeMap<Long, Snap> getCurrentSnaps()
+    public BeatDivisors.SnapSet getCurrentSnaps()
     {
         return divisor.getSnaps();
     }
     //All snappings
-    public TreeMap<Long, Snap> getAllSnaps()
+    public BeatDivisors.SnapSet getAllSnaps()
     {
         return divisor.getAllSnaps();
     }
-    public HashSet<Snap> getSnaps(int divisor)
+    //Snappings of a divisor between start and end (inclusive)
+    public SnapList getSnaps(int divisor, long start, long end)
     {
-        return this.divisor.getCombinedSnaps(divisor);
+        return this.divisor.getSnaps(divisor, start, end);
     }
     public TreeMap<Long, Snap> getBarlineSnaps() { return divisor.getBarlines(); }
 
@@ -1395,6 +1474,8 @@ public class EditorBeatmap {
         updateLines(added, removed, true);
     }
     public void updateLines(Iterable<? extends Map.Entry<Long, ? extends List<?>>> added, Iterable<? extends Map.Entry<Long, ? extends List<?>>> removed, boolean updateTimeline) {
+        scrollChanged(added);
+        scrollChanged(removed);
         if (!effectViews.isEmpty()) {
             if (removed != null) {
                 TimingPoint temp;
@@ -1437,36 +1518,116 @@ public class EditorBeatmap {
         updatePositions.clear();
     }
 
+    private void scrollChanged(Iterable<? extends Map.Entry<Long, ? extends List<?>>> lines) {
+        if (lines != null) {
+            for (Map.Entry<Long, ? extends List<?>> e : lines)
+                scroll.changed(e.getKey());
+        }
+    }
+
     //Used when only values of green lines are adjusted
     public void updateSv() {
+        scroll.changed(Long.MIN_VALUE);
         for (EffectView effectView : effectViews) {
             effectView.recheckSvLimits();
         }
     }
     public void updateLines(TimingPoint added, TimingPoint removed) {
+        scroll.changed(Math.min(added.getPos(), removed.getPos()));
         if (!effectViews.isEmpty()) {
             updateLines(Collections.singleton(new Pair<>(added.getPos(), Collections.singletonList(added))),
                     Collections.singleton(new Pair<>(removed.getPos(), Collections.singletonList(removed))));
         }
     }
     public void updateLines(TimingPoint added, List<Pair<Long, ArrayList<TimingPoint>>> removed) {
+        scroll.changed(added.getPos());
+        scrollChanged(removed);
         if (!effectViews.isEmpty()) {
             updateLines(Collections.singleton(new Pair<>(added.getPos(), Collections.singletonList(added))), removed);
         }
     }
     public void updateLines(List<Pair<Long, ArrayList<TimingPoint>>> added, TimingPoint removed) {
+        scroll.changed(removed.getPos());
+        scrollChanged(added);
         if (!effectViews.isEmpty()) {
             updateLines(added, Collections.singleton(new Pair<>(removed.getPos(), Collections.singletonList(removed))));
         }
     }
 
+    //Recalculates everything in gameplay views.
     public void gameplayChanged() {
+        scroll.changed(Long.MIN_VALUE);
         for (GameplayView view : gameplayViews) {
             if (view.autoRefresh()) {
                 TaikoEditor.onMain(view::calculateTimes);
             }
         }
     }
+    //Gameplay views only recalculate the part of the map a change affected, from the first to the last of its objects.
+    public void gameplayChanged(MapChange change) {
+        gameplayChanged(change, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+    //For movement; the objects were also at their current position + offset.
+    public void gameplayChanged(MapChange change, long offset) {
+        gameplayChanged(change, offset, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+    //The change also affected everything from start to end.
+    public void gameplayChanged(MapChange change, long start, long end) {
+        gameplayChanged(change, 0, start, end);
+    }
+    private void gameplayChanged(MapChange change, long offset, long start, long end) {
+        GameplayRange range = new GameplayRange();
+        change.forEachObject(range);
+        if (range.lines)
+            scroll.changed(Math.min(start, Math.min(range.start, range.start + offset)));
+
+        if (gameplayViews.isEmpty())
+            return;
+
+        if (range.timing) {
+            //Red lines change the barlines and the bpm of everything after them
+            gameplayChanged();
+            return;
+        }
+
+        if (range.start <= range.end) {
+            start = Math.min(start, Math.min(range.start, range.start + offset));
+            end = Math.max(end, Math.max(range.end, range.end + offset));
+        }
+        if (start > end)
+            return;
+
+        if (range.lines) {
+            //Objects use the changed sv until the next line
+            Long nextTiming = timingPoints.higherKey(end), nextEffect = effectPoints.higherKey(end);
+            if (nextTiming == null && nextEffect == null)
+                end = Long.MAX_VALUE;
+            else
+                end = Math.min(nextTiming == null ? Long.MAX_VALUE : nextTiming, nextEffect == null ? Long.MAX_VALUE : nextEffect) - 1;
+        }
+
+        for (GameplayView view : gameplayViews) {
+            if (view.autoRefresh()) {
+                view.invalidate(start, end);
+            }
+        }
+    }
+
+    private static class GameplayRange implements Consumer<PositionalObject> {
+        long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+        boolean lines = false, timing = false;
+
+        @Override
+        public void accept(PositionalObject o) {
+            start = Math.min(start, o.getPos());
+            end = Math.max(end, o.getPos());
+            if (o instanceof TimingPoint) {
+                lines = true;
+                if (((TimingPoint) o).uninherited)
+                    timing = true;
+            }
+        }
+    }
 
     //Timing Points
     public NavigableMap<Long, ArrayList<TimingPoint>> getEditPoints(long startPos, long endPos)
@@ -1541,6 +1702,11 @@ public class EditorBeatmap {
 
     public void dispose()
     {
+        if (journal != null) {
+            journal.close(false);
+            journal = null;
+        }
+
         timingPoints.clear();
         effectPoints.clear();
         allPoints.clear();
@@ -1559,29 +1725,34 @@ public class EditorBeatmap {
 
 
     /// Save/load ///
-    private void parse(Mapset set, MapInfo map)
+    private void parse(Mapset set, MapInfo map, boolean recover)
     {
         fullMapInfo = new FullMapInfo(set, map);
 
-        if (!map.getMapFile().isFile())
-            return;
+        OsuFileReader reader = null;
+        if (recover) {
+            recoveredText = EditJournal.recover(map.getMapFile());
+            if (recoveredText != null) {
+                reader = new OsuFileReader(recoveredText.getBytes(StandardCharsets.UTF_8));
+                recovered = true;
+                modified();
+            }
+        }
+
+        if (reader == null) {
+            if (!map.getMapFile().isFile())
+                return;
 
-        List<String> lines = FileHelper.readFileLines(map.getMapFile());
+            reader = OsuFileReader.open(map.getMapFile());
 
-        if (lines == null || lines.isEmpty())
-            return;
+            if (reader == null)
+                return;
+        }
 
         int section = -1, eventSection = -1;
 
-        //Sv tracking variables
-        long currentPos;
-        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing = null, effect = null;
-        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
-        double svRate = 1.4, currentBPM = 120;
         int volume = 100;
 
-        TimingPoint temp;
-
         //-1 Header
         //0 General
         //1 Editor
@@ -1597,14 +1768,15 @@ public class EditorBeatmap {
             //1 break
             //2 anything else
 
-        for (String line : lines)
+        String line;
+        while (reader.nextLine())
         {
-            if (line.isEmpty())
+            if (reader.lineIsEmpty())
                 continue;
 
-            if (line.startsWith("["))
+            if (reader.lineStartsWith('['))
             {
-                switch (line)
+                switch (reader.line())
                 {
                     case "[General]":
                         section = 0;
@@ -1640,30 +1812,11 @@ public class EditorBeatmap {
                             }
                         }
 
-                        //Prepare to track sv for the purpose of calculating slider length
-                        svRate = fullMapInfo.sliderMultiplier;
-                        timing = timingPoints.entrySet().iterator();
-                        effect = effectPoints.entrySet().iterator();
-
-                        if (timing.hasNext())
-                        {
-                            nextTiming = timing.next();
-                            currentBPM = nextTiming.getValue().get(0).value;
-                            volume = nextTiming.getValue().get(0).volume;
-                            svRate = fullMapInfo.sliderMultiplier;
-                            if (timing.hasNext())
-                                nextTiming = timing.next();
-                            else
-                                nextTiming = null; //Only one timing point.
-                        }
-                        else
-                        {
-                            nextTiming = null; //what the fuck why are there no timing points >:(
-                            currentBPM = 120; //This is what osu uses as default so it's what I'm gonna use. Though really, there shouldn't be any objects if there's no timing points.
-                        }
+                        if (!timingPoints.isEmpty())
+                            volume = timingPoints.firstEntry().getValue().get(0).volume;
 
-                        if (effect.hasNext())
-                            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
+                        //Sliders need the sv and bpm at their position to calculate their length
+                        scroll.changed(Long.MIN_VALUE);
                         break;
                     case "[Colours]": //I don't give a fuck about colors this is taiko you can't even see them in game OR in editor
                         section = 7;
@@ -1672,6 +1825,8 @@ public class EditorBeatmap {
             }
             else
             {
+                //Timing points and hit objects are read straight from the file data, other sections by line
+                line = section <= 4 ? reader.line() : null;
                 switch (section) {
                     case 0: //General
                         if (line.contains(":"))
@@ -1840,50 +1995,17 @@ public class EditorBeatmap {
                         }
                         break;
                     case 5: //TimingPoints
-                        TimingPoint p = new TimingPoint(line); //ordering is not guaranteed at this point
+                        TimingPoint p = new TimingPoint(reader); //ordering is not guaranteed at this point
                         if (p.uninherited)
                             timingPoints.add(p);
                         else
                             effectPoints.add(p);
                         break;
                     case 6: //HitObjects
-                        HitObject h = HitObject.create(line);
-                        currentPos = h.getPos();
-
-                        long lastTimingPos = Long.MIN_VALUE;
-                        long lastEffectPos = Long.MIN_VALUE;
-
-                        while (timing != null && nextTiming != null && nextTiming.getKey() <= currentPos)
-                        {
-                            temp = GeneralUtils.listLast(nextTiming.getValue());
-                            currentBPM = temp.value;
-                            lastTimingPos = nextTiming.getKey();
-                            svRate = fullMapInfo.sliderMultiplier; //return to base sv
-
-                            if (timing.hasNext())
-                                nextTiming = timing.next();
-                            else
-                                nextTiming = null;
-                        }
-                        while (effect != null && nextEffect != null && nextEffect.getKey() <= currentPos)
-                        {
-                            temp = GeneralUtils.listLast(nextEffect.getValue());
-                            lastEffectPos = nextEffect.getKey();
-                            svRate = fullMapInfo.sliderMultiplier * temp.value;
-
-                            if (effect.hasNext())
-                                nextEffect = effect.next();
-                            else
-                                nextEffect = null;
-                        }
-                        if (lastEffectPos < lastTimingPos)
-                        {
-                            svRate = fullMapInfo.sliderMultiplier; //return to base sv and volume of the timing point
-                        }
-
+                        HitObject h = HitObject.create(reader);
                         if (h.type == HitObject.HitObjectType.SLIDER)
                         {
-                            ((Slider)h).calculateDuration(currentBPM, svRate);
+                            ((Slider)h).calculateDuration(scroll.beatLength(h.getPos()), fullMapInfo.sliderMultiplier * scroll.sv(h.getPos()));
                         }
                         updateVolume(h);
                         objects.add(h);
@@ -1941,250 +2063,47 @@ public class EditorBeatmap {
 
     public boolean save()
     {
-        FileOutputStream out = null;
-        BufferedWriter w = null;
         try
         {
-            String mapInfo = fullMapInfo.toString();
-            String lines = timingPoints();
-            String objects = hitObjects();
-
-            //Successfully generated map save text without crashing.
-
             File newFile = fullMapInfo.generateMapFile();
 
-            if (fullMapInfo.getMapFile().exists())
-            {
-                String backup = newFile.getPath();
-                backup = backup.substring(0, backup.lastIndexOf('.')) + ".BACKUP";
-                File backupFile = new File(backup);
-                if (backupFile.exists())
-                    backupFile.delete();
-                try
-                {
-                    if (fullMapInfo.getMapFile().renameTo(backupFile))
-                    {
-                        editorLogger.info("Created backup successfully.");
-                    }
-                    else
-                    {
-                        editorLogger.error("Failed to create backup.");
-                    }
-                }
-                catch (Exception e)
-                {
-                    //No backup :(
-                    editorLogger.error("Failed to create backup.", e);
-                    try {
-                        File f = new File("error.txt");
-                        PrintWriter pWriter = null;
-
-                        try {
-                            pWriter = new PrintWriter(f);
-                            pWriter.println("Version: " + TaikoEditor.VERSION);
-                            pWriter.println("Error occurred during save: " + e.getMessage());
-                            e.printStackTrace(pWriter);
-                        }
-                        catch (Exception ignored) {
-                        }
-                        finally {
-                            StreamUtils.closeQuietly(pWriter);
-                        }
-                    }
-                    catch (Exception ignored) {
-
-                    }
-                }
-            }
-
-            out = new FileOutputStream(newFile, false);
-            w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
-
-            w.write(mapInfo);
-            w.write(lines);
-            w.write(objects);
+            OsuFileWriter.save(fullMapInfo.getMapFile(), newFile, fullMapInfo, timingPoints, effectPoints, objects, !backedUp);
+            backedUp = true;
 
-            w.close();
-            out.close();
-
-            dirty = false;
-
-            fullMapInfo.setMapFile(newFile);
+            saved(version, newFile, fullMapInfo, objects, timingPoints, effectPoints);
             return true;
         }
         catch (Exception e)
         {
-            if (w != null)
-            {
-                try
-                {
-                    w.close();
-                }
-                catch (Exception ignored) {}
-            }
-            if (out != null)
-            {
-                try
-                {
-                    out.close();
-                }
-                catch (Exception ignored) {}
-            }
-            editorLogger.error("Failed to save beatmap.", e);
-
-            try {
-                File f = new File("error.txt");
-                PrintWriter pWriter = null;
-
-                try {
-                    pWriter = new PrintWriter(f);
-                    pWriter.println("Version: " + TaikoEditor.VERSION);
-                    pWriter.println("Error occurred during save: " + e.getMessage());
-                    e.printStackTrace(pWriter);
-                }
-                catch (Exception ignored) {
-                }
-                finally {
-                    StreamUtils.closeQuietly(pWriter);
-                }
-            }
-            catch (Exception ignored) {
-
-            }
-
+            saveFailed(e);
             return false;
         }
     }
 
-    private String timingPoints()
+    //Logs a failed save and writes the error to error.txt.
+    public static void saveFailed(Throwable e)
     {
-        if (timingPoints.isEmpty() && effectPoints.isEmpty())
-            return "";
+        editorLogger.error("Failed to save beatmap.", e);
 
-        StringBuilder sb = new StringBuilder("\r\n[TimingPoints]\r\n");
-
-        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
-        timing = timingPoints.entrySet().iterator();
-        effect = effectPoints.entrySet().iterator();
-
-        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
-
-        if (timing.hasNext())
-            nextTiming = timing.next();
-
-        if (effect.hasNext())
-            nextEffect = effect.next();
-
-        while (nextTiming != null || nextEffect != null)
-        {
-            if (nextTiming == null)
-            {
-                for (TimingPoint t : nextEffect.getValue())
-                    sb.append(t.toString()).append("\r\n");
+        try {
+            File f = new File("error.txt");
+            PrintWriter pWriter = null;
 
-                if (effect.hasNext())
-                    nextEffect = effect.next();
-                else
-                    nextEffect = null;
+            try {
+                pWriter = new PrintWriter(f);
+                pWriter.println("Version: " + TaikoEditor.VERSION);
+                pWriter.println("Error occurred during save: " + e.getMessage());
+                e.printStackTrace(pWriter);
             }
-            else if (nextEffect == null || (nextTiming.getKey() <= nextEffect.getKey()))
-            {
-                for (TimingPoint t : nextTiming.getValue())
-                    sb.append(t.toString()).append("\r\n");
-
-                if (timing.hasNext())
-                    nextTiming = timing.next();
-                else
-                    nextTiming = null;
+            catch (Exception ignored) {
             }
-            else //next effect is not null and is before next timing
-            {
-                for (TimingPoint t : nextEffect.getValue())
-                    sb.append(t.toString()).append("\r\n");
-
-                if (effect.hasNext())
-                    nextEffect = effect.next();
-                else
-                    nextEffect = null;
+            finally {
+                StreamUtils.closeQuietly(pWriter);
             }
         }
+        catch (Exception ignored) {
 
-        return sb.toString();
-    }
-    private String hitObjects()
-    {
-        if (timingPoints.isEmpty() && effectPoints.isEmpty() && hitObjects().isEmpty())
-            return "";
-
-
-        //Sv tracking variables
-        long currentPos;
-        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
-        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
-        double svRate = 1.4, currentBPM = 120;
-
-        svRate = fullMapInfo.sliderMultiplier;
-        timing = timingPoints.entrySet().iterator();
-        effect = effectPoints.entrySet().iterator();
-
-        if (timing.hasNext())
-        {
-            nextTiming = timing.next();
-            currentBPM = nextTiming.getValue().get(0).value;
-            if (timing.hasNext())
-                nextTiming = timing.next();
-            else
-                nextTiming = null; //Only one timing point.
-        }
-
-        if (effect.hasNext())
-            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
-
-
-
-        StringBuilder sb = new StringBuilder("\r\n\r\n[HitObjects]\r\n");
-
-
-
-        for (Map.Entry<Long, ArrayList<HitObject>> stacked : objects.entrySet())
-        {
-            currentPos = stacked.getKey();
-
-            long lastTimingPos = Long.MIN_VALUE;
-            long lastEffectPos = Long.MIN_VALUE;
-
-            while (nextTiming != null && nextTiming.getKey() <= currentPos)
-            {
-                currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
-                lastTimingPos = nextTiming.getKey();
-                svRate = fullMapInfo.sliderMultiplier; //return to base sv
-
-                if (timing.hasNext())
-                    nextTiming = timing.next();
-                else
-                    nextTiming = null;
-            }
-            while (nextEffect != null && nextEffect.getKey() <= currentPos)
-            {
-                lastEffectPos = nextEffect.getKey();
-                svRate = fullMapInfo.sliderMultiplier * nextEffect.getValue().get(nextEffect.getValue().size() - 1).value;
-
-                if (effect.hasNext())
-                    nextEffect = effect.next();
-                else
-                    nextEffect = null;
-            }
-            if (lastEffectPos < lastTimingPos)
-            {
-                svRate = fullMapInfo.sliderMultiplier; //return to base sv
-            }
-
-
-            for (HitObject h : stacked.getValue())
-                sb.append(h.toString(currentBPM, svRate)).append("\r\n");
         }
-
-        return sb.toString();
     }
 
     public String getName()
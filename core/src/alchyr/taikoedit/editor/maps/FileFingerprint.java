@@ -0,0 +1,45 @@
+package alchyr.taikoedit.editor.maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+//Modified time and size of a file when it was read, used to tell whether it has to be read again.
+public class FileFingerprint {
+    public final long modified;
+    public final long size;
+
+    public FileFingerprint(long modified, long size) {
+        this.modified = modified;
+        this.size = size;
+    }
+
+    //Returns null if the file can't be accessed.
+    public static FileFingerprint of(File f) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return new FileFingerprint(attributes.lastModifiedTime().toMillis(), attributes.size());
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public boolean matches(File f) {
+        return equals(of(f));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileFingerprint that = (FileFingerprint) o;
+        return modified == that.modified && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(modified) * 31 + Long.hashCode(size);
+    }
+}
@@ -2,7 +2,7 @@ package alchyr.taikoedit.editor.maps;
 
 import alchyr.taikoedit.util.structures.Pair;
 
-import java.io.File;
+import java.io.*;
 import java.text.DecimalFormat;
 import java.util.*;
 
@@ -102,6 +102,48 @@ public class FullMapInfo {
         this.base = new MapInfo(base, f, diffName);
     }
 
+    //Copy of everything written to the file, for saving in the background. The storyboard is shared since it is never modified.
+    public FullMapInfo snapshot() {
+        FullMapInfo copy = new FullMapInfo(parent, base);
+
+        copy.audioLeadIn = audioLeadIn;
+        copy.previewTime = previewTime;
+        copy.countdown = countdown;
+        copy.sampleSet = sampleSet;
+        copy.stackLeniency = stackLeniency;
+        copy.letterboxInBreaks = letterboxInBreaks;
+        copy.widescreenStoryboard = widescreenStoryboard;
+
+        copy.bookmarks.addAll(bookmarks);
+        copy.distanceSpacing = distanceSpacing;
+        copy.beatDivisor = beatDivisor;
+        copy.gridSize = gridSize;
+        copy.timelineZoom = timelineZoom;
+
+        copy.creator = creator;
+        copy.artist = artist;
+        copy.artistUnicode = artistUnicode;
+        copy.title = title;
+        copy.titleUnicode = titleUnicode;
+        copy.source = source;
+        copy.tags = tags.clone();
+        copy.beatmapID = beatmapID;
+        copy.beatmapSetID = beatmapSetID;
+
+        copy.hp = hp;
+        copy.cs = cs;
+        copy.od = od;
+        copy.ar = ar;
+        copy.sliderMultiplier = sliderMultiplier;
+        copy.sliderTickRate = sliderTickRate;
+
+        copy.backgroundEvents.addAll(backgroundEvents);
+        for (Pair<Long, Long> breakPeriod : breakPeriods)
+            copy.breakPeriods.add(new Pair<>(breakPeriod.a, breakPeriod.b));
+        copy.fullStoryboard = fullStoryboard;
+        return copy;
+    }
+
     public File getMapFile() {
         return base.getMapFile();
     }
@@ -165,53 +207,105 @@ public class FullMapInfo {
     private final StringBuilder saveBuilder = new StringBuilder();
     @Override
     public String toString() {
+        StringWriter w = new StringWriter();
+        try {
+            write(w);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return w.toString();
+    }
+
+    //Everything before [TimingPoints], written straight to the output.
+    public void write(Writer w) throws IOException {
         DecimalFormat df = new DecimalFormat("#0.#", osuSafe);
-        return "osu file format v14\r\n" +
-            "\r\n" +
-            "[General]\r\n" +
-            "AudioFilename: " + getSongFileForSave() + "\r\n" +
-            "AudioLeadIn: " + audioLeadIn + "\r\n" +
-            "PreviewTime: " + previewTime + "\r\n" +
-            "Countdown: " + (countdown ? 1 : 0) + "\r\n" +
-            "SampleSet: " + sampleSet + "\r\n" +
-            "StackLeniency: " + stackLeniency + "\r\n" +
-            "Mode: 1\r\n" +
-            "LetterboxInBreaks: " + (letterboxInBreaks ? 1 : 0) + "\r\n" +
-            "WidescreenStoryboard: " + (widescreenStoryboard ? 1 : 0) + "\r\n" +
-            "\r\n" +
-            "[Editor]\r\n" +
-            bookmarkString() +
-            "DistanceSpacing: " + distanceSpacing + "\r\n" +
-            "BeatDivisor: " + beatDivisor + "\r\n" +
-            "GridSize: " + gridSize + "\r\n" +
-            "TimelineZoom: " + timelineZoom + "\r\n" +
-            "\r\n" +
-            "[Metadata]\r\n" +
-            "Title:" + title + "\r\n" +
-            "TitleUnicode:" + titleUnicode + "\r\n" +
-            "Artist:" + artist + "\r\n" +
-            "ArtistUnicode:" + artistUnicode + "\r\n" +
-            "Creator:" + creator + "\r\n" +
-            "Version:" + base.getDifficultyName() + "\r\n" +
-            "Source:" + source + "\r\n" +
-            "Tags:" + tagText() + "\r\n" +
-            "BeatmapID:" + beatmapID + "\r\n" +
-            "BeatmapSetID:" + beatmapSetID + "\r\n" +
-            "\r\n" +
-            "[Difficulty]\r\n" +
-            "HPDrainRate:" + df.format(hp) + "\r\n" +
-            "CircleSize:" + df.format(cs) + "\r\n" +
-            "OverallDifficulty:" + df.format(od) + "\r\n" +
-            "ApproachRate:" + df.format(ar) + "\r\n" +
-            "SliderMultiplier:" + sliderMultiplier + "\r\n" +
-            "SliderTickRate:" + df.format(sliderTickRate) + "\r\n" +
+        w.write("osu file format v14\r\n" +
             "\r\n" +
+            "[General]\r\n");
+        line(w, "AudioFilename: ", getSongFileForSave());
+        line(w, "AudioLeadIn: ", audioLeadIn);
+        line(w, "PreviewTime: ", previewTime);
+        line(w, "Countdown: ", countdown ? 1 : 0);
+        line(w, "SampleSet: ", sampleSet);
+        line(w, "StackLeniency: ", stackLeniency);
+        w.write("Mode: 1\r\n");
+        line(w, "LetterboxInBreaks: ", letterboxInBreaks ? 1 : 0);
+        line(w, "WidescreenStoryboard: ", widescreenStoryboard ? 1 : 0);
+        w.write("\r\n" +
+            "[Editor]\r\n");
+        if (!bookmarks.isEmpty()) {
+            w.write("Bookmarks: ");
+            int count = 0;
+            for (int i : bookmarks)
+            {
+                w.write(Integer.toString(i));
+                if (count++ < bookmarks.size() - 1)
+                    w.write(',');
+            }
+            w.write("\r\n");
+        }
+        line(w, "DistanceSpacing: ", distanceSpacing);
+        line(w, "BeatDivisor: ", beatDivisor);
+        line(w, "GridSize: ", gridSize);
+        line(w, "TimelineZoom: ", timelineZoom);
+        w.write("\r\n" +
+            "[Metadata]\r\n");
+        line(w, "Title:", title);
+        line(w, "TitleUnicode:", titleUnicode);
+        line(w, "Artist:", artist);
+        line(w, "ArtistUnicode:", artistUnicode);
+        line(w, "Creator:", creator);
+        line(w, "Version:", base.getDifficultyName());
+        line(w, "Source:", source);
+        w.write("Tags:");
+        for (int i = 0; i < tags.length; ++i) {
+            if (i > 0)
+                w.write(' ');
+            w.write(tags[i]);
+        }
+        w.write("\r\n");
+        line(w, "BeatmapID:", beatmapID);
+        line(w, "BeatmapSetID:", beatmapSetID);
+        w.write("\r\n" +
+            "[Difficulty]\r\n");
+        line(w, "HPDrainRate:", df.format(hp));
+        line(w, "CircleSize:", df.format(cs));
+        line(w, "OverallDifficulty:", df.format(od));
+        line(w, "ApproachRate:", df.format(ar));
+        line(w, "SliderMultiplier:", sliderMultiplier);
+        line(w, "SliderTickRate:", df.format(sliderTickRate));
+        w.write("\r\n" +
             "[Events]\r\n" +
-            "//Background and Video events\r\n" +
-                eventFormat(backgroundEvents) +
-            "//Break Periods\r\n" +
-                breaks() +
-                fullStoryboard();
+            "//Background and Video events\r\n");
+        for (String[] event : backgroundEvents)
+        {
+            for (int i = 0; i < event.length; ++i) {
+                if (i > 0)
+                    w.write(',');
+                w.write(event[i]);
+            }
+            w.write("\r\n");
+        }
+        w.write("//Break Periods\r\n");
+        for (Pair<Long, Long> breakPeriod : breakPeriods) {
+            w.write("2,");
+            w.write(Long.toString(breakPeriod.a));
+            w.write(',');
+            w.write(Long.toString(breakPeriod.b));
+            w.write("\r\n");
+        }
+        for (String event : fullStoryboard)
+        {
+            w.write(event);
+            w.write("\r\n");
+        }
+    }
+
+    private static void line(Writer w, String key, Object value) throws IOException {
+        w.write(key);
+        w.write(String.valueOf(value));
+        w.write("\r\n");
     }
 
     public String tagText()
@@ -225,52 +319,6 @@ public class FullMapInfo {
         return saveBuilder.toString();
     }
 
-    private String bookmarkString()
-    {
-        if (bookmarks.isEmpty())
-            return "";
-        saveBuilder.setLength(0);
-        saveBuilder.append("Bookmarks: ");
-        int count = 0;
-        for (int i : bookmarks)
-        {
-            saveBuilder.append(i);
-            if (count++ < bookmarks.size() - 1)
-                saveBuilder.append(',');
-        }
-        return saveBuilder.append("\r\n").toString();
-    }
-
-    private String eventFormat(List<String[]> events)
-    {
-        saveBuilder.setLength(0);
-        int i;
-        for (String[] event : events)
-        {
-            for (i = 0; i < event.length - 1; ++i)
-                saveBuilder.append(event[i]).append(',');
-            saveBuilder.append(event[i]).append("\r\n");
-        }
-        return saveBuilder.toString();
-    }
-    private String breaks() {
-        saveBuilder.setLength(0);
-        for (Pair<Long, Long> breakPeriod : breakPeriods) {
-            saveBuilder.append("2,").append(breakPeriod.a).append(",").append(breakPeriod.b).append("\r\n");
-        }
-        return saveBuilder.toString();
-    }
-
-    private String fullStoryboard()
-    {
-        saveBuilder.setLength(0);
-        for (String event : fullStoryboard)
-        {
-            saveBuilder.append(event).append("\r\n");
-        }
-        return saveBuilder.toString();
-    }
-
     private String getSongFileForSave()
     {
         String songFile = base.getSongFile();
@@ -0,0 +1,364 @@
+package alchyr.taikoedit.editor.maps;
+
+import alchyr.taikoedit.util.GeneralUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+//Binary snapshot of the map database.
+//Layout:
+//  Header: magic, version, sequence, string count, set count
+//  String table: length prefixed UTF-8, each string stored once and referred to by index everywhere else (-1 is null)
+//  Sets: key, folder modified time, sameSong, song, creator, title, artist, background, map count, ignored count,
+//      then fixed size difficulty and ignored file records
+//  End marker
+//The file is memory-mapped when loaded. Each set's own strings are decoded while loading, as every set is keyed and
+//indexed for search by them. Strings of difficulty and ignored file records are decoded when first used, and difficulties
+//are only created when a set's maps are actually needed; unchanged sets can be checked against their files straight from the records.
+//Two files are used alternately, since a file can't be replaced while it is mapped on some systems.
+//Whichever valid file has the higher sequence number is loaded, so an interrupted save falls back to the older one.
+public class MapDatabaseFile {
+    private static final Logger logger = LogManager.getLogger("BeatmapDatabase");
+
+    private static final int MAGIC = 0x54454442; //TEDB
+    private static final int VERSION = 1;
+    private static final int END = 0x454E4421;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int SET_SIZE = 4 + 8 + 1 + 4 * 5 + 4 + 4;
+    private static final int FINGERPRINT_SIZE = 1 + 8 + 8;
+    private static final int MAP_SIZE = 4 * 4 + FINGERPRINT_SIZE;
+    private static final int IGNORED_SIZE = 4 + FINGERPRINT_SIZE;
+
+    private final File[] files;
+    private int loadedIndex = -1; //File that is currently mapped, which won't be written to
+    private long sequence = 0;
+
+    public MapDatabaseFile(File first, File second) {
+        files = new File[] { first, second };
+    }
+
+    public boolean exists() {
+        return files[0].isFile() || files[1].isFile();
+    }
+
+    //Returns null if there is no valid snapshot.
+    public HashMap<String, Mapset> load() {
+        long[] sequences = new long[files.length];
+        for (int i = 0; i < files.length; ++i)
+            sequences[i] = readSequence(files[i]);
+
+        while (true) {
+            int newest = -1;
+            for (int i = 0; i < files.length; ++i) {
+                if (sequences[i] >= 0 && (newest == -1 || sequences[i] > sequences[newest]))
+                    newest = i;
+            }
+            if (newest == -1)
+                return null;
+
+            HashMap<String, Mapset> sets = load(files[newest]);
+            if (sets != null) {
+                loadedIndex = newest;
+                sequence = sequences[newest];
+                return sets;
+            }
+            sequences[newest] = -1;
+        }
+    }
+
+    private long readSequence(File f) {
+        if (!f.isFile() || f.length() < HEADER_SIZE)
+            return -1;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), HEADER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                logger.info("File " + f.getName() + " is not a map database.");
+                return -1;
+            }
+            if (in.readInt() != VERSION) {
+                logger.info("Database version doesn't match. Reloading maps.");
+                return -1;
+            }
+            return in.readLong();
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private HashMap<String, Mapset> load(File f) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            logger.error("Failed to open map database " + f.getName());
+            GeneralUtils.logStackTrace(logger, e);
+            return null;
+        }
+
+        try {
+            buffer.position(4 + 4 + 8);
+            int stringCount = buffer.getInt(), setCount = buffer.getInt();
+            if (stringCount < 0 || setCount < 0)
+                return invalid(f);
+
+            StringTable strings = new StringTable(buffer, stringCount);
+            int[] offsets = strings.offsets, lengths = strings.lengths;
+            for (int i = 0; i < stringCount; ++i) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining())
+                    return invalid(f);
+                offsets[i] = buffer.position();
+                lengths[i] = length;
+                buffer.position(offsets[i] + length);
+            }
+
+            HashMap<String, Mapset> sets = new HashMap<>((int) (setCount / 0.75f) + 1);
+            for (int i = 0; i < setCount; ++i) {
+                if (buffer.remaining() < SET_SIZE)
+                    return invalid(f);
+
+                String key = strings.get(buffer.getInt());
+                long folderModified = buffer.getLong();
+                boolean sameSong = buffer.get() != 0;
+                String songFile = strings.get(buffer.getInt()), creator = strings.get(buffer.getInt()),
+                        title = strings.get(buffer.getInt()), artist = strings.get(buffer.getInt()),
+                        background = strings.get(buffer.getInt());
+                int mapCount = buffer.getInt(), ignoredCount = buffer.getInt();
+                if (key == null || mapCount < 0 || ignoredCount < 0 ||
+                        (long) mapCount * MAP_SIZE + (long) ignoredCount * IGNORED_SIZE > buffer.remaining())
+                    return invalid(f);
+
+                SetRecord record = new SetRecord(strings, buffer.position(), mapCount, ignoredCount);
+                buffer.position(record.ignoredStart + ignoredCount * IGNORED_SIZE);
+
+                Mapset set = new Mapset(new File(key), record, sameSong, songFile, creator, title, artist, background);
+                set.folderModified = folderModified;
+                sets.put(set.key, set);
+            }
+
+            if (buffer.remaining() != 4 || buffer.getInt() != END)
+                return invalid(f);
+
+            logger.info("Database loaded.");
+            return sets;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return invalid(f);
+        }
+    }
+
+    private HashMap<String, Mapset> invalid(File f) {
+        logger.info("Map database " + f.getName() + " is incomplete or damaged.");
+        return null;
+    }
+
+    //Writes to the file that isn't currently mapped.
+    public void save(Collection<Mapset> sets) throws IOException {
+        StringTableBuilder strings = new StringTableBuilder();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(sets.size() * (SET_SIZE + MAP_SIZE * 4));
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        for (Mapset set : sets)
+            writeSet(body, strings, set);
+        body.writeInt(END);
+
+        int target = loadedIndex == 0 ? 1 : 0;
+        File f = files[target];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence + 1);
+            out.writeInt(strings.size());
+            out.writeInt(sets.size());
+            strings.writeTo(out);
+            bodyBytes.writeTo(out);
+        }
+        ++sequence;
+    }
+
+    private void writeSet(DataOutputStream out, StringTableBuilder strings, Mapset set) throws IOException {
+        out.writeInt(strings.index(set.key));
+        out.writeLong(set.folderModified);
+        out.writeByte(set.sameSong ? 1 : 0);
+        out.writeInt(strings.index(set.songFile));
+        out.writeInt(strings.index(set.creator));
+        out.writeInt(strings.index(set.title));
+        out.writeInt(strings.index(set.artist));
+        out.writeInt(strings.index(set.background));
+
+        //Sets that were never used are copied straight from their records
+        Mapset.PendingMaps pending = set.getPendingMaps();
+        if (pending instanceof SetRecord) {
+            SetRecord record = (SetRecord) pending;
+            out.writeInt(record.mapCount);
+            out.writeInt(record.ignoredCount);
+            ByteBuffer buffer = record.strings.buffer;
+            for (int i = 0, pos = record.mapStart; i < record.mapCount; ++i, pos += MAP_SIZE) {
+                for (int field = 0; field < 4; ++field)
+                    out.writeInt(strings.index(record.strings.get(buffer.getInt(pos + field * 4))));
+                writeFingerprint(out, readFingerprint(buffer, pos + 16));
+            }
+            for (int i = 0, pos = record.ignoredStart; i < record.ignoredCount; ++i, pos += IGNORED_SIZE) {
+                out.writeInt(strings.index(record.strings.get(buffer.getInt(pos))));
+                writeFingerprint(out, readFingerprint(buffer, pos + 4));
+            }
+            return;
+        }
+
+        List<MapInfo> maps = set.getMaps();
+        Map<String, FileFingerprint> ignored = set.getIgnoredFiles();
+        out.writeInt(maps.size());
+        out.writeInt(ignored.size());
+        for (MapInfo map : maps) {
+            out.writeInt(strings.index(map.getMapFile().getName()));
+            out.writeInt(strings.index(map.getSongFile()));
+            out.writeInt(strings.index(map.getBackground()));
+            out.writeInt(strings.index(map.getDifficultyName()));
+            writeFingerprint(out, map.getFingerprint());
+        }
+        for (Map.Entry<String, FileFingerprint> file : ignored.entrySet()) {
+            out.writeInt(strings.index(file.getKey()));
+            writeFingerprint(out, file.getValue());
+        }
+    }
+
+    private static void writeFingerprint(DataOutputStream out, FileFingerprint fingerprint) throws IOException {
+        if (fingerprint == null) {
+            out.writeByte(0);
+            out.writeLong(0);
+            out.writeLong(0);
+        }
+        else {
+            out.writeByte(1);
+            out.writeLong(fingerprint.modified);
+            out.writeLong(fingerprint.size);
+        }
+    }
+
+    private static FileFingerprint readFingerprint(ByteBuffer buffer, int pos) {
+        if (buffer.get(pos) == 0)
+            return null;
+        return new FileFingerprint(buffer.getLong(pos + 1), buffer.getLong(pos + 9));
+    }
+
+    //Difficulties and ignored files of one set, still in the mapped file.
+    private static class SetRecord implements Mapset.PendingMaps {
+        private final StringTable strings;
+        private final int mapStart, mapCount, ignoredStart, ignoredCount;
+
+        SetRecord(StringTable strings, int mapStart, int mapCount, int ignoredCount) {
+            this.strings = strings;
+            this.mapStart = mapStart;
+            this.mapCount = mapCount;
+            this.ignoredStart = mapStart + mapCount * MAP_SIZE;
+            this.ignoredCount = ignoredCount;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return mapCount == 0;
+        }
+
+        @Override
+        public boolean filesUnchanged(File directory) {
+            ByteBuffer buffer = strings.buffer;
+            for (int i = 0, pos = mapStart; i < mapCount; ++i, pos += MAP_SIZE) {
+                if (!unchanged(directory, buffer.getInt(pos), buffer, pos + 16))
+                    return false;
+            }
+            for (int i = 0, pos = ignoredStart; i < ignoredCount; ++i, pos += IGNORED_SIZE) {
+                if (!unchanged(directory, buffer.getInt(pos), buffer, pos + 4))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean unchanged(File directory, int name, ByteBuffer buffer, int fingerprintPos) {
+            FileFingerprint fingerprint = readFingerprint(buffer, fingerprintPos);
+            return fingerprint != null && fingerprint.matches(new File(directory, strings.get(name)));
+        }
+
+        @Override
+        public void load(File directory, List<MapInfo> maps, Map<String, FileFingerprint> ignoredFiles) {
+            ByteBuffer buffer = strings.buffer;
+            for (int i = 0, pos = mapStart; i < mapCount; ++i, pos += MAP_SIZE) {
+                maps.add(new MapInfo(new File(directory, strings.get(buffer.getInt(pos))),
+                        strings.get(buffer.getInt(pos + 4)), strings.get(buffer.getInt(pos + 8)), strings.get(buffer.getInt(pos + 12)),
+                        readFingerprint(buffer, pos + 16)));
+            }
+            for (int i = 0, pos = ignoredStart; i < ignoredCount; ++i, pos += IGNORED_SIZE) {
+                ignoredFiles.put(strings.get(buffer.getInt(pos)), readFingerprint(buffer, pos + 4));
+            }
+        }
+    }
+
+    //Strings are decoded the first time they're used. Sets are used from several threads while updating,
+    //but decoding the same string twice is harmless.
+    private static class StringTable {
+        private final ByteBuffer buffer;
+        private final int[] offsets, lengths;
+        private final String[] decoded;
+
+        StringTable(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            offsets = new int[count];
+            lengths = new int[count];
+            decoded = new String[count];
+        }
+
+        String get(int index) {
+            if (index == -1)
+                return null;
+
+            String s = decoded[index];
+            if (s == null) {
+                byte[] bytes = new byte[lengths[index]];
+                ByteBuffer source = buffer.duplicate();
+                source.position(offsets[index]);
+                source.get(bytes);
+                decoded[index] = s = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return s;
+        }
+    }
+
+    private static class StringTableBuilder {
+        private final HashMap<String, Integer> indices = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+
+        int index(String s) {
+            if (s == null)
+                return -1;
+
+            Integer index = indices.get(s);
+            if (index == null) {
+                index = encoded.size();
+                indices.put(s, index);
+                encoded.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+
+        int size() {
+            return encoded.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] s : encoded) {
+                out.writeInt(s.length);
+                out.write(s);
+            }
+        }
+    }
+}
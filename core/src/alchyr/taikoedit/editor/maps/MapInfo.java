@@ -13,6 +13,8 @@ public class MapInfo {
     private int mode = 0;
     private String difficultyName = "";
 
+    protected FileFingerprint fingerprint; //State of the file when this info was read
+
     //For the future: When loading map info from a database of existing data?
     public MapInfo(File mapFile, String songFile, String background, String name) {
         this.mapFile = mapFile;
@@ -21,6 +23,10 @@ public class MapInfo {
         this.mode = 1;
         this.difficultyName = name;
     }
+    public MapInfo(File mapFile, String songFile, String background, String name, FileFingerprint fingerprint) {
+        this(mapFile, songFile, background, name);
+        this.fingerprint = fingerprint;
+    }
 
     //Creating a new difficulty
     public MapInfo(FullMapInfo base, File mapFile, String newDiffname) {
@@ -35,6 +41,7 @@ public class MapInfo {
     public MapInfo(File map, Mapset owner) {
         mapFile = map;
         background = "";
+        fingerprint = FileFingerprint.of(map); //Taken before reading, so a write during the read is noticed next time
 
         List<String> lines = FileHelper.readFileLines(mapFile, "[TimingPoints]");
 
@@ -123,7 +130,6 @@ public class MapInfo {
     }
 
 
-    //Track last modified date to determine if file must be re-read?
     public File getMapFile() {
         return mapFile;
     }
@@ -144,6 +150,15 @@ public class MapInfo {
         this.background = bgFile;
     }
 
+    public FileFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    //True if the file hasn't been modified since this info was read.
+    public boolean isUnchanged() {
+        return fingerprint != null && fingerprint.matches(mapFile);
+    }
+
     public int getMode() {
         return mode;
     }
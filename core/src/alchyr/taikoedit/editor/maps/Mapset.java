@@ -7,8 +7,10 @@ import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import static alchyr.taikoedit.TaikoEditor.textRenderer;
 
@@ -28,6 +30,18 @@ public class Mapset {
     private final File directory;
     private List<MapInfo> maps;
 
+    //Used by BeatmapDatabase to skip folders that haven't changed since they were read
+    protected long folderModified = 0;
+    private HashMap<String, FileFingerprint> ignoredFiles = new HashMap<>(); //.osu files in this folder that aren't taiko difficulties
+
+    //Difficulties still stored in the database snapshot, created when first used
+    protected interface PendingMaps {
+        boolean isEmpty();
+        boolean filesUnchanged(File directory);
+        void load(File directory, List<MapInfo> maps, Map<String, FileFingerprint> ignoredFiles);
+    }
+    private volatile PendingMaps pendingMaps = null;
+
     public Mapset(File directory) // loading new
     {
         this.directory = directory;
@@ -52,6 +66,20 @@ public class Mapset {
         this.artist = artist;
         this.background = background;
     }
+    protected Mapset(File directory, PendingMaps maps, boolean sameSong, String songFile, String creator, String title, String artist, String background) //from snapshot
+    {
+        this(directory, (List<MapInfo>) null, sameSong, songFile, creator, title, artist, background);
+        this.pendingMaps = maps;
+    }
+
+    private synchronized void loadPending() {
+        if (pendingMaps != null) {
+            maps = new ArrayList<>();
+            ignoredFiles = new HashMap<>();
+            pendingMaps.load(directory, maps, ignoredFiles);
+            pendingMaps = null;
+        }
+    }
 
     public String getArtist() {
         return artist;
@@ -72,13 +100,25 @@ public class Mapset {
 
     public List<MapInfo> getMaps()
     {
+        loadPending();
         return maps;
     }
     public void setMaps(List<MapInfo> confirmed) {
+        loadPending();
         maps = confirmed;
         sortMaps();
     }
 
+    protected HashMap<String, FileFingerprint> getIgnoredFiles() {
+        loadPending();
+        return ignoredFiles;
+    }
+
+    //Null once the maps have been created.
+    protected PendingMaps getPendingMaps() {
+        return pendingMaps;
+    }
+
     //For display, some of these will be too long.
     //Save these to avoid slow process?
     public String getShortArtist(float limit, BitmapFont font) {
@@ -235,12 +275,16 @@ public class Mapset {
 
     public boolean isEmpty()
     {
+        PendingMaps pending = pendingMaps;
+        if (pending != null)
+            return pending.isEmpty();
         return maps.isEmpty();
     }
 
 
     public void loadMaps()
     {
+        folderModified = directory.lastModified();
         File[] mapFiles = directory.listFiles((f)->f.getPath().endsWith(".osu"));
 
         if (mapFiles == null)
@@ -251,29 +295,59 @@ public class Mapset {
             MapInfo info = new MapInfo(map, this);
             if (info.getMode() == 1)
             {
-                maps.add(info);
-
-                if (songFile.isEmpty())
-                    songFile = info.getSongFile();
-                else if (!songFile.equals(info.getSongFile()))
-                    sameSong = false; //i don't handle this very well right now xd
+                addLoaded(info);
+            }
+            else
+            {
+                ignoredFiles.put(map.getName(), info.getFingerprint());
             }
         }
 
         sortMaps();
     }
 
+    //Adds a difficulty that was just read from its file. Maps should be sorted after.
+    protected void addLoaded(MapInfo info)
+    {
+        maps.add(info);
+
+        if (songFile.isEmpty())
+            songFile = info.getSongFile();
+        else if (!songFile.equals(info.getSongFile()))
+            sameSong = false; //i don't handle this very well right now xd
+    }
+
+    //True if no difficulty file read for this set has been modified since.
+    protected boolean filesUnchanged()
+    {
+        PendingMaps pending = pendingMaps;
+        if (pending != null)
+            return pending.filesUnchanged(directory);
+
+        for (MapInfo info : getMaps())
+        {
+            if (!info.isUnchanged())
+                return false;
+        }
+        for (Map.Entry<String, FileFingerprint> ignored : getIgnoredFiles().entrySet())
+        {
+            if (ignored.getValue() == null || !ignored.getValue().matches(new File(directory, ignored.getKey())))
+                return false;
+        }
+        return true;
+    }
+
 
-    private void sortMaps()
+    protected void sortMaps()
     {
-        if (maps.isEmpty())
+        if (getMaps().isEmpty())
             return;
 
         maps.sort(new MapDifficultyComparator());
     }
 
     public void add(FullMapInfo newBase) {
-        maps.add(newBase.getInfo());
+        getMaps().add(newBase.getInfo());
 
         sortMaps();
     }
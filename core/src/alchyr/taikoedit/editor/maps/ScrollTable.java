@@ -0,0 +1,189 @@
+package alchyr.taikoedit.editor.maps;
+
+import alchyr.taikoedit.editor.maps.components.TimingPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+//Scroll speed of a map over time, derived from its timing and effect points.
+//Every line starts a segment of constant speed. The scroll position at the start of each segment is kept as a running sum,
+//so the sv at a time, the distance scrolled between two times and the time a distance is reached are each one binary search.
+//
+//Rules for which line applies are the same as the game's (and OsuFileWriter's): the later of the last red and last green line
+//decides the sv, and the first red line applies to everything before it, using only the first point if it's stacked.
+//
+//Changes to lines only mark the table as changed from the first changed line. The segments after it are rebuilt on the next lookup.
+//Positions are stored without the slider multiplier, so changing it doesn't change the table.
+public class ScrollTable {
+    private static final double DEFAULT_BEAT_LENGTH = 500; //120 bpm, what osu uses when there are no timing points
+
+    private final EditorBeatmap map;
+
+    private long[] starts = new long[16];
+    private double[] svs = new double[16]; //sv multiplier of each segment
+    private double[] beatLengths = new double[16];
+    private double[] positions = new double[16]; //Scroll position at the start of each segment, relative to the first
+    private int size = 0;
+
+    //Before the first line
+    private double firstBeatLength = DEFAULT_BEAT_LENGTH;
+    private long firstTiming = Long.MAX_VALUE;
+
+    private long changedFrom = Long.MIN_VALUE; //Long.MAX_VALUE when up to date
+
+    public ScrollTable(EditorBeatmap map) {
+        this.map = map;
+    }
+
+    //Lines at or after pos were added, removed, moved or changed.
+    public void changed(long pos) {
+        changedFrom = Math.min(changedFrom, pos);
+    }
+
+    //Sv multiplier at time, 1 if no green line applies.
+    public double sv(long time) {
+        update();
+        int i = segment(time);
+        return i < 0 ? 1 : svs[i];
+    }
+
+    //Length of a beat at time in ms.
+    public double beatLength(long time) {
+        update();
+        int i = segment(time);
+        return i < 0 ? firstBeatLength : beatLengths[i];
+    }
+
+    //Scroll speed at time, as slider multiplier * sv per ms of a beat. This is the slider velocity, and proportional to how fast objects scroll in gameplay.
+    public double speed(long time) {
+        update();
+        int i = segment(time);
+        return map.getBaseSV() * (i < 0 ? 1 / firstBeatLength : svs[i] / beatLengths[i]);
+    }
+
+    //Distance scrolled from start to end, in the same units as speed * ms. Negative if end is before start.
+    public double distance(long start, long end) {
+        update();
+        return map.getBaseSV() * (position(end) - position(start));
+    }
+
+    //The first time after start at which distance has been scrolled.
+    //Infinite if the map stops scrolling before then (sv never goes below 0, so distance only ever increases with time).
+    public double timeAt(long start, double distance) {
+        update();
+        double target = position(start) + distance / map.getBaseSV();
+
+        if (size == 0 || target < 0) {
+            long origin = size == 0 ? 0 : starts[0];
+            return origin + target * firstBeatLength;
+        }
+
+        //First segment starting at or after the target position
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < target)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low < size && positions[low] == target)
+            return starts[low];
+
+        //Reached partway through the segment before. Only the last segment can fail to reach it, by not scrolling.
+        int i = low - 1;
+        double rate = svs[i] / beatLengths[i];
+        if (rate <= 0)
+            return Double.POSITIVE_INFINITY;
+        return starts[i] + (target - positions[i]) / rate;
+    }
+
+    //Scroll position at time, without the slider multiplier.
+    private double position(long time) {
+        int i = segment(time);
+        if (i < 0)
+            return (time - (size == 0 ? 0 : starts[0])) / firstBeatLength;
+        return positions[i] + (time - starts[i]) * svs[i] / beatLengths[i];
+    }
+
+    //Index of the last segment starting at or before time, -1 if there is none.
+    private int segment(long time) {
+        int i = Arrays.binarySearch(starts, 0, size, time);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private void update() {
+        if (changedFrom == Long.MAX_VALUE)
+            return;
+
+        long from = changedFrom;
+        changedFrom = Long.MAX_VALUE;
+
+        //Everything before the first red line uses its bpm
+        if (from <= firstTiming || map.timingPoints.isEmpty() || map.timingPoints.firstKey() != firstTiming) {
+            from = Long.MIN_VALUE;
+            if (map.timingPoints.isEmpty()) {
+                firstTiming = Long.MAX_VALUE;
+                firstBeatLength = DEFAULT_BEAT_LENGTH;
+            }
+            else {
+                firstTiming = map.timingPoints.firstKey();
+                firstBeatLength = map.timingPoints.firstEntry().getValue().get(0).value;
+            }
+        }
+
+        size = from == Long.MIN_VALUE ? 0 : segment(from - 1) + 1; //Keep segments that start before from
+
+        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing = map.timingPoints.tailMap(from, true).entrySet().iterator();
+        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> effect = map.effectPoints.tailMap(from, true).entrySet().iterator();
+        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = timing.hasNext() ? timing.next() : null,
+                nextEffect = effect.hasNext() ? effect.next() : null;
+
+        //Continue from the last kept segment
+        double sv = size == 0 ? 1 : svs[size - 1], beatLength = size == 0 ? firstBeatLength : beatLengths[size - 1];
+
+        while (nextTiming != null || nextEffect != null) {
+            long pos;
+            if (nextEffect == null || (nextTiming != null && nextTiming.getKey() <= nextEffect.getKey())) {
+                pos = nextTiming.getKey();
+                if (pos != firstTiming) {
+                    beatLength = lastValue(nextTiming.getValue());
+                    sv = 1; //Red lines return to base sv
+                }
+                nextTiming = timing.hasNext() ? timing.next() : null;
+            }
+            else {
+                pos = nextEffect.getKey();
+            }
+            //A green line at the same position as a red line still applies
+            if (nextEffect != null && nextEffect.getKey() == pos) {
+                sv = lastValue(nextEffect.getValue());
+                nextEffect = effect.hasNext() ? effect.next() : null;
+            }
+
+            add(pos, sv, beatLength);
+        }
+    }
+
+    private void add(long pos, double sv, double beatLength) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            svs = Arrays.copyOf(svs, capacity);
+            beatLengths = Arrays.copyOf(beatLengths, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+
+        starts[size] = pos;
+        svs[size] = sv;
+        beatLengths[size] = beatLength;
+        positions[size] = size == 0 ? 0 : positions[size - 1] + (pos - starts[size - 1]) * svs[size - 1] / beatLengths[size - 1];
+        ++size;
+    }
+
+    private static double lastValue(ArrayList<TimingPoint> stack) {
+        return stack.get(stack.size() - 1).value;
+    }
+}
@@ -1,15 +1,15 @@
 package alchyr.taikoedit.editor.maps.components;
 
+import alchyr.taikoedit.audio.HitsoundMixer;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Hit;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Slider;
 import alchyr.taikoedit.editor.maps.components.hitobjects.Spinner;
+import alchyr.taikoedit.management.assets.OsuFileReader;
 import alchyr.taikoedit.management.assets.skins.Skins;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
-import static alchyr.taikoedit.TaikoEditor.audioMaster;
-
 public abstract class HitObject extends PositionalObject {
     protected final static int CIRCLE_SIZE = 100;
     protected final static int CIRCLE_OFFSET = CIRCLE_SIZE / 2;
@@ -77,6 +77,21 @@ public abstract class HitObject extends PositionalObject {
         }
     }
 
+    //Same as create(String), reading the current line of a file.
+    //Circles are read directly; sliders and spinners are rare enough in taiko maps to go through the String constructors.
+    public static HitObject create(OsuFileReader data)
+    {
+        if (data.skipFields(3) && data.nextField())
+        {
+            int objectType = data.intToken();
+            if ((objectType & (SPINNER | SLIDER)) > 0)
+                return create(data.line());
+        }
+
+        data.resetFields();
+        return new Hit(data);
+    }
+
     public long getEndPos() {
         return getPos();
     }
@@ -98,15 +113,15 @@ public abstract class HitObject extends PositionalObject {
         body = assetMaster.get("editor:body");
     }*/
 
-    public void playSound()
+    public void scheduleSound(HitsoundMixer.Schedule schedule)
     {
         if (finish)
         {
-            audioMaster.playSfx(Skins.currentSkin.sfxDonFinish, this.volume, true);
+            schedule.add(getPos(), Skins.currentSkin.sfxDonFinish, this.volume);
         }
         else
         {
-            audioMaster.playSfx(Skins.currentSkin.sfxDon, this.volume, true);
+            schedule.add(getPos(), Skins.currentSkin.sfxDon, this.volume);
         }
     }
 
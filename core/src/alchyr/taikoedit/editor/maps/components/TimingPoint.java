@@ -1,6 +1,7 @@
 package alchyr.taikoedit.editor.maps.components;
 
 import alchyr.taikoedit.editor.views.EffectView;
+import alchyr.taikoedit.management.assets.OsuFileReader;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
@@ -44,7 +45,12 @@ public class TimingPoint extends PositionalObject {
     public static final int KIAI = 1;
     public static final int OMITTED = 8;
 
-    private static final Texture pix = assetMaster.get("ui:pixel");
+    private static Texture pix; //fetched on first render so points can be loaded without assets (benchmarks, tools)
+    private static Texture pix() {
+        if (pix == null)
+            pix = assetMaster.get("ui:pixel");
+        return pix;
+    }
 
     public TimingPoint(long pos)
     {
@@ -101,6 +107,50 @@ public class TimingPoint extends PositionalObject {
         this.lastRegisteredVolume = this.volume;
     }
 
+    //Same as TimingPoint(String), reading the current line of a file.
+    public TimingPoint(OsuFileReader data)
+    {
+        for (int i = 0; data.nextField(); ++i)
+        {
+            switch (i)
+            {
+                case 0:
+                    setPos(data.doubleToken());
+                    break;
+                case 1:
+                    value = data.doubleToken();
+                    break;
+                case 2:
+                    meter = data.intToken();
+                    break;
+                case 3:
+                    sampleSet = data.intToken();
+                    break;
+                case 4:
+                    sampleIndex = data.intToken();
+                    break;
+                case 5:
+                    volume = data.intToken();
+                    break;
+                case 6:
+                    uninherited = data.tokenEquals("1");
+                    if (!uninherited) //Not a Red Line
+                    {
+                        value = -100 / value;
+                    }
+                    break;
+                case 7:
+                    int effects = data.intToken();
+
+                    kiai = (effects & KIAI) > 0;
+                    omitted = (effects & OMITTED) > 0;
+                    break;
+            }
+        }
+        lastRegisteredValue = value;
+        this.lastRegisteredVolume = this.volume;
+    }
+
     public TimingPoint(TimingPoint base)
     {
         setPos(base.getPrecisePos());
@@ -154,7 +204,7 @@ public class TimingPoint extends PositionalObject {
         sb.setColor(c);
         c.a = 1;
 
-        sb.draw(pix, x + (float) (this.getPos() - pos) * viewScale, y, 1, EffectView.HEIGHT);
+        sb.draw(pix(), x + (float) (this.getPos() - pos) * viewScale, y, 1, EffectView.HEIGHT);
     }
 
     public void renderColored(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, Color c, float alpha) {
@@ -166,7 +216,7 @@ public class TimingPoint extends PositionalObject {
         c.a = alpha;
         sb.setColor(c);
 
-        sb.draw(pix, x + (float) (this.getPos() - pos) * viewScale, y, 1, EffectView.HEIGHT);
+        sb.draw(pix(), x + (float) (this.getPos() - pos) * viewScale, y, 1, EffectView.HEIGHT);
         c.a = 1;
     }
 
@@ -174,7 +224,7 @@ public class TimingPoint extends PositionalObject {
     public void renderSelection(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y) {
         sb.setColor(selection);
 
-        sb.draw(pix, x + (float) (this.getPos() - pos) * viewScale - 1, y, 3, EffectView.HEIGHT);
+        sb.draw(pix(), x + (float) (this.getPos() - pos) * viewScale - 1, y, 3, EffectView.HEIGHT);
     }
 
     @Override
@@ -1,13 +1,14 @@
 package alchyr.taikoedit.editor.maps.components.hitobjects;
 
+import alchyr.taikoedit.audio.HitsoundMixer;
 import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.management.assets.OsuFileReader;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 
-import static alchyr.taikoedit.TaikoEditor.audioMaster;
 import static alchyr.taikoedit.management.assets.skins.Skins.currentSkin;
 
 public class Hit extends HitObject {
@@ -128,6 +129,75 @@ public class Hit extends HitObject {
         }
     }
 
+    //Same as Hit(String[]), reading the current line of a file.
+    public Hit(OsuFileReader data)
+    {
+        type = HitObjectType.CIRCLE;
+        for (int i = 0; data.nextField(); ++i)
+        {
+            switch (i)
+            {
+                case 0:
+                    x = data.intToken();
+                    break;
+                case 1:
+                    y = data.intToken();
+                    break;
+                case 2:
+                    setPos(data.doubleToken());
+                    break;
+                case 3:
+                    int objectType = data.intToken();
+
+                    newCombo = (objectType & NEWCOMBO) > 0;
+                    colorSkip = (objectType & COLORSKIP) >>> 4;
+                    break;
+                case 4:
+                    int hitSound = data.intToken();
+                    normal = (hitSound & NORMAL) > 0;
+                    whistle = (hitSound & WHISTLE) > 0;
+                    finish = (hitSound & FINISH) > 0;
+                    clap = (hitSound & CLAP) > 0;
+
+                    isRim = whistle || clap;
+                    break;
+                case 5:
+                    //Hit samples
+                    int[] samples = new int[4];
+                    int count = 0;
+                    StringBuilder file = null;
+                    while (data.nextPart(':'))
+                    {
+                        if (data.tokenIsEmpty() && data.onlyTrailingParts(':'))
+                            break;
+
+                        if (count < samples.length)
+                        {
+                            samples[count++] = data.intToken();
+                        }
+                        else
+                        {
+                            if (file == null)
+                                file = new StringBuilder();
+                            file.append(data.token());
+                        }
+                    }
+                    if (count == samples.length)
+                    {
+                        hitSample = samples;
+                    }
+                    else
+                    {
+                        hitSample = new int[count];
+                        System.arraycopy(samples, 0, hitSample, 0, count);
+                    }
+                    if (file != null)
+                        sampleFile = file.toString();
+                    break;
+            }
+        }
+    }
+
     @Override
     public void render(SpriteBatch sb, ShapeRenderer sr, double pos, float viewScale, float x, float y, float alpha) {
         Color c = isRim ? kat : don;
@@ -162,28 +232,28 @@ public class Hit extends HitObject {
     }
 
     @Override
-    public void playSound()
+    public void scheduleSound(HitsoundMixer.Schedule schedule)
     {
         if (finish)
         {
             if (isRim)
             {
-                audioMaster.playSfx(currentSkin.sfxKatFinish, this.volume, true);
+                schedule.add(getPos(), currentSkin.sfxKatFinish, this.volume);
             }
             else
             {
-                audioMaster.playSfx(currentSkin.sfxDonFinish, this.volume, true);
+                schedule.add(getPos(), currentSkin.sfxDonFinish, this.volume);
             }
         }
         else
         {
             if (isRim)
             {
-                audioMaster.playSfx(currentSkin.sfxKat, this.volume, true);
+                schedule.add(getPos(), currentSkin.sfxKat, this.volume);
             }
             else
             {
-                audioMaster.playSfx(currentSkin.sfxDon, this.volume, true);
+                schedule.add(getPos(), currentSkin.sfxDon, this.volume);
             }
         }
     }
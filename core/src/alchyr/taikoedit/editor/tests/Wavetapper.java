@@ -2,11 +2,8 @@ package alchyr.taikoedit.editor.tests;
 
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
-import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.util.GeneralUtils;
 
-import java.util.ArrayList;
-import java.util.Map;
 import java.util.TreeMap;
 
 import static alchyr.taikoedit.TaikoEditor.editorLogger;
@@ -58,16 +55,6 @@ public class Wavetapper {
     }
 
     private static double svAtTime(EditorBeatmap map, long time) {
-        Map.Entry<Long, ArrayList<TimingPoint>> timing = map.timingPoints.floorEntry(time);
-        if (timing == null)
-            return map.getBaseSV();
-
-        Map.Entry<Long, ArrayList<TimingPoint>> effect = map.effectPoints.floorEntry(time);
-        if (effect == null || timing.getKey() > effect.getKey()) {
-            return map.getBaseSV() / timing.getValue().get(timing.getValue().size() - 1).value;
-        }
-        else {
-            return (map.getBaseSV() * effect.getValue().get(effect.getValue().size() - 1).value) / timing.getValue().get(timing.getValue().size() - 1).value;
-        }
+        return map.scroll.speed(time);
     }
 }
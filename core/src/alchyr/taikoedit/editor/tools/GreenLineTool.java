@@ -223,6 +223,7 @@ public class GreenLineTool extends EditorTool {
 
             placingView.map.effectPoints.removeObject(adjusting);
             placingView.map.allPoints.removeObject(adjusting);
+            placingView.map.scroll.changed(adjusting.getPos());
             placingView.map.registerChange(new SingleLineAddition(placingView.map, adjusting).perform());
 
             hold = null;
@@ -231,6 +232,7 @@ public class GreenLineTool extends EditorTool {
         private void cancel() {
             placingView.map.effectPoints.removeObject(adjusting);
             placingView.map.allPoints.removeObject(adjusting);
+            placingView.map.scroll.changed(adjusting.getPos());
         }
 
         @Override
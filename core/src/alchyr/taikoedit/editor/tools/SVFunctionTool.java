@@ -4,6 +4,7 @@ import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.layers.sub.SvFunctionLayer;
 import alchyr.taikoedit.editor.Snap;
+import alchyr.taikoedit.editor.SnapList;
 import alchyr.taikoedit.editor.changes.MultiLineAddition;
 import alchyr.taikoedit.editor.changes.SingleLineAddition;
 import alchyr.taikoedit.editor.maps.components.HitObject;
@@ -288,28 +289,7 @@ public class SVFunctionTool extends EditorTool {
     }
 
     private double svAtTime(long time) {
-        Map.Entry<Long, ArrayList<TimingPoint>> baseSv = previewView.map.effectPoints.floorEntry(time);
-        Map.Entry<Long, ArrayList<TimingPoint>> baseTiming = previewView.map.timingPoints.floorEntry(time);
-        if (baseSv == null) {
-            return 1;
-        }
-        else if (baseTiming == null) {
-            //wtf green line in map with no red lines
-            return baseSv.getValue().get(baseSv.getValue().size() - 1).value;
-        }
-        else {
-            ArrayList<TimingPoint> pointList = baseSv.getValue();
-            TimingPoint effect = pointList.get(pointList.size() - 1);
-            pointList = baseTiming.getValue();
-            TimingPoint timing = pointList.get(pointList.size() - 1);
-
-            if (timing.getPos() > effect.getPos()) {
-                return 1;
-            }
-            else {
-                return effect.value;
-            }
-        }
+        return previewView.map.scroll.sv(time);
     }
 
     public void applyFunction(SvFunctionLayer.SvFunctionProperties info)
@@ -356,9 +336,9 @@ public class SVFunctionTool extends EditorTool {
 
             if (info.generateLines) {
                 if (info.fixedSnapping) {
-                    for (Snap s : map.getSnaps(info.snap)) {
-                        if (s.pos >= start && s.pos <= end)
-                            positions.add(s.pos);
+                    SnapList snaps = map.getSnaps(info.snap, start, end);
+                    for (int i = 0; i < snaps.size(); ++i) {
+                        positions.add(snaps.pos(i));
                     }
                 }
                 else {
@@ -373,10 +353,11 @@ public class SVFunctionTool extends EditorTool {
                     //barlines
                     if (info.svBarlines)
                     {
-                        for (Snap s : map.getSnaps(1))
+                        SnapList snaps = map.getSnaps(1, start, end);
+                        for (int i = 0; i < snaps.size(); ++i)
                         {
-                            if (s.divisor == 0 && s.pos >= start && s.pos <= end) {
-                                positions.add(s.pos);
+                            if (snaps.divisor(i) == 0) {
+                                positions.add(snaps.pos(i));
                             }
                         }
                     }
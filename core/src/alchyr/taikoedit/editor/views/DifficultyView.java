@@ -1,5 +1,7 @@
 package alchyr.taikoedit.editor.views;
 
+import alchyr.diffcalc.TaikoDifficultyCalculator;
+import alchyr.diffcalc.taiko.difficulty.TaikoDifficultyAttributes;
 import alchyr.diffcalc.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
@@ -40,15 +42,13 @@ public class DifficultyView extends MapView {
     //Offset
     private int textY = 0;
 
-    private double lastSounded;
-
+    private final TaikoDifficultyCalculator calculator;
     private final Map<HitObject, TaikoDifficultyHitObject> difficultyInfo;
 
-    public DifficultyView(EditorLayer parent, EditorBeatmap beatmap, Map<HitObject, TaikoDifficultyHitObject> difficultyInfo) {
+    public DifficultyView(EditorLayer parent, EditorBeatmap beatmap, TaikoDifficultyCalculator calculator) {
         super(ViewType.DIFFICULTY_VIEW, parent, beatmap, HEIGHT);
-        lastSounded = 0;
-
-        this.difficultyInfo = difficultyInfo;
+        this.calculator = calculator;
+        this.difficultyInfo = calculator.getCalculationInfo();
 
         addOverlayButton(new ImageButton(assetMaster.get("editor:exit"), assetMaster.get("editor:exith")).setClick(this::close).setAction("Close View"));
     }
@@ -78,26 +78,26 @@ public class DifficultyView extends MapView {
     }
 
     @Override
-    public void primaryUpdate(boolean isPlaying) {
-        if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < preciseTime && preciseTime - lastSounded < 25) //might have skipped backwards
-        {
+    public void update(double exactPos, long msPos, float elapsed, boolean canHover) {
+        super.update(exactPos, msPos, elapsed, canHover);
 
-            //To play ALL hitobjects passed.
-            for (ArrayList<HitObject> objects : map.objects.subMap((long) lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
-        }
-        lastSounded = preciseTime;
+        calculator.update(); //Only recalculates sections affected by changes since the last update
+    }
+
+    @Override
+    public void primaryUpdate(boolean isPlaying) {
+        if (isPrimary && lockOffset == 0)
+            music.setHitsoundSource(this);
     }
 
     @Override
     public void renderBase(SpriteBatch sb, ShapeRenderer sr) {
         sb.setColor(backColor);
         sb.draw(pix, 0, bottom, SettingsMaster.getWidth(), height);
+
+        TaikoDifficultyAttributes attributes = (TaikoDifficultyAttributes) calculator.getAttributes();
+        if (attributes != null)
+            textRenderer.renderText(sb, df.format(attributes.StarRating) + " : " + df.format(attributes.ContinuousRating) + " : " + df.format(attributes.BurstRating), 10, top - 30, Color.WHITE);
     }
 
     private final DecimalFormat df = new DecimalFormat("#0.##", osuSafe);
@@ -5,17 +5,17 @@ import alchyr.taikoedit.core.input.sub.TextInputReceiver;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
 import alchyr.taikoedit.editor.Snap;
+import alchyr.taikoedit.editor.SnapList;
 import alchyr.taikoedit.editor.changes.MapChange;
 import alchyr.taikoedit.editor.changes.ValueSetChange;
 import alchyr.taikoedit.editor.changes.VolumeSetChange;
 import alchyr.taikoedit.editor.tools.*;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
-import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.util.GeneralUtils;
-import alchyr.taikoedit.util.structures.Pair;
 import alchyr.taikoedit.util.structures.PositionalObject;
+import alchyr.taikoedit.util.structures.PositionalObjectArrayMap;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
@@ -61,7 +61,7 @@ public class EffectView extends MapView implements TextInputReceiver {
     private static final Color lineColor = new Color(0.35f, 0.35f, 0.38f, 0.4f);
     private static final Color kiai = new Color(240.0f/255.0f, 164.0f/255.0f, 66.0f/255.0f, 1.0f);
 
-    private SortedMap<Long, Snap> activeSnaps;
+    private SnapList activeSnaps;
     private boolean ignoreSelected = false;
 
     //Positions
@@ -88,13 +88,11 @@ public class EffectView extends MapView implements TextInputReceiver {
     private Waveform waveform = null;
     private int waveformMode = -1; //-1 = none, 0 = normal, 1 = absolute value
     private static final int MAX_WAVEFORM_MODE = 1;
+    private final float[] waveformRange = new float[2];
 
     //Sv values
     private final BitmapFont font;
 
-    //Hitsounds of map
-    private long lastSounded;
-
     public EffectView(EditorLayer parent, EditorBeatmap beatmap) {
         super(ViewType.EFFECT_VIEW, parent, beatmap, HEIGHT);
 
@@ -106,7 +104,6 @@ public class EffectView extends MapView implements TextInputReceiver {
 
         font = assetMaster.getFont("aller small");
 
-        lastSounded = 0;
         minSV = 0.75;
         peakSV = 1.3;
         recheckSvLimits();
@@ -239,18 +236,8 @@ public class EffectView extends MapView implements TextInputReceiver {
 
     @Override
     public void primaryUpdate(boolean isPlaying) {
-        if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25
-                && parent.getViewSet(map).contains((o)->o.type == ViewType.OBJECT_VIEW))
-        {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
-        }
-        lastSounded = time;
+        if (isPrimary && lockOffset == 0 && parent.getViewSet(map).contains((o)->o.type == ViewType.OBJECT_VIEW))
+            music.setHitsoundSource(this);
     }
 
     @Override
@@ -282,9 +269,9 @@ public class EffectView extends MapView implements TextInputReceiver {
     @Override
     public void renderOverlay(SpriteBatch sb, ShapeRenderer sr) {
         //Snaps go on top of the lines for this one.
-        for (Snap s : activeSnaps.values())
+        for (int i = 0; i < activeSnaps.size(); ++i)
         {
-            s.halfRender(sb, sr, preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, 40);
+            Snap.halfRender(sb, sr, activeSnaps.pos(i), activeSnaps.divisor(i), preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, 40);
         }
 
         if (mode) {
@@ -515,84 +502,40 @@ public class EffectView extends MapView implements TextInputReceiver {
         startTime = (startTime / stepRounding) * stepRounding;
         endTime += stepRounding;
 
-        SortedMap<Integer, Pair<Float, Float>> values = waveform.getSection(startTime, endTime);
-
-        //Process "steps", combining steps with the same min/max into "chunks"
-        //startTime: startTime of last chunk. lastMin/lastMax: min/max of last chunk.
-        //nextPos: next step position. "current" position is nextPos - stepRounding
-
-        //At the end of each "step": if min/max are the same as the previous, just increase size of chunk (increment nextPos)
-        //If min/max are different from previous, draw previous chunk and start new chunk.
-
-        int nextPos = startTime + stepRounding;
-        float max = 0, min = 0, lastMin = 0, lastMax = 0;
-        for (Map.Entry<Integer, Pair<Float, Float>> entry : values.entrySet()) {
-            if (entry.getKey() < nextPos) { //This entry is in the current "step", track it and move on
-                min = Math.min(min, entry.getValue().a);
-                max = Math.max(max, entry.getValue().b);
-            }
-            else while (entry.getKey() >= nextPos) { //This entry is outside of the current "step". Process stuff.
-                if (min != lastMin || max != lastMax) {
-                    //This completed step is not the same as the "last" step
-                    //So, show the last step, unless it had "no" data
-                    if (lastMin != 0 || lastMax != 0) {
-                        int x = getPositionFromTime(startTime + offset);
-                        int end = getPositionFromTime(nextPos - stepRounding + offset);
-                        //Render values obtained
-                        switch (waveformMode) {
-                            case 0:
-                                sr.rect(x, midY + (SV_AREA * lastMin), end - x, SV_AREA * (lastMax - lastMin));
-                                break;
-                            case 1:
-                                sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (lastMax - lastMin));
-                                break;
-                        }
-                    }
-
-                    //Create new chunk
-                    startTime = nextPos - stepRounding;
-                    lastMin = min; //Store values of last step
-                    lastMax = max;
-                }
-
-                //New step, set values. Testing previous is only necessary if entry is "within" current step.
-                min = entry.getValue().a;
-                max = entry.getValue().b;
-                nextPos += stepRounding;
-            }
-        }
-        //Render last two chunks
-        if (lastMin != 0 || lastMax != 0) {
-            int x = getPositionFromTime(startTime + offset);
-            int end = getPositionFromTime(nextPos - stepRounding + offset);
-            //Render values obtained
-            switch (waveformMode) {
-                case 0:
-                    sr.rect(x, midY + (SV_AREA * lastMin), end - x, SV_AREA * (lastMax - lastMin));
-                    break;
-                case 1:
-                    sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (lastMax - lastMin));
-                    break;
-            }
-        }
-        if (min != 0 || max != 0) {
-            int x = getPositionFromTime(nextPos + offset);
-            if (x < SettingsMaster.getWidth()) {
-                //Render values obtained
-                switch (waveformMode) {
-                    case 0:
-                        sr.rect(x, midY + (SV_AREA * lastMin), SettingsMaster.getWidth() - x, SV_AREA * (lastMax - lastMin));
-                        break;
-                    case 1:
-                        sr.rect(x, midY - SV_AREA, SettingsMaster.getWidth() - x, SV_AREA * (lastMax - lastMin));
-                        break;
-                }
+        //Steps with the same min/max are combined into one "chunk", which is drawn once a different step is reached.
+        //chunkStart: start time of the current chunk. lastMin/lastMax: min/max of the current chunk.
+        int chunkStart = startTime;
+        float lastMin = 0, lastMax = 0;
+        for (int stepStart = startTime; stepStart < endTime; stepStart += stepRounding) {
+            waveform.getRange(stepStart, stepStart + stepRounding, waveformRange);
+            if (waveformRange[0] != lastMin || waveformRange[1] != lastMax) {
+                renderWaveformChunk(sr, chunkStart, stepStart, offset, lastMin, lastMax);
+
+                chunkStart = stepStart;
+                lastMin = waveformRange[0];
+                lastMax = waveformRange[1];
             }
         }
+        renderWaveformChunk(sr, chunkStart, endTime, offset, lastMin, lastMax);
 
         sr.end();
         sb.begin();
     }
+    private void renderWaveformChunk(ShapeRenderer sr, int startTime, int endTime, float offset, float min, float max) {
+        if (min == 0 && max == 0) //no data
+            return;
+
+        int x = getPositionFromTime(startTime + offset);
+        int end = getPositionFromTime(endTime + offset);
+        switch (waveformMode) {
+            case 0:
+                sr.rect(x, midY + (SV_AREA * min), end - x, SV_AREA * (max - min));
+                break;
+            case 1:
+                sr.rect(x, midY - SV_AREA, end - x, SV_AREA * (max - min));
+                break;
+        }
+    }
 
     private void renderValueLabels(SpriteBatch sb, TimingPoint adjust) {
         long lastRenderable = adjust == null ? 0 : adjust.getPos() + (long)(LABEL_SPACING / viewScale);
@@ -957,12 +900,19 @@ public class EffectView extends MapView implements TextInputReceiver {
     @Override
     public void updatePositions(PositionalObjectTreeMap<PositionalObject> moved) {
         //Change position in maps, but don't update anything else about the map.
+        //Scroll positions are the exception, as they're drawn from these lines during the drag.
+        //Keys are where the lines were, the lines themselves already have their new positions.
+        if (!getSelection().isEmpty())
+            map.scroll.changed(getSelection().firstKey());
+
         map.timingPoints.removeAll(getSelection());
         map.effectPoints.removeAll(getSelection());
         map.allPoints.removeAll(getSelection());
 
         for (Map.Entry<Long, ArrayList<PositionalObject>> entry : moved.entrySet()) {
+            map.scroll.changed(entry.getKey());
             for (PositionalObject o : entry.getValue()) {
+                map.scroll.changed(o.getPos());
                 if (o instanceof TimingPoint) {
                     if (((TimingPoint) o).uninherited) {
                         map.timingPoints.add((TimingPoint) o);
@@ -1104,7 +1054,7 @@ public class EffectView extends MapView implements TextInputReceiver {
         if (startTime == endTime)
             return;
 
-        PositionalObjectTreeMap<TimingPoint> src;
+        PositionalObjectArrayMap<TimingPoint> src;
         if (timingEnabled && effectPointsEnabled)
             src = map.allPoints;
         else if (timingEnabled)
@@ -7,9 +7,9 @@ import alchyr.taikoedit.editor.Snap;
 import alchyr.taikoedit.editor.changes.MapChange;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
 import alchyr.taikoedit.editor.maps.components.HitObject;
-import alchyr.taikoedit.editor.maps.components.TimingPoint;
 import alchyr.taikoedit.editor.tools.Toolset;
 import alchyr.taikoedit.management.SettingsMaster;
+import alchyr.taikoedit.util.structures.IntervalTree;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
 import com.badlogic.gdx.Input;
@@ -24,6 +24,7 @@ import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static alchyr.taikoedit.TaikoEditor.assetMaster;
+import static alchyr.taikoedit.TaikoEditor.music;
 import static alchyr.taikoedit.core.layers.EditorLayer.viewScale;
 import static alchyr.taikoedit.management.assets.skins.Skins.currentSkin;
 
@@ -43,14 +44,16 @@ public class GameplayView extends MapView {
     private final ReentrantLock calculationLock = new ReentrantLock();
 
     //Objects that should be rendered are all those where given a current time, their start time is before it and their end time is after it.
-    private final TreeMap<Long, ArrayList<HitObject>> startTimes; //A sorted set based on object start times
-    private final TreeMap<Long, ArrayList<HitObject>> endTimes; //A sorted set based on object end times
-    private final TreeMap<Long, Float> svMap; //using for scaling sliders
-    //private HashMap<HitObject, Long> oldEndTimes; //for getting end times of objects to remove them when they're updated.
-    //Start times do not need a similar list since they are stored on objects and will only be updated in this class.
-
-    TreeMap<Long, Snap> barlineStartTimes; //Sorted snaps for purpose of determining which barlines to render.
-    TreeMap<Long, Snap> barlineEndTimes;
+    //Under heavy sv objects can start scrolling in long before their time, so the objects on screen are found each frame from
+    //the intervals between those times rather than from sorted start and end times.
+    private final IntervalTree<HitObject> objectTimes;
+
+    //Objects by the position they were calculated at, with the start time they were put in objectTimes under,
+    //so they can be found and removed again when only part of the map is recalculated.
+    private final TreeMap<Long, ArrayList<Calculated>> calculated;
+    private long dirtyStart = Long.MAX_VALUE, dirtyEnd = Long.MIN_VALUE; //Range waiting to be recalculated
+
+    private final IntervalTree<Snap> barlineTimes; //For determining which barlines to render.
     HashMap<Snap, Long> barlineStartMap; //The same snaps are used in every gameplay view, so they have to be tracked outside of the snaps themselves (since different difficulties could have different sv on their barlines)
 
     public static final int HEIGHT = 150;
@@ -77,8 +80,6 @@ public class GameplayView extends MapView {
 
     public GameplayView(EditorLayer parent, EditorBeatmap beatmap) {
         super(MapView.ViewType.GAMEPLAY_VIEW, parent, beatmap, HEIGHT);
-        lastSounded = 0;
-
         addOverlayButton(new ImageButton(assetMaster.get("editor:exit"), assetMaster.get("editor:exith")).setClick(this::close).setAction("Close View"));
         addOverlayButton(new ImageButton(assetMaster.get("editor:refresh"), assetMaster.get("editor:refreshh")).setClick(()->TaikoEditor.onMain(this::calculateTimes)).setAction("Refresh"));
 
@@ -102,16 +103,13 @@ public class GameplayView extends MapView {
         addOverlayButton(autoRefreshButton);
         addLockPositionButton();
 
-        startTimes = new TreeMap<>();
-        endTimes = new TreeMap<>();
-        svMap = new TreeMap<>();
-        //oldEndTimes = new HashMap<>();
+        objectTimes = new IntervalTree<>();
+        calculated = new TreeMap<>();
 
         /*objectStartTimes = HashBiMap.create(beatmap.objects.size());
         objectEndTimes = HashBiMap.create(beatmap.objects.size());*/
 
-        barlineStartTimes = new TreeMap<>();
-        barlineEndTimes = new TreeMap<>();
+        barlineTimes = new IntervalTree<>();
         barlineStartMap = new HashMap<>();
 
         calculateTimes();
@@ -124,207 +122,126 @@ public class GameplayView extends MapView {
     public void calculateTimes() {
         calculationLock.lock();
         {
-            startTimes.clear();
-            endTimes.clear();
-            svMap.clear();
-            barlineStartTimes.clear();
-            barlineEndTimes.clear();
+            objectTimes.clear();
+            calculated.clear();
+            dirtyStart = Long.MAX_VALUE;
+            dirtyEnd = Long.MIN_VALUE;
+            barlineTimes.clear();
             barlineStartMap.clear();
+            lastPos = Long.MIN_VALUE; //Visible objects are found again on the next prep
 
-            boolean reprep = !visibleObjects.isEmpty() || !barlines.isEmpty();
-            visibleObjects.clear();
-            barlines.clear();
-            lastPos = Long.MIN_VALUE;
-
-            Iterator<Map.Entry<Long, ArrayList<HitObject>>> objectIterator = map.objects.entrySet().iterator();
-            Iterator<Map.Entry<Long, Snap>> snapIterator = map.getBarlineSnaps().entrySet().iterator();
-
-            //Sv tracking variables
-            long lastTimingPos = Long.MIN_VALUE, lastEffectPos = Long.MIN_VALUE, startTime;
-            Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
-            Map.Entry<Long, Snap> nextSnap = null;
-            Map.Entry<Long, ArrayList<HitObject>> stack = null;
-            Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
-            float baseSV = map.getBaseSV();
-            double svRate = baseSV, currentBPM;
-
-            TimingPoint temp;
-
-            timing = map.timingPoints.entrySet().iterator();
-            effect = map.effectPoints.entrySet().iterator();
-
-            if (timing.hasNext()) //First timing point
-            {
-                nextTiming = timing.next();
-                currentBPM = nextTiming.getValue().get(0).value;
-                svMap.put(Long.MIN_VALUE, (float) (SCROLL_SPEED_SCALE * baseSV / currentBPM));
-                if (timing.hasNext())
-                    nextTiming = timing.next();
-                else
-                    nextTiming = null; //Only one timing point.
-            } else {
-                //what the fuck why are there no timing points >:(
-                currentBPM = 120; //This is what osu uses as default so it's what I'm gonna use. Though really, there shouldn't be any objects if there's no timing points.
+            for (Map.Entry<Long, ArrayList<HitObject>> stack : map.objects.entrySet()) {
+                addObjects(stack, startTime(stack.getKey(), scrollSpeed(stack.getKey())));
+            }
+            for (Snap s : map.getBarlineSnaps().values()) {
+                addBarline(s, startTime(s.pos, scrollSpeed(s.pos)));
+            }
+        }
+        calculationLock.unlock();
+    }
+
+    //Marks start to end (inclusive) to be recalculated. Multiple changes before the next update are recalculated together.
+    public void invalidate(long start, long end) {
+        calculationLock.lock();
+        boolean scheduled = dirtyStart <= dirtyEnd;
+        dirtyStart = Math.min(dirtyStart, start);
+        dirtyEnd = Math.max(dirtyEnd, end);
+        calculationLock.unlock();
+
+        if (!scheduled)
+            TaikoEditor.onMain(this::calculateDirty);
+    }
+
+    private void calculateDirty() {
+        calculationLock.lock();
+        long start = dirtyStart, end = dirtyEnd;
+        dirtyStart = Long.MAX_VALUE;
+        dirtyEnd = Long.MIN_VALUE;
+        if (start <= end)
+            calculateTimes(start, end);
+        calculationLock.unlock();
+    }
+
+    //Recalculates only the objects, barlines and lines from start to end (inclusive).
+    //Everything outside the range is assumed to be unchanged, so the range has to include everything that moved or had its sv changed.
+    //Red lines change the barlines and the bpm of everything after them, so changes to them should use the full calculateTimes.
+    //Scroll speeds come from the map's ScrollTable, which is updated by the map itself.
+    public void calculateTimes(long start, long end) {
+        calculationLock.lock();
+        {
+            //Remove objects from where they were last calculated, which may not be where they are now
+            NavigableMap<Long, ArrayList<Calculated>> previous = calculated.subMap(start, true, end, true);
+            for (ArrayList<Calculated> stack : previous.values()) {
+                for (Calculated c : stack)
+                    objectTimes.remove(c.start, c.h);
             }
+            previous.clear();
 
-            if (effect.hasNext())
-                nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached because game Dumb.
-
-            if (objectIterator.hasNext())
-                stack = objectIterator.next();
-            if (snapIterator.hasNext())
-                nextSnap = snapIterator.next();
-
-            while (stack != null || nextSnap != null) {
-                if (nextSnap != null && (stack == null || nextSnap.getKey() <= stack.getKey())) {
-                    //next is a barline
-                    while (nextTiming != null && nextTiming.getKey() <= nextSnap.getKey())// + 1)
-                    {
-                        currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
-                        lastTimingPos = nextTiming.getKey();
-                        svRate = baseSV; //return to base sv
-                        svMap.put(lastTimingPos, (float) (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (timing.hasNext())
-                            nextTiming = timing.next();
-                        else
-                            nextTiming = null;
-                    }
-                    while (nextEffect != null && nextEffect.getKey() <= nextSnap.getKey())// + 1)
-                    {
-                        lastEffectPos = nextEffect.getKey();
-                        temp = nextEffect.getValue().get(nextEffect.getValue().size() - 1);
-                        svRate = baseSV * temp.value;
-                        svMap.put(lastEffectPos, (float) (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (effect.hasNext())
-                            nextEffect = effect.next();
-                        else
-                            nextEffect = null;
-                    }
-                    if (lastEffectPos < lastTimingPos) {
-                        svRate = baseSV; //return to base sv
-                    }
-
-                    //Calculate start and end times
-
-                    if (svRate <= 0) { //0 bpm dumb
-                        barlineStartMap.put(nextSnap.getValue(), Long.MIN_VALUE);
-                    } else {
-                        //currentBPM - ms gap between beats. High value = lower bpm = lower speed = higher duration
-                        //svRate - multiplier of scroll speed
-
-                        //speed in pixels per ms - about 320 * svRate / currentBPM
-                        //visible pixels / pixels per ms = ms duration
-                        startTime = nextSnap.getKey() - (long) (VISIBLE_LENGTH / (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (startTime == nextSnap.getKey()) //some absurdly high sv value that makes it instant could result in division by 0
-                            startTime -= 1;
-
-                        barlineStartMap.put(nextSnap.getValue(), startTime);
-                    }
-                    //for convenience, barlines will just vanish at their time
-                    barlineStartTimes.put(barlineStartMap.get(nextSnap.getValue()), nextSnap.getValue());
-
-                    if (snapIterator.hasNext())
-                        nextSnap = snapIterator.next();
-                    else
-                        nextSnap = null;
-                } else { //next is objects
-                    while (nextTiming != null && nextTiming.getKey() <= stack.getKey())// + 1)
-                    {
-                        currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
-                        lastTimingPos = nextTiming.getKey();
-                        svRate = baseSV; //return to base sv
-                        svMap.put(lastTimingPos, (float) (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (timing.hasNext())
-                            nextTiming = timing.next();
-                        else
-                            nextTiming = null;
-                    }
-                    while (nextEffect != null && nextEffect.getKey() <= stack.getKey())// + 1)
-                    {
-                        lastEffectPos = nextEffect.getKey();
-                        temp = nextEffect.getValue().get(nextEffect.getValue().size() - 1);
-                        svRate = baseSV * temp.value;
-                        svMap.put(lastEffectPos, (float) (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (effect.hasNext())
-                            nextEffect = effect.next();
-                        else
-                            nextEffect = null;
-                    }
-                    if (lastEffectPos < lastTimingPos) {
-                        svRate = baseSV; //return to base sv
-                    }
-
-                    //Calculate start and end times
-
-                    if (svRate <= 0) { //0 bpm dumb
-                        startTime = Long.MIN_VALUE;
-                    } else {
-                        //currentBPM - ms gap between beats. High value = lower bpm = lower speed = higher duration
-                        //svRate - multiplier of scroll speed
-
-                        //speed in pixels per ms - about 320 * svRate / currentBPM
-                        //visible pixels / pixels per ms = ms duration
-                        startTime = stack.getKey() - (long) (VISIBLE_LENGTH / (SCROLL_SPEED_SCALE * svRate / currentBPM));
-
-                        if (startTime == stack.getKey()) //some absurdly high sv value that makes it instant could result in division by 0
-                            startTime -= 1;
-                    }
-
-                    if (!startTimes.containsKey(startTime)) {
-                        startTimes.put(startTime, new ArrayList<>());
-                    }
-
-                    for (HitObject h : stack.getValue()) {
-                        h.gameplayStart = startTime;
-
-                        startTimes.get(h.gameplayStart).add(h);
-                        endTimes.compute(h.getEndPos(), (k, v) -> {
-                            if (v == null) {
-                                ArrayList<HitObject> list = new ArrayList<>();
-                                list.add(h);
-                                return list;
-                            } else {
-                                v.add(h);
-                                return v;
-                            }
-                        });
-                        //oldEndTimes.put(h, h.getEndPos());
-                    }
-
-                    if (objectIterator.hasNext())
-                        stack = objectIterator.next();
-                    else
-                        stack = null;
-                }
+            for (Map.Entry<Long, ArrayList<HitObject>> stack : map.objects.subMap(start, true, end, true).entrySet()) {
+                addObjects(stack, startTime(stack.getKey(), scrollSpeed(stack.getKey())));
             }
 
-            if (reprep) {
-                prep(); //prevent flicker when clearing visual info for 1 frame
+            for (Snap s : map.getBarlineSnaps().subMap(start, true, end, true).values()) {
+                Long previousStart = barlineStartMap.get(s);
+                if (previousStart != null)
+                    barlineTimes.remove(previousStart, s);
+
+                addBarline(s, startTime(s.pos, scrollSpeed(s.pos)));
             }
+
+            lastPos = Long.MIN_VALUE; //Visible objects are found again on the next prep
         }
         calculationLock.unlock();
     }
 
+    //Scroll speed in pixels per ms at a position.
+    private double scrollSpeed(long pos) {
+        return SCROLL_SPEED_SCALE * map.scroll.speed(pos);
+    }
+
+    private static long startTime(long pos, double speed) {
+        if (speed <= 0) //0 bpm dumb
+            return Long.MIN_VALUE;
+
+        long startTime = pos - (long) (VISIBLE_LENGTH / speed);
+        if (startTime == pos) //some absurdly high sv value that makes it instant could result in division by 0
+            startTime -= 1;
+        return startTime;
+    }
+
+    private void addObjects(Map.Entry<Long, ArrayList<HitObject>> stack, long startTime) {
+        ArrayList<Calculated> calculatedStack = new ArrayList<>(stack.getValue().size());
+        for (HitObject h : stack.getValue()) {
+            h.gameplayStart = startTime;
+
+            if (startTime != Long.MIN_VALUE) //Objects that never scroll in are never visible
+                objectTimes.add(startTime, h.getGameplayEndPos(), h);
+            calculatedStack.add(new Calculated(h, startTime));
+        }
+        calculated.put(stack.getKey(), calculatedStack);
+    }
+
+    private void addBarline(Snap s, long startTime) {
+        barlineStartMap.put(s, startTime);
+        if (startTime != Long.MIN_VALUE) //Barlines keep scrolling past the hit area until they're off screen
+            barlineTimes.add(startTime, s.pos + (s.pos - startTime) / 2, s);
+    }
+
+    private static class Calculated {
+        final HitObject h;
+        final long start;
+
+        Calculated(HitObject h, long start) {
+            this.h = h;
+            this.start = start;
+        }
+    }
+
 
-    private long lastSounded; //purely for audio in primaryUpdate
     @Override
     public void primaryUpdate(boolean isPlaying) {
-        if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25) //might have skipped backwards, make sure didn't skip too far
-        {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
-        }
-        lastSounded = time;
+        if (isPrimary && lockOffset == 0)
+            music.setHitsoundSource(this);
     }
 
 
@@ -364,7 +281,7 @@ public class GameplayView extends MapView {
             //Dunno osu's logic to decide when to fade spinners in, this is merely an approximation for convenience
             alpha *= 1 - MathUtils.clamp(((h.getPos() - preciseTime) - 1000) / 500.0, 0.0, 1.0);
 
-        h.gameplayRender(sb, sr, svMap.floorEntry(h.getPos()).getValue(), HIT_AREA_X, Interpolation.linear.apply(VISIBLE_LENGTH, 0, (float) ((preciseTime - h.gameplayStart) / (h.getPos() - h.gameplayStart))), objectY, alpha);
+        h.gameplayRender(sb, sr, (float) scrollSpeed(h.getPos()), HIT_AREA_X, Interpolation.linear.apply(VISIBLE_LENGTH, 0, (float) ((preciseTime - h.gameplayStart) / (h.getPos() - h.gameplayStart))), objectY, alpha);
 
         calculationLock.unlock();
     }
@@ -379,56 +296,16 @@ public class GameplayView extends MapView {
     public NavigableMap<Long, ? extends ArrayList<? extends PositionalObject>> prep() {
         calculationLock.lock();
 
-        Iterator<Map.Entry<Long, ArrayList<PositionalObject>>> objectIterator = visibleObjects.entrySet().iterator();
-        Map.Entry<Long, ArrayList<PositionalObject>> stack;
-
-        if (lastPos < time) { //moved forward. Can check just a few.
-            //Remove expired objects
-            while (objectIterator.hasNext()) {
-                stack = objectIterator.next();
-
-                if (((HitObject) stack.getValue().get(0)).getGameplayEndPos() < time) {
-                    objectIterator.remove();
-                }
-            }
-            barlines.removeIf((snap)->snap.pos+(snap.pos-barlineStartMap.getOrDefault(snap, 0L)) / 2 < time);
-
-            for (ArrayList<HitObject> hits : startTimes.subMap(lastPos, false, time, true).values()) {
-                for (HitObject h : hits)
-                    if (h.getEndPos() >= time)
-                        visibleObjects.add(h);
-            }
-            for (Snap s : barlineStartTimes.subMap(lastPos, false, time, true).values()) {
-                if (s.pos >= time)
-                    barlines.add(s);
-            }
-        }
-        else if (time < lastPos) {
-            //Moved backwards.
-            while (objectIterator.hasNext()) {
-                stack = objectIterator.next();
-
-                if (((HitObject) stack.getValue().get(0)).gameplayStart > time) { //objects that aren't active yet
-                    objectIterator.remove();
-                }
-            }
-            barlines.removeIf((snap)->barlineStartMap.get(snap) > time);
-
-            for (ArrayList<HitObject> hits : endTimes.subMap(time, true, lastPos, false).values()) {
-                for (HitObject h : hits)
-                    if (h.gameplayStart <= time)
-                        visibleObjects.add(h);
-            }
-            for (Snap s : map.getBarlineSnaps().subMap(time, true, lastPos, false).values()) {
-                Long startTime = barlineStartMap.get(s);
-                if (startTime != null && startTime <= time)
-                    barlines.add(s);
-            }
+        if (time != lastPos) {
+            visibleObjects.clear();
+            objectTimes.stab(time, visibleObjects::add);
+            barlines.clear();
+            barlineTimes.stab(time, barlines::add);
+            lastPos = time;
         }
 
         calculationLock.unlock();
 
-        lastPos = time;
         return visibleObjects.descendingMap(); //descending version to ensure reverse rendering order for correct overlapping
     }
 
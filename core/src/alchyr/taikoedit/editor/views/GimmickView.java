@@ -1,10 +1,13 @@
 package alchyr.taikoedit.editor.views;
 
+import alchyr.taikoedit.audio.HitsoundMixer;
 import alchyr.taikoedit.core.input.BindingGroup;
 import alchyr.taikoedit.core.input.MouseHoldObject;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
+import alchyr.taikoedit.editor.BeatDivisors;
 import alchyr.taikoedit.editor.Snap;
+import alchyr.taikoedit.editor.SnapList;
 import alchyr.taikoedit.editor.changes.BreakAdjust;
 import alchyr.taikoedit.editor.changes.BreakRemoval;
 import alchyr.taikoedit.editor.changes.MapChange;
@@ -65,9 +68,7 @@ public class GimmickView extends MapView {
     private int objectY = 0;
     //private int topBigY = 0;
 
-    private long lastSounded;
-
-    private SortedMap<Long, Snap> activeSnaps;
+    private SnapList activeSnaps;
 
     private static final BiFunction<PositionalObject, PositionalObject, Boolean> replaceSameType = (placed, existing)->{
         if (placed instanceof HitObject && existing instanceof HitObject) {
@@ -78,8 +79,6 @@ public class GimmickView extends MapView {
 
     public GimmickView(EditorLayer parent, EditorBeatmap beatmap) {
         super(ViewType.GIMMICK_VIEW, parent, beatmap, HEIGHT);
-        lastSounded = 0;
-
         filters = new ArrayList<>();
         hiddenTypes = new HashSet<>();
         filters.add((h)->hiddenTypes.contains(h.type));
@@ -126,6 +125,7 @@ public class GimmickView extends MapView {
     //Object Filtering
     private boolean sliders = true, spinners = true;
     private final List<Predicate<HitObject>> filters;
+    private long filterChanges = 0; //Hidden objects aren't heard either
     private final Set<HitObject.HitObjectType> hiddenTypes;
     private boolean visible(HitObject h) {
         for (Predicate<HitObject> filter : filters)
@@ -137,18 +137,25 @@ public class GimmickView extends MapView {
 
     @Override
     public void primaryUpdate(boolean isPlaying) {
-        if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25) //might have skipped backwards
+        if (isPrimary && lockOffset == 0)
+            music.setHitsoundSource(this);
+    }
+
+    @Override
+    public void scheduleHitsounds(long start, long end, HitsoundMixer.Schedule schedule) {
+        for (ArrayList<HitObject> objects : map.objects.subMap(start, true, end, true).values())
         {
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
+            for (HitObject o : objects)
             {
-                for (HitObject o : objects)
-                {
-                    if (visible(o))
-                        o.playSound();
-                }
+                if (visible(o))
+                    o.scheduleSound(schedule);
             }
         }
-        lastSounded = time;
+    }
+
+    @Override
+    public long hitsoundVersion() {
+        return super.hitsoundVersion() + filterChanges;
     }
 
     @Override
@@ -229,9 +236,9 @@ public class GimmickView extends MapView {
         }
 
         //Divisors.
-        for (Snap s : activeSnaps.values())
+        for (int i = 0; i < activeSnaps.size(); ++i)
         {
-            s.render(sb, sr, preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, HEIGHT);
+            Snap.render(sb, sr, activeSnaps.pos(i), activeSnaps.divisor(i), preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, HEIGHT);
         }
     }
 
@@ -775,6 +782,7 @@ public class GimmickView extends MapView {
     private void toggleHits() {
         clearSelection();
         prevObjects = null; //refresh visible objects
+        ++filterChanges;
         switch (hitMode) {
             case 0:
                 ++hitMode;
@@ -803,6 +811,7 @@ public class GimmickView extends MapView {
     private void toggleSliders() {
         clearSelection();
         prevObjects = null; //refresh visible objects
+        ++filterChanges;
         if (sliders) {
             sliders = false;
             hiddenTypes.add(HitObject.HitObjectType.SLIDER);
@@ -817,6 +826,7 @@ public class GimmickView extends MapView {
     private void toggleSpinners() {
         clearSelection();
         prevObjects = null; //refresh visible objects
+        ++filterChanges;
         if (spinners) {
             spinners = false;
             hiddenTypes.add(HitObject.HitObjectType.SPINNER);
@@ -856,7 +866,7 @@ public class GimmickView extends MapView {
         offset -= copyObjects.firstKey();
 
         PositionalObjectTreeMap<PositionalObject> placementCopy = new PositionalObjectTreeMap<>();
-        TreeMap<Long, Snap> snaps = map.getAllSnaps();
+        BeatDivisors.SnapSet snaps = map.getAllSnaps();
 
         for (Map.Entry<Long, ArrayList<PositionalObject>> entry : copyObjects.entrySet())
         {
@@ -1,12 +1,15 @@
 package alchyr.taikoedit.editor.views;
 
 import alchyr.taikoedit.TaikoEditor;
+import alchyr.taikoedit.audio.HitsoundMixer;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
+import alchyr.taikoedit.editor.BeatDivisors;
 import alchyr.taikoedit.editor.Snap;
 import alchyr.taikoedit.editor.tools.Toolset;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
+import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.core.input.MouseHoldObject;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import alchyr.taikoedit.util.structures.PositionalObjectTreeMap;
@@ -23,7 +26,7 @@ import java.util.function.BiFunction;
 
 import static alchyr.taikoedit.TaikoEditor.*;
 
-public abstract class MapView {
+public abstract class MapView implements HitsoundMixer.Source {
 
     public enum ViewType {
         OBJECT_VIEW,
@@ -280,6 +283,26 @@ public abstract class MapView {
     public void primaryUpdate(boolean isPlaying)
     {
     }
+
+    //Hitsounds are only played for a view that sets itself as the music's hitsound source in primaryUpdate.
+    @Override
+    public void scheduleHitsounds(long start, long end, HitsoundMixer.Schedule schedule)
+    {
+        for (ArrayList<HitObject> objects : map.objects.subMap(start, true, end, true).values())
+        {
+            for (HitObject o : objects)
+            {
+                o.scheduleSound(schedule);
+            }
+        }
+    }
+
+    @Override
+    public long hitsoundVersion()
+    {
+        return map.getVersion();
+    }
+
     //Rendering done to show the currently active MapView.
     public void primaryRender(SpriteBatch sb, ShapeRenderer sr)
     {
@@ -315,39 +338,40 @@ public abstract class MapView {
     }
 
     public Snap getPreviousSnap(long pos) {
-        Map.Entry<Long, Snap> previous = map.getCurrentSnaps().lowerEntry(music.isPlaying() ? pos - 250 : pos);
+        Snap previous = map.getCurrentSnaps().lower(music.isPlaying() ? pos - 250 : pos);
         if (previous == null)
             return null;
-        while (pos - previous.getKey() < 2)
+        while (pos - previous.pos < 2)
         {
-            previous = map.getCurrentSnaps().lowerEntry(previous.getKey());
+            previous = map.getCurrentSnaps().lower(previous.pos);
             if (previous == null)
                 return null;
         }
-        return previous.getValue();
+        return previous;
     }
 
     public Snap getNextSnap(long pos) {
-        Map.Entry<Long, Snap> next = map.getCurrentSnaps().higherEntry(music.isPlaying() ? pos + 250 : pos);
+        Snap next = map.getCurrentSnaps().higher(music.isPlaying() ? pos + 250 : pos);
         if (next == null)
             return null;
-        if (next.getKey() - pos < 2)
+        if (next.pos - pos < 2)
         {
-            next = map.getCurrentSnaps().higherEntry(next.getKey());
+            next = map.getCurrentSnaps().higher(next.pos);
             if (next == null)
                 return null;
         }
-        return next.getValue();
+        return next;
     }
 
     public Snap getClosestSnap(double time, float limit) { //time in ms, limit as max ms gap
         long rounded = Math.round(time);
-        if (map.getCurrentSnaps().containsKey(rounded))
-            return map.getCurrentSnaps().get(rounded);
+        Snap exact = map.getCurrentSnaps().get(rounded);
+        if (exact != null)
+            return exact;
 
-        Map.Entry<Long, Snap> lower, higher;
-        lower = map.getCurrentSnaps().lowerEntry(rounded);
-        higher = map.getCurrentSnaps().higherEntry(rounded);
+        Snap lower, higher;
+        lower = map.getCurrentSnaps().lower(rounded);
+        higher = map.getCurrentSnaps().higher(rounded);
 
         if (lower == null && higher == null)
         {
@@ -355,24 +379,24 @@ public abstract class MapView {
         }
         else if (lower == null)
         {
-            if (higher.getKey() - time <= limit)
-                return higher.getValue();
+            if (higher.pos - time <= limit)
+                return higher;
         }
         else if (higher == null)
         {
-            if (time - lower.getKey() <= limit)
-                return lower.getValue();
+            if (time - lower.pos <= limit)
+                return lower;
         }
         else
         {
-            double lowerDist = time - lower.getValue().pos, higherDist = higher.getValue().pos - time;
+            double lowerDist = time - lower.pos, higherDist = higher.pos - time;
             if (lowerDist <= higherDist)
             {
                 if (lowerDist <= limit)
-                    return lower.getValue();
+                    return lower;
             }
             if (higherDist <= limit)
-                return higher.getValue();
+                return higher;
         }
         return null;
     }
@@ -505,43 +529,43 @@ public abstract class MapView {
             selectAll();
 
         PositionalObjectTreeMap<PositionalObject> resnapped = new PositionalObjectTreeMap<>();
-        TreeMap<Long, Snap> allSnaps = map.getAllSnaps();
+        BeatDivisors.SnapSet allSnaps = map.getAllSnaps();
         int changed = 0;
 
         for (Map.Entry<Long, ArrayList<PositionalObject>> objs : selectedObjects.entrySet())
         {
-            if (allSnaps.containsKey(objs.getKey()))
+            if (allSnaps.contains(objs.getKey()))
             {
                 resnapped.put(objs.getKey(), objs.getValue());
                 continue;
             }
 
             long newSnap = objs.getKey();
-            if (allSnaps.containsKey(newSnap + 1))
+            if (allSnaps.contains(newSnap + 1))
             {
                 newSnap += 1;
             }
-            else if (allSnaps.containsKey(newSnap - 1))
+            else if (allSnaps.contains(newSnap - 1))
             {
                 newSnap -= 1;
             }
             else {
-                Long higherSnap = allSnaps.higherKey(newSnap),
-                        lowerSnap = allSnaps.lowerKey(newSnap);
+                Snap higherSnap = allSnaps.higher(newSnap),
+                        lowerSnap = allSnaps.lower(newSnap);
 
                 if (higherSnap != null && lowerSnap != null) {
-                    if (newSnap - lowerSnap < higherSnap - newSnap) {
-                        newSnap = lowerSnap;
+                    if (newSnap - lowerSnap.pos < higherSnap.pos - newSnap) {
+                        newSnap = lowerSnap.pos;
                     }
                     else {
-                        newSnap = higherSnap;
+                        newSnap = higherSnap.pos;
                     }
                 }
                 else if (higherSnap != null) {
-                    newSnap = higherSnap;
+                    newSnap = higherSnap.pos;
                 }
                 else if (lowerSnap != null) {
-                    newSnap = lowerSnap;
+                    newSnap = lowerSnap.pos;
                 }
             }
 
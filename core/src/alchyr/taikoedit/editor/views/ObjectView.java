@@ -4,7 +4,9 @@ import alchyr.taikoedit.core.input.BindingGroup;
 import alchyr.taikoedit.core.input.MouseHoldObject;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
+import alchyr.taikoedit.editor.BeatDivisors;
 import alchyr.taikoedit.editor.Snap;
+import alchyr.taikoedit.editor.SnapList;
 import alchyr.taikoedit.editor.changes.BreakAdjust;
 import alchyr.taikoedit.editor.changes.BreakRemoval;
 import alchyr.taikoedit.editor.changes.MapChange;
@@ -61,14 +63,10 @@ public class ObjectView extends MapView {
     private int objectY = 0;
     //private int topBigY = 0;
 
-    private long lastSounded;
-
-    private SortedMap<Long, Snap> activeSnaps = Collections.emptySortedMap();
+    private SnapList activeSnaps = new SnapList(0);
 
     public ObjectView(EditorLayer parent, EditorBeatmap beatmap) {
         super(ViewType.OBJECT_VIEW, parent, beatmap, HEIGHT);
-        lastSounded = 0;
-
         breaks = beatmap.autoBreaks;
 
         addOverlayButton(new ImageButton(assetMaster.get("editor:exit"), assetMaster.get("editor:exith")).setClick(this::close).setAction("Close View"));
@@ -106,26 +104,8 @@ public class ObjectView extends MapView {
 
     @Override
     public void primaryUpdate(boolean isPlaying) {
-        if (isPrimary && lockOffset == 0 && isPlaying && lastSounded < time && time - lastSounded < 25) //might have skipped backwards
-        {
-            //Play only the most recently passed HitObject list. This avoids spamming a bunch of sounds if fps is too low.
-            /*Map.Entry<Integer, ArrayList<HitObject>> entry = map.getEditObjects().higherEntry(currentPos);
-            if (entry != null && entry.getKey() > lastSounded)
-            {
-                for (HitObject o : entry.getValue())
-                    o.playSound();
-            }*/
-
-            //To play ALL hitobjects passed.
-            for (ArrayList<HitObject> objects : map.objects.subMap(lastSounded, false, time, true).values())
-            {
-                for (HitObject o : objects)
-                {
-                    o.playSound();
-                }
-            }
-        }
-        lastSounded = time;
+        if (isPrimary && lockOffset == 0)
+            music.setHitsoundSource(this);
     }
 
     @Override
@@ -206,9 +186,9 @@ public class ObjectView extends MapView {
         }
 
         //Divisors.
-        for (Snap s : activeSnaps.values())
+        for (int i = 0; i < activeSnaps.size(); ++i)
         {
-            s.render(sb, sr, preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, HEIGHT);
+            Snap.render(sb, sr, activeSnaps.pos(i), activeSnaps.divisor(i), preciseTime, viewScale, SettingsMaster.getMiddleX(), bottom, HEIGHT);
         }
     }
 
@@ -733,7 +713,7 @@ public class ObjectView extends MapView {
         offset -= copyObjects.firstKey();
 
         PositionalObjectTreeMap<PositionalObject> placementCopy = new PositionalObjectTreeMap<>();
-        TreeMap<Long, Snap> snaps = map.getAllSnaps();
+        BeatDivisors.SnapSet snaps = map.getAllSnaps();
         boolean resnap = !BindingGroup.alt();
 
         for (Map.Entry<Long, ArrayList<PositionalObject>> entry : copyObjects.entrySet())
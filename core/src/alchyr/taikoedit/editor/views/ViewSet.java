@@ -2,14 +2,12 @@ package alchyr.taikoedit.editor.views;
 
 import alchyr.diffcalc.TaikoDifficultyCalculator;
 import alchyr.diffcalc.taiko.difficulty.TaikoDifficultyAttributes;
-import alchyr.diffcalc.taiko.difficulty.preprocessing.TaikoDifficultyHitObject;
 import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.core.layers.sub.DifficultySettingsLayer;
 import alchyr.taikoedit.core.ui.ImageButton;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.editor.maps.EditorBeatmap;
-import alchyr.taikoedit.editor.maps.components.HitObject;
 import alchyr.taikoedit.core.input.MouseHoldObject;
 import alchyr.taikoedit.util.structures.PositionalObject;
 import com.badlogic.gdx.Input;
@@ -29,7 +27,6 @@ public class ViewSet {
     private final HashMap<MapView, NavigableMap<Long, ? extends ArrayList<? extends PositionalObject>>> viewObjects;
     private final EditorBeatmap map;
 
-    private final HashMap<HitObject, TaikoDifficultyHitObject> difficultyInfo = new HashMap<>();
 
     private final BitmapFont difficultyFont;
     private float difficultyX;
@@ -245,9 +242,10 @@ public class ViewSet {
     }
 
     public void calculateDifficulty() {
-        TaikoDifficultyAttributes attributes = (TaikoDifficultyAttributes) TaikoDifficultyCalculator.calculateDifficulty(map, difficultyInfo);
+        TaikoDifficultyCalculator calculator = map.getDifficultyCalculator();
+        TaikoDifficultyAttributes attributes = (TaikoDifficultyAttributes) calculator.update();
         owner.showText(attributes.StarRating + " : " + attributes.ContinuousRating + " : " + attributes.BurstRating);
 
-        owner.addView(new DifficultyView(owner, map, difficultyInfo), true);
+        owner.addView(new DifficultyView(owner, map, calculator), true);
     }
 }
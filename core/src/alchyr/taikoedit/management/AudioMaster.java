@@ -1,5 +1,6 @@
 package alchyr.taikoedit.management;
 
+import alchyr.taikoedit.audio.HitsoundMixer;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.backends.lwjgl3.audio.OpenALLwjgl3Audio;
@@ -143,16 +144,38 @@ public class AudioMaster {
         return playSfx(key, 1, 1, 0, false);
     }
 
+    //Decoded audio of a sound effect, for mixing it into the music. null if it isn't loaded or can't be decoded.
+    public HitsoundMixer.Sample getSfxSample(String key)
+    {
+        Sfx s = map.get(key);
+        return s == null ? null : s.getSample();
+    }
+
 
     public static class Sfx {
         private static final Logger logger = LogManager.getLogger(Sfx.class.getName());
         private String url;
         private Sound sound;
+        private HitsoundMixer.Sample sample;
+        private boolean sampleFailed = false;
 
         public Sfx(String url) {
+            this.url = url;
             this.sound = this.initSound(Gdx.files.internal(url));
         }
 
+        public HitsoundMixer.Sample getSample() {
+            if (this.sample == null && !this.sampleFailed) {
+                try {
+                    this.sample = HitsoundMixer.Sample.load(Gdx.files.internal(this.url));
+                } catch (GdxRuntimeException e) {
+                    logger.error("Failed to decode " + this.url + ". It won't be heard in the music.", e); //Only logged once, the sample isn't loaded again
+                    this.sampleFailed = true;
+                }
+            }
+            return this.sample;
+        }
+
         public long play(float volume) {
             return this.sound != null ? this.sound.play(volume) : 0L;
         }
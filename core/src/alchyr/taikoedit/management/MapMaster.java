@@ -21,9 +21,12 @@ public class MapMaster {
             {
                 loading = true;
                 BeatmapDatabase.progress = 0;
+                if (mapDatabase != null)
+                    mapDatabase.stopWatching();
                 mapDatabase = null;
                 System.gc();
                 mapDatabase = new BeatmapDatabase(new File(FileHelper.concat(SettingsMaster.osuFolder, "Songs")));
+                mapDatabase.startWatching();
             }
             catch (Exception e)
             {
@@ -36,6 +39,12 @@ public class MapMaster {
         }
     }
 
+    //True once after maps are added, removed, or modified while the program is running.
+    public static boolean checkChanges()
+    {
+        return mapDatabase != null && mapDatabase.checkChanged();
+    }
+
     public static float getProgress()
     {
         return BeatmapDatabase.progress;
@@ -46,13 +55,13 @@ public class MapMaster {
     //For search, use multiple search fields?
     //Would add precision, but I don't think it's really necessary, since someone searching should know what they're looking for already.
     //So, just one search field is fine.
-    public static List<Mapset> search(String searchText)
+    public static List<Mapset> search(String searchText, int offset, int limit)
     {
         if (mapDatabase != null)
         {
             String[] terms = searchText.toLowerCase().split(" ");
 
-            return mapDatabase.search(terms);
+            return mapDatabase.search(terms, offset, limit);
         }
 
         return Collections.emptyList();
@@ -48,6 +48,15 @@ public class SettingsMaster {
 
     public static boolean lazerSnaps = false;
 
+    public static int audioCacheSize = 1024; //MB of decoded audio kept on disk, 0 to disable
+
+    public static boolean streamAudio = true; //Decode music while it plays instead of all at once when it's opened
+    public static boolean parallelDecode = true; //Use all cores when decoding all of a song at once
+
+    public static int autosaveInterval = 0; //Seconds between saves of changed difficulties while editing, 0 to disable
+
+    public static int undoMemory = 256; //MB of undo history kept for each difficulty, 0 for no limit
+
     public static long roundPos(double pos) {
         return lazerSnaps ? Math.round(pos) : (long) pos;
     }
@@ -144,6 +153,21 @@ public class SettingsMaster {
                                         case "WaveformOffset":
                                             waveformOffset = Integer.parseInt(keyVal[1]);
                                             break;
+                                        case "AudioCacheSize":
+                                            audioCacheSize = Integer.parseInt(keyVal[1]);
+                                            break;
+                                        case "StreamAudio":
+                                            streamAudio = Boolean.parseBoolean(keyVal[1]);
+                                            break;
+                                        case "ParallelDecode":
+                                            parallelDecode = Boolean.parseBoolean(keyVal[1]);
+                                            break;
+                                        case "AutosaveInterval":
+                                            autosaveInterval = Integer.parseInt(keyVal[1]);
+                                            break;
+                                        case "UndoMemory":
+                                            undoMemory = Integer.parseInt(keyVal[1]);
+                                            break;
                                         default:
                                             editorLogger.info("Unknown setting key \"" + keyVal[0] + "\" with value " + keyVal[1]);
                                     }
@@ -243,6 +267,11 @@ public class SettingsMaster {
                 "KY:" + bigKatY + '\n' +
                 "LazerSnaps:" + lazerSnaps + '\n' +
                 "WaveformOffset:" + waveformOffset + '\n' +
+                "AudioCacheSize:" + audioCacheSize + '\n' +
+                "StreamAudio:" + streamAudio + '\n' +
+                "ParallelDecode:" + parallelDecode + '\n' +
+                "AutosaveInterval:" + autosaveInterval + '\n' +
+                "UndoMemory:" + undoMemory + '\n' +
                 "Skin:" + Skins.currentSkin.toString();
         //.replace(":", "](}").replace("|", "})]");
     }
@@ -0,0 +1,231 @@
+package alchyr.taikoedit.management.assets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//Reads a .osu file in a single pass over its bytes.
+//Lines are only turned into Strings when asked for; timing points and hit objects are read field by field,
+//with numbers parsed straight from the bytes.
+public class OsuFileReader {
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15; //Any 15 digit integer is exactly representable as a double
+
+    private final byte[] data;
+    private final int length;
+
+    private int next; //Start of the next line
+    private int lineStart, lineEnd;
+    private int fieldEnd, fieldNext; //Current field, and start of the next one
+    private int partNext; //Start of the next part within the current field
+    private int tokenStart, tokenEnd; //Last field or part read
+
+    public static OsuFileReader open(File f) {
+        if (f.isFile() && f.canRead()) {
+            try {
+                return new OsuFileReader(Files.readAllBytes(f.toPath()));
+            }
+            catch (IOException e) {
+                editorLogger.error("Failed to read file " + f.getPath(), e);
+            }
+        }
+        return null;
+    }
+
+    public OsuFileReader(byte[] data) {
+        this.data = data;
+        this.length = data.length;
+
+        //UTF-8 byte order mark
+        if (length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF)
+            next = 3;
+        else
+            next = 0;
+    }
+
+    //Moves to the next line. Returns false at the end of the file.
+    public boolean nextLine() {
+        if (next >= length)
+            return false;
+
+        lineStart = next;
+        int i = lineStart;
+        while (i < length && data[i] != '\n')
+            ++i;
+        next = i + 1;
+
+        lineEnd = i;
+        if (lineEnd > lineStart && data[lineEnd - 1] == '\r') //ignore carriage return
+            --lineEnd;
+
+        resetFields();
+        return true;
+    }
+
+    public boolean lineIsEmpty() {
+        return lineStart == lineEnd;
+    }
+
+    public boolean lineStartsWith(char c) {
+        return lineStart < lineEnd && data[lineStart] == c;
+    }
+
+    public String line() {
+        return new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    //Returns to the first field of the current line.
+    public void resetFields() {
+        fieldNext = lineStart;
+        fieldEnd = lineStart;
+        tokenStart = tokenEnd = lineStart;
+        partNext = lineStart;
+    }
+
+    //Moves to the next comma separated field of the current line. Returns false if there are no more fields.
+    //Like String.split, trailing empty fields are ignored.
+    public boolean nextField() {
+        if (fieldNext > lineEnd)
+            return false;
+
+        int i = fieldNext;
+        while (i < lineEnd && data[i] != ',')
+            ++i;
+
+        if (i == fieldNext) {
+            int rest = i;
+            while (rest < lineEnd && data[rest] == ',')
+                ++rest;
+            if (rest == lineEnd) {
+                fieldNext = lineEnd + 1;
+                return false;
+            }
+        }
+
+        tokenStart = partNext = fieldNext;
+        tokenEnd = fieldEnd = i;
+        fieldNext = i + 1;
+        return true;
+    }
+
+    public boolean skipFields(int count) {
+        for (int i = 0; i < count; ++i) {
+            if (!nextField())
+                return false;
+        }
+        return true;
+    }
+
+    //Moves to the next part of the current field, split by the given separator. Returns false if there are no more parts.
+    public boolean nextPart(char separator) {
+        if (partNext > fieldEnd)
+            return false;
+
+        int i = partNext;
+        while (i < fieldEnd && data[i] != separator)
+            ++i;
+
+        tokenStart = partNext;
+        tokenEnd = i;
+        partNext = i + 1;
+        return true;
+    }
+
+    //True if the remainder of the current field contains nothing but the separator. String.split drops these trailing parts.
+    public boolean onlyTrailingParts(char separator) {
+        for (int i = partNext; i < fieldEnd; ++i) {
+            if (data[i] != separator)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean tokenIsEmpty() {
+        return tokenStart == tokenEnd;
+    }
+
+    public boolean tokenEquals(String s) {
+        if (s.length() != tokenEnd - tokenStart)
+            return false;
+        for (int i = 0; i < s.length(); ++i) {
+            if (data[tokenStart + i] != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public String token() {
+        return new String(data, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+    }
+
+    public int intToken() {
+        long value = longToken();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException("For input string: \"" + token() + "\"");
+        return (int) value;
+    }
+
+    public long longToken() {
+        int i = tokenStart;
+        boolean negative = false;
+        if (i < tokenEnd && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            ++i;
+        }
+        if (i == tokenEnd || tokenEnd - i > 18) //Empty or possible overflow
+            return Long.parseLong(token());
+
+        long value = 0;
+        for (; i < tokenEnd; ++i) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("For input string: \"" + token() + "\"");
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    //Plain decimals with up to 15 significant digits are converted exactly; anything else goes through Double.parseDouble.
+    public double doubleToken() {
+        int i = tokenStart;
+        boolean negative = false;
+        if (i < tokenEnd && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0, fractionDigits = 0;
+        boolean fraction = false, any = false;
+        for (; i < tokenEnd; ++i) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (mantissa == 0 && b == '0' && !fraction)
+                    continue; //leading zero
+                if (++digits > MAX_EXACT_DIGITS)
+                    return Double.parseDouble(token());
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction)
+                    ++fractionDigits;
+            }
+            else if (b == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                return Double.parseDouble(token()); //Exponent, whitespace, or invalid
+            }
+        }
+        if (!any)
+            return Double.parseDouble(token());
+
+        double value = fractionDigits == 0 ? mantissa : mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+}
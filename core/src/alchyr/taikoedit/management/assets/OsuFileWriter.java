@@ -0,0 +1,249 @@
+package alchyr.taikoedit.management.assets;
+
+import alchyr.taikoedit.editor.maps.FullMapInfo;
+import alchyr.taikoedit.editor.maps.components.HitObject;
+import alchyr.taikoedit.editor.maps.components.TimingPoint;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static alchyr.taikoedit.TaikoEditor.editorLogger;
+
+//Writes a .osu file section by section into a temporary file next to the target, then moves it over the target in one step.
+//The two steps can also be done separately, so a save made in the background can be checked before it replaces anything.
+//The map file on disk is either the old version or the complete new one, never a partial write.
+public class OsuFileWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String BACKUP_EXTENSION = ".BACKUP", AUTOSAVE_EXTENSION = ".AUTOSAVE";
+
+    private static final AtomicLong tempCount = new AtomicLong();
+
+    //previous is the current map file, which may not exist or may have a different name than target.
+    //If backup is true, previous is kept as a backup before being replaced.
+    public static void save(File previous, File target, FullMapInfo info,
+                            NavigableMap<Long, ArrayList<TimingPoint>> timingPoints,
+                            NavigableMap<Long, ArrayList<TimingPoint>> effectPoints,
+                            NavigableMap<Long, ArrayList<HitObject>> objects, boolean backup) throws IOException {
+        replace(previous, write(target, info, timingPoints, effectPoints, objects), target, backup);
+    }
+
+    //Writes the map into a new temporary file next to target and returns it. Nothing else is changed.
+    //Each call gets its own file, so a save in the background can't overwrite another one that is still waiting to be moved.
+    public static Path write(File target, FullMapInfo info,
+                             NavigableMap<Long, ArrayList<TimingPoint>> timingPoints,
+                             NavigableMap<Long, ArrayList<TimingPoint>> effectPoints,
+                             NavigableMap<Long, ArrayList<HitObject>> objects) throws IOException {
+        Path temp = target.toPath().resolveSibling(target.getName() + "." + tempCount.incrementAndGet() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer w = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+            info.write(w);
+            writeTimingPoints(w, timingPoints, effectPoints);
+            writeHitObjects(w, info.sliderMultiplier, timingPoints, effectPoints, objects);
+            w.flush();
+            channel.force(true);
+        }
+        catch (IOException | RuntimeException e) {
+            discard(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    //Moves a file from write() over target, first making a backup of previous if backup is true.
+    //Any autosave of the map is deleted, as it's older than what was just saved.
+    public static void replace(File previous, Path temp, File target, boolean backup) throws IOException {
+        Path targetPath = target.toPath();
+        Path previousPath = previous.toPath();
+        if (backup && previous.exists()) {
+            backup(previousPath, target);
+        }
+
+        move(temp, targetPath);
+
+        if (!previousPath.equals(targetPath))
+            Files.deleteIfExists(previousPath);
+
+        discard(sibling(previous, AUTOSAVE_EXTENSION));
+        discard(sibling(target, AUTOSAVE_EXTENSION));
+    }
+
+    //Moves a file from write() into the autosave file next to target. The map file and its backup are left alone.
+    public static void autosave(Path temp, File target) throws IOException {
+        move(temp, sibling(target, AUTOSAVE_EXTENSION));
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //The map's file name with its extension replaced
+    private static Path sibling(File target, String extension) {
+        String name = target.getName();
+        int index = name.lastIndexOf('.');
+        return target.toPath().resolveSibling((index < 0 ? name : name.substring(0, index)) + extension);
+    }
+
+    public static void discard(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        }
+        catch (IOException e) {
+            editorLogger.error("Failed to delete temporary file " + temp, e);
+        }
+    }
+
+    //The backup is a link to the old file where possible, so making it doesn't copy the whole map.
+    private static void backup(Path previous, File target) {
+        Path backup = sibling(target, BACKUP_EXTENSION);
+
+        try {
+            Files.deleteIfExists(backup);
+            try {
+                Files.createLink(backup, previous);
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                Files.copy(previous, backup, StandardCopyOption.REPLACE_EXISTING);
+            }
+            editorLogger.info("Created backup successfully.");
+        }
+        catch (Exception e) {
+            //No backup :(
+            editorLogger.error("Failed to create backup.", e);
+        }
+    }
+
+    public static void writeTimingPoints(Writer w, NavigableMap<Long, ArrayList<TimingPoint>> timingPoints, NavigableMap<Long, ArrayList<TimingPoint>> effectPoints) throws IOException {
+        if (timingPoints.isEmpty() && effectPoints.isEmpty())
+            return;
+
+        w.write("\r\n[TimingPoints]\r\n");
+
+        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
+        timing = timingPoints.entrySet().iterator();
+        effect = effectPoints.entrySet().iterator();
+
+        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = timing.hasNext() ? timing.next() : null,
+                nextEffect = effect.hasNext() ? effect.next() : null;
+
+        while (nextTiming != null || nextEffect != null) {
+            if (nextEffect == null || (nextTiming != null && nextTiming.getKey() <= nextEffect.getKey())) {
+                for (TimingPoint t : nextTiming.getValue())
+                    line(w, t.toString());
+
+                nextTiming = timing.hasNext() ? timing.next() : null;
+            }
+            else { //next effect is before next timing, or there are no more timing points
+                for (TimingPoint t : nextEffect.getValue())
+                    line(w, t.toString());
+
+                nextEffect = effect.hasNext() ? effect.next() : null;
+            }
+        }
+    }
+
+    public static void writeHitObjects(Writer w, float sliderMultiplier, NavigableMap<Long, ArrayList<TimingPoint>> timingPoints,
+                                       NavigableMap<Long, ArrayList<TimingPoint>> effectPoints, NavigableMap<Long, ArrayList<HitObject>> objects) throws IOException {
+        if (timingPoints.isEmpty() && effectPoints.isEmpty() && objects.isEmpty())
+            return;
+
+        //Sv tracking variables
+        long currentPos;
+        Iterator<Map.Entry<Long, ArrayList<TimingPoint>>> timing, effect;
+        Map.Entry<Long, ArrayList<TimingPoint>> nextTiming = null, nextEffect = null;
+        double svRate = sliderMultiplier, currentBPM = 120;
+
+        timing = timingPoints.entrySet().iterator();
+        effect = effectPoints.entrySet().iterator();
+
+        if (timing.hasNext()) {
+            nextTiming = timing.next();
+            currentBPM = nextTiming.getValue().get(0).value;
+            if (timing.hasNext())
+                nextTiming = timing.next();
+            else
+                nextTiming = null; //Only one timing point.
+        }
+
+        if (effect.hasNext())
+            nextEffect = effect.next(); //First SV doesn't apply until the first timing point is reached.
+
+        w.write("\r\n\r\n[HitObjects]\r\n");
+
+        for (Map.Entry<Long, ArrayList<HitObject>> stacked : objects.entrySet()) {
+            currentPos = stacked.getKey();
+
+            long lastTimingPos = Long.MIN_VALUE;
+            long lastEffectPos = Long.MIN_VALUE;
+
+            while (nextTiming != null && nextTiming.getKey() <= currentPos) {
+                currentBPM = nextTiming.getValue().get(nextTiming.getValue().size() - 1).value;
+                lastTimingPos = nextTiming.getKey();
+                svRate = sliderMultiplier; //return to base sv
+
+                nextTiming = timing.hasNext() ? timing.next() : null;
+            }
+            while (nextEffect != null && nextEffect.getKey() <= currentPos) {
+                lastEffectPos = nextEffect.getKey();
+                svRate = sliderMultiplier * nextEffect.getValue().get(nextEffect.getValue().size() - 1).value;
+
+                nextEffect = effect.hasNext() ? effect.next() : null;
+            }
+            if (lastEffectPos < lastTimingPos) {
+                svRate = sliderMultiplier; //return to base sv
+            }
+
+            for (HitObject h : stacked.getValue())
+                line(w, h.toString(currentBPM, svRate));
+        }
+    }
+
+    //The line writeHitObjects would write for a single object, with the same bpm and sv.
+    public static String hitObjectLine(HitObject h, float sliderMultiplier, NavigableMap<Long, ArrayList<TimingPoint>> timingPoints,
+                                       NavigableMap<Long, ArrayList<TimingPoint>> effectPoints) {
+        long pos = h.getPos();
+        double svRate = sliderMultiplier, currentBPM = 120;
+
+        Map.Entry<Long, ArrayList<TimingPoint>> timing = timingPoints.floorEntry(pos);
+        if (!timingPoints.isEmpty()) {
+            //The first timing point always applies, even to objects before it, but only the first point of its stack
+            Map.Entry<Long, ArrayList<TimingPoint>> first = timingPoints.firstEntry();
+            if (timing == null || timing.getKey().equals(first.getKey())) {
+                currentBPM = first.getValue().get(0).value;
+                timing = null;
+            }
+            else {
+                currentBPM = timing.getValue().get(timing.getValue().size() - 1).value;
+            }
+        }
+
+        Map.Entry<Long, ArrayList<TimingPoint>> effect = effectPoints.floorEntry(pos);
+        if (effect != null && (timing == null || effect.getKey() >= timing.getKey())) {
+            svRate = sliderMultiplier * effect.getValue().get(effect.getValue().size() - 1).value;
+        }
+
+        return h.toString(currentBPM, svRate);
+    }
+
+    private static void line(Writer w, String text) throws IOException {
+        w.write(text);
+        w.write("\r\n");
+    }
+}
@@ -0,0 +1,197 @@
+package alchyr.taikoedit.util.structures;
+
+import com.badlogic.gdx.utils.LongArray;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+//Intervals of time with a value each, found by the times they contain.
+//A balanced tree sorted by start, where each node also knows the latest end in its subtree so a search can skip
+//everything that ends too early. Finding the intervals containing a time takes O(log n + found) however much they overlap.
+//Intervals with the same start are kept in the same node, since objects stacked at the same position start together.
+//Both ends are inclusive.
+public class IntervalTree<T> {
+    private Node<T> root = null;
+    private int size = 0;
+
+    private static class Node<T> {
+        final long start;
+        final ArrayList<T> values = new ArrayList<>(1);
+        final LongArray ends = new LongArray(1);
+        long maxEnd; //Latest end of this node and everything below it
+        int height = 1;
+        Node<T> left, right;
+
+        Node(long start) {
+            this.start = start;
+        }
+
+        long ownEnd() {
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ends.size; ++i)
+                max = Math.max(max, ends.get(i));
+            return max;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    public void add(long start, long end, T value) {
+        root = add(root, start, end, value);
+        ++size;
+    }
+
+    //Removes value (compared by equals) from the intervals starting at start.
+    public boolean remove(long start, T value) {
+        int before = size;
+        root = remove(root, start, value);
+        return size != before;
+    }
+
+    //Passes every value whose interval contains time to action.
+    public void stab(long time, Consumer<? super T> action) {
+        stab(root, time, action);
+    }
+
+    private void stab(Node<T> node, long time, Consumer<? super T> action) {
+        while (node != null && node.maxEnd >= time) {
+            stab(node.left, time, action);
+
+            if (node.start > time)
+                return; //Everything to the right starts even later
+
+            for (int i = 0; i < node.ends.size; ++i) {
+                if (node.ends.get(i) >= time)
+                    action.accept(node.values.get(i));
+            }
+            node = node.right;
+        }
+    }
+
+    private Node<T> add(Node<T> node, long start, long end, T value) {
+        if (node == null) {
+            node = new Node<>(start);
+            node.values.add(value);
+            node.ends.add(end);
+            node.maxEnd = end;
+            return node;
+        }
+
+        if (start < node.start) {
+            node.left = add(node.left, start, end, value);
+        }
+        else if (start > node.start) {
+            node.right = add(node.right, start, end, value);
+        }
+        else {
+            node.values.add(value);
+            node.ends.add(end);
+            node.maxEnd = Math.max(node.maxEnd, end);
+            return node;
+        }
+        return balance(node);
+    }
+
+    private Node<T> remove(Node<T> node, long start, T value) {
+        if (node == null)
+            return null;
+
+        if (start < node.start) {
+            node.left = remove(node.left, start, value);
+        }
+        else if (start > node.start) {
+            node.right = remove(node.right, start, value);
+        }
+        else {
+            int index = node.values.indexOf(value);
+            if (index < 0)
+                return node;
+
+            node.values.remove(index);
+            node.ends.removeIndex(index);
+            --size;
+
+            if (node.values.isEmpty()) {
+                if (node.left == null)
+                    return node.right;
+                if (node.right == null)
+                    return node.left;
+
+                //Replace with the first node of the right subtree
+                Node<T> next = node.right;
+                while (next.left != null)
+                    next = next.left;
+                next.right = removeFirst(node.right);
+                next.left = node.left;
+                return balance(next);
+            }
+        }
+        return balance(node);
+    }
+
+    private Node<T> removeFirst(Node<T> node) {
+        if (node.left == null)
+            return node.right;
+        node.left = removeFirst(node.left);
+        return balance(node);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static <T> void update(Node<T> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        long maxEnd = node.ownEnd();
+        if (node.left != null)
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        if (node.right != null)
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        node.maxEnd = maxEnd;
+    }
+
+    private static <T> Node<T> balance(Node<T> node) {
+        update(node);
+        int difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            if (height(node.left.left) < height(node.left.right))
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (difference < -1) {
+            if (height(node.right.right) < height(node.right.left))
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+}
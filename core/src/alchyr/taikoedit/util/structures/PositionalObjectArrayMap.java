@@ -0,0 +1,1348 @@
+package alchyr.taikoedit.util.structures;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+//Sorted array backed version of PositionalObjectTreeMap.
+//Keys are kept in a packed long[] parallel to the stacks, so lookups are a binary search with no node traversal or boxed keys.
+//Supports the same range views (including extended descending views) as PositionalObjectTreeMap.
+//Insertion/removal in the middle is an arraycopy, which for maps of this size is still faster than rebalancing a tree.
+//Bulk adds/removes are done as a single merge/compaction pass.
+public class PositionalObjectArrayMap<V extends PositionalObject>
+        extends AbstractMap<Long, ArrayList<V>>
+        implements NavigableMap<Long, ArrayList<V>>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MERGE_THRESHOLD = 32; //Bulk adds larger than this are merged in one pass instead of inserted one at a time
+
+    private long[] keys;
+    private ArrayList<V>[] stacks;
+
+    private int size = 0; //Number of positions
+    private int count = 0; //Total number of objects
+    private int modCount = 0;
+
+    public PositionalObjectArrayMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PositionalObjectArrayMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new long[capacity];
+        stacks = newStackArray(capacity);
+    }
+
+    public PositionalObjectArrayMap(Map<? extends Long, ? extends ArrayList<? extends PositionalObject>> m) {
+        this(m.size());
+        addAll(m);
+    }
+
+    public PositionalObjectArrayMap<V> copy() {
+        PositionalObjectArrayMap<V> c = new PositionalObjectArrayMap<>(size);
+        System.arraycopy(keys, 0, c.keys, 0, size);
+        for (int i = 0; i < size; ++i) {
+            c.stacks[i] = new ArrayList<>(stacks[i]);
+        }
+        c.size = size;
+        c.count = count;
+        return c;
+    }
+
+
+    /* Index based access. These do not allocate. */
+
+    //First index with key >= given key
+    private int lowerBound(long key) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+    //First index with key > given key
+    private int upperBound(long key) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the given key, or -1 if it is not in the map.
+     */
+    public int indexOf(long key) {
+        int i = lowerBound(key);
+        return i < size && keys[i] == key ? i : -1;
+    }
+    /**
+     * @return the index of the least key >= the given key, or -1 if there is none.
+     */
+    public int ceilingIndex(long key) {
+        int i = lowerBound(key);
+        return i < size ? i : -1;
+    }
+    /**
+     * @return the index of the least key > the given key, or -1 if there is none.
+     */
+    public int higherIndex(long key) {
+        int i = upperBound(key);
+        return i < size ? i : -1;
+    }
+    /**
+     * @return the index of the greatest key <= the given key, or -1 if there is none.
+     */
+    public int floorIndex(long key) {
+        return upperBound(key) - 1;
+    }
+    /**
+     * @return the index of the greatest key < the given key, or -1 if there is none.
+     */
+    public int lowerIndex(long key) {
+        return lowerBound(key) - 1;
+    }
+
+    public long keyAt(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return keys[index];
+    }
+    public ArrayList<V> stackAt(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return stacks[index];
+    }
+
+
+    // Query Operations
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the total number values within lists in this map
+     */
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+    @Override
+    public boolean containsKey(Object key) {
+        return containsKey(toKey(key));
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < size; ++i) {
+            if (Objects.equals(value, stacks[i]))
+                return true;
+        }
+        return false;
+    }
+
+    public ArrayList<V> get(long key) {
+        int i = indexOf(key);
+        return i >= 0 ? stacks[i] : null;
+    }
+    @Override
+    public ArrayList<V> get(Object key) {
+        return get(toKey(key));
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    //Like PositionalObjectTreeMap, which this replaces, these return null when the map is empty rather than throwing
+    //NoSuchElementException as TreeMap does. Callers check isEmpty first.
+    @Override
+    public Long firstKey() {
+        return size == 0 ? null : keys[0];
+    }
+    @Override
+    public Long lastKey() {
+        return size == 0 ? null : keys[size - 1];
+    }
+
+
+    // Modification Operations
+
+    @SuppressWarnings("unchecked")
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newCapacity = Math.max(capacity, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newCapacity);
+            stacks = Arrays.copyOf(stacks, newCapacity);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V extends PositionalObject> ArrayList<V>[] newStackArray(int capacity) {
+        return (ArrayList<V>[]) new ArrayList<?>[capacity];
+    }
+
+    private void insertAt(int index, long key, ArrayList<V> stack) {
+        ensureCapacity(size + 1);
+        if (index < size) {
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(stacks, index, stacks, index + 1, size - index);
+        }
+        keys[index] = key;
+        stacks[index] = stack;
+        ++size;
+        count += stack.size();
+        ++modCount;
+    }
+
+    private ArrayList<V> removeAt(int index) {
+        ArrayList<V> removed = stacks[index];
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(stacks, index + 1, stacks, index, moved);
+        }
+        stacks[--size] = null;
+        count -= removed.size();
+        ++modCount;
+        return removed;
+    }
+
+    //Removes all positions whose stack has been set to null in a single pass.
+    private void compact() {
+        int write = 0;
+        for (int read = 0; read < size; ++read) {
+            if (stacks[read] != null) {
+                if (write != read) {
+                    keys[write] = keys[read];
+                    stacks[write] = stacks[read];
+                }
+                ++write;
+            }
+        }
+        Arrays.fill(stacks, write, size, null);
+        size = write;
+        ++modCount;
+    }
+
+    @Override
+    public ArrayList<V> put(Long key, ArrayList<V> value) {
+        return put(key.longValue(), value);
+    }
+    public ArrayList<V> put(long key, ArrayList<V> value) {
+        int i = lowerBound(key);
+        if (i < size && keys[i] == key) {
+            ArrayList<V> old = stacks[i];
+            count += value.size() - old.size();
+            stacks[i] = value;
+            return old;
+        }
+        insertAt(i, key, value);
+        return null;
+    }
+
+    public void add(V value) {
+        long key = value.getPos();
+
+        if (size == 0 || key > keys[size - 1]) { //Most adds during loading are in order
+            insertAt(size, key, newStack(value));
+            return;
+        }
+
+        int i = lowerBound(key);
+        if (i < size && keys[i] == key) {
+            stacks[i].add(value);
+            ++count;
+            ++modCount;
+        }
+        else {
+            insertAt(i, key, newStack(value));
+        }
+    }
+
+    public boolean addIfAbsent(V value) {
+        long key = value.getPos();
+        int i = lowerBound(key);
+        if (i < size && keys[i] == key) {
+            if (stacks[i].contains(value))
+                return false;
+            stacks[i].add(value);
+            ++count;
+            ++modCount;
+        }
+        else {
+            insertAt(i, key, newStack(value));
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void addAll(Map<? extends Long, ? extends ArrayList<? extends PositionalObject>> map) {
+        int total = 0;
+        for (ArrayList<? extends PositionalObject> stack : map.values())
+            total += stack.size();
+
+        if (total <= MERGE_THRESHOLD) {
+            for (ArrayList<? extends PositionalObject> stack : map.values()) {
+                for (PositionalObject val : stack) {
+                    add((V) val);
+                }
+            }
+            return;
+        }
+
+        long[] addKeys = new long[total];
+        Object[] addValues = new Object[total];
+        boolean sorted = true;
+        int n = 0;
+        for (ArrayList<? extends PositionalObject> stack : map.values()) {
+            for (PositionalObject val : stack) {
+                addKeys[n] = val.getPos();
+                addValues[n] = val;
+                if (n > 0 && addKeys[n] < addKeys[n - 1])
+                    sorted = false;
+                ++n;
+            }
+        }
+        if (!sorted) //Descending views, mostly. Stable so the order within a stack is kept.
+            sortStable(addKeys, addValues, n);
+
+        merge(addKeys, addValues, n);
+    }
+
+    //Add all contents that are not already in this container
+    @SuppressWarnings("unchecked")
+    public void addAllUnique(Map<? extends Long, ? extends ArrayList<? extends PositionalObject>> map) {
+        for (ArrayList<? extends PositionalObject> stack : map.values()) {
+            for (PositionalObject val : stack) {
+                addIfAbsent((V) val);
+            }
+        }
+    }
+
+    //Merges sorted values into this map in one pass.
+    @SuppressWarnings("unchecked")
+    private void merge(long[] addKeys, Object[] addValues, int n) {
+        int distinct = 0;
+        for (int i = 0; i < n; ++i) {
+            if (i == 0 || addKeys[i] != addKeys[i - 1])
+                ++distinct;
+        }
+
+        int capacity = Math.max(keys.length, size + distinct);
+        long[] newKeys = new long[capacity];
+        ArrayList<V>[] newStacks = newStackArray(capacity);
+
+        int a = 0, b = 0, out = 0;
+        while (a < size || b < n) {
+            if (b >= n || (a < size && keys[a] < addKeys[b])) {
+                newKeys[out] = keys[a];
+                newStacks[out++] = stacks[a++];
+            }
+            else {
+                long key = addKeys[b];
+                ArrayList<V> stack;
+                if (a < size && keys[a] == key) {
+                    stack = stacks[a++];
+                }
+                else {
+                    stack = new ArrayList<>(1);
+                }
+                while (b < n && addKeys[b] == key) {
+                    stack.add((V) addValues[b++]);
+                }
+                newKeys[out] = key;
+                newStacks[out++] = stack;
+            }
+        }
+
+        keys = newKeys;
+        stacks = newStacks;
+        size = out;
+        count += n;
+        ++modCount;
+    }
+
+    private static void sortStable(long[] keys, Object[] values, int n) {
+        long[] keyBuffer = new long[n];
+        Object[] valueBuffer = new Object[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int start = 0; start < n; start += width << 1) {
+                int mid = Math.min(start + width, n), end = Math.min(start + (width << 1), n);
+                int a = start, b = mid, out = start;
+                while (a < mid && b < end) {
+                    if (keys[b] < keys[a]) {
+                        keyBuffer[out] = keys[b];
+                        valueBuffer[out++] = values[b++];
+                    }
+                    else {
+                        keyBuffer[out] = keys[a];
+                        valueBuffer[out++] = values[a++];
+                    }
+                }
+                while (a < mid) {
+                    keyBuffer[out] = keys[a];
+                    valueBuffer[out++] = values[a++];
+                }
+                while (b < end) {
+                    keyBuffer[out] = keys[b];
+                    valueBuffer[out++] = values[b++];
+                }
+            }
+            System.arraycopy(keyBuffer, 0, keys, 0, n);
+            System.arraycopy(valueBuffer, 0, values, 0, n);
+        }
+    }
+
+    @Override
+    public ArrayList<V> remove(Object key) {
+        int i = indexOf(toKey(key));
+        return i >= 0 ? removeAt(i) : null;
+    }
+
+    public PositionalObject removeObject(PositionalObject p) {
+        int i = indexOf(p.getPos());
+        if (i < 0)
+            return null;
+
+        ArrayList<V> stack = stacks[i];
+        if (!stack.remove(p))
+            return null;
+
+        --count;
+        ++modCount;
+        if (stack.isEmpty())
+            removeAt(i);
+        return p;
+    }
+
+    public boolean removeIf(Predicate<V> condition) {
+        boolean changed = false, emptied = false;
+        for (int i = 0; i < size; ++i) {
+            ArrayList<V> stack = stacks[i];
+            int amt = stack.size();
+            if (stack.removeIf(condition)) {
+                changed = true;
+                count -= amt - stack.size();
+                if (stack.isEmpty()) {
+                    stacks[i] = null;
+                    emptied = true;
+                }
+            }
+        }
+        if (changed)
+            ++modCount;
+        if (emptied)
+            compact();
+        return changed;
+    }
+
+    public boolean removeAll(Map<? extends Long, ? extends ArrayList<? extends PositionalObject>> map) {
+        boolean changed = false, emptied = false;
+        for (Map.Entry<? extends Long, ? extends ArrayList<? extends PositionalObject>> deleting : map.entrySet()) {
+            int i = indexOf(deleting.getKey());
+            if (i < 0 || stacks[i] == null) //There is nothing to delete at this position.
+                continue;
+
+            ArrayList<V> stack = stacks[i];
+            for (PositionalObject val : deleting.getValue()) {
+                if (stack.remove(val)) {
+                    --count;
+                    changed = true;
+                }
+            }
+
+            if (stack.isEmpty()) {
+                stacks[i] = null;
+                emptied = true;
+            }
+        }
+        if (changed)
+            ++modCount;
+        if (emptied)
+            compact();
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(stacks, 0, size, null);
+        size = 0;
+        count = 0;
+        ++modCount;
+    }
+
+
+    // NavigableMap API methods
+
+    @Override
+    public Map.Entry<Long, ArrayList<V>> firstEntry() {
+        return exportEntry(size == 0 ? -1 : 0);
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> lastEntry() {
+        return exportEntry(size - 1);
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> pollFirstEntry() {
+        Map.Entry<Long, ArrayList<V>> e = firstEntry();
+        if (e != null)
+            removeAt(0);
+        return e;
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> pollLastEntry() {
+        Map.Entry<Long, ArrayList<V>> e = lastEntry();
+        if (e != null)
+            removeAt(size - 1);
+        return e;
+    }
+
+    public Map.Entry<Long, ArrayList<V>> lowerEntry(long key) {
+        return exportEntry(lowerIndex(key));
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> lowerEntry(Long key) {
+        return lowerEntry(key.longValue());
+    }
+    @Override
+    public Long lowerKey(Long key) {
+        return keyOrNull(lowerIndex(key));
+    }
+    public Long safeLowerKey(Long key) {
+        int i = lowerIndex(key);
+        return i < 0 ? key : keys[i];
+    }
+
+    public Map.Entry<Long, ArrayList<V>> floorEntry(long key) {
+        return exportEntry(floorIndex(key));
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> floorEntry(Long key) {
+        return floorEntry(key.longValue());
+    }
+    @Override
+    public Long floorKey(Long key) {
+        return keyOrNull(floorIndex(key));
+    }
+
+    public Map.Entry<Long, ArrayList<V>> ceilingEntry(long key) {
+        return exportEntry(ceilingIndex(key));
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> ceilingEntry(Long key) {
+        return ceilingEntry(key.longValue());
+    }
+    @Override
+    public Long ceilingKey(Long key) {
+        return keyOrNull(ceilingIndex(key));
+    }
+
+    public Map.Entry<Long, ArrayList<V>> higherEntry(long key) {
+        return exportEntry(higherIndex(key));
+    }
+    @Override
+    public Map.Entry<Long, ArrayList<V>> higherEntry(Long key) {
+        return higherEntry(key.longValue());
+    }
+    @Override
+    public Long higherKey(Long key) {
+        return keyOrNull(higherIndex(key));
+    }
+    public Long safeHigherKey(Long key) {
+        int i = higherIndex(key);
+        return i < 0 ? key : keys[i];
+    }
+
+
+    // Views
+
+    private transient EntrySet entrySet;
+    private transient KeySet navigableKeySet;
+    private transient Values values;
+    private transient NavigableMap<Long, ArrayList<V>> descendingMap;
+
+    @Override
+    public Set<Long> keySet() {
+        return navigableKeySet();
+    }
+    @Override
+    public NavigableSet<Long> navigableKeySet() {
+        KeySet nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new KeySet(this));
+    }
+    @Override
+    public NavigableSet<Long> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Collection<ArrayList<V>> values() {
+        Values vs = values;
+        return (vs != null) ? vs : (values = new Values());
+    }
+
+    @Override
+    public Set<Map.Entry<Long, ArrayList<V>>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    @Override
+    public NavigableMap<Long, ArrayList<V>> descendingMap() {
+        NavigableMap<Long, ArrayList<V>> km = descendingMap;
+        return (km != null) ? km :
+                (descendingMap = new SubMap(true, 0, true, true, 0, true, false, true));
+    }
+
+    public NavigableMap<Long, ArrayList<V>> descendingSubMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false, true);
+    }
+    public NavigableMap<Long, ArrayList<V>> descendingSubMap(Long toKey, boolean toInclusive) {
+        return new SubMap(true, 0, true, false, toKey, toInclusive, false, true);
+    }
+
+    /**
+     * A descending view of the given range, extended to include the position before the start of the range and
+     * the first position at or after the end of the range.
+     */
+    public NavigableMap<Long, ArrayList<V>> extendedDescendingSubMap(Long fromKey, Long toKey) {
+        return new SubMap(false, fromKey, true, false, toKey, true, true, true);
+    }
+
+    @Override
+    public NavigableMap<Long, ArrayList<V>> subMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false, false);
+    }
+    @Override
+    public NavigableMap<Long, ArrayList<V>> headMap(Long toKey, boolean inclusive) {
+        return new SubMap(true, 0, true, false, toKey, inclusive, false, false);
+    }
+    @Override
+    public NavigableMap<Long, ArrayList<V>> tailMap(Long fromKey, boolean inclusive) {
+        return new SubMap(false, fromKey, inclusive, true, 0, true, false, false);
+    }
+    @Override
+    public SortedMap<Long, ArrayList<V>> subMap(Long fromKey, Long toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+    @Override
+    public SortedMap<Long, ArrayList<V>> headMap(Long toKey) {
+        return headMap(toKey, false);
+    }
+    @Override
+    public SortedMap<Long, ArrayList<V>> tailMap(Long fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public boolean replace(Long key, ArrayList<V> oldValue, ArrayList<V> newValue) {
+        int i = indexOf(key);
+        if (i >= 0 && Objects.equals(oldValue, stacks[i])) {
+            count += newValue.size() - stacks[i].size();
+            stacks[i] = newValue;
+            return true;
+        }
+        return false;
+    }
+    @Override
+    public ArrayList<V> replace(Long key, ArrayList<V> value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            ArrayList<V> old = stacks[i];
+            count += value.size() - old.size();
+            stacks[i] = value;
+            return old;
+        }
+        return null;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Long, ? super ArrayList<V>> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; ++i) {
+            action.accept(keys[i], stacks[i]);
+
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public void forEachObject(Consumer<V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; ++i) {
+            for (V val : stacks[i])
+                action.accept(val);
+
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Long, ? super ArrayList<V>, ? extends ArrayList<V>> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; ++i) {
+            ArrayList<V> replacement = function.apply(keys[i], stacks[i]);
+            count += replacement.size() - stacks[i].size();
+            stacks[i] = replacement;
+
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+
+    // Little utilities
+
+    private ArrayList<V> newStack(V value) {
+        ArrayList<V> stack = new ArrayList<>(1);
+        stack.add(value);
+        return stack;
+    }
+
+    private static long toKey(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return (Long) key;
+    }
+
+    private Long keyOrNull(int index) {
+        return index < 0 ? null : keys[index];
+    }
+
+    private Map.Entry<Long, ArrayList<V>> exportEntry(int index) {
+        return index < 0 ? null : new AbstractMap.SimpleImmutableEntry<>(keys[index], stacks[index]);
+    }
+
+
+    // View class support
+
+    //Entry returned by iterators. setValue writes through to the map.
+    final class Entry implements Map.Entry<Long, ArrayList<V>> {
+        private final long key;
+        private ArrayList<V> value;
+
+        Entry(long key, ArrayList<V> value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long key() {
+            return key;
+        }
+        @Override
+        public Long getKey() {
+            return key;
+        }
+        @Override
+        public ArrayList<V> getValue() {
+            return value;
+        }
+        @Override
+        public ArrayList<V> setValue(ArrayList<V> value) {
+            ArrayList<V> old = this.value;
+            put(key, value);
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Long.valueOf(key).equals(e.getKey()) && Objects.equals(value, e.getValue());
+        }
+        @Override
+        public int hashCode() {
+            return Long.hashCode(key) ^ (value == null ? 0 : value.hashCode());
+        }
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    //Iterates over an inclusive index range in either direction.
+    abstract class IndexIterator<T> implements Iterator<T> {
+        private int next, last; //last is the final index to return, inclusive
+        private final boolean descending;
+        private int lastReturned = -1;
+        private int expectedModCount;
+
+        IndexIterator(int first, int last, boolean descending) {
+            this.next = first;
+            this.last = last;
+            this.descending = descending;
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return descending ? next >= last : next <= last;
+        }
+
+        final int nextIndex() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            lastReturned = next;
+            next += descending ? -1 : 1;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeAt(lastReturned);
+            if (!descending) {
+                //Everything after the removed index shifted back
+                --next;
+                --last;
+            }
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    final class EntryIterator extends IndexIterator<Map.Entry<Long, ArrayList<V>>> {
+        EntryIterator(int first, int last, boolean descending) {
+            super(first, last, descending);
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> next() {
+            int i = nextIndex();
+            return new Entry(keys[i], stacks[i]);
+        }
+    }
+
+    final class ValueIterator extends IndexIterator<ArrayList<V>> {
+        ValueIterator(int first, int last, boolean descending) {
+            super(first, last, descending);
+        }
+        @Override
+        public ArrayList<V> next() {
+            return stacks[nextIndex()];
+        }
+    }
+
+    final class KeyIterator extends IndexIterator<Long> {
+        KeyIterator(int first, int last, boolean descending) {
+            super(first, last, descending);
+        }
+        @Override
+        public Long next() {
+            return keys[nextIndex()];
+        }
+    }
+
+    class Values extends AbstractCollection<ArrayList<V>> {
+        @Override
+        public Iterator<ArrayList<V>> iterator() {
+            return new ValueIterator(0, size - 1, false);
+        }
+        @Override
+        public int size() {
+            return size;
+        }
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+        @Override
+        public void clear() {
+            PositionalObjectArrayMap.this.clear();
+        }
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<Long, ArrayList<V>>> {
+        @Override
+        public Iterator<Map.Entry<Long, ArrayList<V>>> iterator() {
+            return new EntryIterator(0, size - 1, false);
+        }
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            if (!(entry.getKey() instanceof Long))
+                return false;
+            int i = indexOf((Long) entry.getKey());
+            return i >= 0 && Objects.equals(stacks[i], entry.getValue());
+        }
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            removeAt(indexOf((Long) ((Map.Entry<?, ?>) o).getKey()));
+            return true;
+        }
+        @Override
+        public int size() {
+            return size;
+        }
+        @Override
+        public void clear() {
+            PositionalObjectArrayMap.this.clear();
+        }
+    }
+
+    static final class KeySet extends AbstractSet<Long> implements NavigableSet<Long> {
+        private final NavigableMap<Long, ?> m;
+        KeySet(NavigableMap<Long, ?> map) { m = map; }
+
+        @Override
+        public Iterator<Long> iterator() {
+            if (m instanceof PositionalObjectArrayMap)
+                return ((PositionalObjectArrayMap<?>) m).keyIterator(false);
+            else
+                return ((PositionalObjectArrayMap<?>.SubMap) m).keyIterator(false);
+        }
+        @Override
+        public Iterator<Long> descendingIterator() {
+            if (m instanceof PositionalObjectArrayMap)
+                return ((PositionalObjectArrayMap<?>) m).keyIterator(true);
+            else
+                return ((PositionalObjectArrayMap<?>.SubMap) m).keyIterator(true);
+        }
+
+        @Override
+        public int size() { return m.size(); }
+        @Override
+        public boolean isEmpty() { return m.isEmpty(); }
+        @Override
+        public boolean contains(Object o) { return m.containsKey(o); }
+        @Override
+        public void clear() { m.clear(); }
+        @Override
+        public Long lower(Long e) { return m.lowerKey(e); }
+        @Override
+        public Long floor(Long e) { return m.floorKey(e); }
+        @Override
+        public Long ceiling(Long e) { return m.ceilingKey(e); }
+        @Override
+        public Long higher(Long e) { return m.higherKey(e); }
+        @Override
+        public Long first() { return m.firstKey(); }
+        @Override
+        public Long last() { return m.lastKey(); }
+        @Override
+        public Comparator<? super Long> comparator() { return m.comparator(); }
+        @Override
+        public Long pollFirst() {
+            Map.Entry<Long, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        @Override
+        public Long pollLast() {
+            Map.Entry<Long, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        @Override
+        public boolean remove(Object o) {
+            int oldSize = size();
+            m.remove(o);
+            return size() != oldSize;
+        }
+        @Override
+        public NavigableSet<Long> subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+            return new KeySet(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+        @Override
+        public NavigableSet<Long> headSet(Long toElement, boolean inclusive) {
+            return new KeySet(m.headMap(toElement, inclusive));
+        }
+        @Override
+        public NavigableSet<Long> tailSet(Long fromElement, boolean inclusive) {
+            return new KeySet(m.tailMap(fromElement, inclusive));
+        }
+        @Override
+        public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        @Override
+        public SortedSet<Long> headSet(Long toElement) {
+            return headSet(toElement, false);
+        }
+        @Override
+        public SortedSet<Long> tailSet(Long fromElement) {
+            return tailSet(fromElement, true);
+        }
+        @Override
+        public NavigableSet<Long> descendingSet() {
+            return new KeySet(m.descendingMap());
+        }
+    }
+
+    Iterator<Long> keyIterator(boolean descending) {
+        return descending ? new KeyIterator(size - 1, 0, true) : new KeyIterator(0, size - 1, false);
+    }
+
+
+    // SubMaps
+
+    /**
+     * A live view of a key range of the backing map.
+     * The range is stored as keys, and converted to an index range whenever it is used, so it stays valid as the map changes.
+     */
+    final class SubMap extends AbstractMap<Long, ArrayList<V>> implements NavigableMap<Long, ArrayList<V>> {
+        final long lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+        final boolean extended; //Range includes the position before lo and the first position >= hi
+        final boolean descending;
+
+        SubMap(boolean fromStart, long lo, boolean loInclusive,
+               boolean toEnd, long hi, boolean hiInclusive,
+               boolean extended, boolean descending) {
+            if (!fromStart && !toEnd && lo > hi)
+                throw new IllegalArgumentException("fromKey > toKey");
+
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.extended = extended;
+            this.descending = descending;
+        }
+
+        // internal utilities
+
+        //Lowest index within range in ascending order.
+        int loIndex() {
+            if (fromStart)
+                return 0;
+            if (extended)
+                return Math.max(0, lowerIndex(lo));
+            return loInclusive ? lowerBound(lo) : upperBound(lo);
+        }
+        //Highest index within range in ascending order. Range is empty if this is less than loIndex.
+        int hiIndex() {
+            if (toEnd)
+                return size - 1;
+            if (extended) {
+                int i = lowerBound(hi);
+                return i < size ? i : size - 1;
+            }
+            return hiInclusive ? upperBound(hi) - 1 : lowerBound(hi) - 1;
+        }
+
+        boolean tooLow(long key) {
+            if (!fromStart) {
+                long bound = extended ? safeLowerKey(lo) : lo;
+                return key < bound || (key == bound && !loInclusive);
+            }
+            return false;
+        }
+        boolean tooHigh(long key) {
+            if (!toEnd) {
+                long bound = extended ? safeHigherKey(hi) : hi;
+                return key > bound || (key == bound && !hiInclusive);
+            }
+            return false;
+        }
+        boolean inRange(long key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+        boolean inClosedRange(long key) {
+            return (fromStart || key >= lo) && (toEnd || key <= hi);
+        }
+        boolean inRange(long key, boolean inclusive) {
+            return inclusive || extended ? inRange(key) : inClosedRange(key);
+        }
+
+        //Absolute (ascending) index lookups limited to this range. -1 if none.
+        int absLowest() {
+            int l = loIndex();
+            return l <= hiIndex() ? l : -1;
+        }
+        int absHighest() {
+            int h = hiIndex();
+            return h >= loIndex() && h >= 0 ? h : -1;
+        }
+        int absCeiling(long key) {
+            int i = Math.max(lowerBound(key), loIndex());
+            return i <= hiIndex() ? i : -1;
+        }
+        int absHigher(long key) {
+            int i = Math.max(upperBound(key), loIndex());
+            return i <= hiIndex() ? i : -1;
+        }
+        int absFloor(long key) {
+            int i = Math.min(upperBound(key) - 1, hiIndex());
+            return i >= loIndex() ? i : -1;
+        }
+        int absLower(long key) {
+            int i = Math.min(lowerBound(key) - 1, hiIndex());
+            return i >= loIndex() ? i : -1;
+        }
+
+        //Relative to the direction of this view
+        int subLowest() { return descending ? absHighest() : absLowest(); }
+        int subHighest() { return descending ? absLowest() : absHighest(); }
+        int subCeiling(long key) { return descending ? absFloor(key) : absCeiling(key); }
+        int subHigher(long key) { return descending ? absLower(key) : absHigher(key); }
+        int subFloor(long key) { return descending ? absCeiling(key) : absFloor(key); }
+        int subLower(long key) { return descending ? absHigher(key) : absLower(key); }
+
+        Iterator<Long> keyIterator(boolean reverse) {
+            int l = loIndex(), h = hiIndex();
+            return descending != reverse ? new KeyIterator(h, l, true) : new KeyIterator(l, h, false);
+        }
+
+        // public methods
+
+        @Override
+        public boolean isEmpty() {
+            return hiIndex() < loIndex();
+        }
+        @Override
+        public int size() {
+            return Math.max(0, hiIndex() - loIndex() + 1);
+        }
+        @Override
+        public boolean containsKey(Object key) {
+            long k = toKey(key);
+            return inRange(k) && indexOf(k) >= 0;
+        }
+        @Override
+        public ArrayList<V> put(Long key, ArrayList<V> value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return PositionalObjectArrayMap.this.put(key, value);
+        }
+        @Override
+        public ArrayList<V> get(Object key) {
+            long k = toKey(key);
+            return !inRange(k) ? null : PositionalObjectArrayMap.this.get(k);
+        }
+        @Override
+        public ArrayList<V> remove(Object key) {
+            long k = toKey(key);
+            return !inRange(k) ? null : PositionalObjectArrayMap.this.remove(key);
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            return descending ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public Map.Entry<Long, ArrayList<V>> ceilingEntry(Long key) {
+            return exportEntry(subCeiling(key));
+        }
+        @Override
+        public Long ceilingKey(Long key) {
+            return keyOrNull(subCeiling(key));
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> higherEntry(Long key) {
+            return exportEntry(subHigher(key));
+        }
+        @Override
+        public Long higherKey(Long key) {
+            return keyOrNull(subHigher(key));
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> floorEntry(Long key) {
+            return exportEntry(subFloor(key));
+        }
+        @Override
+        public Long floorKey(Long key) {
+            return keyOrNull(subFloor(key));
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> lowerEntry(Long key) {
+            return exportEntry(subLower(key));
+        }
+        @Override
+        public Long lowerKey(Long key) {
+            return keyOrNull(subLower(key));
+        }
+        @Override
+        public Long firstKey() {
+            return keyOrNull(subLowest());
+        }
+        @Override
+        public Long lastKey() {
+            return keyOrNull(subHighest());
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> firstEntry() {
+            return exportEntry(subLowest());
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> lastEntry() {
+            return exportEntry(subHighest());
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> pollFirstEntry() {
+            int i = subLowest();
+            Map.Entry<Long, ArrayList<V>> result = exportEntry(i);
+            if (i >= 0)
+                removeAt(i);
+            return result;
+        }
+        @Override
+        public Map.Entry<Long, ArrayList<V>> pollLastEntry() {
+            int i = subHighest();
+            Map.Entry<Long, ArrayList<V>> result = exportEntry(i);
+            if (i >= 0)
+                removeAt(i);
+            return result;
+        }
+
+        // Views
+        private transient NavigableMap<Long, ArrayList<V>> descendingMapView;
+        private transient Set<Map.Entry<Long, ArrayList<V>>> entrySetView;
+        private transient Collection<ArrayList<V>> valuesView;
+        private transient KeySet navigableKeySetView;
+
+        @Override
+        public NavigableSet<Long> navigableKeySet() {
+            KeySet nksv = navigableKeySetView;
+            return (nksv != null) ? nksv : (navigableKeySetView = new KeySet(this));
+        }
+        @Override
+        public Set<Long> keySet() {
+            return navigableKeySet();
+        }
+        @Override
+        public NavigableSet<Long> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> descendingMap() {
+            NavigableMap<Long, ArrayList<V>> mv = descendingMapView;
+            return (mv != null) ? mv :
+                    (descendingMapView = new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, extended, !descending));
+        }
+
+        @Override
+        public NavigableMap<Long, ArrayList<V>> subMap(Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            if (descending)
+                return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, false, true);
+            return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false, false);
+        }
+        @Override
+        public NavigableMap<Long, ArrayList<V>> headMap(Long toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            if (descending)
+                return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, false, true);
+            return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false, false);
+        }
+        @Override
+        public NavigableMap<Long, ArrayList<V>> tailMap(Long fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (descending)
+                return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, false, true);
+            return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false, false);
+        }
+        @Override
+        public SortedMap<Long, ArrayList<V>> subMap(Long fromKey, Long toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+        @Override
+        public SortedMap<Long, ArrayList<V>> headMap(Long toKey) {
+            return headMap(toKey, false);
+        }
+        @Override
+        public SortedMap<Long, ArrayList<V>> tailMap(Long fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        @Override
+        public Collection<ArrayList<V>> values() {
+            Collection<ArrayList<V>> vs = valuesView;
+            return (vs != null) ? vs : (valuesView = new AbstractCollection<ArrayList<V>>() {
+                @Override
+                public Iterator<ArrayList<V>> iterator() {
+                    int l = loIndex(), h = hiIndex();
+                    return descending ? new ValueIterator(h, l, true) : new ValueIterator(l, h, false);
+                }
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+            });
+        }
+
+        @Override
+        public Set<Map.Entry<Long, ArrayList<V>>> entrySet() {
+            Set<Map.Entry<Long, ArrayList<V>>> es = entrySetView;
+            return (es != null) ? es : (entrySetView = new AbstractSet<Map.Entry<Long, ArrayList<V>>>() {
+                @Override
+                public Iterator<Map.Entry<Long, ArrayList<V>>> iterator() {
+                    int l = loIndex(), h = hiIndex();
+                    return descending ? new EntryIterator(h, l, true) : new EntryIterator(l, h, false);
+                }
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    if (!(entry.getKey() instanceof Long) || !inRange((Long) entry.getKey()))
+                        return false;
+                    int i = indexOf((Long) entry.getKey());
+                    return i >= 0 && Objects.equals(stacks[i], entry.getValue());
+                }
+                @Override
+                public boolean remove(Object o) {
+                    if (!contains(o))
+                        return false;
+                    removeAt(indexOf((Long) ((Map.Entry<?, ?>) o).getKey()));
+                    return true;
+                }
+            });
+        }
+    }
+}
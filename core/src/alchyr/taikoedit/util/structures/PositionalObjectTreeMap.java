@@ -866,6 +866,7 @@ public class PositionalObjectTreeMap<V extends PositionalObject>
     public void clear() {
         modCount++;
         size = 0;
+        count = 0;
         root = null;
     }
 
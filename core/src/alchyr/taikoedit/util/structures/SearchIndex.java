@@ -0,0 +1,232 @@
+package alchyr.taikoedit.util.structures;
+
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.*;
+
+//Inverted index of words to the values they belong to.
+//Search terms of three or more characters match any word containing them, found through an index of each word's
+//trigrams. Shorter terms only match the start of words.
+//Values can be added and removed at any time; each value is given an id, and words keep their values in id order.
+public class SearchIndex<T> {
+    private static final int MAX_WORD_LENGTH = 64;
+
+    private final ArrayList<T> values = new ArrayList<>(); //by id, null once removed
+    private final ArrayList<List<Word>> valueWords = new ArrayList<>();
+    private final Map<T, Integer> ids = new HashMap<>();
+
+    private final TreeMap<String, Word> words = new TreeMap<>();
+    private final ArrayList<Word> wordsById = new ArrayList<>(); //null once removed
+    private final LongMap<IntArray> trigrams = new LongMap<>(); //trigram -> ids of words containing it, in order
+
+    private static class Word {
+        final String text;
+        final int id;
+        final IntArray values = new IntArray();
+        final FloatArray weights = new FloatArray();
+
+        Word(String text, int id) {
+            this.text = text;
+            this.id = id;
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public void put(String[] keys, T value, float weight) {
+        for (String key : keys)
+            put(key, value, weight);
+    }
+    public void put(String key, T value, float weight) {
+        key = key.trim();
+        if (key.isEmpty())
+            return;
+        if (key.length() > MAX_WORD_LENGTH) //heck off
+            key = key.substring(0, MAX_WORD_LENGTH);
+
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+            valueWords.add(new ArrayList<>(4));
+        }
+
+        Word word = words.get(key);
+        if (word == null) {
+            word = new Word(key, wordsById.size());
+            wordsById.add(word);
+            words.put(key, word);
+            addTrigrams(word);
+        }
+
+        //Ids only increase, so a value being added is at the end of the list unless it was put again later.
+        int index = word.values.size - 1;
+        if (index < 0 || word.values.items[index] != id)
+            index = Arrays.binarySearch(word.values.items, 0, word.values.size, id);
+
+        if (index >= 0) {
+            word.weights.items[index] += weight; //Same word in several fields
+        }
+        else {
+            index = -(index + 1);
+            word.values.insert(index, id);
+            word.weights.insert(index, weight);
+            valueWords.get(id).add(word);
+        }
+    }
+
+    public void remove(T value) {
+        Integer id = ids.remove(value);
+        if (id == null)
+            return;
+
+        for (Word word : valueWords.get(id)) {
+            int index = Arrays.binarySearch(word.values.items, 0, word.values.size, id);
+            if (index >= 0) {
+                word.values.removeIndex(index);
+                word.weights.removeIndex(index);
+            }
+            if (word.values.size == 0) {
+                words.remove(word.text);
+                wordsById.set(word.id, null);
+                removeTrigrams(word);
+            }
+        }
+        values.set(id, null);
+        valueWords.set(id, null);
+    }
+
+    public void clear() {
+        values.clear();
+        valueWords.clear();
+        ids.clear();
+        words.clear();
+        wordsById.clear();
+        trigrams.clear();
+    }
+
+    public List<T> search(String[] keys, float leniency) {
+        return search(keys, leniency, 0, Integer.MAX_VALUE);
+    }
+
+    //Results are sorted by total score. Returns at most limit results, skipping the first offset.
+    public List<T> search(String[] keys, float leniency, int offset, int limit) {
+        float[] scores = new float[values.size()];
+        boolean[] found = new boolean[values.size()], matched = new boolean[values.size()];
+        IntArray results = new IntArray();
+        List<Word> matches = new ArrayList<>();
+
+        float max = 0, valueMul;
+        for (String key : keys) {
+            if (key.isEmpty())
+                continue;
+            if (key.length() > MAX_WORD_LENGTH)
+                key = key.substring(0, MAX_WORD_LENGTH);
+
+            valueMul = Math.min(1, (key.length() / 5.0f)*(key.length() / 5.0f)); //Search term weight increases as length increases
+
+            matches.clear();
+            findWords(key, matches);
+            for (Word word : matches) {
+                float mul = word.text.equals(key) ? 2.5f : valueMul;
+                for (int i = 0; i < word.values.size; ++i) {
+                    int id = word.values.items[i];
+                    if (!found[id]) {
+                        found[id] = true;
+                        results.add(id);
+                    }
+                    matched[id] = true;
+                    scores[id] += word.weights.items[i] * mul;
+                    max = Math.max(max, scores[id]);
+                }
+            }
+
+            for (int i = 0; i < results.size; ++i) {
+                int id = results.items[i];
+                if (!matched[id])
+                    scores[id] -= 2f * valueMul; //Each search term with no match cuts a result's value
+                matched[id] = false;
+            }
+        }
+
+        float requirement = max * leniency;
+        List<Integer> passed = new ArrayList<>();
+        for (int i = 0; i < results.size; ++i) {
+            if (scores[results.items[i]] > requirement)
+                passed.add(results.items[i]);
+        }
+        passed.sort((a, b)->{
+            int result = Float.compare(scores[b], scores[a]);
+            return result != 0 ? result : Integer.compare(a, b);
+        });
+
+        int end = (int) Math.min(passed.size(), (long) offset + limit);
+        List<T> page = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; ++i)
+            page.add(values.get(passed.get(i)));
+        return page;
+    }
+
+    private void findWords(String key, List<Word> result) {
+        if (key.length() < 3) {
+            for (Map.Entry<String, Word> word : words.tailMap(key).entrySet()) {
+                if (!word.getKey().startsWith(key))
+                    break;
+                result.add(word.getValue());
+            }
+            return;
+        }
+
+        //Words containing every trigram of the key, starting from the rarest one
+        IntArray rarest = null;
+        for (int i = 0; i + 3 <= key.length(); ++i) {
+            IntArray containing = trigrams.get(trigram(key, i));
+            if (containing == null)
+                return;
+            if (rarest == null || containing.size < rarest.size)
+                rarest = containing;
+        }
+
+        for (int i = 0; i < rarest.size; ++i) {
+            Word word = wordsById.get(rarest.items[i]);
+            if (word.text.contains(key))
+                result.add(word);
+        }
+    }
+
+    private void addTrigrams(Word word) {
+        for (int i = 0; i + 3 <= word.text.length(); ++i) {
+            long trigram = trigram(word.text, i);
+            IntArray containing = trigrams.get(trigram);
+            if (containing == null) {
+                containing = new IntArray(4);
+                trigrams.put(trigram, containing);
+            }
+            if (containing.size == 0 || containing.peek() != word.id) //Same trigram more than once in a word
+                containing.add(word.id);
+        }
+    }
+
+    private void removeTrigrams(Word word) {
+        for (int i = 0; i + 3 <= word.text.length(); ++i) {
+            long trigram = trigram(word.text, i);
+            IntArray containing = trigrams.get(trigram);
+            if (containing == null)
+                continue;
+            int index = Arrays.binarySearch(containing.items, 0, containing.size, word.id);
+            if (index >= 0)
+                containing.removeIndex(index);
+            if (containing.size == 0)
+                trigrams.remove(trigram);
+        }
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+}
@@ -4,6 +4,7 @@ import alchyr.taikoedit.TaikoEditor;
 import alchyr.taikoedit.core.layers.EditorLayer;
 import alchyr.taikoedit.desktop.config.ConfigMenu;
 import alchyr.taikoedit.desktop.config.ProgramConfig;
+import alchyr.taikoedit.editor.maps.EditJournal;
 import alchyr.taikoedit.management.SettingsMaster;
 import alchyr.taikoedit.util.FileDropHandler;
 import alchyr.taikoedit.util.SystemUtils;
@@ -195,10 +196,10 @@ public class DesktopLauncher {
 
 					if (EditorLayer.activeEditor != null) {
 						pWriter.println();
-						pWriter.println("Active editor detected. Attempting to save data.");
+						pWriter.println("Active editor detected. Writing unsaved changes to journal.");
 						try {
-							if (EditorLayer.activeEditor.saveAll()) {
-								pWriter.println("Successfully saved data.");
+							if (EditJournal.flushAll()) {
+								pWriter.println("Unsaved changes will be recovered when the difficulty is opened again.");
 							}
 						}
 						catch (Exception ignored) { }